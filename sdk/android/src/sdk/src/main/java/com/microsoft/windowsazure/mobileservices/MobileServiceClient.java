@@ -48,6 +48,7 @@ import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceAut
 import com.microsoft.windowsazure.mobileservices.authentication.MobileServiceUser;
 import com.microsoft.windowsazure.mobileservices.http.AndroidHttpClientFactory;
 import com.microsoft.windowsazure.mobileservices.http.AndroidHttpClientFactoryImpl;
+import com.microsoft.windowsazure.mobileservices.http.JsonRequestContent;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceConnection;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceHttpClient;
 import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
@@ -67,7 +68,6 @@ import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncTab
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.protocol.HTTP;
 
-import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -1007,17 +1007,18 @@ public class MobileServiceClient {
             throw new IllegalArgumentException("clazz cannot be null");
         }
 
-        JsonElement json = null;
+        JsonRequestContent content = null;
         if (body != null) {
             if (body instanceof JsonElement) {
-                json = (JsonElement) body;
+                content = JsonRequestContent.create((JsonElement) body);
             } else {
-                json = getGsonBuilder().create().toJsonTree(body);
+                // The entity is written straight into the request body
+                content = JsonRequestContent.create(getGsonBuilder().create(), body);
             }
         }
 
         final SettableFuture<E> future = SettableFuture.create();
-        ListenableFuture<JsonElement> internalFuture = this.invokeApiInternal(apiName, json, httpMethod, parameters, EnumSet.of(MobileServiceFeatures.TypedApiCall));
+        ListenableFuture<JsonElement> internalFuture = this.invokeApiInternal(apiName, content, httpMethod, parameters, EnumSet.of(MobileServiceFeatures.TypedApiCall));
 
         Futures.addCallback(internalFuture, new FutureCallback<JsonElement>() {
             @Override
@@ -1163,7 +1164,7 @@ public class MobileServiceClient {
      * @param parameters The query string parameters sent in the request
      */
     public ListenableFuture<JsonElement> invokeApi(String apiName, JsonElement body, String httpMethod, List<Pair<String, String>> parameters) {
-        return this.invokeApiInternal(apiName, body, httpMethod, parameters, EnumSet.of(MobileServiceFeatures.JsonApiCall));
+        return this.invokeApiInternal(apiName, body != null ? JsonRequestContent.create(body) : null, httpMethod, parameters, EnumSet.of(MobileServiceFeatures.JsonApiCall));
     }
 
     /**
@@ -1175,16 +1176,7 @@ public class MobileServiceClient {
      * @param parameters The query string parameters sent in the request
      * @param features   The features used in the request
      */
-    private ListenableFuture<JsonElement> invokeApiInternal(String apiName, JsonElement body, String httpMethod, List<Pair<String, String>> parameters, EnumSet<MobileServiceFeatures> features) {
-
-        byte[] content = null;
-        if (body != null) {
-            try {
-                content = body.toString().getBytes(UTF8_ENCODING);
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalArgumentException(e);
-            }
-        }
+    private ListenableFuture<JsonElement> invokeApiInternal(String apiName, JsonRequestContent body, String httpMethod, List<Pair<String, String>> parameters, EnumSet<MobileServiceFeatures> features) {
 
         List<Pair<String, String>> requestHeaders = new ArrayList<Pair<String, String>>();
         if (body != null) {
@@ -1196,7 +1188,7 @@ public class MobileServiceClient {
         }
 
         final SettableFuture<JsonElement> future = SettableFuture.create();
-        ListenableFuture<ServiceFilterResponse> internalFuture = invokeApiInternal(apiName, content, httpMethod, requestHeaders, parameters, features);
+        ListenableFuture<ServiceFilterResponse> internalFuture = invokeApiInternal(apiName, body, httpMethod, requestHeaders, parameters, features);
 
         Futures.addCallback(internalFuture, new FutureCallback<ServiceFilterResponse>() {
             @Override
@@ -1324,6 +1316,29 @@ public class MobileServiceClient {
         return httpClient.request(CUSTOM_API_URL + apiName, content, httpMethod, requestHeaders, parameters, features);
     }
 
+    /**
+     * Invokes a custom API
+     *
+     * @param apiName        The API name
+     * @param content        The JSON content to send as the request body
+     * @param httpMethod     The HTTP Method used to invoke the API
+     * @param requestHeaders The extra headers to send in the request
+     * @param parameters     The query string parameters sent in the request
+     * @param features       The SDK features used in the request
+     */
+    private ListenableFuture<ServiceFilterResponse> invokeApiInternal(String apiName, JsonRequestContent content, String httpMethod,
+                                                                      List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters, EnumSet<MobileServiceFeatures> features) {
+        final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+
+        if (apiName == null || apiName.trim().equals("")) {
+            future.setException(new IllegalArgumentException("apiName cannot be null"));
+            return future;
+        }
+
+        MobileServiceHttpClient httpClient = new MobileServiceHttpClient(this);
+        return httpClient.request(CUSTOM_API_URL + apiName, content, httpMethod, requestHeaders, parameters, features);
+    }
+
     /**
      * Validates the class has an id property defined
      *
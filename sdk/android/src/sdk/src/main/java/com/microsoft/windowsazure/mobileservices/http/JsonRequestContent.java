@@ -0,0 +1,88 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonRequestContent.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * JSON request body that is serialized directly into the request buffer
+ */
+public abstract class JsonRequestContent {
+
+    private static final TypeAdapter<JsonElement> ElementAdapter = new Gson().getAdapter(JsonElement.class);
+
+    /**
+     * Writes the request body
+     *
+     * @param writer the writer to use
+     * @throws IOException
+     */
+    public abstract void write(JsonWriter writer) throws IOException;
+
+    /**
+     * Creates a request body for a JsonElement
+     *
+     * @param element the JsonElement to send
+     */
+    public static JsonRequestContent create(final JsonElement element) {
+        return new JsonRequestContent() {
+            @Override
+            public void write(JsonWriter writer) throws IOException {
+                ElementAdapter.write(writer, element);
+            }
+        };
+    }
+
+    /**
+     * Creates a request body for an object, serialized with the given Gson
+     * instance without building an intermediate JsonElement
+     *
+     * @param gson   the Gson instance used to serialize the object
+     * @param object the object to send
+     */
+    public static JsonRequestContent create(final Gson gson, final Object object) {
+        return new JsonRequestContent() {
+            @Override
+            public void write(JsonWriter writer) throws IOException {
+                gson.toJson(object, object.getClass(), writer);
+            }
+        };
+    }
+
+    /**
+     * Serializes the body into the given buffer
+     */
+    void writeTo(PooledByteArrayOutputStream buffer) throws IOException {
+        JsonWriter writer = new JsonWriter(buffer.asUtf8Writer());
+        writer.setLenient(true);
+
+        write(writer);
+        writer.flush();
+    }
+}
@@ -122,16 +122,107 @@ public class MobileServiceHttpClient {
     public ListenableFuture<ServiceFilterResponse> request(String path, byte[] content, String httpMethod,
                                                            List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters,
                                                            EnumSet<MobileServiceFeatures> features) {
+        return this.request(path, content, null, httpMethod, requestHeaders, parameters, features);
+    }
+
+    /**
+     * Makes a request over HTTP. The JSON content is serialized directly into
+     * a pooled buffer that is sent as the request body without further copies.
+     *
+     * @param path           The path of the request URI
+     * @param content        The JSON content to send as the request body
+     * @param httpMethod     The HTTP Method used to invoke the API
+     * @param requestHeaders The extra headers to send in the request
+     * @param parameters     The query string parameters sent in the request
+     * @param features       The features used in the request
+     */
+    public ListenableFuture<ServiceFilterResponse> request(String path, JsonRequestContent content, String httpMethod,
+                                                           List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters,
+                                                           EnumSet<MobileServiceFeatures> features) {
+        PooledByteArrayOutputStream pooledContent = null;
+
+        if (content != null) {
+            pooledContent = PooledByteArrayOutputStream.obtain();
+
+            try {
+                content.writeTo(pooledContent);
+            } catch (Exception e) {
+                pooledContent.release();
+
+                SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
+                future.setException(e);
+                return future;
+            }
+        }
+
+        return this.request(path, null, pooledContent, httpMethod, requestHeaders, parameters, features);
+    }
+
+    /**
+     * Makes a request over HTTP
+     *
+     * @param path           The path of the request URI
+     * @param content        The byte array to send as the request body
+     * @param pooledContent  The pooled buffer to send as the request body,
+     *                       released once the request completes
+     * @param httpMethod     The HTTP Method used to invoke the API
+     * @param requestHeaders The extra headers to send in the request
+     * @param parameters     The query string parameters sent in the request
+     * @param features       The features used in the request
+     */
+    private ListenableFuture<ServiceFilterResponse> request(String path, byte[] content, final PooledByteArrayOutputStream pooledContent, String httpMethod,
+                                                            List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters,
+                                                            EnumSet<MobileServiceFeatures> features) {
         final SettableFuture<ServiceFilterResponse> future = SettableFuture.create();
 
-        if (path == null || path.trim().equals("")) {
-            future.setException(new IllegalArgumentException("request path cannot be null"));
+        final ServiceFilterRequestImpl request;
+
+        try {
+            request = createRequest(path, httpMethod, requestHeaders, parameters, features);
+
+            if (content != null) {
+                request.setContent(content);
+            } else if (pooledContent != null) {
+                request.setContent(pooledContent);
+            }
+        } catch (Exception e) {
+            if (pooledContent != null) {
+                pooledContent.release();
+            }
+
+            future.setException(e);
             return future;
         }
 
+        MobileServiceConnection conn = mClient.createConnection();
+
+        new RequestAsyncTask(request, conn) {
+            @Override
+            protected void onPostExecute(ServiceFilterResponse response) {
+                request.releaseContent();
+
+                if (mTaskException != null) {
+                    future.setException(mTaskException);
+                } else {
+                    future.set(response);
+                }
+            }
+        }.executeTask();
+
+        return future;
+    }
+
+    /**
+     * Creates the request for the given path and method
+     */
+    private ServiceFilterRequestImpl createRequest(String path, String httpMethod, List<Pair<String, String>> requestHeaders,
+                                                   List<Pair<String, String>> parameters, EnumSet<MobileServiceFeatures> features) {
+        if (path == null || path.trim().equals("")) {
+            throw new IllegalArgumentException("request path cannot be null");
+        }
+
         if (httpMethod == null || httpMethod.trim().equals("")) {
-            future.setException(new IllegalArgumentException("httpMethod cannot be null"));
-            return future;
+            throw new IllegalArgumentException("httpMethod cannot be null");
         }
 
         Uri.Builder uriBuilder = Uri.parse(mClient.getAppUrl().toString()).buildUpon();
@@ -157,8 +248,7 @@ public class MobileServiceHttpClient {
         } else if (httpMethod.equalsIgnoreCase(HttpDelete.METHOD_NAME)) {
             request = new ServiceFilterRequestImpl(new HttpDelete(url), mClient.getAndroidHttpClientFactory());
         } else {
-            future.setException(new IllegalArgumentException("httpMethod not supported"));
-            return future;
+            throw new IllegalArgumentException("httpMethod not supported");
         }
 
         String featuresHeader = MobileServiceFeatures.featuresToString(features);
@@ -188,28 +278,6 @@ public class MobileServiceHttpClient {
             }
         }
 
-        if (content != null) {
-            try {
-                request.setContent(content);
-            } catch (Exception e) {
-                future.setException(e);
-                return future;
-            }
-        }
-
-        MobileServiceConnection conn = mClient.createConnection();
-
-        new RequestAsyncTask(request, conn) {
-            @Override
-            protected void onPostExecute(ServiceFilterResponse response) {
-                if (mTaskException != null) {
-                    future.setException(mTaskException);
-                } else {
-                    future.set(response);
-                }
-            }
-        }.executeTask();
-
-        return future;
+        return request;
     }
 }
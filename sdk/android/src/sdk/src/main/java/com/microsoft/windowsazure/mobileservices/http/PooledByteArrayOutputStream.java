@@ -0,0 +1,225 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * PooledByteArrayOutputStream.java
+ */
+package com.microsoft.windowsazure.mobileservices.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Growable byte buffer used to hold request bodies. The backing arrays are
+ * taken from a small shared pool and returned to it on release, so that
+ * serializing a request body doesn't allocate a new buffer every time.
+ */
+final class PooledByteArrayOutputStream extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+
+    /**
+     * Buffers larger than this are not kept in the pool
+     */
+    private static final int MAX_POOLED_CAPACITY = 256 * 1024;
+
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    private static final ConcurrentLinkedQueue<byte[]> sPool = new ConcurrentLinkedQueue<byte[]>();
+
+    private static final AtomicInteger sPoolSize = new AtomicInteger();
+
+    private byte[] mBuffer;
+
+    private int mCount;
+
+    private Utf8Writer mWriter;
+
+    private PooledByteArrayOutputStream(byte[] buffer) {
+        mBuffer = buffer;
+    }
+
+    /**
+     * Returns an empty stream backed by a pooled array
+     */
+    static PooledByteArrayOutputStream obtain() {
+        byte[] buffer = sPool.poll();
+
+        if (buffer != null) {
+            sPoolSize.decrementAndGet();
+        } else {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+
+        return new PooledByteArrayOutputStream(buffer);
+    }
+
+    /**
+     * Returns the backing array to the pool. The stream must not be used
+     * afterwards.
+     */
+    void release() {
+        byte[] buffer = mBuffer;
+        mBuffer = null;
+        mCount = 0;
+
+        // The pool size check is not atomic with the offer, so the pool may
+        // briefly hold a few more buffers than the limit
+        if (buffer != null && buffer.length <= MAX_POOLED_CAPACITY && sPoolSize.get() < MAX_POOLED_BUFFERS) {
+            sPoolSize.incrementAndGet();
+            sPool.offer(buffer);
+        }
+    }
+
+    /**
+     * Returns the backing array. Only the first size() bytes are valid.
+     */
+    byte[] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Returns the number of bytes written
+     */
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns a copy of the bytes written
+     */
+    byte[] toByteArray() {
+        byte[] result = new byte[mCount];
+        System.arraycopy(mBuffer, 0, result, 0, mCount);
+        return result;
+    }
+
+    /**
+     * Returns a Writer that encodes characters as UTF-8 directly into this
+     * stream, without any intermediate buffer
+     */
+    Writer asUtf8Writer() {
+        if (mWriter == null) {
+            mWriter = new Utf8Writer();
+        }
+
+        return mWriter;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        mBuffer[mCount++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, mBuffer, mCount, len);
+        mCount += len;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mBuffer == null) {
+            throw new IllegalStateException("The buffer has already been released.");
+        }
+
+        if (mCount + extra > mBuffer.length) {
+            byte[] buffer = new byte[Math.max(mBuffer.length * 2, mCount + extra)];
+            System.arraycopy(mBuffer, 0, buffer, 0, mCount);
+            mBuffer = buffer;
+        }
+    }
+
+    /**
+     * UTF-8 encoding Writer over the enclosing stream
+     */
+    private class Utf8Writer extends Writer {
+        private char mHighSurrogate;
+
+        @Override
+        public void write(int c) throws IOException {
+            writeChar((char) c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int count) throws IOException {
+            ensureCapacity(count);
+
+            for (int i = offset; i < offset + count; i++) {
+                writeChar(buffer[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int offset, int count) throws IOException {
+            ensureCapacity(count);
+
+            for (int i = offset; i < offset + count; i++) {
+                writeChar(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void writeChar(char c) {
+            if (mHighSurrogate != 0) {
+                char high = mHighSurrogate;
+                mHighSurrogate = 0;
+
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    PooledByteArrayOutputStream.this.write(0xF0 | (codePoint >> 18));
+                    PooledByteArrayOutputStream.this.write(0x80 | ((codePoint >> 12) & 0x3F));
+                    PooledByteArrayOutputStream.this.write(0x80 | ((codePoint >> 6) & 0x3F));
+                    PooledByteArrayOutputStream.this.write(0x80 | (codePoint & 0x3F));
+                    return;
+                }
+
+                // Unpaired surrogate, replaced like String.getBytes does
+                PooledByteArrayOutputStream.this.write('?');
+            }
+
+            if (c < 0x80) {
+                PooledByteArrayOutputStream.this.write(c);
+            } else if (c < 0x800) {
+                PooledByteArrayOutputStream.this.write(0xC0 | (c >> 6));
+                PooledByteArrayOutputStream.this.write(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                mHighSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                PooledByteArrayOutputStream.this.write('?');
+            } else {
+                PooledByteArrayOutputStream.this.write(0xE0 | (c >> 12));
+                PooledByteArrayOutputStream.this.write(0x80 | ((c >> 6) & 0x3F));
+                PooledByteArrayOutputStream.this.write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -54,6 +54,11 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
      */
     private byte[] mContent;
 
+    /**
+     * The pooled buffer holding the request content, if any
+     */
+    private PooledByteArrayOutputStream mPooledContent;
+
     private AndroidHttpClientFactory mAndroidHttpClientFactory;
 
     /**
@@ -109,12 +114,37 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
         mContent = content;
     }
 
+    /**
+     * Sets the request content from a pooled buffer, which is sent without
+     * being copied. The buffer is returned to the pool by releaseContent.
+     *
+     * @param content the buffer holding the content
+     */
+    void setContent(PooledByteArrayOutputStream content) {
+        ((HttpEntityEnclosingRequestBase) mRequest).setEntity(new PooledByteArrayEntity(content));
+        mPooledContent = content;
+        mContent = null;
+    }
+
+    /**
+     * Returns the pooled buffer used by the request, if any, to the pool. The
+     * content is no longer available afterwards unless it was read before.
+     */
+    void releaseContent() {
+        if (mPooledContent != null) {
+            mPooledContent.release();
+            mPooledContent = null;
+        }
+    }
+
     @Override
     public String getContent() {
-        if (mContent != null) {
+        byte[] rawContent = getRawContent();
+
+        if (rawContent != null) {
             String content = null;
             try {
-                content = new String(mContent, MobileServiceClient.UTF8_ENCODING);
+                content = new String(rawContent, MobileServiceClient.UTF8_ENCODING);
             } catch (UnsupportedEncodingException e) {
             }
             return content;
@@ -131,6 +161,11 @@ public class ServiceFilterRequestImpl implements ServiceFilterRequest {
 
     @Override
     public byte[] getRawContent() {
+        // The pooled content is only copied if somebody asks for it, e.g. a filter
+        if (mContent == null && mPooledContent != null) {
+            mContent = mPooledContent.toByteArray();
+        }
+
         return mContent;
     }
 
@@ -34,9 +34,11 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
+import com.microsoft.windowsazure.mobileservices.http.JsonRequestContent;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceConnection;
 import com.microsoft.windowsazure.mobileservices.http.MobileServiceHttpClient;
 import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
@@ -52,11 +54,13 @@ import org.apache.http.Header;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.protocol.HTTP;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a Mobile Service Table
@@ -128,25 +132,33 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
      * @param query The query used to retrieve the rows
      */
     public ListenableFuture<JsonElement> execute(final Query query) {
+        return execute(query, (Map<String, Object>) null);
+    }
+
+    /**
+     * Retrieves a set of rows from the table using a query with named
+     * parameters
+     *
+     * @param query      The query used to retrieve the rows
+     * @param parameters The values of the query parameters
+     */
+    public ListenableFuture<JsonElement> execute(final Query query, final Map<String, Object> parameters) {
         final SettableFuture<JsonElement> future = SettableFuture.create();
 
         String url = null;
         try {
-            String filtersUrl = QueryODataWriter.getRowFilter(query);
+            String queryString = QueryODataWriter.getQueryString(query, this, parameters);
             url = mClient.getAppUrl().toString() + TABLES_URL + URLEncoder.encode(mTableName, MobileServiceClient.UTF8_ENCODING);
 
-            if (filtersUrl.length() > 0) {
-                url += "?$filter=" + filtersUrl + QueryODataWriter.getRowSetModifiers(query, this);
-            } else {
-                String rowSetModifiers = QueryODataWriter.getRowSetModifiers(query, this);
-
-                if (rowSetModifiers.length() > 0) {
-                    url += "?" + QueryODataWriter.getRowSetModifiers(query, this).substring(1);
-                }
+            if (queryString.length() > 0) {
+                url += "?" + queryString;
             }
         } catch (UnsupportedEncodingException e) {
             future.setException(e);
             return future;
+        } catch (IllegalArgumentException e) {
+            future.setException(e);
+            return future;
         }
 
         EnumSet<MobileServiceFeatures> features = mFeatures.clone();
@@ -497,7 +509,7 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
             return future;
         }
 
-        String content = element.toString();
+        JsonRequestContent content = JsonRequestContent.create(element);
 
         EnumSet<MobileServiceFeatures> features = mFeatures.clone();
         if (parameters != null && parameters.size() > 0) {
@@ -596,7 +608,7 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
 
         Object id = null;
         String version = null;
-        String content = null;
+        JsonRequestContent content = null;
 
         try {
             id = validateId(element);
@@ -607,9 +619,14 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
 
         if (!isNumericType(id)) {
             version = getVersionSystemProperty(element);
-            content = removeSystemProperties(element).toString();
+            content = new JsonRequestContent() {
+                @Override
+                public void write(JsonWriter writer) throws IOException {
+                    SystemPropertiesFilter.write(element, writer);
+                }
+            };
         } else {
-            content = element.toString();
+            content = JsonRequestContent.create(element);
         }
 
         EnumSet<MobileServiceFeatures> features = mFeatures.clone();
@@ -903,7 +920,7 @@ public final class MobileServiceJsonTable extends MobileServiceTableBase {
      * @param features       The features used in the request
      */
     private ListenableFuture<Pair<JsonObject, ServiceFilterResponse>> executeTableOperation(
-            String path, String content, String httpMethod, List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters, EnumSet<MobileServiceFeatures> features) {
+            String path, JsonRequestContent content, String httpMethod, List<Pair<String, String>> requestHeaders, List<Pair<String, String>> parameters, EnumSet<MobileServiceFeatures> features) {
         final SettableFuture<Pair<JsonObject, ServiceFilterResponse>> future = SettableFuture.create();
 
         MobileServiceHttpClient httpClient = new MobileServiceHttpClient(mClient);
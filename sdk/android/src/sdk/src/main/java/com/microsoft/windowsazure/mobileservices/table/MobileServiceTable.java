@@ -44,6 +44,7 @@ import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityP
 import java.lang.reflect.Field;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a Mobile Service Table
@@ -154,8 +155,18 @@ public final class MobileServiceTable<E> extends MobileServiceTableBase {
      * @param query The Query instance to execute
      */
     public ListenableFuture<MobileServiceList<E>> execute(Query query) {
+        return execute(query, (Map<String, Object>) null);
+    }
+
+    /**
+     * Executes a query with named parameters to retrieve the table rows
+     *
+     * @param query      The Query instance to execute
+     * @param parameters The values of the query parameters
+     */
+    public ListenableFuture<MobileServiceList<E>> execute(Query query, Map<String, Object> parameters) {
         final SettableFuture<MobileServiceList<E>> future = SettableFuture.create();
-        ListenableFuture<JsonElement> internalFuture = mInternalTable.execute(query);
+        ListenableFuture<JsonElement> internalFuture = mInternalTable.execute(query, parameters);
         Futures.addCallback(internalFuture, new FutureCallback<JsonElement>() {
             @Override
             public void onFailure(Throwable exc) {
@@ -45,6 +45,7 @@ import com.microsoft.windowsazure.mobileservices.http.RequestAsyncTask;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequestImpl;
 import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonPropertyFilter;
 
 import org.apache.http.client.methods.HttpDelete;
 
@@ -86,6 +87,16 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
         SystemPropertyNameToEnum.put(getSystemPropertyString(MobileServiceSystemProperty.Deleted), MobileServiceSystemProperty.Deleted);
     }
 
+    /**
+     * Excludes the system properties from an instance
+     */
+    protected static final JsonPropertyFilter SystemPropertiesFilter = new JsonPropertyFilter() {
+        @Override
+        public boolean excludes(String propertyName) {
+            return SystemPropertyNameToEnum.containsKey(propertyName);
+        }
+    };
+
     /**
      * The version system property as a string with the prefix.
      */
@@ -151,24 +162,9 @@ abstract class MobileServiceTableBase implements MobileServiceTableSystemPropert
      * @return The instance with the system properties removed.
      */
     protected static JsonObject removeSystemProperties(JsonObject instance) {
-        boolean haveCloned = false;
-
-        for (Entry<String, JsonElement> property : instance.entrySet()) {
-            if (SystemPropertyNameToEnum.containsKey(property.getKey())) {
-                // We don't want to alter the original JsonObject passed in by
-                // the caller
-                // so if we find a system property to remove, we have to clone
-                // first
-                if (!haveCloned) {
-                    instance = (JsonObject) new JsonParser().parse(instance.toString());
-                    haveCloned = true;
-                }
-
-                instance.remove(property.getKey());
-            }
-        }
-
-        return instance;
+        // We don't want to alter the original JsonObject passed in by the
+        // caller, so a shallow copy is made only if there is something to remove
+        return SystemPropertiesFilter.apply(instance);
     }
 
     /**
@@ -0,0 +1,209 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * CompiledQuery.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.query;
+
+import android.util.Pair;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+
+/**
+ * A query compiled by QueryEvaluator for in-memory evaluation: a predicate for
+ * its filter, a comparator for its ordering, its top and skip, and a
+ * projector for its selected fields. A compiled query holds no state for the
+ * rows it evaluates, so it can be reused across rows and threads.
+ *
+ * @param <T> the row type
+ */
+public class CompiledQuery<T> {
+
+    private QueryEvaluator.Expression mFilter;
+    private QueryEvaluator.RowReader<T> mReader;
+    private Comparator<T> mComparator;
+    private int mTop;
+    private int mSkip;
+    private String[] mProjection;
+
+    CompiledQuery(Query query, QueryEvaluator.Expression filter, QueryEvaluator.RowReader<T> reader) {
+        this.mFilter = filter;
+        this.mReader = reader;
+        this.mTop = query != null ? Math.max(0, query.getTop()) : 0;
+        this.mSkip = query != null ? Math.max(0, query.getSkip()) : 0;
+
+        if (query != null && query.getOrderBy() != null && query.getOrderBy().size() > 0) {
+            this.mComparator = createComparator(query.getOrderBy(), reader);
+        }
+
+        if (query != null && query.getProjection() != null && query.getProjection().size() > 0) {
+            List<String> projection = query.getProjection();
+
+            this.mProjection = new String[projection.size()];
+
+            for (int i = 0; i < this.mProjection.length; i++) {
+                this.mProjection[i] = projection.get(i).trim().toLowerCase(Locale.getDefault());
+            }
+        }
+    }
+
+    /**
+     * Returns true if a row matches the filter of the query
+     *
+     * @param row the row
+     */
+    public boolean matches(T row) {
+        return this.mFilter == null || QueryEvaluator.isTrue(this.mFilter.evaluate(row, this.mReader));
+    }
+
+    /**
+     * Returns the comparator of the query ordering, or null if the query is
+     * not ordered
+     */
+    public Comparator<T> getComparator() {
+        return this.mComparator;
+    }
+
+    /**
+     * Returns the number of rows to take, or 0 for all rows
+     */
+    public int getTop() {
+        return this.mTop;
+    }
+
+    /**
+     * Returns the number of rows to skip
+     */
+    public int getSkip() {
+        return this.mSkip;
+    }
+
+    /**
+     * Returns true if the query selects a subset of the fields
+     */
+    public boolean hasProjection() {
+        return this.mProjection != null;
+    }
+
+    /**
+     * Returns true if the query selects a field, by its case insensitive name
+     *
+     * @param fieldName the field name
+     */
+    public boolean isProjected(String fieldName) {
+        if (this.mProjection == null) {
+            return true;
+        }
+
+        for (String projected : this.mProjection) {
+            if (projected.equalsIgnoreCase(fieldName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the properties of a JSON row selected by the query, or the row
+     * itself if the query selects every field
+     *
+     * @param row the row
+     */
+    public JsonObject project(JsonObject row) {
+        if (this.mProjection == null) {
+            return row;
+        }
+
+        JsonObject result = new JsonObject();
+
+        for (Entry<String, JsonElement> property : row.entrySet()) {
+            if (isProjected(property.getKey())) {
+                result.add(property.getKey(), property.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Filters, orders and pages rows
+     *
+     * @param rows the rows
+     * @return the rows of the query page, in order
+     */
+    public List<T> apply(Iterable<T> rows) {
+        List<T> matches = new ArrayList<T>();
+
+        for (T row : rows) {
+            if (matches(row)) {
+                matches.add(row);
+
+                // Unordered rows can stop as soon as the page is full
+                if (this.mComparator == null && this.mTop > 0 && matches.size() == this.mSkip + this.mTop) {
+                    break;
+                }
+            }
+        }
+
+        if (this.mComparator != null) {
+            Collections.sort(matches, this.mComparator);
+        }
+
+        int from = Math.min(this.mSkip, matches.size());
+        int to = this.mTop > 0 ? Math.min(from + this.mTop, matches.size()) : matches.size();
+
+        return new ArrayList<T>(matches.subList(from, to));
+    }
+
+    private static <T> Comparator<T> createComparator(List<Pair<String, QueryOrder>> orderBy, final QueryEvaluator.RowReader<T> reader) {
+        final String[] fields = new String[orderBy.size()];
+        final boolean[] descending = new boolean[orderBy.size()];
+
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = orderBy.get(i).first.trim();
+            descending[i] = orderBy.get(i).second == QueryOrder.Descending;
+        }
+
+        return new Comparator<T>() {
+            @Override
+            public int compare(T x, T y) {
+                for (int i = 0; i < fields.length; i++) {
+                    int result = QueryEvaluator.compareValues(reader.getValue(x, fields[i]), reader.getValue(y, fields[i]));
+
+                    if (result != 0) {
+                        return descending[i] ? -result : result;
+                    }
+                }
+
+                return 0;
+            }
+        };
+    }
+}
@@ -0,0 +1,140 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * ODataQueryTemplate.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.query;
+
+import java.util.List;
+
+/**
+ * Encoded OData query string with slots for the values that change between
+ * executions of queries with the same structure: constants, $top and $skip.
+ */
+class ODataQueryTemplate {
+    static final int SLOT_CONSTANT = 0;
+    static final int SLOT_TOP = 1;
+    static final int SLOT_SKIP = 2;
+
+    private final String mText;
+    private final int[] mPositions;
+    private final int[] mKinds;
+
+    private ODataQueryTemplate(String text, int[] positions, int[] kinds) {
+        this.mText = text;
+        this.mPositions = positions;
+        this.mKinds = kinds;
+    }
+
+    /**
+     * Builds the query string, splicing the encoded values into the template
+     *
+     * @param constants the constant values, in the order they were visited
+     * @param query     the query the $top and $skip values are taken from
+     */
+    String format(List<Object> constants, Query query) {
+        StringBuilder builder = new StringBuilder(this.mText.length() + 16 * this.mPositions.length);
+
+        int last = 0;
+        int constantIndex = 0;
+
+        for (int i = 0; i < this.mPositions.length; i++) {
+            builder.append(this.mText, last, this.mPositions[i]);
+
+            switch (this.mKinds[i]) {
+                case SLOT_CONSTANT:
+                    QueryNodeODataWriter.appendConstant(builder, constants.get(constantIndex++));
+                    break;
+                case SLOT_TOP:
+                    builder.append(query.getTop());
+                    break;
+                case SLOT_SKIP:
+                    builder.append(query.getSkip());
+                    break;
+            }
+
+            last = this.mPositions[i];
+        }
+
+        builder.append(this.mText, last, this.mText.length());
+
+        return builder.toString();
+    }
+
+    /**
+     * Accumulates the template text and its slots
+     */
+    static class Builder {
+        private StringBuilder mText = new StringBuilder();
+        private int[] mPositions = new int[8];
+        private int[] mKinds = new int[8];
+        private int mCount;
+
+        /**
+         * Gets the builder the template text is written to
+         */
+        StringBuilder getText() {
+            return this.mText;
+        }
+
+        /**
+         * Adds a slot at the current position of the text
+         *
+         * @param kind the slot kind
+         */
+        void addSlot(int kind) {
+            if (this.mCount == this.mPositions.length) {
+                int[] positions = new int[this.mCount * 2];
+                int[] kinds = new int[this.mCount * 2];
+                System.arraycopy(this.mPositions, 0, positions, 0, this.mCount);
+                System.arraycopy(this.mKinds, 0, kinds, 0, this.mCount);
+                this.mPositions = positions;
+                this.mKinds = kinds;
+            }
+
+            this.mPositions[this.mCount] = this.mText.length();
+            this.mKinds[this.mCount] = kind;
+            this.mCount++;
+        }
+
+        /**
+         * Removes the first characters of the text
+         *
+         * @param count the number of characters to remove
+         */
+        void removePrefix(int count) {
+            this.mText.delete(0, count);
+
+            for (int i = 0; i < this.mCount; i++) {
+                this.mPositions[i] -= count;
+            }
+        }
+
+        ODataQueryTemplate build() {
+            int[] positions = new int[this.mCount];
+            int[] kinds = new int[this.mCount];
+            System.arraycopy(this.mPositions, 0, positions, 0, this.mCount);
+            System.arraycopy(this.mKinds, 0, kinds, 0, this.mCount);
+
+            return new ODataQueryTemplate(this.mText.toString(), positions, kinds);
+        }
+    }
+}
@@ -0,0 +1,1055 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * QueryEvaluator.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.query;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.annotations.SerializedName;
+import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles queries for in-memory evaluation against JsonObject rows or
+ * entities. A query is compiled once into a tree of expressions, a
+ * comparator and a projector, which can then be applied to many rows.
+ * Evaluation follows the SQL written by QueryNodeSQLWriter for the SQLite
+ * store: booleans are integers, dates are ISO-8601 strings, null propagates
+ * as in SQL, columns compared with other values apply their affinity, and
+ * every FunctionCallKind behaves as the SQLite function it is written as.
+ */
+public class QueryEvaluator {
+
+    /**
+     * Reads the field values of rows
+     *
+     * @param <T> the row type
+     */
+    public interface RowReader<T> {
+        /**
+         * Returns the value of a row field: null, a Long, a Double or a
+         * String
+         *
+         * @param row       the row
+         * @param fieldName the field name, in any case
+         */
+        Object getValue(T row, String fieldName);
+    }
+
+    /**
+     * A compiled query filter
+     */
+    public interface Filter {
+        /**
+         * Returns true if the row matches the filter
+         *
+         * @param row the row
+         */
+        boolean matches(JsonObject row);
+    }
+
+    /**
+     * Reads the fields of JsonObject rows
+     */
+    public static final RowReader<JsonObject> JSON_READER = new RowReader<JsonObject>() {
+        @Override
+        public Object getValue(JsonObject row, String fieldName) {
+            return QueryEvaluator.getValue(row, fieldName);
+        }
+    };
+
+    private static final Long TRUE = 1L;
+    private static final Long FALSE = 0L;
+
+    private static final Pattern TIME_STRING = Pattern.compile(
+            "^\\s*(\\d{4})-(\\d{2})-(\\d{2})(?:[T ](\\d{2}):(\\d{2})(?::(\\d{2})(?:\\.(\\d+))?)?)?\\s*(Z|[+-]\\d{2}:\\d{2})?\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern NUMERIC_TEXT = Pattern.compile("^\\s*[+-]?(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][+-]?\\d+)?\\s*$");
+
+    /**
+     * Compiles a query for JsonObject rows
+     *
+     * @param query the query, or null to match every row
+     */
+    public static CompiledQuery<JsonObject> compile(Query query) {
+        return compile(query, JSON_READER);
+    }
+
+    /**
+     * Compiles a query for rows read by a RowReader
+     *
+     * @param query  the query, or null to match every row
+     * @param reader the reader of the row fields
+     */
+    public static <T> CompiledQuery<T> compile(Query query, RowReader<T> reader) {
+        Expression filter = null;
+
+        if (query != null && query.getQueryNode() != null) {
+            filter = query.getQueryNode().accept(new Compiler());
+        }
+
+        return new CompiledQuery<T>(query, filter, reader);
+    }
+
+    /**
+     * Compiles the filter of a query for JsonObject rows
+     *
+     * @param query the query, or null
+     * @return the compiled filter, matching every row if the query has no
+     * filter
+     */
+    public static Filter compileFilter(Query query) {
+        final CompiledQuery<JsonObject> compiledQuery = compile(query);
+
+        return new Filter() {
+            @Override
+            public boolean matches(JsonObject row) {
+                return compiledQuery.matches(row);
+            }
+        };
+    }
+
+    /**
+     * Returns a reader of the fields of entities of a class. Fields are named
+     * by their SerializedName annotation if any; booleans are read as
+     * integers and dates as ISO-8601 strings, as stored in the local store.
+     *
+     * @param clazz the entity class
+     */
+    public static <T> RowReader<T> entityReader(Class<T> clazz) {
+        final Map<String, Field> fields = new HashMap<String, Field>();
+
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()) || field.isSynthetic()) {
+                    continue;
+                }
+
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                String name = (serializedName != null ? serializedName.value() : field.getName()).toLowerCase(Locale.getDefault());
+
+                if (!fields.containsKey(name)) {
+                    field.setAccessible(true);
+                    fields.put(name, field);
+                }
+            }
+        }
+
+        return new RowReader<T>() {
+            @Override
+            public Object getValue(T row, String fieldName) {
+                Field field = fields.get(fieldName.toLowerCase(Locale.getDefault()));
+
+                if (field == null) {
+                    return null;
+                }
+
+                try {
+                    return toValue(field.get(row));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the value of a JsonObject field, as evaluated by queries: null,
+     * a Long, a Double or a String. Field names are case insensitive, as
+     * local store column names.
+     *
+     * @param row       the row
+     * @param fieldName the field name
+     */
+    public static Object getValue(JsonObject row, String fieldName) {
+        JsonElement element = row.get(fieldName);
+
+        if (element == null) {
+            for (Entry<String, JsonElement> property : row.entrySet()) {
+                if (property.getKey().equalsIgnoreCase(fieldName)) {
+                    element = property.getValue();
+                    break;
+                }
+            }
+        }
+
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+
+        if (!element.isJsonPrimitive()) {
+            return element.toString();
+        }
+
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean() ? TRUE : FALSE;
+        } else if (primitive.isNumber()) {
+            return toNumber(primitive.getAsNumber());
+        }
+
+        return primitive.getAsString();
+    }
+
+    /**
+     * Compares two values in the order of the SQLite local store: null first,
+     * then numbers, then strings
+     *
+     * @param x the first value
+     * @param y the second value
+     */
+    public static int compareValues(Object x, Object y) {
+        int xClass = getStorageClass(x);
+        int yClass = getStorageClass(y);
+
+        if (xClass != yClass) {
+            return xClass < yClass ? -1 : 1;
+        }
+
+        switch (xClass) {
+            case 0:
+                return 0;
+            case 1:
+                if (x instanceof Long && y instanceof Long) {
+                    long xLong = (Long) x;
+                    long yLong = (Long) y;
+
+                    return xLong < yLong ? -1 : (xLong == yLong ? 0 : 1);
+                }
+
+                return Double.compare(((Number) x).doubleValue(), ((Number) y).doubleValue());
+            default:
+                return ((String) x).compareTo((String) y);
+        }
+    }
+
+    static boolean isTrue(Object value) {
+        Object number = toNumeric(value);
+
+        return number != null && ((Number) number).doubleValue() != 0;
+    }
+
+    private static int getStorageClass(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return 1;
+        }
+
+        return 2;
+    }
+
+    private static Object toValue(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        } else if (value instanceof Number) {
+            return toNumber((Number) value);
+        } else if (value instanceof Date) {
+            return DateSerializer.serialize((Date) value);
+        }
+
+        return value.toString();
+    }
+
+    private static Object toNumber(Number number) {
+        if (number instanceof Long) {
+            return number;
+        } else if (number instanceof Integer || number instanceof Short || number instanceof Byte || number instanceof BigInteger) {
+            return number.longValue();
+        } else if (number instanceof Double) {
+            return number;
+        } else if (number instanceof Float) {
+            return number.doubleValue();
+        }
+
+        // Lazily parsed numbers keep their integral form when they have one
+        String text = number.toString();
+
+        if (text.indexOf('.') == -1 && text.indexOf('e') == -1 && text.indexOf('E') == -1) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                // Out of range integers are reals, as in SQLite
+            }
+        }
+
+        return number.doubleValue();
+    }
+
+    /**
+     * Converts a value to a number as SQLite does in arithmetic, using the
+     * longest numeric prefix of strings
+     */
+    private static Object toNumeric(Object value) {
+        if (value == null || value instanceof Number) {
+            return value;
+        }
+
+        String text = (String) value;
+        int length = text.length();
+        int start = 0;
+
+        while (start < length && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+
+        int end = start;
+
+        if (end < length && (text.charAt(end) == '-' || text.charAt(end) == '+')) {
+            end++;
+        }
+
+        boolean isReal = false;
+        int digits = 0;
+
+        while (end < length) {
+            char c = text.charAt(end);
+
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && !isReal) {
+                isReal = true;
+            } else {
+                break;
+            }
+
+            end++;
+        }
+
+        if (digits == 0) {
+            return FALSE;
+        }
+
+        // An exponent belongs to the prefix only if it has digits
+        if (end + 1 < length && (text.charAt(end) == 'e' || text.charAt(end) == 'E')) {
+            int exponentEnd = end + 1;
+
+            if (text.charAt(exponentEnd) == '-' || text.charAt(exponentEnd) == '+') {
+                exponentEnd++;
+            }
+
+            int exponentStart = exponentEnd;
+
+            while (exponentEnd < length && text.charAt(exponentEnd) >= '0' && text.charAt(exponentEnd) <= '9') {
+                exponentEnd++;
+            }
+
+            if (exponentEnd > exponentStart) {
+                end = exponentEnd;
+                isReal = true;
+            }
+        }
+
+        String prefix = text.substring(start, end);
+
+        if (!isReal) {
+            try {
+                return Long.parseLong(prefix);
+            } catch (NumberFormatException e) {
+                // Out of range integers are reals, as in SQLite
+            }
+        }
+
+        return Double.parseDouble(prefix);
+    }
+
+    /**
+     * Applies numeric affinity: text that is a well-formed number becomes a
+     * number, anything else is kept
+     */
+    private static Object applyNumericAffinity(Object value) {
+        if (value instanceof String && NUMERIC_TEXT.matcher((String) value).matches()) {
+            return toNumeric(value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Applies text affinity: numbers become text
+     */
+    private static Object applyTextAffinity(Object value) {
+        return value instanceof Number ? toText(value) : value;
+    }
+
+    private static String toText(Object value) {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        } else if (value instanceof Double) {
+            double doubleValue = (Double) value;
+
+            if (doubleValue == Math.rint(doubleValue) && Math.abs(doubleValue) < 1e15) {
+                return String.valueOf((long) doubleValue) + ".0";
+            }
+        }
+
+        return value.toString();
+    }
+
+    private static Long toBoolean(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * Returns the number of characters of a string, counting surrogate pairs
+     * once as SQLite does
+     */
+    private static int length(String value) {
+        return value.codePointCount(0, value.length());
+    }
+
+    /**
+     * Matches a string with a LIKE pattern as SQLite does: % matches any
+     * sequence, _ any character, and ASCII letters match in any case
+     */
+    static boolean like(String text, String pattern) {
+        int t = 0;
+        int p = 0;
+        int starP = -1;
+        int starT = 0;
+
+        while (t < text.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '%') {
+                starP = p++;
+                starT = t;
+            } else if (p < pattern.length() && (pattern.charAt(p) == '_' || equalsIgnoreAsciiCase(pattern.charAt(p), text.charAt(t)))) {
+                t += pattern.charAt(p) == '_' ? Character.charCount(text.codePointAt(t)) : 1;
+                p++;
+            } else if (starP != -1) {
+                p = starP + 1;
+                starT += Character.charCount(text.codePointAt(starT));
+                t = starT;
+            } else {
+                return false;
+            }
+        }
+
+        while (p < pattern.length() && pattern.charAt(p) == '%') {
+            p++;
+        }
+
+        return p == pattern.length();
+    }
+
+    private static boolean equalsIgnoreAsciiCase(char x, char y) {
+        if (x == y) {
+            return true;
+        }
+
+        if (x >= 'A' && x <= 'Z') {
+            x = (char) (x + ('a' - 'A'));
+        }
+
+        if (y >= 'A' && y <= 'Z') {
+            y = (char) (y + ('a' - 'A'));
+        }
+
+        return x == y;
+    }
+
+    private static String toAsciiCase(String value, boolean upper) {
+        char[] chars = null;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            char converted = c;
+
+            if (upper && c >= 'a' && c <= 'z') {
+                converted = (char) (c - ('a' - 'A'));
+            } else if (!upper && c >= 'A' && c <= 'Z') {
+                converted = (char) (c + ('a' - 'A'));
+            }
+
+            if (converted != c) {
+                if (chars == null) {
+                    chars = value.toCharArray();
+                }
+
+                chars[i] = converted;
+            }
+        }
+
+        return chars == null ? value : new String(chars);
+    }
+
+    /**
+     * Parses an SQLite time value, a time string or a Julian day number, to
+     * milliseconds since the epoch
+     *
+     * @return the milliseconds, or null if the value is not a time value
+     */
+    private static Long parseTime(Object value) {
+        if (value instanceof Number) {
+            return (long) ((((Number) value).doubleValue() - 2440587.5) * 86400000.0);
+        }
+
+        Matcher matcher = TIME_STRING.matcher((String) value);
+
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) - 1, Integer.parseInt(matcher.group(3)));
+
+        if (matcher.group(4) != null) {
+            calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(matcher.group(4)));
+            calendar.set(Calendar.MINUTE, Integer.parseInt(matcher.group(5)));
+        }
+
+        if (matcher.group(6) != null) {
+            calendar.set(Calendar.SECOND, Integer.parseInt(matcher.group(6)));
+        }
+
+        long time = calendar.getTimeInMillis();
+
+        if (matcher.group(7) != null) {
+            String fraction = (matcher.group(7) + "00").substring(0, 3);
+            time += Integer.parseInt(fraction);
+        }
+
+        String zone = matcher.group(8);
+
+        if (zone != null && !zone.equalsIgnoreCase("Z")) {
+            int offset = (Integer.parseInt(zone.substring(1, 3)) * 60 + Integer.parseInt(zone.substring(4, 6))) * 60000;
+            time += zone.charAt(0) == '-' ? offset : -offset;
+        }
+
+        return time;
+    }
+
+    /**
+     * A compiled expression
+     */
+    static abstract class Expression {
+        abstract <T> Object evaluate(T row, RowReader<T> reader);
+    }
+
+    private static class ConstantExpression extends Expression {
+        private Object mValue;
+
+        ConstantExpression(Object value) {
+            this.mValue = value;
+        }
+
+        @Override
+        <T> Object evaluate(T row, RowReader<T> reader) {
+            return this.mValue;
+        }
+    }
+
+    private static class FieldExpression extends Expression {
+        private String mFieldName;
+
+        FieldExpression(String fieldName) {
+            this.mFieldName = fieldName.trim();
+        }
+
+        @Override
+        <T> Object evaluate(T row, RowReader<T> reader) {
+            return reader.getValue(row, this.mFieldName);
+        }
+    }
+
+    private static class NotExpression extends Expression {
+        private Expression mArgument;
+
+        NotExpression(Expression argument) {
+            this.mArgument = argument;
+        }
+
+        @Override
+        <T> Object evaluate(T row, RowReader<T> reader) {
+            Object value = this.mArgument.evaluate(row, reader);
+
+            return value == null ? null : toBoolean(!isTrue(value));
+        }
+    }
+
+    private static class BinaryExpression extends Expression {
+        private BinaryOperatorKind mKind;
+        private Expression mLeft;
+        private Expression mRight;
+        private boolean mLeftIsColumn;
+        private boolean mRightIsColumn;
+        private boolean mIsNullTest;
+
+        BinaryExpression(BinaryOperatorKind kind, Expression left, Expression right, boolean isNullTest) {
+            this.mKind = kind;
+            this.mLeft = left;
+            this.mRight = right;
+            this.mLeftIsColumn = left instanceof FieldExpression;
+            this.mRightIsColumn = right instanceof FieldExpression;
+            this.mIsNullTest = isNullTest;
+        }
+
+        @Override
+        <T> Object evaluate(T row, RowReader<T> reader) {
+            switch (this.mKind) {
+                case And:
+                    return and(row, reader);
+                case Or:
+                    return or(row, reader);
+                default:
+                    break;
+            }
+
+            Object left = this.mLeft.evaluate(row, reader);
+
+            if (this.mIsNullTest) {
+                // Comparisons with a null constant are written as IS and IS NOT
+                return toBoolean((left == null) == (this.mKind == BinaryOperatorKind.Eq));
+            }
+
+            Object right = this.mRight.evaluate(row, reader);
+
+            if (left == null || right == null) {
+                return null;
+            }
+
+            switch (this.mKind) {
+                case Eq:
+                    return toBoolean(compare(left, right) == 0);
+                case Ne:
+                    return toBoolean(compare(left, right) != 0);
+                case Gt:
+                    return toBoolean(compare(left, right) > 0);
+                case Ge:
+                    return toBoolean(compare(left, right) >= 0);
+                case Lt:
+                    return toBoolean(compare(left, right) < 0);
+                case Le:
+                    return toBoolean(compare(left, right) <= 0);
+                default:
+                    return arithmetic(toNumeric(left), toNumeric(right));
+            }
+        }
+
+        /**
+         * Compares two values, converting the one without affinity when only
+         * the other is a column: numbers stored in numeric columns make
+         * numeric text a number, and text columns make numbers text
+         */
+        private int compare(Object left, Object right) {
+            if (this.mLeftIsColumn && !this.mRightIsColumn) {
+                right = left instanceof Number ? applyNumericAffinity(right) : applyTextAffinity(right);
+            } else if (this.mRightIsColumn && !this.mLeftIsColumn) {
+                left = right instanceof Number ? applyNumericAffinity(left) : applyTextAffinity(left);
+            }
+
+            return compareValues(left, right);
+        }
+
+        private <T> Object and(T row, RowReader<T> reader) {
+            Object left = this.mLeft.evaluate(row, reader);
+
+            if (left != null && !isTrue(left)) {
+                return FALSE;
+            }
+
+            Object right = this.mRight.evaluate(row, reader);
+
+            if (right != null && !isTrue(right)) {
+                return FALSE;
+            }
+
+            return left == null || right == null ? null : TRUE;
+        }
+
+        private <T> Object or(T row, RowReader<T> reader) {
+            Object left = this.mLeft.evaluate(row, reader);
+
+            if (left != null && isTrue(left)) {
+                return TRUE;
+            }
+
+            Object right = this.mRight.evaluate(row, reader);
+
+            if (right != null && isTrue(right)) {
+                return TRUE;
+            }
+
+            return left == null || right == null ? null : FALSE;
+        }
+
+        private Object arithmetic(Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                long x = (Long) left;
+                long y = (Long) right;
+                long result;
+
+                // Integer results that overflow are computed as reals, as
+                // SQLite does
+                switch (this.mKind) {
+                    case Add:
+                        result = x + y;
+
+                        if (((x ^ result) & (y ^ result)) < 0) {
+                            break;
+                        }
+
+                        return result;
+                    case Sub:
+                        result = x - y;
+
+                        if (((x ^ y) & (x ^ result)) < 0) {
+                            break;
+                        }
+
+                        return result;
+                    case Mul:
+                        result = x * y;
+
+                        if (x != 0 && (result / x != y || (x == -1 && y == Long.MIN_VALUE))) {
+                            break;
+                        }
+
+                        return result;
+                    case Div:
+                        if (y == 0) {
+                            return null;
+                        }
+
+                        if (x == Long.MIN_VALUE && y == -1) {
+                            break;
+                        }
+
+                        return x / y;
+                    case Mod:
+                        return y == 0 ? null : (Object) (y == -1 ? 0L : x % y);
+                    default:
+                        return null;
+                }
+            }
+
+            double x = ((Number) left).doubleValue();
+            double y = ((Number) right).doubleValue();
+
+            switch (this.mKind) {
+                case Add:
+                    return x + y;
+                case Sub:
+                    return x - y;
+                case Mul:
+                    return x * y;
+                case Div:
+                    return y == 0 ? null : (Object) (x / y);
+                case Mod:
+                    // SQLite computes the remainder of the integer parts
+                    long divisor = (long) y;
+                    return divisor == 0 ? null : (Object) (double) (divisor == -1 ? 0L : (long) x % divisor);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private static class FunctionExpression extends Expression {
+        private FunctionCallKind mKind;
+        private Expression mFirst;
+        private Expression mSecond;
+        private Expression mThird;
+
+        FunctionExpression(FunctionCallKind kind, List<Expression> arguments) {
+            this.mKind = kind;
+            this.mFirst = arguments.size() > 0 ? arguments.get(0) : null;
+            this.mSecond = arguments.size() > 1 ? arguments.get(1) : null;
+            this.mThird = arguments.size() > 2 ? arguments.get(2) : null;
+        }
+
+        @Override
+        <T> Object evaluate(T row, RowReader<T> reader) {
+            Object first = this.mFirst.evaluate(row, reader);
+
+            if (first == null) {
+                return null;
+            }
+
+            Object second = null;
+
+            if (this.mSecond != null) {
+                second = this.mSecond.evaluate(row, reader);
+
+                if (second == null) {
+                    return null;
+                }
+            }
+
+            Object third = null;
+
+            if (this.mThird != null) {
+                third = this.mThird.evaluate(row, reader);
+
+                if (third == null) {
+                    return null;
+                }
+            }
+
+            switch (this.mKind) {
+                case Year:
+                    return getDatePart(first, Calendar.YEAR);
+                case Month:
+                    return getDatePart(first, Calendar.MONTH);
+                case Day:
+                    return getDatePart(first, Calendar.DAY_OF_MONTH);
+                case Hour:
+                    return getDatePart(first, Calendar.HOUR_OF_DAY);
+                case Minute:
+                    return getDatePart(first, Calendar.MINUTE);
+                case Second:
+                    return getDatePart(first, -1);
+                case Floor:
+                    return roundTowards(first, -1);
+                case Ceiling:
+                    return roundTowards(first, 1);
+                case Round:
+                    return round(((Number) toNumeric(first)).doubleValue());
+                case ToLower:
+                    return toAsciiCase(toText(first), false);
+                case ToUpper:
+                    return toAsciiCase(toText(first), true);
+                case Length:
+                    return (long) length(toText(first));
+                case Trim:
+                    return trim(toText(first));
+                case StartsWith:
+                    return toBoolean(like(toText(first), toText(second) + "%"));
+                case EndsWith:
+                    return toBoolean(like(toText(first), "%" + toText(second)));
+                case SubstringOf:
+                    return toBoolean(like(toText(second), "%" + toText(first) + "%"));
+                case Concat:
+                    return toText(first) + toText(second);
+                case IndexOf:
+                    return indexOf(toText(first), toText(second));
+                case Substring:
+                    return substring(toText(first), first, second, third);
+                case Replace:
+                    String find = toText(second);
+                    return find.length() == 0 ? toText(first) : toText(first).replace(find, toText(third));
+                default:
+                    return null;
+            }
+        }
+
+        private static Object getDatePart(Object value, int field) {
+            Long time = parseTime(value);
+
+            if (time == null) {
+                return null;
+            }
+
+            if (field == -1) {
+                // The SQL writer formats seconds with %s, the seconds since
+                // the epoch
+                return time / 1000;
+            }
+
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.setTimeInMillis(time);
+
+            long part = calendar.get(field);
+
+            return field == Calendar.MONTH ? part + 1 : part;
+        }
+
+        private static Double round(double value) {
+            return value < 0 ? -Math.floor(-value + 0.5) : Math.floor(value + 0.5);
+        }
+
+        /**
+         * Floor and ceiling are written as round(x) corrected by one when it
+         * rounded the wrong way, so their results are reals
+         */
+        private static Double roundTowards(Object value, int direction) {
+            double number = ((Number) toNumeric(value)).doubleValue();
+            double rounded = round(number);
+
+            if (direction < 0 && rounded > number) {
+                return rounded - 1;
+            } else if (direction > 0 && rounded < number) {
+                return rounded + 1;
+            }
+
+            return rounded;
+        }
+
+        private static String trim(String value) {
+            int start = 0;
+            int end = value.length();
+
+            while (start < end && value.charAt(start) == ' ') {
+                start++;
+            }
+
+            while (end > start && value.charAt(end - 1) == ' ') {
+                end--;
+            }
+
+            return value.substring(start, end);
+        }
+
+        /**
+         * instr(haystack, needle) - 1: the zero based character position of
+         * the needle, or -1
+         */
+        private static Long indexOf(String haystack, String needle) {
+            int index = haystack.indexOf(needle);
+
+            return index == -1 ? -1L : (long) haystack.codePointCount(0, index);
+        }
+
+        /**
+         * substr(value, start + 1[, length]) with the SQLite rules for
+         * negative positions and lengths, counted in characters
+         */
+        private static String substring(String value, Object original, Object start, Object length) {
+            long p1 = ((Number) toNumeric(start)).longValue() + 1;
+            long p2 = length != null ? ((Number) toNumeric(length)).longValue() : Integer.MAX_VALUE;
+            long characters = length(value);
+            boolean negativeLength = false;
+
+            if (p2 < 0) {
+                p2 = -p2;
+                negativeLength = true;
+            }
+
+            if (p1 < 0) {
+                p1 += characters;
+
+                if (p1 < 0) {
+                    p2 += p1;
+
+                    if (p2 < 0) {
+                        p2 = 0;
+                    }
+
+                    p1 = 0;
+                }
+            } else if (p1 > 0) {
+                p1--;
+            } else if (p2 > 0) {
+                p2--;
+            }
+
+            if (negativeLength) {
+                p1 -= p2;
+
+                if (p1 < 0) {
+                    p2 += p1;
+                    p1 = 0;
+                }
+            }
+
+            long from = Math.min(p1, characters);
+            long to = Math.min(p1 + p2, characters);
+
+            int begin = value.offsetByCodePoints(0, (int) from);
+            int end = value.offsetByCodePoints(begin, (int) (to - from));
+
+            return value.substring(begin, end);
+        }
+    }
+
+    /**
+     * Compiles query nodes into expressions. Operators and functions whose
+     * arguments are all constants are evaluated once, at compile time.
+     */
+    private static class Compiler implements QueryNodeVisitor<Expression> {
+
+        @Override
+        public Expression visit(ConstantNode node) {
+            return new ConstantExpression(toValue(node.getValue()));
+        }
+
+        @Override
+        public Expression visit(FieldNode node) {
+            return new FieldExpression(node.getFieldName());
+        }
+
+        @Override
+        public Expression visit(UnaryOperatorNode node) {
+            Expression argument = node.getArgument().accept(this);
+
+            if (node.getUnaryOperatorKind() == UnaryOperatorKind.Not) {
+                return fold(new NotExpression(argument), argument);
+            }
+
+            return argument;
+        }
+
+        @Override
+        public Expression visit(BinaryOperatorNode node) {
+            BinaryOperatorKind kind = node.getBinaryOperatorKind();
+
+            boolean isNullTest = (kind == BinaryOperatorKind.Eq || kind == BinaryOperatorKind.Ne)
+                    && node.getRightArgument() instanceof ConstantNode
+                    && ((ConstantNode) node.getRightArgument()).getValue() == null;
+
+            Expression left = node.getLeftArgument().accept(this);
+            Expression right = node.getRightArgument().accept(this);
+
+            return fold(new BinaryExpression(kind, left, right, isNullTest), left, right);
+        }
+
+        @Override
+        public Expression visit(FunctionCallNode node) {
+            List<Expression> arguments = new java.util.ArrayList<Expression>();
+
+            for (QueryNode argument : node.getArguments()) {
+                arguments.add(argument.accept(this));
+            }
+
+            return fold(new FunctionExpression(node.getFunctionCallKind(), arguments), arguments.toArray(new Expression[arguments.size()]));
+        }
+
+        private static Expression fold(Expression expression, Expression... arguments) {
+            for (Expression argument : arguments) {
+                if (!(argument instanceof ConstantExpression)) {
+                    return expression;
+                }
+            }
+
+            return new ConstantExpression(expression.evaluate(null, JSON_READER));
+        }
+    }
+}
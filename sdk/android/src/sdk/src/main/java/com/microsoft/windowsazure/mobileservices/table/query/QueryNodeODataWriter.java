@@ -35,6 +35,7 @@ import java.util.Locale;
  */
 class QueryNodeODataWriter implements QueryNodeVisitor<QueryNode> {
     private StringBuilder mBuilder;
+    private ODataQueryTemplate.Builder mTemplate;
     private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
     /**
      * Constructor for QueryNodeODataWriter
@@ -43,6 +44,17 @@ class QueryNodeODataWriter implements QueryNodeVisitor<QueryNode> {
         this.mBuilder = new StringBuilder();
     }
 
+    /**
+     * Constructor for QueryNodeODataWriter that writes a template, leaving a
+     * slot in place of each constant
+     *
+     * @param template the template builder
+     */
+    QueryNodeODataWriter(ODataQueryTemplate.Builder template) {
+        this.mBuilder = template.getText();
+        this.mTemplate = template;
+    }
+
     private static String process(String s) {
         return "'" + percentEncode(sanitize(s)) + "'";
     }
@@ -120,7 +132,8 @@ class QueryNodeODataWriter implements QueryNodeVisitor<QueryNode> {
 
     private static void appendHex(StringBuilder sb, byte b) {
         sb.append('%');
-        sb.append(String.format("%02X", b));
+        sb.append(HEX_ARRAY[(b >>> 4) & 0x0F]);
+        sb.append(HEX_ARRAY[b & 0x0F]);
     }
 
     private static String bytesToHex(byte[] bytes) {
@@ -142,9 +155,17 @@ class QueryNodeODataWriter implements QueryNodeVisitor<QueryNode> {
         return this.mBuilder;
     }
 
-    @Override
-    public QueryNode visit(ConstantNode node) {
-        Object value = node.getValue();
+    /**
+     * Appends the OData representation of a constant value
+     *
+     * @param builder the builder to append to
+     * @param value   the constant value
+     */
+    static void appendConstant(StringBuilder builder, Object value) {
+        if (value instanceof QueryParameter) {
+            throw new IllegalArgumentException("No value was provided for the query parameter " + ((QueryParameter) value).getName() + ".");
+        }
+
         String constant = value != null ? value.toString() : "null";
 
         if (value instanceof String) {
@@ -157,7 +178,16 @@ class QueryNodeODataWriter implements QueryNodeVisitor<QueryNode> {
             constant = process((byte[]) value);
         }
 
-        this.mBuilder.append(constant);
+        builder.append(constant);
+    }
+
+    @Override
+    public QueryNode visit(ConstantNode node) {
+        if (this.mTemplate != null) {
+            this.mTemplate.addSlot(ODataQueryTemplate.SLOT_CONSTANT);
+        } else {
+            appendConstant(this.mBuilder, node.getValue());
+        }
 
         return node;
     }
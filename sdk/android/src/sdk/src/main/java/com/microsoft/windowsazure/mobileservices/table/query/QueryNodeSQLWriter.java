@@ -25,6 +25,8 @@ package com.microsoft.windowsazure.mobileservices.table.query;
 
 import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -33,12 +35,25 @@ import java.util.List;
  */
 public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
     private StringBuilder mBuilder;
+    private List<String> mArguments;
 
     /**
-     * Constructor for QueryNodeSQLWriter
+     * Constructor for QueryNodeSQLWriter that writes constants inline as SQL
+     * literals
      */
     QueryNodeSQLWriter() {
+        this(null);
+    }
+
+    /**
+     * Constructor for QueryNodeSQLWriter that writes constants as parameters
+     *
+     * @param arguments the list the values bound to the parameters are added
+     *                  to, or null to write constants inline as SQL literals
+     */
+    QueryNodeSQLWriter(List<String> arguments) {
         this.mBuilder = new StringBuilder();
+        this.mArguments = arguments;
     }
 
     private static String getSQLOperator(UnaryOperatorNode node) {
@@ -310,7 +325,7 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
     }
 
     /**
-     * Sanitizes the string to use in a oData query
+     * Sanitizes the string to use in a SQL literal
      *
      * @param s The string to sanitize
      * @return The sanitized string
@@ -323,6 +338,10 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         }
     }
 
+    private static boolean isIntegral(Number value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte || value instanceof BigInteger;
+    }
+
     /**
      * Gets the StringBuilder with the SQL representation of the node
      */
@@ -330,9 +349,41 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         return this.mBuilder;
     }
 
+    /**
+     * Gets the values bound to the parameters of the SQL representation, in
+     * order
+     */
+    List<String> getArguments() {
+        return this.mArguments;
+    }
+
     @Override
     public QueryNode visit(ConstantNode node) {
         Object value = node.getValue();
+
+        if (this.mArguments == null) {
+            appendLiteral(value);
+        } else if (value == null) {
+            this.mBuilder.append("NULL");
+        } else if (value instanceof Boolean) {
+            this.mBuilder.append(process((Boolean) value));
+        } else if (value instanceof Number) {
+            // Arguments are bound as text, so numbers are cast back to keep
+            // numeric semantics in expressions without column affinity
+            this.mBuilder.append(isIntegral((Number) value) ? "CAST(? AS INTEGER)" : "CAST(? AS REAL)");
+            this.mArguments.add(value.toString());
+        } else if (value instanceof Date) {
+            this.mBuilder.append("?");
+            this.mArguments.add(DateSerializer.serialize((Date) value));
+        } else {
+            this.mBuilder.append("?");
+            this.mArguments.add(value.toString());
+        }
+
+        return node;
+    }
+
+    private void appendLiteral(Object value) {
         String constant = value != null ? value.toString() : "NULL";
 
         if (value instanceof String) {
@@ -344,8 +395,6 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
         }
 
         this.mBuilder.append(constant);
-
-        return node;
     }
 
     @Override
@@ -398,21 +447,66 @@ public class QueryNodeSQLWriter implements QueryNodeVisitor<QueryNode> {
     public QueryNode visit(FunctionCallNode node) {
         String format = getSQLOperatorFormat(node);
 
-        Object[] args = new Object[node.getArguments().size()];
         List<QueryNode> arguments = node.getArguments();
+        QueryNodeSQLWriter[] argumentWriters = new QueryNodeSQLWriter[arguments.size()];
 
         for (int index = 0; index < arguments.size(); index++) {
             QueryNode argument = arguments.get(index);
 
-            QueryNodeSQLWriter internalVisitor = new QueryNodeSQLWriter();
+            QueryNodeSQLWriter internalVisitor = new QueryNodeSQLWriter(this.mArguments != null ? new ArrayList<String>() : null);
 
             argument.accept(internalVisitor);
 
-            args[index] = internalVisitor.getBuilder().toString();
+            argumentWriters[index] = internalVisitor;
         }
 
-        this.mBuilder.append(String.format(format, args));
+        appendFormat(format, argumentWriters);
 
         return node;
     }
-}
\ No newline at end of file
+
+    /**
+     * Appends a function format, replacing each %n$s specifier with the SQL of
+     * the n-th argument and %% with %. Arguments may appear several times or
+     * out of order, so their bound values are added as their SQL is placed.
+     *
+     * @param format          the function format
+     * @param argumentWriters the writers of the function arguments
+     */
+    private void appendFormat(String format, QueryNodeSQLWriter[] argumentWriters) {
+        int length = format.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = format.charAt(i);
+
+            if (c != '%') {
+                this.mBuilder.append(c);
+                continue;
+            }
+
+            c = format.charAt(++i);
+
+            if (c == '%') {
+                this.mBuilder.append('%');
+                continue;
+            }
+
+            int index = 0;
+
+            while (c != '$') {
+                index = index * 10 + (c - '0');
+                c = format.charAt(++i);
+            }
+
+            // skip the 's' conversion
+            i++;
+
+            QueryNodeSQLWriter argumentWriter = argumentWriters[index - 1];
+            this.mBuilder.append(argumentWriter.getBuilder());
+
+            if (this.mArguments != null) {
+                this.mArguments.addAll(argumentWriter.getArguments());
+            }
+        }
+    }
+}
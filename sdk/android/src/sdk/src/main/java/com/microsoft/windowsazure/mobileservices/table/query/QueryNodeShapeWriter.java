@@ -0,0 +1,120 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * QueryNodeShapeWriter.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.query;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query node visitor that writes the structure of a query, without the
+ * values of its constants, and collects the constants in the order they are
+ * visited.
+ */
+class QueryNodeShapeWriter implements QueryNodeVisitor<QueryNode> {
+    private StringBuilder mBuilder;
+    private List<Object> mConstants;
+    private Map<String, Object> mParameters;
+
+    /**
+     * Constructor for QueryNodeShapeWriter
+     *
+     * @param builder    the builder the shape is written to
+     * @param constants  the list the constant values are added to
+     * @param parameters the values of the named query parameters, or null
+     */
+    QueryNodeShapeWriter(StringBuilder builder, List<Object> constants, Map<String, Object> parameters) {
+        this.mBuilder = builder;
+        this.mConstants = constants;
+        this.mParameters = parameters;
+    }
+
+    @Override
+    public QueryNode visit(ConstantNode node) {
+        Object value = node.getValue();
+
+        if (value instanceof QueryParameter) {
+            String name = ((QueryParameter) value).getName();
+
+            if (this.mParameters == null || !this.mParameters.containsKey(name)) {
+                throw new IllegalArgumentException("No value was provided for the query parameter " + name + ".");
+            }
+
+            value = this.mParameters.get(name);
+        }
+
+        this.mConstants.add(value);
+        this.mBuilder.append('c');
+
+        return node;
+    }
+
+    @Override
+    public QueryNode visit(FieldNode node) {
+        String fieldName = node.getFieldName();
+
+        this.mBuilder.append('f').append(fieldName.length()).append(':').append(fieldName);
+
+        return node;
+    }
+
+    @Override
+    public QueryNode visit(UnaryOperatorNode node) {
+        this.mBuilder.append('u').append(node.getUnaryOperatorKind().ordinal()).append('(');
+        writeArgument(node.getArgument());
+        this.mBuilder.append(')');
+
+        return node;
+    }
+
+    @Override
+    public QueryNode visit(BinaryOperatorNode node) {
+        this.mBuilder.append('b').append(node.getBinaryOperatorKind().ordinal()).append('(');
+        writeArgument(node.getLeftArgument());
+        writeArgument(node.getRightArgument());
+        this.mBuilder.append(')');
+
+        return node;
+    }
+
+    @Override
+    public QueryNode visit(FunctionCallNode node) {
+        this.mBuilder.append('F').append(node.getFunctionCallKind().ordinal()).append('(');
+
+        for (QueryNode argument : node.getArguments()) {
+            writeArgument(argument);
+        }
+
+        this.mBuilder.append(')');
+
+        return node;
+    }
+
+    private void writeArgument(QueryNode argument) {
+        if (argument != null) {
+            argument.accept(this);
+        } else {
+            this.mBuilder.append('0');
+        }
+    }
+}
@@ -28,10 +28,30 @@ import android.util.Pair;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceTableSystemPropertiesProvider;
 
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class QueryODataWriter {
 
+    private static final String FILTER_PREFIX = "$filter=";
+
+    /**
+     * Maximum number of query templates kept in the cache
+     */
+    private static final int MAX_TEMPLATES = 128;
+
+    /**
+     * Compiled query templates, keyed by query structure
+     */
+    private static final Map<String, ODataQueryTemplate> Templates = new LinkedHashMap<String, ODataQueryTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ODataQueryTemplate> eldest) {
+            return size() > MAX_TEMPLATES;
+        }
+    };
+
     /**
      * Returns the OData string representation of the query
      */
@@ -53,6 +73,96 @@ public class QueryODataWriter {
     public static String getRowSetModifiers(Query query, MobileServiceTableSystemPropertiesProvider table) throws UnsupportedEncodingException {
         StringBuilder sb = new StringBuilder();
 
+        writeRowSetModifiers(sb, null, query, getParameters(query, table));
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the OData query string of the query, without the leading '?',
+     * or an empty string if the query has no filter and no modifiers.
+     * <p/>
+     * Queries are translated once per structure: the encoded query string is
+     * cached as a template, and later queries with the same structure only
+     * encode their constant values.
+     *
+     * @param query the query
+     * @param table the table the query is executed against
+     */
+    public static String getQueryString(Query query, MobileServiceTableSystemPropertiesProvider table) {
+        return getQueryString(query, table, null);
+    }
+
+    /**
+     * Returns the OData query string of the query, without the leading '?',
+     * or an empty string if the query has no filter and no modifiers.
+     *
+     * @param query      the query, which may contain named parameters created
+     *                   with QueryOperations.parameter
+     * @param table      the table the query is executed against
+     * @param parameters the values of the named parameters
+     * @throws IllegalArgumentException if the query has a parameter without value
+     */
+    public static String getQueryString(Query query, MobileServiceTableSystemPropertiesProvider table, Map<String, Object> parameters) {
+        List<Pair<String, String>> queryParameters = getParameters(query, table);
+
+        StringBuilder shape = new StringBuilder();
+        List<Object> constants = new ArrayList<Object>();
+
+        if (query != null && query.getQueryNode() != null) {
+            query.getQueryNode().accept(new QueryNodeShapeWriter(shape, constants, parameters));
+        }
+
+        writeRowSetModifiersShape(shape, query, queryParameters);
+
+        String key = shape.toString();
+        ODataQueryTemplate template;
+
+        synchronized (Templates) {
+            template = Templates.get(key);
+        }
+
+        if (template == null) {
+            template = compileTemplate(query, queryParameters);
+
+            synchronized (Templates) {
+                Templates.put(key, template);
+            }
+        }
+
+        return template.format(constants, query);
+    }
+
+    private static ODataQueryTemplate compileTemplate(Query query, List<Pair<String, String>> queryParameters) {
+        ODataQueryTemplate.Builder template = new ODataQueryTemplate.Builder();
+        StringBuilder sb = template.getText();
+
+        if (query != null && query.getQueryNode() != null) {
+            sb.append(FILTER_PREFIX);
+            query.getQueryNode().accept(new QueryNodeODataWriter(template));
+
+            if (sb.length() == FILTER_PREFIX.length()) {
+                template.removePrefix(FILTER_PREFIX.length());
+            }
+        }
+
+        boolean hasFilter = sb.length() > 0;
+
+        writeRowSetModifiers(sb, template, query, queryParameters);
+
+        if (!hasFilter && sb.length() > 0) {
+            // Remove the leading '&'
+            template.removePrefix(1);
+        }
+
+        return template.build();
+    }
+
+    private static List<Pair<String, String>> getParameters(Query query, MobileServiceTableSystemPropertiesProvider table) {
+        return table.addSystemProperties(table.getSystemProperties(), query != null ? query.getUserDefinedParameters() : null);
+    }
+
+    private static void writeRowSetModifiers(StringBuilder sb, ODataQueryTemplate.Builder template, Query query, List<Pair<String, String>> parameters) {
         if (query != null) {
             if (query.hasInlineCount()) {
                 sb.append("&$inlinecount=allpages");
@@ -60,13 +170,23 @@ public class QueryODataWriter {
 
             if (query.getTop() > 0) {
                 sb.append("&$top=");
-                sb.append(query.getTop());
+
+                if (template != null) {
+                    template.addSlot(ODataQueryTemplate.SLOT_TOP);
+                } else {
+                    sb.append(query.getTop());
+                }
             }
 
             //Allow Skip=0 to work around a SQL ordering issue #571
             if (query.getSkip() >= 0) {
                 sb.append("&$skip=");
-                sb.append(query.getSkip());
+
+                if (template != null) {
+                    template.addSlot(ODataQueryTemplate.SLOT_SKIP);
+                } else {
+                    sb.append(query.getSkip());
+                }
             }
 
             if (query.getOrderBy().size() > 0) {
@@ -92,8 +212,6 @@ public class QueryODataWriter {
             }
         }
 
-        List<Pair<String, String>> parameters = table.addSystemProperties(table.getSystemProperties(), query != null ? query.getUserDefinedParameters() : null);
-
         for (Pair<String, String> parameter : parameters) {
             if (parameter.first != null) {
                 sb.append("&");
@@ -123,7 +241,55 @@ public class QueryODataWriter {
                 sb.append(QueryNodeODataWriter.percentEncode(field, "!$&'()*,;=:@")); // odataIdentifier
             }
         }
+    }
 
-        return sb.toString();
+    private static void writeRowSetModifiersShape(StringBuilder shape, Query query, List<Pair<String, String>> parameters) {
+        shape.append('|');
+
+        if (query != null) {
+            if (query.hasInlineCount()) {
+                shape.append('i');
+            }
+
+            if (query.getTop() > 0) {
+                shape.append('t');
+            }
+
+            if (query.getSkip() >= 0) {
+                shape.append('s');
+            }
+
+            for (Pair<String, QueryOrder> order : query.getOrderBy()) {
+                shape.append('o').append(order.second == QueryOrder.Ascending ? 'a' : 'd');
+                appendShapeString(shape, order.first);
+            }
+
+            if (query.hasDeleted()) {
+                shape.append('d');
+            }
+
+            if (query.getProjection() != null) {
+                for (String field : query.getProjection()) {
+                    shape.append('S');
+                    appendShapeString(shape, field);
+                }
+            }
+        }
+
+        for (Pair<String, String> parameter : parameters) {
+            if (parameter.first != null) {
+                shape.append('p');
+                appendShapeString(shape, parameter.first);
+                appendShapeString(shape, parameter.second);
+            }
+        }
+    }
+
+    private static void appendShapeString(StringBuilder shape, String value) {
+        if (value == null) {
+            shape.append('~');
+        } else {
+            shape.append(value.length()).append(':').append(value);
+        }
     }
 }
@@ -154,6 +154,29 @@ public class QueryOperations {
         return query;
     }
 
+    /**
+     * Creates a Query representing a named parameter. The parameter value is
+     * provided when the query is executed, so queries that only differ in
+     * their parameter values share the same translation.
+     *
+     * @param name the parameter name
+     * @return the Query
+     */
+    public static Query parameter(String name) {
+        if (name == null || name.trim().length() == 0) {
+            throw new IllegalArgumentException("name cannot be null or empty");
+        }
+
+        Query query = new QueryBase();
+
+        ConstantNode constantNode = new ConstantNode();
+        constantNode.setValue(new QueryParameter(name));
+
+        query.setQueryNode(constantNode);
+
+        return query;
+    }
+
     /**
      * Group query as a single argument.
      *
@@ -0,0 +1,54 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * QueryParameter.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.query;
+
+/**
+ * Named placeholder used in place of a constant value in a query. Values are
+ * supplied when the query is executed, so that the same query can be
+ * executed many times with different values.
+ */
+public final class QueryParameter {
+    private final String mName;
+
+    /**
+     * Constructor for QueryParameter
+     *
+     * @param name the parameter name
+     */
+    QueryParameter(String name) {
+        this.mName = name;
+    }
+
+    /**
+     * Gets the parameter name
+     */
+    public String getName() {
+        return this.mName;
+    }
+
+    @Override
+    public String toString() {
+        return "@" + this.mName;
+    }
+}
@@ -27,6 +27,7 @@ import android.util.Pair;
 
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 
+import java.util.List;
 import java.util.Locale;
 
 public class QuerySQLWriter {
@@ -61,6 +62,8 @@ public class QuerySQLWriter {
 
     /**
      * Returns the SQL string representation of the query's where clause
+     *
+     * @param query the query
      */
     public static String getWhereClause(Query query) throws MobileServiceException {
         QueryNodeSQLWriter sqlWriter = new QueryNodeSQLWriter();
@@ -72,6 +75,24 @@ public class QuerySQLWriter {
         return sqlWriter.getBuilder().toString();
     }
 
+    /**
+     * Returns the SQL string representation of the query's where clause.
+     * Constants are written as parameters, and their values are added in order
+     * to the arguments list.
+     *
+     * @param query     the query
+     * @param arguments the list the values bound to the parameters are added to
+     */
+    public static String getWhereClause(Query query, List<String> arguments) throws MobileServiceException {
+        QueryNodeSQLWriter sqlWriter = new QueryNodeSQLWriter(arguments);
+
+        if (query != null && query.getQueryNode() != null) {
+            query.getQueryNode().accept(sqlWriter);
+        }
+
+        return sqlWriter.getBuilder().toString();
+    }
+
     /**
      * Returns the SQL string representation of the query's order by clause
      */
@@ -113,7 +134,8 @@ public class QuerySQLWriter {
         int offset = query != null ? (query.getSkip() >= 0 ? query.getSkip() : 0) : 0;
 
         if (limit > 0 || offset > 0) {
-            result = String.valueOf(offset) + "," + String.valueOf(limit);
+            // A negative limit lets SQLite skip rows without an upper bound
+            result = String.valueOf(offset) + "," + String.valueOf(limit > 0 ? limit : -1);
         }
 
         return result;
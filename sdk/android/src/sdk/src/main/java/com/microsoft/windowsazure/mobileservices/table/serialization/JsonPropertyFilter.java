@@ -0,0 +1,132 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * JsonPropertyFilter.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map.Entry;
+
+/**
+ * Excludes top-level properties from a JsonObject without cloning the object
+ * through its text representation
+ */
+public abstract class JsonPropertyFilter {
+
+    private static final TypeAdapter<JsonElement> ElementAdapter = new Gson().getAdapter(JsonElement.class);
+
+    /**
+     * Returns true if the property must be excluded
+     *
+     * @param propertyName the property name
+     */
+    public abstract boolean excludes(String propertyName);
+
+    /**
+     * Returns true if the instance has at least one property to exclude
+     *
+     * @param instance the JsonObject to inspect
+     */
+    public boolean matches(JsonObject instance) {
+        for (Entry<String, JsonElement> property : instance.entrySet()) {
+            if (excludes(property.getKey())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns a copy-on-write view of the instance without the excluded
+     * properties. The instance itself is returned if it has nothing to exclude;
+     * otherwise a shallow copy is returned, sharing the nested values with the
+     * instance, which is never modified.
+     *
+     * @param instance the JsonObject to filter
+     * @return the filtered JsonObject
+     */
+    public JsonObject apply(JsonObject instance) {
+        if (!matches(instance)) {
+            return instance;
+        }
+
+        JsonObject result = new JsonObject();
+
+        for (Entry<String, JsonElement> property : instance.entrySet()) {
+            if (!excludes(property.getKey())) {
+                result.add(property.getKey(), property.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Writes the instance skipping the excluded properties
+     *
+     * @param instance the JsonObject to write
+     * @param writer   the target writer
+     * @throws IOException
+     */
+    public void write(JsonObject instance, JsonWriter writer) throws IOException {
+        writer.beginObject();
+
+        for (Entry<String, JsonElement> property : instance.entrySet()) {
+            if (!excludes(property.getKey())) {
+                writer.name(property.getKey());
+                ElementAdapter.write(writer, property.getValue());
+            }
+        }
+
+        writer.endObject();
+    }
+
+    /**
+     * Serializes the instance skipping the excluded properties. The output
+     * matches JsonElement.toString() for the filtered object.
+     *
+     * @param instance the JsonObject to serialize
+     * @return the JSON text
+     */
+    public String toJson(JsonObject instance) {
+        try {
+            StringWriter stringWriter = new StringWriter();
+            JsonWriter writer = new JsonWriter(stringWriter);
+            writer.setLenient(true);
+
+            write(instance, writer);
+            writer.flush();
+
+            return stringWriter.toString();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
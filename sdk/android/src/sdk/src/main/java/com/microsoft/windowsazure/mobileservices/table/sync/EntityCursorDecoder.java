@@ -0,0 +1,312 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * EntityCursorDecoder.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.annotations.SerializedName;
+import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreCursor;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decodes entities straight from the columns of a local store cursor, with
+ * no JsonObject built for each row. The fields of the entity class are
+ * resolved once, when the decoder is created, and bound to the columns of
+ * the results once per cursor. Fields of types without a direct conversion
+ * from their column are decoded with Gson.
+ *
+ * @param <E> the entity type
+ */
+class EntityCursorDecoder<E> {
+
+    private enum FieldKind {
+        String, Integer, Long, Short, Double, Float, Boolean, Date, Other
+    }
+
+    private Constructor<E> mConstructor;
+    private Gson mGson;
+    private List<Field> mFields;
+    private List<String> mColumnNames;
+    private FieldKind[] mKinds;
+
+    private EntityCursorDecoder(Constructor<E> constructor, Gson gson, List<Field> fields, List<String> columnNames) {
+        this.mConstructor = constructor;
+        this.mGson = gson;
+        this.mFields = fields;
+        this.mColumnNames = columnNames;
+        this.mKinds = new FieldKind[fields.size()];
+
+        for (int i = 0; i < this.mKinds.length; i++) {
+            this.mKinds[i] = getFieldKind(fields.get(i).getType());
+        }
+    }
+
+    /**
+     * Creates the decoder of an entity class
+     *
+     * @param clazz the entity class
+     * @param gson  the Gson instance used for fields without a direct
+     *              conversion
+     * @return the decoder, or null if the class cannot be decoded directly: it
+     * is abstract, has no parameterless constructor or maps two fields to the
+     * same column
+     */
+    static <E> EntityCursorDecoder<E> create(Class<E> clazz, Gson gson) {
+        if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+            return null;
+        }
+
+        Constructor<E> constructor;
+
+        try {
+            constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+
+        List<Field> fields = new ArrayList<Field>();
+        List<String> columnNames = new ArrayList<String>();
+        Set<String> invColumnNames = new HashSet<String>();
+
+        for (Field field : getSerializedFields(clazz)) {
+            String columnName = getColumnName(field);
+
+            // Column names are case insensitive in the local store
+            if (!invColumnNames.add(columnName.toLowerCase(Locale.getDefault()))) {
+                return null;
+            }
+
+            field.setAccessible(true);
+
+            fields.add(field);
+            columnNames.add(columnName);
+        }
+
+        return new EntityCursorDecoder<E>(constructor, gson, fields, columnNames);
+    }
+
+    /**
+     * Returns the fields of an entity class that are serialized, from the
+     * class up to its superclasses. Static, transient and synthetic fields,
+     * such as the reference of an inner class to its outer instance, are
+     * skipped.
+     *
+     * @param clazz the entity class
+     */
+    static List<Field> getSerializedFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<Field>();
+
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()) || field.isSynthetic()) {
+                    continue;
+                }
+
+                fields.add(field);
+            }
+        }
+
+        return fields;
+    }
+
+    /**
+     * Returns the column a field is serialized to, as named by its
+     * SerializedName annotation if any
+     *
+     * @param field the field
+     */
+    static String getColumnName(Field field) {
+        SerializedName serializedName = field.getAnnotation(SerializedName.class);
+
+        return serializedName != null ? serializedName.value() : field.getName();
+    }
+
+    /**
+     * Resolves the column of each field in the results of a cursor
+     *
+     * @param cursor the cursor
+     * @return the column index of each field, -1 for the fields without a
+     * column
+     */
+    int[] bind(MobileServiceLocalStoreCursor cursor) {
+        int[] columns = new int[this.mColumnNames.size()];
+
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = cursor.getColumnIndex(this.mColumnNames.get(i));
+        }
+
+        return columns;
+    }
+
+    /**
+     * Decodes the current row of a cursor. As with Gson, fields without a
+     * column keep the value set by the constructor, and null columns leave
+     * primitive fields unchanged.
+     *
+     * @param cursor  the cursor
+     * @param columns the columns returned by bind for the cursor
+     * @return the entity
+     */
+    E decode(MobileServiceLocalStoreCursor cursor, int[] columns) throws Throwable {
+        E entity = this.mConstructor.newInstance();
+
+        for (int i = 0; i < columns.length; i++) {
+            int columnIndex = columns[i];
+
+            if (columnIndex == -1) {
+                continue;
+            }
+
+            Field field = this.mFields.get(i);
+
+            if (cursor.isNull(columnIndex)) {
+                if (!field.getType().isPrimitive()) {
+                    field.set(entity, null);
+                }
+
+                continue;
+            }
+
+            decodeField(cursor, columnIndex, entity, field, this.mKinds[i]);
+        }
+
+        return entity;
+    }
+
+    private void decodeField(MobileServiceLocalStoreCursor cursor, int columnIndex, E entity, Field field, FieldKind kind) throws Throwable {
+        ColumnDataType columnDataType = cursor.getColumnDataType(columnIndex);
+
+        boolean isNumber = columnDataType == ColumnDataType.Integer || columnDataType == ColumnDataType.Real;
+        boolean isText = columnDataType == ColumnDataType.String || columnDataType == ColumnDataType.Date
+                || columnDataType == ColumnDataType.DateTimeOffset;
+
+        switch (kind) {
+            case String:
+                if (isText) {
+                    field.set(entity, cursor.getString(columnIndex));
+                    return;
+                }
+                break;
+            case Integer:
+                if (isNumber) {
+                    field.set(entity, (int) cursor.getLong(columnIndex));
+                    return;
+                }
+                break;
+            case Long:
+                if (isNumber) {
+                    field.set(entity, cursor.getLong(columnIndex));
+                    return;
+                }
+                break;
+            case Short:
+                if (isNumber) {
+                    field.set(entity, (short) cursor.getLong(columnIndex));
+                    return;
+                }
+                break;
+            case Double:
+                if (isNumber) {
+                    field.set(entity, cursor.getDouble(columnIndex));
+                    return;
+                }
+                break;
+            case Float:
+                if (isNumber) {
+                    field.set(entity, (float) cursor.getDouble(columnIndex));
+                    return;
+                }
+                break;
+            case Boolean:
+                if (columnDataType == ColumnDataType.Boolean) {
+                    field.set(entity, cursor.getBoolean(columnIndex));
+                    return;
+                }
+                break;
+            case Date:
+                if (isText) {
+                    field.set(entity, DateSerializer.deserialize(cursor.getString(columnIndex)));
+                    return;
+                }
+                break;
+            case Other:
+                break;
+        }
+
+        field.set(entity, this.mGson.fromJson(getElement(cursor, columnIndex, columnDataType), field.getGenericType()));
+    }
+
+    private static JsonElement getElement(MobileServiceLocalStoreCursor cursor, int columnIndex, ColumnDataType columnDataType) throws MobileServiceLocalStoreException {
+        switch (columnDataType) {
+            case Boolean:
+                return new JsonPrimitive(cursor.getBoolean(columnIndex));
+            case Real:
+                return new JsonPrimitive(cursor.getDouble(columnIndex));
+            case Integer:
+                return new JsonPrimitive(cursor.getLong(columnIndex));
+            case Other:
+                JsonElement element = cursor.getJson(columnIndex);
+                return element != null ? element : JsonNull.INSTANCE;
+            default:
+                return new JsonPrimitive(cursor.getString(columnIndex));
+        }
+    }
+
+    private static FieldKind getFieldKind(Class<?> type) {
+        if (type == String.class) {
+            return FieldKind.String;
+        } else if (type == int.class || type == Integer.class) {
+            return FieldKind.Integer;
+        } else if (type == long.class || type == Long.class) {
+            return FieldKind.Long;
+        } else if (type == short.class || type == Short.class) {
+            return FieldKind.Short;
+        } else if (type == double.class || type == Double.class) {
+            return FieldKind.Double;
+        } else if (type == float.class || type == Float.class) {
+            return FieldKind.Float;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return FieldKind.Boolean;
+        } else if (type == Date.class) {
+            return FieldKind.Date;
+        }
+
+        return FieldKind.Other;
+    }
+}
@@ -0,0 +1,390 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceDataChangeNotifications.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync;
+
+import android.os.Bundle;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
+import com.microsoft.windowsazure.mobileservices.table.serialization.DateSerializer;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullProgressListener;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pulls the items named by data change notifications instead of whole
+ * tables. A data change notification carries the table name under
+ * TABLE_KEY and either the comma separated ids of the changed items under
+ * IDS_KEY, or the ISO 8601 __updatedAt of the oldest change under
+ * UPDATED_AT_KEY, or both.
+ * <p>
+ * Notifications received within the coalescing delay are merged, so a
+ * burst of notifications results in a single pull of each table, made of
+ * id filters of at most ID_BATCH_SIZE ids. The changes of a table whose pull
+ * fails are kept and pulled again a second later, waiting twice as long
+ * after each consecutive failure up to MAX_RETRY_DELAY.
+ * <p>
+ * Call onReceive from the onReceive method of a NotificationsHandler:
+ * <pre>
+ * public void onReceive(Context context, Bundle bundle) {
+ *     if (!dataChanges.onReceive(bundle)) {
+ *         super.onReceive(context, bundle);
+ *     }
+ * }
+ * </pre>
+ */
+public class MobileServiceDataChangeNotifications {
+
+    /**
+     * Bundle key of the table name
+     */
+    public static final String TABLE_KEY = "__table";
+
+    /**
+     * Bundle key of the comma separated ids of the changed items
+     */
+    public static final String IDS_KEY = "__ids";
+
+    /**
+     * Bundle key of the __updatedAt of the oldest change
+     */
+    public static final String UPDATED_AT_KEY = "__updatedAt";
+
+    /**
+     * Number of ids pulled by each request
+     */
+    public static final int ID_BATCH_SIZE = 25;
+
+    /**
+     * Longest time a failed pull waits before it is tried again, in
+     * milliseconds
+     */
+    public static final long MAX_RETRY_DELAY = 5 * 60 * 1000;
+
+    private static final long MIN_RETRY_DELAY = 1000;
+
+    private MobileServiceClient mClient;
+    private long mCoalescingDelay = 1000;
+    private MobileServicePullProgressListener mListener;
+
+    private Map<String, PendingChanges> mPendingChanges;
+    private ScheduledExecutorService mScheduler;
+    private ScheduledFuture<?> mScheduledFlush;
+    private long mRetryDelay;
+
+    /**
+     * Constructor for MobileServiceDataChangeNotifications
+     *
+     * @param client the client whose sync context pulls the changes
+     */
+    public MobileServiceDataChangeNotifications(MobileServiceClient client) {
+        this.mClient = client;
+        this.mPendingChanges = new LinkedHashMap<String, PendingChanges>();
+        this.mScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Returns the time notifications are collected before their tables are
+     * pulled, in milliseconds
+     */
+    public long getCoalescingDelay() {
+        return this.mCoalescingDelay;
+    }
+
+    /**
+     * Sets the time notifications are collected before their tables are
+     * pulled. The default is one second.
+     *
+     * @param coalescingDelay the delay in milliseconds
+     */
+    public void setCoalescingDelay(long coalescingDelay) {
+        if (coalescingDelay < 0) {
+            throw new IllegalArgumentException("Coalescing delay cannot be negative.");
+        }
+
+        this.mCoalescingDelay = coalescingDelay;
+    }
+
+    /**
+     * Sets a listener of the pulls made for the notifications
+     *
+     * @param listener the listener, or null
+     */
+    public void setListener(MobileServicePullProgressListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Schedules the pull of the changes described by a notification
+     *
+     * @param bundle the notification data
+     * @return true if the notification is a data change notification
+     */
+    public boolean onReceive(Bundle bundle) {
+        if (bundle == null) {
+            return false;
+        }
+
+        String tableName = bundle.getString(TABLE_KEY);
+        String ids = bundle.getString(IDS_KEY);
+        String updatedAt = bundle.getString(UPDATED_AT_KEY);
+
+        if (tableName == null || (ids == null && updatedAt == null)) {
+            return false;
+        }
+
+        List<String> changedIds = new ArrayList<String>();
+
+        if (ids != null) {
+            for (String id : ids.split(",")) {
+                if (id.trim().length() > 0) {
+                    changedIds.add(id.trim());
+                }
+            }
+        }
+
+        Date changedAt = null;
+
+        if (updatedAt != null) {
+            try {
+                changedAt = DateSerializer.deserialize(updatedAt);
+            } catch (ParseException e) {
+                return false;
+            }
+        }
+
+        onDataChanged(tableName, changedIds, changedAt);
+
+        return true;
+    }
+
+    /**
+     * Schedules the pull of changed items
+     *
+     * @param tableName the table name
+     * @param ids       the ids of the changed items
+     * @param updatedAt the __updatedAt of the oldest change, or null to pull
+     *                  the given ids only
+     */
+    public void onDataChanged(String tableName, Collection<String> ids, Date updatedAt) {
+        String invTableName = tableName.trim().toLowerCase(Locale.getDefault());
+
+        synchronized (this.mPendingChanges) {
+            addChanges(invTableName, ids, updatedAt);
+            scheduleFlush(this.mCoalescingDelay);
+        }
+    }
+
+    /**
+     * Pulls the pending changes without waiting for the coalescing delay. If
+     * a table fails, its changes are kept and pulled again later; the
+     * returned future then fails with the first error.
+     *
+     * @return A ListenableFuture that is done when the changes have been
+     * pulled
+     */
+    public ListenableFuture<Void> flush() {
+        final SettableFuture<Void> result = SettableFuture.create();
+
+        this.mScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushChanges();
+
+                    result.set(null);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Stops scheduling pulls. Pending changes are dropped.
+     */
+    public void shutdown() {
+        this.mScheduler.shutdownNow();
+    }
+
+    private void flushChanges() throws Throwable {
+        Map<String, PendingChanges> pendingChanges;
+
+        synchronized (this.mPendingChanges) {
+            if (this.mScheduledFlush != null) {
+                this.mScheduledFlush.cancel(false);
+                this.mScheduledFlush = null;
+            }
+
+            pendingChanges = new LinkedHashMap<String, PendingChanges>(this.mPendingChanges);
+            this.mPendingChanges.clear();
+        }
+
+        Throwable firstError = null;
+
+        for (Map.Entry<String, PendingChanges> entry : pendingChanges.entrySet()) {
+            try {
+                pullChanges(entry.getKey(), entry.getValue());
+            } catch (Throwable throwable) {
+                if (firstError == null) {
+                    firstError = throwable;
+                }
+
+                // Keep the changes, merged with the ones notified meanwhile
+                synchronized (this.mPendingChanges) {
+                    addChanges(entry.getKey(), entry.getValue().mIds, entry.getValue().mUpdatedAt);
+                }
+            }
+        }
+
+        synchronized (this.mPendingChanges) {
+            if (firstError == null) {
+                this.mRetryDelay = 0;
+            } else {
+                this.mRetryDelay = this.mRetryDelay == 0 ? MIN_RETRY_DELAY : Math.min(this.mRetryDelay * 2, MAX_RETRY_DELAY);
+
+                scheduleFlush(this.mRetryDelay);
+            }
+        }
+
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
+    /**
+     * Merges changes into the pending changes of a table. Must be called
+     * while holding the lock of mPendingChanges.
+     */
+    private void addChanges(String tableName, Collection<String> ids, Date updatedAt) {
+        PendingChanges changes = this.mPendingChanges.get(tableName);
+
+        if (changes == null) {
+            changes = new PendingChanges();
+            this.mPendingChanges.put(tableName, changes);
+        }
+
+        if (ids != null) {
+            changes.mIds.addAll(ids);
+        }
+
+        if (updatedAt != null && (changes.mUpdatedAt == null || updatedAt.before(changes.mUpdatedAt))) {
+            changes.mUpdatedAt = updatedAt;
+        }
+    }
+
+    /**
+     * Schedules a flush of the pending changes, unless one is already
+     * scheduled. Must be called while holding the lock of mPendingChanges.
+     */
+    private void scheduleFlush(long delay) {
+        if (this.mScheduledFlush != null || this.mScheduler.isShutdown()) {
+            return;
+        }
+
+        this.mScheduledFlush = this.mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushChanges();
+                } catch (Throwable throwable) {
+                    // Reported to the listener; the failed changes are kept
+                    // and a retry is scheduled
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void pullChanges(String tableName, PendingChanges changes) throws Throwable {
+        MobileServiceSyncContext syncContext = this.mClient.getSyncContext();
+        MobileServiceSyncMetrics metrics = new MobileServiceSyncMetrics();
+        MobileServicePullProgressListener listener = this.mListener;
+        Throwable error = null;
+
+        if (listener != null) {
+            listener.onPullStarted(tableName);
+        }
+
+        try {
+            List<String> ids = new ArrayList<String>(changes.mIds);
+
+            for (int start = 0; start < ids.size(); start += ID_BATCH_SIZE) {
+                Query filter = null;
+
+                for (String id : ids.subList(start, Math.min(ids.size(), start + ID_BATCH_SIZE))) {
+                    Query idFilter = QueryOperations.field(MobileServiceSystemColumns.Id).eq(id);
+
+                    filter = filter == null ? idFilter : filter.or(idFilter);
+                }
+
+                syncContext.pull(tableName, filter.tableName(tableName), null, null, metrics, listener);
+            }
+
+            if (changes.mUpdatedAt != null) {
+                Query filter = QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).ge(changes.mUpdatedAt);
+
+                syncContext.pull(tableName, filter.tableName(tableName), null, null, metrics, listener);
+            }
+        } catch (Throwable throwable) {
+            error = throwable;
+        }
+
+        syncContext.getMetrics().add(metrics);
+
+        if (listener != null) {
+            listener.onPullCompleted(tableName, metrics, error);
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * The changes of a table notified since its last pull
+     */
+    private static class PendingChanges {
+        private Set<String> mIds = new LinkedHashSet<String>();
+        private Date mUpdatedAt;
+    }
+}
@@ -32,9 +32,13 @@ import com.google.gson.JsonSyntaxException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreCursor;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -64,22 +68,39 @@ public class MobileServiceJsonSyncTable {
         return mName;
     }
 
+    /**
+     * Restricts the pulls of the table to a subset of its columns. The id
+     * and system columns are always pulled.
+     *
+     * @param columns the columns to pull, or none to pull every column
+     */
+    public void setColumns(String... columns) {
+        this.mClient.getSyncContext().setPullColumns(this.mName, columns.length > 0 ? Arrays.asList(columns) : null);
+    }
+
     /**
      * Performs a query against the remote table and stores results.
      *
      * @param query an optional query to filter results
      * @return A ListenableFuture that is done when results have been pulled.
      */
-    public ListenableFuture<Void> pull(final Query query, final String queryId) {
+    public ListenableFuture<Void> pull(Query query, final String queryId) {
         final MobileServiceJsonSyncTable thisTable = this;
         final SettableFuture<Void> result = SettableFuture.create();
 
+        // The incremental pull checkpoint is keyed by the query table name
+        if (query != null && (query.getTableName() == null || query.getTableName().length() == 0)) {
+            query = query.deepClone().tableName(this.mName);
+        }
+
+        final Query tableQuery = query;
+
         new Thread(new Runnable() {
 
             @Override
             public void run() {
                 try {
-                    thisTable.mClient.getSyncContext().pull(thisTable.mName, query, queryId);
+                    thisTable.mClient.getSyncContext().pull(thisTable.mName, tableQuery, queryId);
 
                     result.set(null);
                 } catch (Throwable throwable) {
@@ -186,6 +207,37 @@ public class MobileServiceJsonSyncTable {
         return result;
     }
 
+    /**
+     * Reads results from the local table one at a time, without holding
+     * them all in memory.
+     *
+     * @param query   an optional query to filter results
+     * @param visitor the visitor the results are handed to, until it returns
+     *                false
+     * @return A ListenableFuture that is done when the results have been
+     * read, with the number of results visited.
+     */
+    public ListenableFuture<Long> read(final Query query, final MobileServiceSyncTableVisitor<JsonObject> visitor) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<Long> result = SettableFuture.create();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    long visited = thisTable.readContext(query, visitor);
+
+                    result.set(visited);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
     /**
      * Looks up an item from the local table.
      *
@@ -297,10 +349,161 @@ public class MobileServiceJsonSyncTable {
         return result;
     }
 
+    /**
+     * Insert items into the local table and enqueue their operations to be
+     * synchronized on context push, in a single local store transaction.
+     * Either every item is inserted, or none is.
+     *
+     * @param items the items to be inserted
+     * @return A ListenableFuture that is done when the items have been
+     * inserted, returning copies of the inserted items including ids.
+     */
+    public ListenableFuture<List<JsonObject>> insertAll(final List<JsonObject> items) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<List<JsonObject>> result = SettableFuture.create();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    List<JsonObject> newItems = new ArrayList<JsonObject>(items.size());
+
+                    for (JsonObject item : items) {
+                        newItems.add(thisTable.validateIdOnInsert(item));
+                    }
+
+                    thisTable.mClient.getSyncContext().insertAll(thisTable.mName, newItems);
+
+                    result.set(newItems);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
+    /**
+     * Update items in the local table and enqueue their operations to be
+     * synchronized on context push, in a single local store transaction.
+     * Either every item is updated, or none is.
+     *
+     * @param items the items to be updated
+     * @return A ListenableFuture that is done when the items have been
+     * updated.
+     */
+    public ListenableFuture<Void> updateAll(final List<JsonObject> items) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<Void> result = SettableFuture.create();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    List<JsonObject> newItems = new ArrayList<JsonObject>(items.size());
+
+                    for (JsonObject item : items) {
+                        newItems.add(thisTable.validateIdOnUpdateOrDelete(item));
+                    }
+
+                    thisTable.mClient.getSyncContext().updateAll(thisTable.mName, newItems);
+
+                    result.set(null);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
+    /**
+     * Set properties of the local items matching a query with a single local
+     * store statement, and enqueue an update operation for each of them, in a
+     * single local store transaction.
+     *
+     * @param query   the query whose filter selects the items; it cannot use
+     *                top or skip
+     * @param changes the properties to set, which cannot include the id
+     * @return A ListenableFuture that is done when the items have been
+     * updated, returning the number of updated items.
+     */
+    public ListenableFuture<Integer> updateWhere(final Query query, final JsonObject changes) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<Integer> result = SettableFuture.create();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    result.set(thisTable.mClient.getSyncContext().updateWhere(thisTable.mName, query, changes));
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
+    /**
+     * Delete the local items matching a query with a single local store
+     * statement, and enqueue a delete operation for each of them, in a single
+     * local store transaction.
+     *
+     * @param query the query whose filter selects the items; it cannot use top
+     *              or skip
+     * @return A ListenableFuture that is done when the items have been
+     * deleted, returning the number of deleted items.
+     */
+    public ListenableFuture<Integer> deleteWhere(final Query query) {
+        final MobileServiceJsonSyncTable thisTable = this;
+        final SettableFuture<Integer> result = SettableFuture.create();
+
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    result.set(thisTable.mClient.getSyncContext().deleteWhere(thisTable.mName, query));
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        }).start();
+
+        return result;
+    }
+
     private JsonElement readContext(Query query) throws MobileServiceLocalStoreException {
         return this.mClient.getSyncContext().read(this.mName, query);
     }
 
+    private long readContext(Query query, MobileServiceSyncTableVisitor<JsonObject> visitor) throws Throwable {
+        long visited = 0;
+
+        MobileServiceLocalStoreCursor cursor = this.mClient.getSyncContext().openCursor(this.mName, query);
+
+        try {
+            while (cursor.moveToNext()) {
+                visited++;
+
+                if (!visitor.visit(cursor.getRow())) {
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return visited;
+    }
+
     private JsonObject lookUpContext(String itemId) throws MobileServiceLocalStoreException {
         if (!isValidStringId(itemId)) {
             throw new IllegalArgumentException("The entity id has an invalid string value.");
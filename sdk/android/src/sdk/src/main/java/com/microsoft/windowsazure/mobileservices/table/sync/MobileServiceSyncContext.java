@@ -39,7 +39,9 @@ import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreCursor;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreTransaction;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.DeleteOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.InsertOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.LocalTableOperationProcessor;
@@ -49,6 +51,15 @@ import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOper
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.UpdateOperation;
 import com.microsoft.windowsazure.mobileservices.table.sync.pull.IncrementalPullStrategy;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullFreshnessPolicy;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullProgressListener;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullSpec;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PartitionedPull;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullBudget;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullCheckpoints;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullFreshness;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPageSizer;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullPipeline;
 import com.microsoft.windowsazure.mobileservices.table.sync.pull.PullStrategy;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushCompletionResult;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushFailedException;
@@ -66,13 +77,27 @@ import com.microsoft.windowsazure.mobileservices.threading.MultiReadWriteLockDic
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -91,6 +116,15 @@ public class MobileServiceSyncContext {
     private MobileServiceClient mClient;
     private MobileServiceLocalStore mStore;
     private MobileServiceSyncHandler mHandler;
+    /**
+     * Checkpoints of the incremental pulls
+     */
+    private PullCheckpoints mPullCheckpoints;
+
+    /**
+     * Freshness policies of the pull queries
+     */
+    private PullFreshness mPullFreshness;
     /**
      * Queue for pending operations (insert,update,delete) against remote table.
      */
@@ -136,6 +170,51 @@ public class MobileServiceSyncContext {
      */
     private Semaphore mPushSRConsumerIdle;
 
+    /**
+     * Number of partitions pulled concurrently
+     */
+    private int mPullParallelism = 1;
+
+    /**
+     * Number of pages a pull may fetch ahead of the local store writes
+     */
+    private int mPullPrefetchDepth = 1;
+
+    /**
+     * Bounds of the pull page size
+     */
+    private int mMinPullPageSize = 10;
+    private int mMaxPullPageSize = 1000;
+
+    /**
+     * Counters of the sync operations
+     */
+    private MobileServiceSyncMetrics mMetrics = new MobileServiceSyncMetrics();
+
+    /**
+     * Limits shared by the tables pulled by pullAll
+     */
+    private int mMaxPullRequests = 4;
+    private int mMaxPullWriters = 1;
+
+    /**
+     * Executor of pullAll, created on first use
+     */
+    private ExecutorService mPullExecutor;
+
+    /**
+     * Column subsets pulled for each table
+     */
+    private Map<String, List<String>> mPullColumns = new HashMap<String, List<String>>();
+
+    /**
+     * Coalescing of local operations into shared store transactions,
+     * disabled by default
+     */
+    private int mMaxBatchedOperations = 0;
+    private long mOperationBatchDelay = 0;
+    private OperationBatcher mOperationBatcher;
+
     /**
      * Constructor for MobileServiceSyncContext
      *
@@ -158,15 +237,6 @@ public class MobileServiceSyncContext {
         store.defineTable(ITEM_BACKUP_TABLE, columns);
     }
 
-    private static boolean isDeleted(JsonObject item) {
-
-        JsonElement deletedToken = item.get(MobileServiceSystemColumns.Deleted);
-
-        boolean isDeleted = deletedToken != null && deletedToken.getAsBoolean();
-
-        return isDeleted;
-    }
-
     /**
      * Returns an instance of MobileServiceLocalStore.
      *
@@ -185,6 +255,266 @@ public class MobileServiceSyncContext {
         return this.mHandler;
     }
 
+    /**
+     * Returns the number of partitions a pull may fetch concurrently.
+     *
+     * @return The pull parallelism
+     */
+    public int getPullParallelism() {
+        return this.mPullParallelism;
+    }
+
+    /**
+     * Sets the number of partitions a pull may fetch concurrently. With a
+     * value greater than 1, pulls of large tables are split into id ranges
+     * that are fetched concurrently and written to the local store by a single
+     * writer. Full pulls are only split when ordered by id and not skipping
+     * rows. The default value 1 fetches one page at a time.
+     *
+     * @param parallelism The pull parallelism
+     */
+    public void setPullParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Pull parallelism must be at least 1.");
+        }
+
+        this.mPullParallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of pages a pull may fetch ahead of the local store
+     * writes.
+     *
+     * @return The pull prefetch depth
+     */
+    public int getPullPrefetchDepth() {
+        return this.mPullPrefetchDepth;
+    }
+
+    /**
+     * Sets the number of pages a pull may fetch ahead of the local store
+     * writes. The next page is requested while the current one is written,
+     * and fetching pauses once this many pages are waiting to be written.
+     * Incremental pull checkpoints only advance once a page is stored. A
+     * value of 0 fetches each page only after the previous one is written.
+     * The default value is 1.
+     *
+     * @param prefetchDepth The pull prefetch depth
+     */
+    public void setPullPrefetchDepth(int prefetchDepth) {
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("Pull prefetch depth cannot be negative.");
+        }
+
+        this.mPullPrefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Returns the smallest page size a pull may request.
+     *
+     * @return The minimum pull page size
+     */
+    public int getMinPullPageSize() {
+        return this.mMinPullPageSize;
+    }
+
+    /**
+     * Returns the largest page size a pull may request.
+     *
+     * @return The maximum pull page size
+     */
+    public int getMaxPullPageSize() {
+        return this.mMaxPullPageSize;
+    }
+
+    /**
+     * Sets the bounds of the pull page size. Pulls start with pages of 50
+     * rows, or the top of the pull query if smaller, and then grow or shrink
+     * them from the observed fetch latency, response size per row and local
+     * store write time. The page size never exceeds the top of the pull
+     * query. The default bounds are 10 and 1000.
+     *
+     * @param minPageSize The minimum pull page size
+     * @param maxPageSize The maximum pull page size
+     */
+    public void setPullPageSizeBounds(int minPageSize, int maxPageSize) {
+        if (minPageSize < 1 || maxPageSize < minPageSize) {
+            throw new IllegalArgumentException("Invalid pull page size bounds.");
+        }
+
+        this.mMinPullPageSize = minPageSize;
+        this.mMaxPullPageSize = maxPageSize;
+    }
+
+    /**
+     * Returns the maximum number of requests the tables pulled by pullAll may
+     * run concurrently.
+     *
+     * @return The maximum number of concurrent pull requests
+     */
+    public int getMaxPullRequests() {
+        return this.mMaxPullRequests;
+    }
+
+    /**
+     * Returns the maximum number of pages the tables pulled by pullAll may
+     * write to the local store concurrently.
+     *
+     * @return The maximum number of concurrent pull writers
+     */
+    public int getMaxPullWriters() {
+        return this.mMaxPullWriters;
+    }
+
+    /**
+     * Sets the budget shared by the tables pulled by pullAll: the maximum
+     * number of requests running at the same time, which also bounds the
+     * number of tables pulled at the same time, and the maximum number of
+     * pages written to the local store at the same time. The defaults are 4
+     * requests and 1 writer.
+     *
+     * @param maxRequests The maximum number of concurrent pull requests
+     * @param maxWriters  The maximum number of concurrent pull writers
+     */
+    public void setPullAllBudget(int maxRequests, int maxWriters) {
+        if (maxRequests < 1 || maxWriters < 1) {
+            throw new IllegalArgumentException("Pull budget must allow at least one request and one writer.");
+        }
+
+        this.mMaxPullRequests = maxRequests;
+        this.mMaxPullWriters = maxWriters;
+    }
+
+    /**
+     * Restricts the pulls of a table to a subset of its columns. Pulls select
+     * these columns and the system columns sync needs, and pulled items only
+     * update these columns in the local store. The columns can be taken from
+     * the definition of the local table, as in
+     * setPullColumns(tableName, columns.keySet()).
+     *
+     * @param tableName the table name
+     * @param columns   the columns to pull, or null to pull every column
+     */
+    public void setPullColumns(String tableName, Collection<String> columns) {
+        String invTableName = tableName.trim().toLowerCase(Locale.getDefault());
+
+        synchronized (this.mPullColumns) {
+            if (columns == null) {
+                this.mPullColumns.remove(invTableName);
+            } else {
+                this.mPullColumns.put(invTableName, Collections.unmodifiableList(new ArrayList<String>(columns)));
+            }
+        }
+    }
+
+    /**
+     * Returns the columns pulled for a table
+     *
+     * @param tableName the table name
+     * @return The columns pulled, or null if every column is pulled
+     */
+    public List<String> getPullColumns(String tableName) {
+        synchronized (this.mPullColumns) {
+            return this.mPullColumns.get(tableName.trim().toLowerCase(Locale.getDefault()));
+        }
+    }
+
+    /**
+     * Sets the freshness policy of an incremental pull query. The policy and
+     * the time of the last pulls of the query are saved in the local store,
+     * so they survive the process. Skipped pulls and pulls that returned
+     * stale data are counted in the metrics.
+     *
+     * @param tableName the table name
+     * @param queryId   the incremental pull query id
+     * @param policy    the policy, or null to always pull
+     */
+    public void setPullFreshnessPolicy(String tableName, String queryId, MobileServicePullFreshnessPolicy policy) throws Throwable {
+        if (queryId == null) {
+            throw new IllegalArgumentException("Freshness policies apply to incremental pulls only.");
+        }
+
+        getPullFreshness().setPolicy(tableName.trim().toLowerCase(Locale.getDefault()), queryId, policy);
+    }
+
+    /**
+     * Returns the freshness policy of an incremental pull query
+     *
+     * @param tableName the table name
+     * @param queryId   the incremental pull query id
+     * @return The policy, or null if the query is always pulled
+     */
+    public MobileServicePullFreshnessPolicy getPullFreshnessPolicy(String tableName, String queryId) throws Throwable {
+        return getPullFreshness().getPolicy(tableName.trim().toLowerCase(Locale.getDefault()), queryId);
+    }
+
+    /**
+     * Returns the maximum number of local operations applied in a single
+     * local store transaction.
+     *
+     * @return The maximum number of batched operations, or 0 if local
+     * operations are not batched
+     */
+    public synchronized int getMaxBatchedOperations() {
+        return this.mMaxBatchedOperations;
+    }
+
+    /**
+     * Returns the time a batch of local operations waits for more operations
+     * after its first one.
+     *
+     * @return The batch delay, in milliseconds
+     */
+    public synchronized long getOperationBatchDelay() {
+        return this.mOperationBatchDelay;
+    }
+
+    /**
+     * Applies concurrent local inserts, updates and deletes in shared local
+     * store transactions. A batch starts with the first waiting operation and
+     * takes the operations that arrive within the delay, up to the maximum
+     * number of operations; the items and their operation queue entries are
+     * written in one transaction, and each operation completes once its batch
+     * is committed. An operation that fails does not fail the rest of its
+     * batch. Local operations are not batched by default.
+     *
+     * @param maxOperations  The maximum number of operations of a batch, or 0
+     *                       to apply each operation on its own
+     * @param maxDelayMillis The time a batch waits for more operations after
+     *                       its first one, in milliseconds
+     */
+    public synchronized void setOperationBatching(int maxOperations, long maxDelayMillis) {
+        if (maxOperations < 0) {
+            throw new IllegalArgumentException("Maximum batched operations cannot be negative.");
+        }
+
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Operation batch delay cannot be negative.");
+        }
+
+        if (this.mOperationBatcher != null) {
+            this.mOperationBatcher.close();
+            this.mOperationBatcher = null;
+        }
+
+        this.mMaxBatchedOperations = maxOperations;
+        this.mOperationBatchDelay = maxDelayMillis;
+
+        if (maxOperations > 1) {
+            this.mOperationBatcher = new OperationBatcher(this, maxOperations, maxDelayMillis);
+        }
+    }
+
+    /**
+     * Returns the counters of the sync operations, including the page sizes
+     * chosen by pulls.
+     *
+     * @return The sync metrics
+     */
+    public MobileServiceSyncMetrics getMetrics() {
+        return this.mMetrics;
+    }
+
     /**
      * Indicates whether sync context has been initialized or not.
      *
@@ -408,6 +738,39 @@ public class MobileServiceSyncContext {
         return result;
     }
 
+    /**
+     * Pulls several tables concurrently. Pending operations of the tables are
+     * pushed once before any table is pulled. Tables start in priority order
+     * once the tables they depend on have been pulled, and share the budget
+     * set with setPullAllBudget. If a table fails, the tables depending on it
+     * are not pulled and the others still are; the returned future then
+     * fails with the first error.
+     *
+     * @param specs    the tables to pull
+     * @param listener an optional listener of the progress of each table
+     * @return A ListenableFuture that is done when every table is pulled
+     */
+    public ListenableFuture<Void> pullAll(final List<MobileServicePullSpec> specs, final MobileServicePullProgressListener listener) {
+        final MobileServiceSyncContext thisContext = this;
+        final SettableFuture<Void> result = SettableFuture.create();
+
+        getPullExecutor().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    thisContext.pullAllContext(specs, listener);
+
+                    result.set(null);
+                } catch (Throwable throwable) {
+                    result.setException(throwable);
+                }
+            }
+        });
+
+        return result;
+    }
+
     /**
      * Performs a query against the remote table and stores results.
      *
@@ -415,6 +778,76 @@ public class MobileServiceSyncContext {
      * @param query     an optional query to filter results
      */
     void pull(String tableName, Query query, String queryId) throws Throwable {
+        pull(tableName, query, queryId, null, this.mMetrics, null);
+    }
+
+    /**
+     * Performs a query against the remote table and stores results, unless
+     * the freshness policy of the query says its last pull is recent enough
+     *
+     * @param tableName the remote table name
+     * @param query     an optional query to filter results
+     * @param queryId   the query id, or null to always pull
+     * @param budget    the budget shared with other pulls, or null
+     * @param metrics   the metrics the pull is recorded in
+     * @param listener  an optional listener of the pulled pages
+     */
+    void pull(final String tableName, final Query query, final String queryId, PullBudget budget, MobileServiceSyncMetrics metrics,
+              MobileServicePullProgressListener listener) throws Throwable {
+        if (queryId == null) {
+            pullFromServer(tableName, query, queryId, budget, metrics, listener);
+            return;
+        }
+
+        final PullFreshness freshness = getPullFreshness();
+        final String invTableName = tableName.trim().toLowerCase(Locale.getDefault());
+
+        switch (freshness.check(invTableName, queryId, System.currentTimeMillis())) {
+            case Skip:
+                metrics.recordSkippedPull();
+                break;
+
+            case ServeStale:
+                metrics.recordServedStalePull();
+
+                if (freshness.startRefresh(invTableName, queryId)) {
+                    final MobileServiceSyncContext thisContext = this;
+
+                    // The refresh outlives the caller, so it neither spends
+                    // its budget nor reports to its listener
+                    getPullExecutor().execute(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                thisContext.pullAndRecordFreshness(invTableName, query, queryId, freshness, null, thisContext.mMetrics, null);
+                            } catch (Throwable throwable) {
+                                // The next pull tries again
+                            } finally {
+                                freshness.finishRefresh(invTableName, queryId);
+                            }
+                        }
+                    });
+                }
+                break;
+
+            default:
+                pullAndRecordFreshness(invTableName, query, queryId, freshness, budget, metrics, listener);
+                break;
+        }
+    }
+
+    private void pullAndRecordFreshness(String tableName, Query query, String queryId, PullFreshness freshness, PullBudget budget,
+                                        MobileServiceSyncMetrics metrics, MobileServicePullProgressListener listener) throws Throwable {
+        freshness.recordAttempt(tableName, queryId, System.currentTimeMillis());
+
+        pullFromServer(tableName, query, queryId, budget, metrics, listener);
+
+        freshness.recordSuccess(tableName, queryId, System.currentTimeMillis());
+    }
+
+    private void pullFromServer(String tableName, Query query, String queryId, PullBudget budget, MobileServiceSyncMetrics metrics,
+                                MobileServicePullProgressListener listener) throws Throwable {
         this.mInitLock.readLock().lock();
 
         try {
@@ -444,7 +877,7 @@ public class MobileServiceSyncContext {
                         if (pendingTable > 0) {
                             pushFuture = push();
                         } else {
-                            processPull(invTableName, query, queryId);
+                            processPull(invTableName, query, queryId, budget, metrics, listener);
                         }
                     } finally {
                         this.mTableLockMap.unLockWrite(multiRWLock);
@@ -497,6 +930,9 @@ public class MobileServiceSyncContext {
                         throw new MobileServiceException("The table cannot be purged because it has pending operations");
                     } else {
                         processPurge(invTableName, query);
+
+                        // Purged items must be pulled again
+                        this.mPullFreshness.reset(invTableName, System.currentTimeMillis());
                     }
                 } finally {
                     this.mTableLockMap.unLockWrite(multiRWLock);
@@ -517,6 +953,32 @@ public class MobileServiceSyncContext {
      * @return a JsonElement with the results
      */
     JsonElement read(String tableName, Query query) throws MobileServiceLocalStoreException {
+        return this.mStore.read(getLocalQuery(tableName, query));
+    }
+
+    /**
+     * Opens a cursor over the results of a local table query
+     *
+     * @param tableName the local table name
+     * @param query     an optional query to filter results
+     * @return a cursor that must be closed
+     */
+    MobileServiceLocalStoreCursor openCursor(String tableName, Query query) throws MobileServiceLocalStoreException {
+        return this.mStore.openCursor(getLocalQuery(tableName, query));
+    }
+
+    /**
+     * Counts the items of the local table that match a query
+     *
+     * @param tableName the local table name
+     * @param query     an optional query to filter items
+     * @return the number of matching items
+     */
+    long count(String tableName, Query query) throws MobileServiceLocalStoreException {
+        return this.mStore.count(getLocalQuery(tableName, query));
+    }
+
+    private static Query getLocalQuery(String tableName, Query query) {
         String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
 
         if (query == null) {
@@ -525,7 +987,7 @@ public class MobileServiceSyncContext {
             query = query.tableName(invTableName);
         }
 
-        return this.mStore.read(query);
+        return query;
     }
 
     /**
@@ -599,41 +1061,260 @@ public class MobileServiceSyncContext {
     }
 
 
-    private void initializeContext(final MobileServiceLocalStore store, final MobileServiceSyncHandler handler) throws Throwable {
-        this.mInitLock.writeLock().lock();
-
-        try {
-            waitPendingPushSR();
+    /**
+     * Inserts items into the local table and enqueues their operations in a
+     * single local store transaction. Either every item is inserted, or none
+     * is.
+     *
+     * @param tableName the local table name
+     * @param items     the items to be inserted, with their ids
+     */
+    void insertAll(String tableName, final List<JsonObject> items) throws Throwable {
+        final String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
 
-            this.mOpLock.writeLock().lock();
+        processBulkOperation(invTableName, new BulkOperation() {
+            @Override
+            public void run() throws Throwable {
+                for (JsonObject item : items) {
+                    applyOperation(new InsertOperation(invTableName, item.get("id").getAsString()), item);
+                }
+            }
+        });
+    }
 
-            try {
-                this.mPushSRLock.lock();
+    /**
+     * Updates items in the local table and enqueues their operations in a
+     * single local store transaction. Either every item is updated, or none
+     * is.
+     *
+     * @param tableName the local table name
+     * @param items     the items to be updated
+     */
+    void updateAll(String tableName, final List<JsonObject> items) throws Throwable {
+        final String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
 
-                try {
-                    this.mInitialized = SettableFuture.create();
+        processBulkOperation(invTableName, new BulkOperation() {
+            @Override
+            public void run() throws Throwable {
+                for (JsonObject item : items) {
+                    applyOperation(new UpdateOperation(invTableName, item.get("id").getAsString()), item);
+                }
+            }
+        });
+    }
 
-                    try {
-                        this.mHandler = handler;
-                        this.mStore = store;
+    /**
+     * Sets properties of the local items matching a query with a single
+     * store statement, and enqueues an update operation for each of them, in
+     * a single local store transaction.
+     *
+     * @param tableName the local table name
+     * @param query     the query whose filter selects the items
+     * @param changes   the properties to set
+     * @return the number of updated items
+     */
+    int updateWhere(String tableName, Query query, final JsonObject changes) throws Throwable {
+        final String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
+        final Query filter = getBulkQuery(invTableName, query);
+        final List<String> itemIds = new ArrayList<String>();
+
+        for (Map.Entry<String, JsonElement> property : changes.entrySet()) {
+            if (property.getKey().equalsIgnoreCase(MobileServiceSystemColumns.Id)) {
+                throw new IllegalArgumentException("The id of the items cannot be updated.");
+            }
+        }
 
-                        OperationQueue.initializeStore(this.mStore);
-                        OperationErrorList.initializeStore(this.mStore);
-                        IncrementalPullStrategy.initializeStore(this.mStore);
+        processBulkOperation(invTableName, new BulkOperation() {
+            @Override
+            public void run() throws Throwable {
+                MobileServiceLocalStoreCursor cursor = mStore.openCursor(filter.deepClone().select(MobileServiceSystemColumns.Id));
 
-                        initializeStore(this.mStore);
+                try {
+                    int idColumn = cursor.getColumnIndex(MobileServiceSystemColumns.Id);
 
-                        this.mStore.initialize();
+                    while (cursor.moveToNext()) {
+                        itemIds.add(cursor.getString(idColumn));
+                    }
+                } finally {
+                    cursor.close();
+                }
 
-                        this.mIdLockMap = new MultiLockDictionary<String>();
-                        this.mTableLockMap = new MultiReadWriteLockDictionary<String>();
+                mStore.update(filter, changes);
 
-                        this.mOpQueue = OperationQueue.load(this.mStore);
-                        this.mPushSRQueue = new LinkedList<PushSyncRequest>();
-                        this.mOpErrorList = OperationErrorList.load(this.mStore);
+                for (String itemId : itemIds) {
+                    mOpQueue.enqueue(new UpdateOperation(invTableName, itemId));
+                }
+            }
+        });
 
-                        if (this.mPushSRConsumer == null) {
-                            this.mPendingPush = new Semaphore(0, true);
+        return itemIds.size();
+    }
+
+    /**
+     * Deletes the local items matching a query with a single store statement,
+     * and enqueues a delete operation for each of them, in a single local
+     * store transaction.
+     *
+     * @param tableName the local table name
+     * @param query     the query whose filter selects the items
+     * @return the number of deleted items
+     */
+    int deleteWhere(String tableName, Query query) throws Throwable {
+        final String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
+        final Query filter = getBulkQuery(invTableName, query);
+        final List<String> itemIds = new ArrayList<String>();
+
+        processBulkOperation(invTableName, new BulkOperation() {
+            @Override
+            public void run() throws Throwable {
+                MobileServiceLocalStoreCursor cursor = mStore.openCursor(filter);
+
+                try {
+                    while (cursor.moveToNext()) {
+                        JsonObject item = cursor.getRow();
+                        String itemId = item.get(MobileServiceSystemColumns.Id).getAsString();
+
+                        // Backed up as the delete operation processor does,
+                        // for the push and for cancelled operations
+                        JsonObject backup = new JsonObject();
+                        backup.addProperty("id", invTableName + "/" + itemId);
+                        backup.addProperty("tablename", invTableName);
+                        backup.addProperty("itemid", itemId);
+                        backup.add("clientitem", item);
+
+                        mStore.upsert(ITEM_BACKUP_TABLE, backup, false);
+
+                        itemIds.add(itemId);
+                    }
+                } finally {
+                    cursor.close();
+                }
+
+                mStore.delete(filter);
+
+                for (String itemId : itemIds) {
+                    mOpQueue.enqueue(new DeleteOperation(invTableName, itemId));
+                }
+            }
+        });
+
+        return itemIds.size();
+    }
+
+    private static Query getBulkQuery(String invTableName, Query query) {
+        if (query == null) {
+            return QueryOperations.tableName(invTableName);
+        }
+
+        if (query.getTop() > 0 || query.getSkip() > 0) {
+            throw new IllegalArgumentException("Queries of bulk updates and deletes cannot page their results.");
+        }
+
+        Query result = query.deepClone().tableName(invTableName);
+
+        result.removeProjection();
+        result.removeInlineCount();
+        result.getOrderBy().clear();
+
+        return result;
+    }
+
+    private void applyOperation(TableOperation operation, JsonObject item) throws Throwable {
+        operation.accept(new LocalTableOperationProcessor(this.mStore, item, ITEM_BACKUP_TABLE));
+
+        this.mOpQueue.enqueue(operation);
+    }
+
+    /**
+     * Runs a bulk operation on a local table in a single local store
+     * transaction, with exclusive access to the table. If the transaction
+     * fails, the operations it enqueued in memory are dropped by reading the
+     * operation queue back from the store.
+     */
+    private void processBulkOperation(String invTableName, final BulkOperation operation) throws Throwable {
+        final Throwable[] operationError = new Throwable[1];
+        Throwable failure = null;
+
+        this.mInitLock.readLock().lock();
+
+        try {
+            ensureCorrectlyInitialized();
+
+            this.mOpLock.readLock().lock();
+
+            try {
+                MultiReadWriteLock<String> tableLock = this.mTableLockMap.lockWrite(invTableName);
+
+                try {
+                    this.mStore.runInTransaction(new MobileServiceLocalStoreTransaction() {
+                        @Override
+                        public void run() throws MobileServiceLocalStoreException {
+                            try {
+                                operation.run();
+                            } catch (Throwable throwable) {
+                                operationError[0] = throwable;
+
+                                throw new MobileServiceLocalStoreException(throwable);
+                            }
+                        }
+                    });
+                } catch (MobileServiceLocalStoreException e) {
+                    failure = operationError[0] != null ? operationError[0] : e;
+                } finally {
+                    this.mTableLockMap.unLockWrite(tableLock);
+                }
+            } finally {
+                this.mOpLock.readLock().unlock();
+            }
+        } finally {
+            this.mInitLock.readLock().unlock();
+        }
+
+        if (failure != null) {
+            reloadOperationQueue();
+
+            throw failure;
+        }
+    }
+
+    private void initializeContext(final MobileServiceLocalStore store, final MobileServiceSyncHandler handler) throws Throwable {
+        this.mInitLock.writeLock().lock();
+
+        try {
+            waitPendingPushSR();
+
+            this.mOpLock.writeLock().lock();
+
+            try {
+                this.mPushSRLock.lock();
+
+                try {
+                    this.mInitialized = SettableFuture.create();
+
+                    try {
+                        this.mHandler = handler;
+                        this.mStore = store;
+
+                        OperationQueue.initializeStore(this.mStore);
+                        OperationErrorList.initializeStore(this.mStore);
+                        PullCheckpoints.initializeStore(this.mStore);
+                        PullFreshness.initializeStore(this.mStore);
+
+                        initializeStore(this.mStore);
+
+                        this.mStore.initialize();
+
+                        this.mIdLockMap = new MultiLockDictionary<String>();
+                        this.mTableLockMap = new MultiReadWriteLockDictionary<String>();
+
+                        this.mOpQueue = OperationQueue.load(this.mStore);
+                        this.mPushSRQueue = new LinkedList<PushSyncRequest>();
+                        this.mOpErrorList = OperationErrorList.load(this.mStore);
+                        this.mPullCheckpoints = new PullCheckpoints(this.mStore);
+                        this.mPullFreshness = new PullFreshness(this.mStore);
+
+                        if (this.mPushSRConsumer == null) {
+                            this.mPendingPush = new Semaphore(0, true);
 
                             this.mPushSRConsumer = new PushSyncRequestConsumer(this);
                             this.mPushSRConsumer.start();
@@ -687,6 +1368,240 @@ public class MobileServiceSyncContext {
         }
     }
 
+    private void pullAllContext(List<MobileServicePullSpec> specs, final MobileServicePullProgressListener listener) throws Throwable {
+        Map<String, MobileServicePullSpec> specsByTable = getPullSpecs(specs);
+
+        boolean pendingOperations = false;
+
+        this.mInitLock.readLock().lock();
+
+        try {
+            ensureCorrectlyInitialized();
+
+            this.mOpLock.readLock().lock();
+
+            try {
+                for (String tableName : specsByTable.keySet()) {
+                    if (this.mOpQueue.countPending(tableName) > 0) {
+                        pendingOperations = true;
+                        break;
+                    }
+                }
+            } finally {
+                this.mOpLock.readLock().unlock();
+            }
+        } finally {
+            this.mInitLock.readLock().unlock();
+        }
+
+        // A single push for every table; pull pushes again if operations
+        // were queued in the meantime
+        if (pendingOperations) {
+            try {
+                push().get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+
+        List<MobileServicePullSpec> waiting = new ArrayList<MobileServicePullSpec>(specsByTable.values());
+
+        Collections.sort(waiting, new Comparator<MobileServicePullSpec>() {
+            @Override
+            public int compare(MobileServicePullSpec left, MobileServicePullSpec right) {
+                return right.getPriority() < left.getPriority() ? -1 : (right.getPriority() == left.getPriority() ? 0 : 1);
+            }
+        });
+
+        final PullBudget budget = new PullBudget(this.mMaxPullRequests, this.mMaxPullWriters);
+
+        CompletionService<String> completionService = new ExecutorCompletionService<String>(getPullExecutor());
+        Map<Future<String>, String> running = new HashMap<Future<String>, String>();
+
+        Set<String> pulled = new HashSet<String>();
+        Set<String> failed = new HashSet<String>();
+        Throwable firstError = null;
+
+        while (!waiting.isEmpty() || !running.isEmpty()) {
+            Iterator<MobileServicePullSpec> iterator = waiting.iterator();
+
+            while (iterator.hasNext() && running.size() < this.mMaxPullRequests) {
+                MobileServicePullSpec spec = iterator.next();
+
+                String tableName = normalizeTableName(spec.getTableName());
+
+                boolean ready = true;
+                String failedDependency = null;
+
+                for (String dependency : spec.getDependencies()) {
+                    dependency = normalizeTableName(dependency);
+
+                    if (failed.contains(dependency)) {
+                        failedDependency = dependency;
+                        break;
+                    } else if (!pulled.contains(dependency)) {
+                        ready = false;
+                    }
+                }
+
+                if (failedDependency != null) {
+                    iterator.remove();
+                    failed.add(tableName);
+
+                    if (listener != null) {
+                        listener.onPullCompleted(tableName, new MobileServiceSyncMetrics(),
+                                new IllegalStateException("Table " + failedDependency + " failed to pull."));
+                    }
+
+                    // Tables depending on this one may now be skipped
+                    iterator = waiting.iterator();
+                } else if (ready) {
+                    iterator.remove();
+                    running.put(completionService.submit(createPullTask(tableName, spec, budget, listener)), tableName);
+                }
+            }
+
+            if (running.isEmpty()) {
+                continue;
+            }
+
+            Future<String> future = completionService.take();
+            String tableName = running.remove(future);
+
+            try {
+                future.get();
+
+                pulled.add(tableName);
+            } catch (ExecutionException e) {
+                failed.add(tableName);
+
+                if (firstError == null) {
+                    firstError = e.getCause();
+                }
+            }
+        }
+
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
+    private Callable<String> createPullTask(final String tableName, final MobileServicePullSpec spec, final PullBudget budget,
+                                            final MobileServicePullProgressListener listener) {
+        final MobileServiceSyncContext thisContext = this;
+
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                MobileServiceSyncMetrics metrics = new MobileServiceSyncMetrics();
+                Throwable error = null;
+
+                if (listener != null) {
+                    listener.onPullStarted(tableName);
+                }
+
+                try {
+                    thisContext.pull(tableName, spec.getQuery(), spec.getQueryId(), budget, metrics, listener);
+                } catch (Throwable throwable) {
+                    error = throwable;
+                }
+
+                thisContext.mMetrics.add(metrics);
+
+                if (listener != null) {
+                    listener.onPullCompleted(tableName, metrics, error);
+                }
+
+                if (error instanceof Exception) {
+                    throw (Exception) error;
+                } else if (error != null) {
+                    throw new ExecutionException(error);
+                }
+
+                return tableName;
+            }
+        };
+    }
+
+    /**
+     * Indexes the specs of pullAll by table name, rejecting duplicated
+     * tables, unknown dependencies and dependency cycles
+     */
+    private static Map<String, MobileServicePullSpec> getPullSpecs(List<MobileServicePullSpec> specs) {
+        if (specs == null) {
+            throw new IllegalArgumentException("Pull specs cannot be null.");
+        }
+
+        Map<String, MobileServicePullSpec> specsByTable = new LinkedHashMap<String, MobileServicePullSpec>();
+
+        for (MobileServicePullSpec spec : specs) {
+            String tableName = normalizeTableName(spec.getTableName());
+
+            if (specsByTable.put(tableName, spec) != null) {
+                throw new IllegalArgumentException("Table " + tableName + " is pulled more than once.");
+            }
+        }
+
+        for (MobileServicePullSpec spec : specsByTable.values()) {
+            for (String dependency : spec.getDependencies()) {
+                if (!specsByTable.containsKey(normalizeTableName(dependency))) {
+                    throw new IllegalArgumentException("Table " + dependency + " is not pulled.");
+                }
+            }
+        }
+
+        Set<String> visited = new HashSet<String>();
+
+        for (String tableName : specsByTable.keySet()) {
+            checkDependencyCycles(tableName, specsByTable, visited, new HashSet<String>());
+        }
+
+        return specsByTable;
+    }
+
+    private static void checkDependencyCycles(String tableName, Map<String, MobileServicePullSpec> specsByTable, Set<String> visited,
+                                              Set<String> path) {
+        if (path.contains(tableName)) {
+            throw new IllegalArgumentException("Table " + tableName + " depends on itself.");
+        }
+
+        if (!visited.add(tableName)) {
+            return;
+        }
+
+        path.add(tableName);
+
+        for (String dependency : specsByTable.get(tableName).getDependencies()) {
+            checkDependencyCycles(normalizeTableName(dependency), specsByTable, visited, path);
+        }
+
+        path.remove(tableName);
+    }
+
+    private static String normalizeTableName(String tableName) {
+        return tableName.trim().toLowerCase(Locale.getDefault());
+    }
+
+    private synchronized ExecutorService getPullExecutor() {
+        if (this.mPullExecutor == null) {
+            this.mPullExecutor = Executors.newCachedThreadPool();
+        }
+
+        return this.mPullExecutor;
+    }
+
+    private PullFreshness getPullFreshness() throws Throwable {
+        this.mInitLock.readLock().lock();
+
+        try {
+            ensureCorrectlyInitialized();
+
+            return this.mPullFreshness;
+        } finally {
+            this.mInitLock.readLock().unlock();
+        }
+    }
+
     private void ensureCorrectlyInitialized() throws Throwable {
         if (this.mInitialized != null && this.mInitialized.isDone() && !this.mInitialized.isCancelled()) {
             try {
@@ -699,11 +1614,16 @@ public class MobileServiceSyncContext {
         }
     }
 
-    private void processPull(String tableName, Query query, String queryId) throws Throwable {
+    private void processPull(final String tableName, Query query, String queryId, PullBudget budget, final MobileServiceSyncMetrics metrics,
+                             final MobileServicePullProgressListener listener) throws Throwable {
+
+        boolean succeeded = false;
 
         try {
 
-            MobileServiceJsonTable table = this.mClient.getTable(tableName);
+            PullPageSizer pageSizer = new PullPageSizer(this.mMinPullPageSize, this.mMaxPullPageSize, metrics);
+
+            MobileServiceJsonTable table = this.mClient.withFilter(pageSizer.getResponseFilter()).getTable(tableName);
 
             table.addFeature(MobileServiceFeatures.Offline);
 
@@ -713,81 +1633,78 @@ public class MobileServiceSyncContext {
                 query = query.deepClone();
             }
 
-            PullStrategy strategy;
-
-            if (queryId != null) {
-                strategy = new IncrementalPullStrategy(query, queryId, this.mStore, table);
-            } else {
-                strategy = new PullStrategy(query, table);
-            }
-
-            strategy.initialize();
-
-            JsonArray elements = null;
+            PullPipeline.PageProcessor processor = new PullPipeline.PageProcessor() {
+                private int mTotalItems;
 
-            do {
+                @Override
+                public void processPage(JsonArray elements) throws Throwable {
+                    processElements(tableName, elements, metrics);
 
-                JsonElement result = table.execute(strategy.getLastQuery()).get();
+                    // The empty page that ends a pull is not reported
+                    if (listener != null && elements.size() > 0) {
+                        this.mTotalItems += elements.size();
 
-                if (result != null) {
+                        listener.onPageStored(tableName, elements.size(), this.mTotalItems);
+                    }
+                }
+            };
 
-                    if (result.isJsonObject()) {
-                        JsonObject jsonObject = result.getAsJsonObject();
+            List<String> columns = getPullColumns(tableName);
 
-                        if (jsonObject.has("results") && jsonObject.get("results").isJsonArray()) {
-                            elements = jsonObject.get("results").getAsJsonArray();
-                        }
+            if (this.mPullParallelism > 1 && PartitionedPull.canPartition(query, queryId)) {
+                PartitionedPull partitionedPull = new PartitionedPull(this.mClient, tableName, query, queryId, this.mPullCheckpoints,
+                        this.mPullParallelism, this.mPullPrefetchDepth);
 
-                    } else if (result.isJsonArray()) {
-                        elements = result.getAsJsonArray();
-                    }
+                partitionedPull.setPageSizing(this.mMinPullPageSize, this.mMaxPullPageSize, metrics);
+                partitionedPull.setBudget(budget);
+                partitionedPull.setColumns(columns);
 
-                    processElements(tableName, elements);
+                if (partitionedPull.initialize()) {
+                    partitionedPull.run(processor);
 
-                    strategy.onResultsProcessed(elements);
+                    succeeded = true;
+                    return;
                 }
-
             }
-            while (strategy.moveToNextPage(elements.size()));
 
-        } catch (ExecutionException e) {
-            throw e.getCause();
-        } catch (RuntimeException e) {
-            throw e.getCause();
-        }
-    }
+            PullStrategy strategy;
 
-    private void processElements(String tableName, JsonArray elements) throws Throwable {
-        if (elements != null) {
+            if (queryId != null) {
+                strategy = new IncrementalPullStrategy(query, queryId, this.mPullCheckpoints, table);
+            } else {
+                strategy = new PullStrategy(query, table);
+            }
 
-            List<JsonObject> updatedJsonObjects = new ArrayList<JsonObject>();
-            List<String> deletedIds = new ArrayList<String>();
+            strategy.setColumns(columns);
+            strategy.initialize();
 
+            PullPipeline pipeline = new PullPipeline(this.mPullPrefetchDepth, this.mStore);
 
-            for (JsonElement element : elements) {
+            pipeline.setBudget(budget);
+            pipeline.add(strategy, table, pageSizer);
 
-                JsonObject jsonObject = element.getAsJsonObject();
-                JsonElement elementId = jsonObject.get(MobileServiceSystemColumns.Id);
+            pipeline.run(processor);
 
-                if (elementId == null) {
-                    continue;
-                }
+            succeeded = true;
 
-                if (isDeleted(jsonObject)) {
-                    deletedIds.add(elementId.getAsString());
-                } else {
-                    updatedJsonObjects.add(jsonObject);
-                }
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            throw e.getCause() != null ? e.getCause() : e;
+        } finally {
+            // The transaction of the last checkpoint may have been rolled back
+            if (!succeeded && queryId != null) {
+                this.mPullCheckpoints.invalidate(query.getTableName(), queryId);
             }
+        }
+    }
 
-            if (deletedIds.size() > 0) {
-                this.mStore.delete(tableName,
-                        deletedIds.toArray(new String[deletedIds.size()]));
-            }
+    private void processElements(String tableName, JsonArray elements, MobileServiceSyncMetrics metrics) throws Throwable {
+        if (elements != null) {
+            int skipped = this.mStore.ingest(tableName, elements);
 
-            if (updatedJsonObjects.size() > 0) {
-                this.mStore.upsert(tableName,
-                        updatedJsonObjects.toArray(new JsonObject[updatedJsonObjects.size()]), true);
+            if (metrics != null) {
+                metrics.recordStoredRows(elements.size() - skipped, skipped);
             }
         }
     }
@@ -1060,6 +1977,28 @@ public class MobileServiceSyncContext {
     }
 
     private void processOperation(TableOperation operation, JsonObject item) throws Throwable {
+        OperationBatcher batcher;
+
+        synchronized (this) {
+            batcher = this.mOperationBatcher;
+        }
+
+        ListenableFuture<Void> batched = batcher != null ? batcher.submit(operation, item) : null;
+
+        if (batched != null) {
+            try {
+                batched.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+
+            return;
+        }
+
+        processSingleOperation(operation, item);
+    }
+
+    private void processSingleOperation(TableOperation operation, JsonObject item) throws Throwable {
         this.mInitLock.readLock().lock();
 
         try {
@@ -1103,6 +2042,146 @@ public class MobileServiceSyncContext {
         }
     }
 
+    /**
+     * Applies a batch of local operations in a single local store
+     * transaction, completing the future of each operation. The table and
+     * item locks of the batch are taken before the transaction starts, in a
+     * fixed order, so that pushes holding one of them can still write to the
+     * store.
+     *
+     * @param requests the operations of the batch
+     */
+    void processOperationGroup(final List<OperationBatcher.Request> requests) throws Throwable {
+        final Throwable[] errors = new Throwable[requests.size()];
+        boolean rolledBack = false;
+
+        this.mInitLock.readLock().lock();
+
+        try {
+            ensureCorrectlyInitialized();
+
+            this.mOpLock.readLock().lock();
+
+            try {
+                Set<String> tableNames = new TreeSet<String>();
+                Set<String> tableItemIds = new TreeSet<String>();
+
+                for (OperationBatcher.Request request : requests) {
+                    TableOperation operation = request.getOperation();
+
+                    tableNames.add(operation.getTableName());
+                    tableItemIds.add(operation.getTableName() + "/" + operation.getItemId());
+                }
+
+                List<MultiReadWriteLock<String>> tableLocks = new ArrayList<MultiReadWriteLock<String>>();
+                List<MultiLock<String>> idLocks = new ArrayList<MultiLock<String>>();
+
+                try {
+                    for (String tableName : tableNames) {
+                        tableLocks.add(this.mTableLockMap.lockRead(tableName));
+                    }
+
+                    for (String tableItemId : tableItemIds) {
+                        idLocks.add(this.mIdLockMap.lock(tableItemId));
+                    }
+
+                    try {
+                        this.mStore.runInTransaction(new MobileServiceLocalStoreTransaction() {
+                            @Override
+                            public void run() throws MobileServiceLocalStoreException {
+                                for (int i = 0; i < requests.size(); i++) {
+                                    TableOperation operation = requests.get(i).getOperation();
+
+                                    try {
+                                        operation.accept(new LocalTableOperationProcessor(mStore, requests.get(i).getItem(), ITEM_BACKUP_TABLE));
+                                        mOpQueue.enqueue(operation);
+                                    } catch (Throwable throwable) {
+                                        errors[i] = throwable;
+                                    }
+                                }
+                            }
+                        });
+                    } catch (MobileServiceLocalStoreException e) {
+                        rolledBack = true;
+
+                        for (int i = 0; i < errors.length; i++) {
+                            if (errors[i] == null) {
+                                errors[i] = e;
+                            }
+                        }
+                    }
+                } finally {
+                    for (MultiLock<String> idLock : idLocks) {
+                        this.mIdLockMap.unLock(idLock);
+                    }
+
+                    for (MultiReadWriteLock<String> tableLock : tableLocks) {
+                        this.mTableLockMap.unLockRead(tableLock);
+                    }
+                }
+            } finally {
+                this.mOpLock.readLock().unlock();
+            }
+        } finally {
+            this.mInitLock.readLock().unlock();
+        }
+
+        if (rolledBack) {
+            // The operations were enqueued in memory before the transaction
+            // failed, so the queue is read back from the store
+            reloadOperationQueue();
+        }
+
+        this.mMetrics.recordOperationBatch(requests.size());
+
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                requests.get(i).getResult().setException(errors[i]);
+            } else {
+                requests.get(i).getResult().set(null);
+            }
+        }
+    }
+
+    /**
+     * Reads the operation queue back from the local store, dropping the
+     * operations a rolled back transaction enqueued in memory. Pushes dequeue
+     * through a bookmark on the current queue, so, as on initialization, the
+     * pending pushes are completed first and no push runs while the queue is
+     * replaced. The running push holds the push lock while it takes the
+     * operation lock, so the push lock is taken first.
+     */
+    private void reloadOperationQueue() throws Throwable {
+        this.mInitLock.writeLock().lock();
+
+        try {
+            waitPendingPushSR();
+
+            this.mPushSRLock.lock();
+
+            try {
+                this.mOpLock.writeLock().lock();
+
+                try {
+                    this.mOpQueue = OperationQueue.load(this.mStore);
+                } finally {
+                    this.mOpLock.writeLock().unlock();
+                }
+            } finally {
+                this.mPushSRLock.unlock();
+            }
+        } finally {
+            this.mInitLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * A bulk operation run in a local store transaction
+     */
+    private interface BulkOperation {
+        void run() throws Throwable;
+    }
+
     private static class PushSyncRequest {
         private Bookmark mBookmark;
         private Semaphore mSignalDone;
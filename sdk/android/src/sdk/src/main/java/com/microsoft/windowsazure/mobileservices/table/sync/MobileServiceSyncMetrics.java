@@ -0,0 +1,287 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceSyncMetrics.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync;
+
+/**
+ * Counters describing the work done by the sync operations of a sync context
+ */
+public class MobileServiceSyncMetrics {
+
+    private long mPulledPages;
+    private long mPulledRows;
+    private long mPulledBytes;
+    private long mFetchNanos;
+    private long mStoreNanos;
+    private long mWrittenRows;
+    private long mSkippedRows;
+
+    private int mLastPageSize;
+    private int mMinPageSize;
+    private int mMaxPageSize;
+
+    private long mSkippedPulls;
+    private long mServedStalePulls;
+
+    private long mOperationBatches;
+    private long mBatchedOperations;
+
+    /**
+     * Records a page fetched by a pull
+     *
+     * @param pageSize   the requested page size
+     * @param rows       the number of rows received
+     * @param bytes      the size of the response, or 0 if unknown
+     * @param fetchNanos the time spent fetching the page
+     */
+    public synchronized void recordPulledPage(int pageSize, int rows, long bytes, long fetchNanos) {
+        this.mPulledPages++;
+        this.mPulledRows += rows;
+        this.mPulledBytes += bytes;
+        this.mFetchNanos += fetchNanos;
+
+        this.mLastPageSize = pageSize;
+        this.mMinPageSize = this.mMinPageSize == 0 ? pageSize : Math.min(this.mMinPageSize, pageSize);
+        this.mMaxPageSize = Math.max(this.mMaxPageSize, pageSize);
+    }
+
+    /**
+     * Records a pulled page written to the local store
+     *
+     * @param storeNanos the time spent writing the page
+     */
+    public synchronized void recordStoredPage(long storeNanos) {
+        this.mStoreNanos += storeNanos;
+    }
+
+    /**
+     * Records the pulled rows written to the local store
+     *
+     * @param writtenRows the number of rows inserted, updated or deleted
+     * @param skippedRows the number of rows skipped because they were
+     *                    unchanged
+     */
+    public synchronized void recordStoredRows(int writtenRows, int skippedRows) {
+        this.mWrittenRows += writtenRows;
+        this.mSkippedRows += skippedRows;
+    }
+
+    /**
+     * Records a pull skipped because its data was fresh
+     */
+    public synchronized void recordSkippedPull() {
+        this.mSkippedPulls++;
+    }
+
+    /**
+     * Records a pull that returned stale data and refreshed it in the
+     * background
+     */
+    public synchronized void recordServedStalePull() {
+        this.mServedStalePulls++;
+    }
+
+    /**
+     * Records a batch of local operations applied in one local store
+     * transaction
+     *
+     * @param operations the number of operations of the batch
+     */
+    public synchronized void recordOperationBatch(int operations) {
+        this.mOperationBatches++;
+        this.mBatchedOperations += operations;
+    }
+
+    /**
+     * Adds the counters of other metrics to these
+     *
+     * @param metrics the metrics to add
+     */
+    public void add(MobileServiceSyncMetrics metrics) {
+        long pulledPages, pulledRows, pulledBytes, fetchNanos, storeNanos, writtenRows, skippedRows, skippedPulls, servedStalePulls, operationBatches,
+                batchedOperations;
+        int lastPageSize, minPageSize, maxPageSize;
+
+        synchronized (metrics) {
+            pulledPages = metrics.mPulledPages;
+            pulledRows = metrics.mPulledRows;
+            pulledBytes = metrics.mPulledBytes;
+            fetchNanos = metrics.mFetchNanos;
+            storeNanos = metrics.mStoreNanos;
+            writtenRows = metrics.mWrittenRows;
+            skippedRows = metrics.mSkippedRows;
+            lastPageSize = metrics.mLastPageSize;
+            minPageSize = metrics.mMinPageSize;
+            maxPageSize = metrics.mMaxPageSize;
+            skippedPulls = metrics.mSkippedPulls;
+            servedStalePulls = metrics.mServedStalePulls;
+            operationBatches = metrics.mOperationBatches;
+            batchedOperations = metrics.mBatchedOperations;
+        }
+
+        synchronized (this) {
+            this.mPulledPages += pulledPages;
+            this.mPulledRows += pulledRows;
+            this.mPulledBytes += pulledBytes;
+            this.mFetchNanos += fetchNanos;
+            this.mStoreNanos += storeNanos;
+            this.mWrittenRows += writtenRows;
+            this.mSkippedRows += skippedRows;
+            this.mSkippedPulls += skippedPulls;
+            this.mServedStalePulls += servedStalePulls;
+            this.mOperationBatches += operationBatches;
+            this.mBatchedOperations += batchedOperations;
+
+            if (pulledPages > 0) {
+                this.mLastPageSize = lastPageSize;
+                this.mMinPageSize = this.mMinPageSize == 0 ? minPageSize : Math.min(this.mMinPageSize, minPageSize);
+                this.mMaxPageSize = Math.max(this.mMaxPageSize, maxPageSize);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pages fetched by pulls
+     */
+    public synchronized long getPulledPages() {
+        return this.mPulledPages;
+    }
+
+    /**
+     * Returns the number of rows fetched by pulls
+     */
+    public synchronized long getPulledRows() {
+        return this.mPulledRows;
+    }
+
+    /**
+     * Returns the size of the responses fetched by pulls, in bytes
+     */
+    public synchronized long getPulledBytes() {
+        return this.mPulledBytes;
+    }
+
+    /**
+     * Returns the time spent fetching pull pages, in milliseconds
+     */
+    public synchronized long getFetchMillis() {
+        return this.mFetchNanos / 1000000;
+    }
+
+    /**
+     * Returns the time spent writing pulled pages to the local store, in
+     * milliseconds
+     */
+    public synchronized long getStoreMillis() {
+        return this.mStoreNanos / 1000000;
+    }
+
+    /**
+     * Returns the number of pulled rows inserted, updated or deleted in the
+     * local store
+     */
+    public synchronized long getWrittenRows() {
+        return this.mWrittenRows;
+    }
+
+    /**
+     * Returns the number of pulled rows skipped because they were unchanged
+     */
+    public synchronized long getSkippedRows() {
+        return this.mSkippedRows;
+    }
+
+    /**
+     * Returns the page size requested by the last pulled page
+     */
+    public synchronized int getLastPageSize() {
+        return this.mLastPageSize;
+    }
+
+    /**
+     * Returns the smallest page size requested by a pull
+     */
+    public synchronized int getMinPageSize() {
+        return this.mMinPageSize;
+    }
+
+    /**
+     * Returns the largest page size requested by a pull
+     */
+    public synchronized int getMaxPageSize() {
+        return this.mMaxPageSize;
+    }
+
+    /**
+     * Returns the number of pulls skipped because their data was fresh
+     */
+    public synchronized long getSkippedPulls() {
+        return this.mSkippedPulls;
+    }
+
+    /**
+     * Returns the number of pulls that returned stale data and refreshed it
+     * in the background
+     */
+    public synchronized long getServedStalePulls() {
+        return this.mServedStalePulls;
+    }
+
+    /**
+     * Returns the number of batches of local operations applied in one local
+     * store transaction
+     */
+    public synchronized long getOperationBatches() {
+        return this.mOperationBatches;
+    }
+
+    /**
+     * Returns the number of local operations applied in batches
+     */
+    public synchronized long getBatchedOperations() {
+        return this.mBatchedOperations;
+    }
+
+    /**
+     * Resets every counter
+     */
+    public synchronized void reset() {
+        this.mPulledPages = 0;
+        this.mPulledRows = 0;
+        this.mPulledBytes = 0;
+        this.mFetchNanos = 0;
+        this.mStoreNanos = 0;
+        this.mWrittenRows = 0;
+        this.mSkippedRows = 0;
+
+        this.mLastPageSize = 0;
+        this.mMinPageSize = 0;
+        this.mMaxPageSize = 0;
+
+        this.mSkippedPulls = 0;
+        this.mServedStalePulls = 0;
+
+        this.mOperationBatches = 0;
+        this.mBatchedOperations = 0;
+    }
+}
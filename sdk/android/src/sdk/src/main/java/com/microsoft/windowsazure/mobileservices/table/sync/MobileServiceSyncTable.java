@@ -34,9 +34,12 @@ import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceList;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.serialization.JsonEntityParser;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreCursor;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -46,6 +49,7 @@ public class MobileServiceSyncTable<E> {
     private MobileServiceJsonSyncTable mInternalTable;
     private MobileServiceClient mClient;
     private Class<E> mClazz;
+    private EntityCursorDecoder<E> mDecoder;
 
     /**
      * Constructor for MobileServiceTable
@@ -67,6 +71,57 @@ public class MobileServiceSyncTable<E> {
         return mInternalTable.getName();
     }
 
+    /**
+     * Restricts the pulls of the table to a subset of its columns. The id
+     * and system columns are always pulled.
+     *
+     * @param columns the columns to pull, or none to pull every column
+     */
+    public void setColumns(String... columns) {
+        this.mInternalTable.setColumns(columns);
+    }
+
+    /**
+     * Restricts the pulls of the table to the columns serialized from the
+     * fields of the entity class, as named by their SerializedName
+     * annotation if any. Static, transient and synthetic fields are skipped.
+     */
+    public void setColumnsFromType() {
+        List<String> columns = new ArrayList<String>();
+
+        for (Field field : EntityCursorDecoder.getSerializedFields(this.mClazz)) {
+            columns.add(EntityCursorDecoder.getColumnName(field));
+        }
+
+        this.mInternalTable.setColumns(columns.toArray(new String[columns.size()]));
+    }
+
+    /**
+     * Reads items straight from the local store columns into entities,
+     * without converting them to JSON first. The entity class must have a
+     * parameterless constructor. Fields are matched to columns by name or
+     * SerializedName annotation; Gson type adapters and naming policies only
+     * apply to fields of types other than strings, numbers, booleans and
+     * dates. The client Gson settings are captured when decoding is enabled.
+     *
+     * @param enabled true to read entities directly, false to read them
+     *                through JSON
+     */
+    public void setDirectDecoding(boolean enabled) {
+        if (!enabled) {
+            this.mDecoder = null;
+            return;
+        }
+
+        EntityCursorDecoder<E> decoder = EntityCursorDecoder.create(this.mClazz, mClient.getGsonBuilder().create());
+
+        if (decoder == null) {
+            throw new IllegalArgumentException("The entity class cannot be read directly from the local store.");
+        }
+
+        this.mDecoder = decoder;
+    }
+
     /**
      * Performs a query against the remote table and stores results.
      *
@@ -139,9 +194,27 @@ public class MobileServiceSyncTable<E> {
      * @return A ListenableFuture that is done when the results have been
      * retrieved.
      */
-    public ListenableFuture<MobileServiceList<E>> read(Query query) {
+    public ListenableFuture<MobileServiceList<E>> read(final Query query) {
         final SettableFuture<MobileServiceList<E>> future = SettableFuture.create();
 
+        final EntityCursorDecoder<E> decoder = this.mDecoder;
+
+        if (decoder != null) {
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        future.set(readDirect(decoder, query));
+                    } catch (Throwable throwable) {
+                        future.setException(throwable);
+                    }
+                }
+            }).start();
+
+            return future;
+        }
+
         ListenableFuture<JsonElement> internalFuture = mInternalTable.read(query);
 
         Futures.addCallback(internalFuture, new FutureCallback<JsonElement>() {
@@ -174,6 +247,47 @@ public class MobileServiceSyncTable<E> {
         return future;
     }
 
+    /**
+     * Reads results from the local table one at a time, without holding
+     * them all in memory.
+     *
+     * @param query   an optional query to filter results
+     * @param visitor the visitor the results are handed to, until it returns
+     *                false
+     * @return A ListenableFuture that is done when the results have been
+     * read, with the number of results visited.
+     */
+    public ListenableFuture<Long> read(final Query query, final MobileServiceSyncTableVisitor<E> visitor) {
+        final EntityCursorDecoder<E> decoder = this.mDecoder;
+
+        if (decoder != null) {
+            final SettableFuture<Long> future = SettableFuture.create();
+
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        future.set(readDirect(decoder, query, visitor));
+                    } catch (Throwable throwable) {
+                        future.setException(throwable);
+                    }
+                }
+            }).start();
+
+            return future;
+        }
+
+        final Gson gson = mClient.getGsonBuilder().create();
+
+        return mInternalTable.read(query, new MobileServiceSyncTableVisitor<JsonObject>() {
+            @Override
+            public boolean visit(JsonObject item) throws Throwable {
+                return visitor.visit(JsonEntityParser.parseResults(item, gson, mClazz).get(0));
+            }
+        });
+    }
+
     /**
      * Looks up an item from the local table.
      *
@@ -353,6 +467,140 @@ public class MobileServiceSyncTable<E> {
         return future;
     }
 
+    /**
+     * Insert items into the local table and enqueue their operations to be
+     * synchronized on context push, in a single local store transaction.
+     * Either every item is inserted, or none is.
+     *
+     * @param items the items to be inserted
+     * @return A ListenableFuture that is done when the items have been
+     * inserted, returning copies of the inserted items including ids.
+     */
+    public ListenableFuture<List<E>> insertAll(List<E> items) {
+        final SettableFuture<List<E>> future = SettableFuture.create();
+
+        Gson gson = mClient.getGsonBuilder().create();
+        List<JsonObject> jsonItems = new ArrayList<JsonObject>(items.size());
+
+        for (E item : items) {
+            jsonItems.add(gson.toJsonTree(item).getAsJsonObject());
+        }
+
+        ListenableFuture<List<JsonObject>> internalFuture = mInternalTable.insertAll(jsonItems);
+
+        Futures.addCallback(internalFuture, new FutureCallback<List<JsonObject>>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                future.setException(throwable);
+            }
+
+            @Override
+            public void onSuccess(List<JsonObject> result) {
+                List<E> entities = new ArrayList<E>(result.size());
+
+                for (JsonObject item : result) {
+                    entities.add(parseResults(item).get(0));
+                }
+
+                future.set(entities);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Update items in the local table and enqueue their operations to be
+     * synchronized on context push, in a single local store transaction.
+     * Either every item is updated, or none is.
+     *
+     * @param items the items to be updated
+     * @return A ListenableFuture that is done when the items have been
+     * updated.
+     */
+    public ListenableFuture<Void> updateAll(List<E> items) {
+        Gson gson = mClient.getGsonBuilder().create();
+        List<JsonObject> jsonItems = new ArrayList<JsonObject>(items.size());
+
+        for (E item : items) {
+            jsonItems.add(gson.toJsonTree(item).getAsJsonObject());
+        }
+
+        return mInternalTable.updateAll(jsonItems);
+    }
+
+    /**
+     * Set properties of the local items matching a query with a single local
+     * store statement, and enqueue an update operation for each of them, in a
+     * single local store transaction.
+     *
+     * @param query   the query whose filter selects the items; it cannot use
+     *                top or skip
+     * @param changes the properties to set, by their serialized names, which
+     *                cannot include the id
+     * @return A ListenableFuture that is done when the items have been
+     * updated, returning the number of updated items.
+     */
+    public ListenableFuture<Integer> updateWhere(Query query, JsonObject changes) {
+        return mInternalTable.updateWhere(query, changes);
+    }
+
+    /**
+     * Delete the local items matching a query with a single local store
+     * statement, and enqueue a delete operation for each of them, in a single
+     * local store transaction.
+     *
+     * @param query the query whose filter selects the items; it cannot use top
+     *              or skip
+     * @return A ListenableFuture that is done when the items have been
+     * deleted, returning the number of deleted items.
+     */
+    public ListenableFuture<Integer> deleteWhere(Query query) {
+        return mInternalTable.deleteWhere(query);
+    }
+
+    private MobileServiceList<E> readDirect(EntityCursorDecoder<E> decoder, Query query) throws Throwable {
+        final List<E> list = new ArrayList<E>();
+
+        readDirect(decoder, query, new MobileServiceSyncTableVisitor<E>() {
+            @Override
+            public boolean visit(E item) {
+                list.add(item);
+                return true;
+            }
+        });
+
+        int count = list.size();
+
+        if (query != null && query.hasInlineCount()) {
+            count = (int) mClient.getSyncContext().count(getName(), query);
+        }
+
+        return new MobileServiceList<E>(list, count);
+    }
+
+    private long readDirect(EntityCursorDecoder<E> decoder, Query query, MobileServiceSyncTableVisitor<E> visitor) throws Throwable {
+        long visited = 0;
+
+        MobileServiceLocalStoreCursor cursor = mClient.getSyncContext().openCursor(getName(), query);
+
+        try {
+            int[] columns = decoder.bind(cursor);
+
+            while (cursor.moveToNext()) {
+                visited++;
+
+                if (!visitor.visit(decoder.decode(cursor, columns))) {
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return visited;
+    }
+
     private List<E> parseResults(JsonElement results) {
         Gson gson = mClient.getGsonBuilder().create();
         return JsonEntityParser.parseResults(results, gson, mClazz);
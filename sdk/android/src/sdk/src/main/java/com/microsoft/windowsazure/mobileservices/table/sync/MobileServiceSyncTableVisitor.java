@@ -0,0 +1,40 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceSyncTableVisitor.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync;
+
+/**
+ * Receives the items of a local table read one at a time, so large results
+ * are never held in memory at once
+ *
+ * @param <T> the item type
+ */
+public interface MobileServiceSyncTableVisitor<T> {
+    /**
+     * Visits an item read from the local table
+     *
+     * @param item the item
+     * @return true to continue reading, false to stop
+     */
+    boolean visit(T item) throws Throwable;
+}
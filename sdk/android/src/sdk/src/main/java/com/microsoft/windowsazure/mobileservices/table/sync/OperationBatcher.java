@@ -0,0 +1,188 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * OperationBatcher.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the local operations of a sync context into groups applied in a
+ * single local store transaction. A group starts with the first waiting
+ * operation and takes the operations that arrive within the batching delay,
+ * up to the maximum group size. Groups are applied one at a time by a
+ * single thread, and the future of each operation is done once its group is
+ * committed.
+ */
+class OperationBatcher {
+
+    /**
+     * A local operation waiting for its group
+     */
+    static class Request {
+        private TableOperation mOperation;
+        private JsonObject mItem;
+        private SettableFuture<Void> mResult;
+
+        private Request(TableOperation operation, JsonObject item) {
+            this.mOperation = operation;
+            this.mItem = item;
+            this.mResult = SettableFuture.create();
+        }
+
+        TableOperation getOperation() {
+            return this.mOperation;
+        }
+
+        JsonObject getItem() {
+            return this.mItem;
+        }
+
+        SettableFuture<Void> getResult() {
+            return this.mResult;
+        }
+    }
+
+    private static final Request STOP = new Request(null, null);
+
+    private MobileServiceSyncContext mContext;
+    private int mMaxOperations;
+    private long mMaxDelayNanos;
+
+    private BlockingQueue<Request> mRequests;
+    private Thread mThread;
+    private boolean mClosed;
+
+    /**
+     * Constructor for OperationBatcher
+     *
+     * @param context        the sync context the groups are applied to
+     * @param maxOperations  the maximum number of operations of a group
+     * @param maxDelayMillis the time a group waits for more operations after
+     *                       its first one
+     */
+    OperationBatcher(MobileServiceSyncContext context, int maxOperations, long maxDelayMillis) {
+        this.mContext = context;
+        this.mMaxOperations = maxOperations;
+        this.mMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.mRequests = new LinkedBlockingQueue<Request>();
+    }
+
+    /**
+     * Queues an operation for the next group
+     *
+     * @param operation the operation
+     * @param item      the item of the operation, or null
+     * @return a future done once the group of the operation is committed, or
+     * null if the batcher is closed and the operation must be applied
+     * directly
+     */
+    synchronized ListenableFuture<Void> submit(TableOperation operation, JsonObject item) {
+        if (this.mClosed) {
+            return null;
+        }
+
+        if (this.mThread == null) {
+            this.mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runGroups();
+                }
+            });
+
+            this.mThread.setDaemon(true);
+            this.mThread.start();
+        }
+
+        Request request = new Request(operation, item);
+
+        this.mRequests.add(request);
+
+        return request.mResult;
+    }
+
+    /**
+     * Stops taking operations. Operations already queued are still applied.
+     */
+    synchronized void close() {
+        if (!this.mClosed) {
+            this.mClosed = true;
+            this.mRequests.add(STOP);
+        }
+    }
+
+    private void runGroups() {
+        boolean stopped = false;
+
+        while (!stopped) {
+            List<Request> group = new ArrayList<Request>();
+
+            try {
+                Request request = this.mRequests.take();
+
+                if (request == STOP) {
+                    return;
+                }
+
+                group.add(request);
+
+                long deadline = System.nanoTime() + this.mMaxDelayNanos;
+
+                while (group.size() < this.mMaxOperations) {
+                    long remaining = deadline - System.nanoTime();
+
+                    request = remaining > 0 ? this.mRequests.poll(remaining, TimeUnit.NANOSECONDS) : this.mRequests.poll();
+
+                    if (request == null) {
+                        break;
+                    } else if (request == STOP) {
+                        stopped = true;
+                        break;
+                    }
+
+                    group.add(request);
+                }
+            } catch (InterruptedException e) {
+                stopped = true;
+            }
+
+            if (group.size() > 0) {
+                try {
+                    this.mContext.processOperationGroup(group);
+                } catch (Throwable throwable) {
+                    for (Request request : group) {
+                        request.mResult.setException(throwable);
+                    }
+                }
+            }
+        }
+    }
+}
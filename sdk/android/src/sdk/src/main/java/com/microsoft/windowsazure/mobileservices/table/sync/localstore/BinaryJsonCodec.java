@@ -0,0 +1,452 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * BinaryJsonCodec.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.Map.Entry;
+
+/**
+ * Compact CBOR-like binary encoding for JsonElement values stored in
+ * ColumnDataType.Other columns.
+ * <p/>
+ * Encoded values start with a two byte header: a marker byte that can never
+ * start a UTF-8 encoded JSON text, followed by the format version. Values
+ * without the header are legacy JSON text.
+ */
+final class BinaryJsonCodec {
+
+    /**
+     * Marker byte. 0xFE is not a valid UTF-8 byte, so it can't collide with JSON text
+     */
+    static final int MARKER = 0xFE;
+
+    /**
+     * Current format version
+     */
+    static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int TAG_DECIMAL = 4;
+
+    private static final int SIMPLE_FALSE = 20;
+    private static final int SIMPLE_TRUE = 21;
+    private static final int SIMPLE_NULL = 22;
+    private static final int SIMPLE_DOUBLE = 27;
+
+    private BinaryJsonCodec() {
+    }
+
+    /**
+     * Returns true if the value carries the binary encoding header
+     *
+     * @param value the stored value
+     */
+    static boolean isEncoded(byte[] value) {
+        return value != null && value.length >= 2 && (value[0] & 0xFF) == MARKER;
+    }
+
+    /**
+     * Encodes a JsonElement
+     *
+     * @param element the element to encode
+     * @return the encoded value, including the header
+     */
+    static byte[] encode(JsonElement element) {
+        Output out = new Output(64);
+        out.write(MARKER);
+        out.write(VERSION);
+        writeElement(out, element);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a value previously encoded with encode
+     *
+     * @param value the stored value
+     * @return the decoded JsonElement
+     */
+    static JsonElement decode(byte[] value) {
+        if (!isEncoded(value)) {
+            throw new IllegalArgumentException("The value is not binary encoded.");
+        }
+
+        int version = value[1] & 0xFF;
+
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported binary encoding version " + version + ".");
+        }
+
+        Input in = new Input(value, 2);
+        JsonElement result = readElement(in);
+
+        if (in.mPosition != value.length) {
+            throw new IllegalArgumentException("Unexpected trailing data in binary encoded value.");
+        }
+
+        return result;
+    }
+
+    private static void writeElement(Output out, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            writeHead(out, MAJOR_SIMPLE, SIMPLE_NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            writeHead(out, MAJOR_MAP, object.entrySet().size());
+
+            for (Entry<String, JsonElement> property : object.entrySet()) {
+                writeText(out, property.getKey());
+                writeElement(out, property.getValue());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            writeHead(out, MAJOR_ARRAY, array.size());
+
+            for (JsonElement item : array) {
+                writeElement(out, item);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+
+            if (primitive.isBoolean()) {
+                writeHead(out, MAJOR_SIMPLE, primitive.getAsBoolean() ? SIMPLE_TRUE : SIMPLE_FALSE);
+            } else if (primitive.isNumber()) {
+                writeNumber(out, primitive);
+            } else {
+                writeText(out, primitive.getAsString());
+            }
+        }
+    }
+
+    private static void writeNumber(Output out, JsonPrimitive primitive) {
+        Number number = primitive.getAsNumber();
+
+        if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+            writeInteger(out, number.longValue());
+            return;
+        }
+
+        if (number instanceof Double || number instanceof Float) {
+            writeDouble(out, number.doubleValue());
+            return;
+        }
+
+        // Numbers parsed from JSON text keep their literal form; only use the
+        // compact representations when they round trip without any change
+        String literal = primitive.getAsString();
+
+        if (isIntegerLiteral(literal)) {
+            try {
+                writeInteger(out, Long.parseLong(literal));
+                return;
+            } catch (NumberFormatException e) {
+                // Out of the long range, falls back to the literal form
+            }
+        } else {
+            try {
+                double doubleValue = Double.parseDouble(literal);
+
+                if (Double.toString(doubleValue).equals(literal)) {
+                    writeDouble(out, doubleValue);
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                // Falls back to the literal form
+            }
+        }
+
+        writeHead(out, MAJOR_TAG, TAG_DECIMAL);
+        writeText(out, literal);
+    }
+
+    private static boolean isIntegerLiteral(String literal) {
+        int length = literal.length();
+
+        if (length == 0 || length > 19) {
+            return false;
+        }
+
+        int start = literal.charAt(0) == '-' ? 1 : 0;
+
+        if (start == length) {
+            return false;
+        }
+
+        for (int i = start; i < length; i++) {
+            char c = literal.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void writeInteger(Output out, long value) {
+        if (value >= 0) {
+            writeHead(out, MAJOR_UNSIGNED, value);
+        } else {
+            writeHead(out, MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private static void writeDouble(Output out, double value) {
+        out.write((MAJOR_SIMPLE << 5) | SIMPLE_DOUBLE);
+        out.writeLong(Double.doubleToLongBits(value));
+    }
+
+    private static void writeText(Output out, String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        writeHead(out, MAJOR_TEXT, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeHead(Output out, int majorType, long value) {
+        int major = majorType << 5;
+
+        if (value < 24) {
+            out.write(major | (int) value);
+        } else if (value <= 0xFFL) {
+            out.write(major | 24);
+            out.write((int) value);
+        } else if (value <= 0xFFFFL) {
+            out.write(major | 25);
+            out.write((int) (value >>> 8));
+            out.write((int) value);
+        } else if (value <= 0xFFFFFFFFL) {
+            out.write(major | 26);
+            out.write((int) (value >>> 24));
+            out.write((int) (value >>> 16));
+            out.write((int) (value >>> 8));
+            out.write((int) value);
+        } else {
+            out.write(major | 27);
+            out.writeLong(value);
+        }
+    }
+
+    private static JsonElement readElement(Input in) {
+        int initial = in.read();
+        int majorType = initial >>> 5;
+        int additional = initial & 0x1F;
+
+        switch (majorType) {
+            case MAJOR_UNSIGNED:
+                return new JsonPrimitive(readLength(in, additional));
+            case MAJOR_NEGATIVE:
+                return new JsonPrimitive(-1 - readLength(in, additional));
+            case MAJOR_TEXT:
+                return new JsonPrimitive(readText(in, additional));
+            case MAJOR_ARRAY: {
+                long size = readLength(in, additional);
+                JsonArray array = new JsonArray();
+
+                for (long i = 0; i < size; i++) {
+                    array.add(readElement(in));
+                }
+
+                return array;
+            }
+            case MAJOR_MAP: {
+                long size = readLength(in, additional);
+                JsonObject object = new JsonObject();
+
+                for (long i = 0; i < size; i++) {
+                    int keyInitial = in.read();
+
+                    if ((keyInitial >>> 5) != MAJOR_TEXT) {
+                        throw new IllegalArgumentException("Invalid binary encoded value: property names must be text.");
+                    }
+
+                    String name = readText(in, keyInitial & 0x1F);
+                    object.add(name, readElement(in));
+                }
+
+                return object;
+            }
+            case MAJOR_TAG: {
+                long tag = readLength(in, additional);
+
+                if (tag != TAG_DECIMAL) {
+                    throw new IllegalArgumentException("Invalid binary encoded value: unknown tag " + tag + ".");
+                }
+
+                int textInitial = in.read();
+
+                if ((textInitial >>> 5) != MAJOR_TEXT) {
+                    throw new IllegalArgumentException("Invalid binary encoded value: decimal literal must be text.");
+                }
+
+                return new JsonPrimitive(new BigDecimal(readText(in, textInitial & 0x1F)));
+            }
+            case MAJOR_SIMPLE:
+                switch (additional) {
+                    case SIMPLE_FALSE:
+                        return new JsonPrimitive(false);
+                    case SIMPLE_TRUE:
+                        return new JsonPrimitive(true);
+                    case SIMPLE_NULL:
+                        return JsonNull.INSTANCE;
+                    case SIMPLE_DOUBLE:
+                        return new JsonPrimitive(Double.longBitsToDouble(in.readLong()));
+                    default:
+                        break;
+                }
+                break;
+            default:
+                break;
+        }
+
+        throw new IllegalArgumentException("Invalid binary encoded value: unexpected byte " + initial + ".");
+    }
+
+    private static String readText(Input in, int additional) {
+        long length = readLength(in, additional);
+
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Invalid binary encoded value: truncated text.");
+        }
+
+        String value = new String(in.mBuffer, in.mPosition, (int) length, UTF8);
+        in.mPosition += (int) length;
+
+        return value;
+    }
+
+    private static long readLength(Input in, int additional) {
+        if (additional < 24) {
+            return additional;
+        }
+
+        switch (additional) {
+            case 24:
+                return in.read();
+            case 25:
+                return ((long) in.read() << 8) | in.read();
+            case 26:
+                return ((long) in.read() << 24) | ((long) in.read() << 16) | ((long) in.read() << 8) | in.read();
+            case 27:
+                return in.readLong();
+            default:
+                throw new IllegalArgumentException("Invalid binary encoded value: unsupported length encoding.");
+        }
+    }
+
+    /**
+     * Growable output buffer
+     */
+    private static class Output {
+        private byte[] mBuffer;
+        private int mCount;
+
+        Output(int capacity) {
+            mBuffer = new byte[capacity];
+        }
+
+        void write(int b) {
+            ensureCapacity(1);
+            mBuffer[mCount++] = (byte) b;
+        }
+
+        void write(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, mBuffer, mCount, bytes.length);
+            mCount += bytes.length;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                mBuffer[mCount++] = (byte) (value >>> shift);
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[mCount];
+            System.arraycopy(mBuffer, 0, result, 0, mCount);
+            return result;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (mCount + extra > mBuffer.length) {
+                byte[] buffer = new byte[Math.max(mBuffer.length * 2, mCount + extra)];
+                System.arraycopy(mBuffer, 0, buffer, 0, mCount);
+                mBuffer = buffer;
+            }
+        }
+    }
+
+    /**
+     * Cursor over an encoded value
+     */
+    private static class Input {
+        private final byte[] mBuffer;
+        private int mPosition;
+
+        Input(byte[] buffer, int position) {
+            mBuffer = buffer;
+            mPosition = position;
+        }
+
+        int read() {
+            if (mPosition >= mBuffer.length) {
+                throw new IllegalArgumentException("Invalid binary encoded value: unexpected end of data.");
+            }
+
+            return mBuffer[mPosition++] & 0xFF;
+        }
+
+        long readLong() {
+            long value = 0;
+
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | read();
+            }
+
+            return value;
+        }
+
+        int remaining() {
+            return mBuffer.length - mPosition;
+        }
+    }
+}
@@ -0,0 +1,1053 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MemoryLocalStore.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import android.util.Pair;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.microsoft.windowsazure.mobileservices.table.query.CompiledQuery;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryEvaluator;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A MobileServiceLocalStore that keeps its tables in memory. Rows are kept in
+ * hash maps by id, and defined indexes are kept as sorted maps used to read
+ * ordered queries without sorting. Queries are compiled with QueryEvaluator,
+ * with the semantics of the SQLite store. Reads run concurrently; writes and
+ * transactions are exclusive. The tables can optionally be saved to a
+ * snapshot file, which is loaded on initialization.
+ */
+public class MemoryLocalStore implements MobileServiceLocalStore {
+
+    private static final Pattern INDEX_EXPRESSION = Pattern.compile(
+            "^\\s*(?:(lower)\\s*\\(\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*\\)|([A-Za-z_][A-Za-z0-9_]*))\\s*(asc|desc)?\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    private Map<String, Map<String, ColumnDataInfo>> mDefinitions;
+    private Map<String, Map<String, List<String>>> mIndexDefinitions;
+    private Map<String, Table> mTables;
+    private ReentrantReadWriteLock mLock;
+    private List<UndoEntry> mUndoLog;
+    private File mSnapshotFile;
+    private boolean mSnapshotLoaded;
+
+    /**
+     * Constructor for MemoryLocalStore
+     */
+    public MemoryLocalStore() {
+        this(null);
+    }
+
+    /**
+     * Constructor for MemoryLocalStore
+     *
+     * @param snapshotFile the file saveSnapshot writes the tables to, loaded
+     *                     on initialization if it exists, or null
+     */
+    public MemoryLocalStore(File snapshotFile) {
+        this.mDefinitions = new HashMap<String, Map<String, ColumnDataInfo>>();
+        this.mIndexDefinitions = new HashMap<String, Map<String, List<String>>>();
+        this.mTables = new HashMap<String, Table>();
+        this.mLock = new ReentrantReadWriteLock();
+        this.mSnapshotFile = snapshotFile;
+    }
+
+    @Override
+    public void initialize() throws MobileServiceLocalStoreException {
+        this.mLock.writeLock().lock();
+
+        try {
+            for (Entry<String, Map<String, ColumnDataInfo>> definition : this.mDefinitions.entrySet()) {
+                Table table = this.mTables.get(definition.getKey());
+
+                if (table == null) {
+                    table = new Table();
+                    this.mTables.put(definition.getKey(), table);
+                }
+
+                table.mColumns = definition.getValue();
+            }
+
+            if (!this.mSnapshotLoaded && this.mSnapshotFile != null && this.mSnapshotFile.exists()) {
+                loadSnapshot();
+            }
+
+            this.mSnapshotLoaded = true;
+
+            for (Entry<String, Table> entry : this.mTables.entrySet()) {
+                entry.getValue().buildIndexes(getIndexDefinitions(entry.getKey(), entry.getValue()));
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void defineTable(String tableName, Map<String, ColumnDataType> columns) throws MobileServiceLocalStoreException {
+        String invTableName = normalizeName(tableName);
+
+        this.mLock.writeLock().lock();
+
+        try {
+            Map<String, ColumnDataInfo> table = this.mDefinitions.get(invTableName);
+
+            if (table == null) {
+                table = new HashMap<String, ColumnDataInfo>();
+                this.mDefinitions.put(invTableName, table);
+            }
+
+            table.put("id", new ColumnDataInfo(ColumnDataType.String, "id"));
+
+            for (Entry<String, ColumnDataType> column : columns.entrySet()) {
+                String invColumnName = normalizeName(column.getKey());
+
+                if (!invColumnName.equals("id")) {
+                    table.put(invColumnName, new ColumnDataInfo(column.getValue(), column.getKey()));
+                }
+            }
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void defineIndex(String tableName, String indexName, String... expressions) throws MobileServiceLocalStoreException {
+        String invTableName = normalizeName(tableName);
+        String invIndexName = normalizeName(indexName);
+
+        if (expressions == null || expressions.length == 0) {
+            throw new IllegalArgumentException("An index must have at least one expression.");
+        }
+
+        List<String> invExpressions = new ArrayList<String>();
+
+        for (String expression : expressions) {
+            if (expression == null || !INDEX_EXPRESSION.matcher(expression).matches()) {
+                throw new IllegalArgumentException("Index expressions must be a column name or lower(column name), optionally followed by ASC or DESC.");
+            }
+
+            invExpressions.add(expression.trim());
+        }
+
+        this.mLock.writeLock().lock();
+
+        try {
+            Map<String, List<String>> indexes = this.mIndexDefinitions.get(invTableName);
+
+            if (indexes == null) {
+                indexes = new LinkedHashMap<String, List<String>>();
+                this.mIndexDefinitions.put(invTableName, indexes);
+            }
+
+            indexes.put(invIndexName, invExpressions);
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public JsonElement read(Query query) throws MobileServiceLocalStoreException {
+        JsonArray rows = new JsonArray();
+
+        for (JsonObject row : select(query)) {
+            rows.add(row);
+        }
+
+        if (query.hasInlineCount()) {
+            JsonObject result = new JsonObject();
+            result.addProperty("count", count(query));
+            result.add("results", rows);
+
+            return result;
+        }
+
+        return rows;
+    }
+
+    @Override
+    public MobileServiceLocalStoreCursor openCursor(Query query) throws MobileServiceLocalStoreException {
+        List<JsonObject> rows = select(query);
+
+        this.mLock.readLock().lock();
+
+        try {
+            List<String> projection = query.getProjection();
+            List<ColumnDataInfo> columns = new ArrayList<ColumnDataInfo>();
+
+            for (ColumnDataInfo column : getTable(query.getTableName()).mColumns.values()) {
+                if (projection == null || projection.size() == 0 || contains(projection, column.getOriginalName())) {
+                    columns.add(column);
+                }
+            }
+
+            return new MemoryCursor(rows, columns);
+        } finally {
+            this.mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long count(Query query) throws MobileServiceLocalStoreException {
+        this.mLock.readLock().lock();
+
+        try {
+            Table table = getTable(query.getTableName());
+            CompiledQuery<JsonObject> compiledQuery = QueryEvaluator.compile(query);
+
+            long count = 0;
+
+            for (JsonObject row : table.mRows.values()) {
+                if (compiledQuery.matches(row)) {
+                    count++;
+                }
+            }
+
+            return count;
+        } catch (MobileServiceLocalStoreException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        } finally {
+            this.mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public JsonObject lookup(String tableName, String itemId) throws MobileServiceLocalStoreException {
+        this.mLock.readLock().lock();
+
+        try {
+            Table table = getTable(tableName);
+            JsonObject row = table.mRows.get(itemId);
+
+            return row != null ? copyRow(row, null) : null;
+        } finally {
+            this.mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void upsert(String tableName, JsonObject item, boolean fromServer) throws MobileServiceLocalStoreException {
+        upsert(tableName, new JsonObject[]{item}, fromServer);
+    }
+
+    @Override
+    public void upsert(String tableName, JsonObject[] items, boolean fromServer) throws MobileServiceLocalStoreException {
+        this.mLock.writeLock().lock();
+
+        try {
+            Table table = getTable(tableName);
+
+            for (JsonObject item : items) {
+                putRow(table, toRow(table, item, null, fromServer));
+            }
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int ingest(String tableName, JsonArray items) throws MobileServiceLocalStoreException {
+        this.mLock.writeLock().lock();
+
+        try {
+            Table table = getTable(tableName);
+            int skipped = 0;
+
+            for (JsonElement element : items) {
+                JsonObject item = element.getAsJsonObject();
+                JsonElement id = item.get("id");
+
+                if (id == null || id.isJsonNull()) {
+                    continue;
+                }
+
+                JsonElement deleted = item.get("__deleted");
+
+                JsonObject existing = table.mRows.get(id.getAsString());
+
+                if (deleted != null && deleted.isJsonPrimitive() && deleted.getAsBoolean()) {
+                    removeRow(table, id.getAsString());
+                } else if (isUnchanged(table, existing, item)) {
+                    skipped++;
+                } else {
+                    putRow(table, toRow(table, item, existing, true));
+                }
+            }
+
+            return skipped;
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void runInTransaction(MobileServiceLocalStoreTransaction transaction) throws MobileServiceLocalStoreException {
+        this.mLock.writeLock().lock();
+
+        try {
+            if (this.mUndoLog != null) {
+                // Nested transactions are part of the outer one
+                transaction.run();
+                return;
+            }
+
+            this.mUndoLog = new ArrayList<UndoEntry>();
+
+            boolean committed = false;
+
+            try {
+                transaction.run();
+                committed = true;
+            } finally {
+                List<UndoEntry> undoLog = this.mUndoLog;
+                this.mUndoLog = null;
+
+                if (!committed) {
+                    for (int i = undoLog.size() - 1; i >= 0; i--) {
+                        UndoEntry entry = undoLog.get(i);
+
+                        if (entry.mPrevious != null) {
+                            entry.mTable.put(entry.mPrevious);
+                        } else {
+                            entry.mTable.remove(entry.mId);
+                        }
+                    }
+                }
+            }
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(String tableName, String itemId) throws MobileServiceLocalStoreException {
+        delete(tableName, new String[]{itemId});
+    }
+
+    @Override
+    public void delete(String tableName, String[] itemsIds) throws MobileServiceLocalStoreException {
+        this.mLock.writeLock().lock();
+
+        try {
+            Table table = getTable(tableName);
+
+            for (String itemId : itemsIds) {
+                removeRow(table, itemId);
+            }
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Query query) throws MobileServiceLocalStoreException {
+        this.mLock.writeLock().lock();
+
+        try {
+            Table table = getTable(query.getTableName());
+            CompiledQuery<JsonObject> compiledQuery = QueryEvaluator.compile(query);
+
+            List<String> ids = new ArrayList<String>();
+
+            for (Entry<String, JsonObject> row : table.mRows.entrySet()) {
+                if (compiledQuery.matches(row.getValue())) {
+                    ids.add(row.getKey());
+                }
+            }
+
+            for (String id : ids) {
+                removeRow(table, id);
+            }
+        } catch (MobileServiceLocalStoreException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void update(Query query, JsonObject changes) throws MobileServiceLocalStoreException {
+        this.mLock.writeLock().lock();
+
+        try {
+            Table table = getTable(query.getTableName());
+            CompiledQuery<JsonObject> compiledQuery = QueryEvaluator.compile(query);
+
+            List<JsonObject> matches = new ArrayList<JsonObject>();
+
+            for (JsonObject row : table.mRows.values()) {
+                if (compiledQuery.matches(row)) {
+                    matches.add(row);
+                }
+            }
+
+            for (JsonObject row : matches) {
+                JsonObject item = new JsonObject();
+
+                for (Entry<String, JsonElement> property : changes.entrySet()) {
+                    item.add(property.getKey(), property.getValue());
+                }
+
+                item.add("id", row.get("id"));
+
+                putRow(table, toRow(table, item, row, false));
+            }
+        } catch (MobileServiceLocalStoreException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        } finally {
+            this.mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the tables to the snapshot file. The snapshot is written to a
+     * temporary file first, so a failed save keeps the previous snapshot.
+     *
+     * @throws MobileServiceLocalStoreException
+     */
+    public void saveSnapshot() throws MobileServiceLocalStoreException {
+        if (this.mSnapshotFile == null) {
+            throw new IllegalStateException("The store has no snapshot file.");
+        }
+
+        File temporaryFile = new File(this.mSnapshotFile.getPath() + ".tmp");
+
+        this.mLock.readLock().lock();
+
+        try {
+            Gson gson = new Gson();
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), "UTF-8"));
+
+            try {
+                writer.beginObject();
+
+                for (Entry<String, Table> table : this.mTables.entrySet()) {
+                    writer.name(table.getKey());
+                    writer.beginArray();
+
+                    for (JsonObject row : table.getValue().mRows.values()) {
+                        gson.toJson(row, writer);
+                    }
+
+                    writer.endArray();
+                }
+
+                writer.endObject();
+            } finally {
+                writer.close();
+            }
+
+            if (this.mSnapshotFile.exists() && !this.mSnapshotFile.delete()) {
+                throw new IOException("Unable to replace the snapshot file.");
+            }
+
+            if (!temporaryFile.renameTo(this.mSnapshotFile)) {
+                throw new IOException("Unable to replace the snapshot file.");
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        } finally {
+            this.mLock.readLock().unlock();
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        JsonParser parser = new JsonParser();
+        JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(this.mSnapshotFile), "UTF-8"));
+
+        try {
+            reader.beginObject();
+
+            while (reader.hasNext()) {
+                Table table = this.mTables.get(reader.nextName());
+
+                if (table == null || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    // Tables no longer defined are dropped
+                    reader.skipValue();
+                    continue;
+                }
+
+                reader.beginArray();
+
+                while (reader.hasNext()) {
+                    JsonObject row = parser.parse(reader).getAsJsonObject();
+                    table.mRows.put(row.get("id").getAsString(), row);
+                }
+
+                reader.endArray();
+            }
+
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private List<JsonObject> select(Query query) throws MobileServiceLocalStoreException {
+        this.mLock.readLock().lock();
+
+        try {
+            Table table = getTable(query.getTableName());
+            CompiledQuery<JsonObject> compiledQuery = QueryEvaluator.compile(query);
+
+            List<Pair<String, QueryOrder>> orderBy = query.getOrderBy();
+            List<JsonObject> page;
+
+            // Rows read through an index are already ordered and can stop as
+            // soon as the page is full; anything else is sorted once filtered
+            Iterable<JsonObject> indexed = orderBy != null && orderBy.size() > 0 ? table.getOrderedRows(orderBy) : null;
+
+            if (indexed != null) {
+                page = selectOrdered(compiledQuery, indexed);
+            } else {
+                page = compiledQuery.apply(table.mRows.values());
+            }
+
+            List<JsonObject> result = new ArrayList<JsonObject>(page.size());
+
+            for (JsonObject row : page) {
+                result.add(copyRow(row, compiledQuery));
+            }
+
+            return result;
+        } catch (MobileServiceLocalStoreException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        } finally {
+            this.mLock.readLock().unlock();
+        }
+    }
+
+    private static List<JsonObject> selectOrdered(CompiledQuery<JsonObject> compiledQuery, Iterable<JsonObject> rows) {
+        int skip = compiledQuery.getSkip();
+        int top = compiledQuery.getTop();
+
+        List<JsonObject> matches = new ArrayList<JsonObject>();
+
+        for (JsonObject row : rows) {
+            if (compiledQuery.matches(row)) {
+                matches.add(row);
+
+                if (top > 0 && matches.size() == skip + top) {
+                    break;
+                }
+            }
+        }
+
+        int from = Math.min(skip, matches.size());
+
+        return matches.subList(from, matches.size());
+    }
+
+    private Table getTable(String tableName) throws MobileServiceLocalStoreException {
+        Table table = this.mTables.get(normalizeName(tableName));
+
+        if (table == null) {
+            throw new MobileServiceLocalStoreException("Table " + tableName + " is not defined or the store is not initialized.");
+        }
+
+        return table;
+    }
+
+    private Map<String, List<String>> getIndexDefinitions(String tableName, Table table) {
+        Map<String, List<String>> indexes = new LinkedHashMap<String, List<String>>();
+
+        // As in the SQLite store, incremental pulls and ordered reads use
+        // __updatedAt
+        if (table.mColumns != null && table.mColumns.containsKey("__updatedat")) {
+            indexes.put("__updatedat", Collections.singletonList("__updatedat"));
+        }
+
+        if (this.mIndexDefinitions.containsKey(tableName)) {
+            indexes.putAll(this.mIndexDefinitions.get(tableName));
+        }
+
+        return indexes;
+    }
+
+    private void putRow(Table table, JsonObject row) {
+        String id = row.get("id").getAsString();
+        JsonObject previous = table.put(row);
+
+        if (this.mUndoLog != null) {
+            this.mUndoLog.add(new UndoEntry(table, id, previous));
+        }
+    }
+
+    private void removeRow(Table table, String id) {
+        JsonObject previous = table.remove(id);
+
+        if (previous != null && this.mUndoLog != null) {
+            this.mUndoLog.add(new UndoEntry(table, id, previous));
+        }
+    }
+
+    /**
+     * Builds the stored row of an item, keyed by the defined column names.
+     * Columns the item does not carry are null, or keep the values of the
+     * existing row if there is one.
+     */
+    private static JsonObject toRow(Table table, JsonObject item, JsonObject existing, boolean fromServer) throws MobileServiceLocalStoreException {
+        JsonElement id = item.get("id");
+
+        if (id == null || id.isJsonNull()) {
+            throw new MobileServiceLocalStoreException("Items must have an id.");
+        }
+
+        JsonObject row = new JsonObject();
+
+        for (ColumnDataInfo column : table.mColumns.values()) {
+            row.add(column.getOriginalName(), existing != null ? existing.get(column.getOriginalName()) : JsonNull.INSTANCE);
+        }
+
+        for (Entry<String, JsonElement> property : item.entrySet()) {
+            ColumnDataInfo column = table.mColumns.get(property.getKey().toLowerCase(Locale.getDefault()));
+
+            if (column == null) {
+                if (fromServer) {
+                    continue;
+                }
+
+                throw new MobileServiceLocalStoreException("Column " + property.getKey() + " is not defined.");
+            }
+
+            row.add(column.getOriginalName(), toColumnValue(column.getColumnDataType(), property.getValue()));
+        }
+
+        return row;
+    }
+
+    /**
+     * Returns true if every column a pulled item carries holds its value in
+     * the existing row, so a row pulled again with more columns is updated
+     */
+    private static boolean isUnchanged(Table table, JsonObject existing, JsonObject item) {
+        if (existing == null) {
+            return false;
+        }
+
+        for (Entry<String, JsonElement> property : item.entrySet()) {
+            ColumnDataInfo column = table.mColumns.get(property.getKey().toLowerCase(Locale.getDefault()));
+
+            if (column == null) {
+                continue;
+            }
+
+            JsonElement value = existing.get(column.getOriginalName());
+
+            if (!toColumnValue(column.getColumnDataType(), property.getValue()).equals(value != null ? value : JsonNull.INSTANCE)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static JsonElement toColumnValue(ColumnDataType columnDataType, JsonElement value) {
+        if (value == null || value.isJsonNull()) {
+            return JsonNull.INSTANCE;
+        }
+
+        if (columnDataType == ColumnDataType.Boolean && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()) {
+            return new JsonPrimitive(value.getAsDouble() != 0);
+        }
+
+        if (!value.isJsonPrimitive()) {
+            // Kept apart from the item, which the caller may change later
+            return new JsonParser().parse(value.toString());
+        }
+
+        return value;
+    }
+
+    private static JsonObject copyRow(JsonObject row, CompiledQuery<JsonObject> compiledQuery) {
+        JsonObject result = new JsonObject();
+
+        for (Entry<String, JsonElement> property : row.entrySet()) {
+            if (compiledQuery != null && !compiledQuery.isProjected(property.getKey())) {
+                continue;
+            }
+
+            JsonElement value = property.getValue();
+
+            result.add(property.getKey(), value == null || value.isJsonPrimitive() || value.isJsonNull() ? value : new JsonParser().parse(value.toString()));
+        }
+
+        return result;
+    }
+
+    private static boolean contains(List<String> names, String name) {
+        for (String candidate : names) {
+            if (candidate.trim().equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String normalizeName(String name) {
+        if (name == null || name.trim().length() == 0) {
+            throw new IllegalArgumentException("Table, column and index names cannot be null or empty.");
+        }
+
+        return name.trim().toLowerCase(Locale.getDefault());
+    }
+
+    private static class Table {
+        private Map<String, ColumnDataInfo> mColumns;
+        private Map<String, JsonObject> mRows = new LinkedHashMap<String, JsonObject>();
+        private List<Index> mIndexes = new ArrayList<Index>();
+
+        void buildIndexes(Map<String, List<String>> definitions) {
+            this.mIndexes = new ArrayList<Index>();
+
+            for (List<String> expressions : definitions.values()) {
+                Index index = new Index(expressions);
+
+                for (JsonObject row : this.mRows.values()) {
+                    index.add(row);
+                }
+
+                this.mIndexes.add(index);
+            }
+        }
+
+        JsonObject put(JsonObject row) {
+            JsonObject previous = this.mRows.put(row.get("id").getAsString(), row);
+
+            for (Index index : this.mIndexes) {
+                if (previous != null) {
+                    index.remove(previous);
+                }
+
+                index.add(row);
+            }
+
+            return previous;
+        }
+
+        JsonObject remove(String id) {
+            JsonObject previous = this.mRows.remove(id);
+
+            if (previous != null) {
+                for (Index index : this.mIndexes) {
+                    index.remove(previous);
+                }
+            }
+
+            return previous;
+        }
+
+        /**
+         * Returns the rows in the given order if an index provides it, or null
+         */
+        Iterable<JsonObject> getOrderedRows(List<Pair<String, QueryOrder>> orderBy) {
+            for (Index index : this.mIndexes) {
+                Boolean reversed = index.getDirection(orderBy);
+
+                if (reversed != null) {
+                    return index.getRows(this.mRows, reversed);
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * A sorted index on one or more columns
+     */
+    private static class Index {
+        private String[] mColumns;
+        private boolean[] mLower;
+        private boolean[] mDescending;
+        private TreeMap<Object[], Set<String>> mEntries;
+
+        Index(List<String> expressions) {
+            this.mColumns = new String[expressions.size()];
+            this.mLower = new boolean[expressions.size()];
+            this.mDescending = new boolean[expressions.size()];
+
+            for (int i = 0; i < expressions.size(); i++) {
+                Matcher matcher = INDEX_EXPRESSION.matcher(expressions.get(i));
+                matcher.matches();
+
+                this.mLower[i] = matcher.group(1) != null;
+                this.mColumns[i] = this.mLower[i] ? matcher.group(2) : matcher.group(3);
+                this.mDescending[i] = matcher.group(4) != null && matcher.group(4).equalsIgnoreCase("desc");
+            }
+
+            this.mEntries = new TreeMap<Object[], Set<String>>(new Comparator<Object[]>() {
+                @Override
+                public int compare(Object[] x, Object[] y) {
+                    for (int i = 0; i < x.length; i++) {
+                        int result = QueryEvaluator.compareValues(x[i], y[i]);
+
+                        if (result != 0) {
+                            return mDescending[i] ? -result : result;
+                        }
+                    }
+
+                    return 0;
+                }
+            });
+        }
+
+        void add(JsonObject row) {
+            Object[] key = getKey(row);
+            Set<String> ids = this.mEntries.get(key);
+
+            if (ids == null) {
+                ids = new LinkedHashSet<String>();
+                this.mEntries.put(key, ids);
+            }
+
+            ids.add(row.get("id").getAsString());
+        }
+
+        void remove(JsonObject row) {
+            Object[] key = getKey(row);
+            Set<String> ids = this.mEntries.get(key);
+
+            if (ids != null) {
+                ids.remove(row.get("id").getAsString());
+
+                if (ids.isEmpty()) {
+                    this.mEntries.remove(key);
+                }
+            }
+        }
+
+        /**
+         * Returns false if the index is in the given order, true if it is in
+         * the reverse order, or null if it cannot provide the order
+         */
+        Boolean getDirection(List<Pair<String, QueryOrder>> orderBy) {
+            if (orderBy.size() > this.mColumns.length) {
+                return null;
+            }
+
+            Boolean reversed = null;
+
+            for (int i = 0; i < orderBy.size(); i++) {
+                if (this.mLower[i] || !this.mColumns[i].equalsIgnoreCase(orderBy.get(i).first.trim())) {
+                    return null;
+                }
+
+                boolean descending = orderBy.get(i).second == QueryOrder.Descending;
+                boolean columnReversed = descending != this.mDescending[i];
+
+                if (reversed != null && reversed != columnReversed) {
+                    return null;
+                }
+
+                reversed = columnReversed;
+            }
+
+            return reversed;
+        }
+
+        Iterable<JsonObject> getRows(Map<String, JsonObject> rows, boolean reversed) {
+            List<JsonObject> result = new ArrayList<JsonObject>(rows.size());
+
+            for (Set<String> ids : (reversed ? this.mEntries.descendingMap() : this.mEntries).values()) {
+                for (String id : ids) {
+                    result.add(rows.get(id));
+                }
+            }
+
+            return result;
+        }
+
+        private Object[] getKey(JsonObject row) {
+            Object[] key = new Object[this.mColumns.length];
+
+            for (int i = 0; i < key.length; i++) {
+                Object value = QueryEvaluator.getValue(row, this.mColumns[i]);
+
+                if (this.mLower[i] && value instanceof String) {
+                    value = ((String) value).toLowerCase(Locale.US);
+                }
+
+                key[i] = value;
+            }
+
+            return key;
+        }
+    }
+
+    private static class UndoEntry {
+        private Table mTable;
+        private String mId;
+        private JsonObject mPrevious;
+
+        UndoEntry(Table table, String id, JsonObject previous) {
+            this.mTable = table;
+            this.mId = id;
+            this.mPrevious = previous;
+        }
+    }
+
+    /**
+     * A cursor over rows selected when it was opened
+     */
+    private static class MemoryCursor implements MobileServiceLocalStoreCursor {
+        private List<JsonObject> mRows;
+        private List<ColumnDataInfo> mColumns;
+        private int mPosition = -1;
+
+        MemoryCursor(List<JsonObject> rows, List<ColumnDataInfo> columns) {
+            this.mRows = rows;
+            this.mColumns = columns;
+        }
+
+        @Override
+        public boolean moveToNext() throws MobileServiceLocalStoreException {
+            if (this.mRows == null) {
+                return false;
+            }
+
+            if (this.mPosition < this.mRows.size()) {
+                this.mPosition++;
+            }
+
+            return this.mPosition < this.mRows.size();
+        }
+
+        @Override
+        public JsonObject getRow() throws MobileServiceLocalStoreException {
+            return getCurrentRow();
+        }
+
+        @Override
+        public int getColumnIndex(String columnName) {
+            for (int i = 0; i < this.mColumns.size(); i++) {
+                if (this.mColumns.get(i).getOriginalName().equalsIgnoreCase(columnName)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        @Override
+        public ColumnDataType getColumnDataType(int columnIndex) {
+            return this.mColumns.get(columnIndex).getColumnDataType();
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) throws MobileServiceLocalStoreException {
+            return getElement(columnIndex) == null;
+        }
+
+        @Override
+        public String getString(int columnIndex) throws MobileServiceLocalStoreException {
+            JsonElement value = getElement(columnIndex);
+            return value == null ? null : (value.isJsonPrimitive() ? value.getAsString() : value.toString());
+        }
+
+        @Override
+        public long getLong(int columnIndex) throws MobileServiceLocalStoreException {
+            JsonElement value = getElement(columnIndex);
+            return value == null ? 0 : value.getAsLong();
+        }
+
+        @Override
+        public double getDouble(int columnIndex) throws MobileServiceLocalStoreException {
+            JsonElement value = getElement(columnIndex);
+            return value == null ? 0 : value.getAsDouble();
+        }
+
+        @Override
+        public boolean getBoolean(int columnIndex) throws MobileServiceLocalStoreException {
+            JsonElement value = getElement(columnIndex);
+            return value != null && value.getAsBoolean();
+        }
+
+        @Override
+        public JsonElement getJson(int columnIndex) throws MobileServiceLocalStoreException {
+            return getElement(columnIndex);
+        }
+
+        @Override
+        public void close() {
+            this.mRows = null;
+        }
+
+        private JsonObject getCurrentRow() {
+            if (this.mRows == null) {
+                throw new IllegalStateException("The cursor is closed.");
+            }
+
+            return this.mRows.get(this.mPosition);
+        }
+
+        private JsonElement getElement(int columnIndex) {
+            JsonElement value = getCurrentRow().get(this.mColumns.get(columnIndex).getOriginalName());
+
+            return value == null || value.isJsonNull() ? null : value;
+        }
+    }
+}
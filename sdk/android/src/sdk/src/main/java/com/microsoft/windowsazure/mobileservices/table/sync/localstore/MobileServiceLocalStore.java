@@ -23,6 +23,7 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
@@ -47,6 +48,19 @@ public interface MobileServiceLocalStore {
      */
     void defineTable(String tableName, Map<String, ColumnDataType> columns) throws MobileServiceLocalStoreException;
 
+    /**
+     * Defines an index to be created/updated on initialization. Each
+     * expression is a column name or lower(column), optionally followed by
+     * ASC or DESC; several expressions define a composite index. Indexes no
+     * longer defined are dropped on initialization.
+     *
+     * @param tableName   the table name
+     * @param indexName   the index name, unique for the table
+     * @param expressions the indexed expressions
+     * @throws MobileServiceLocalStoreException
+     */
+    void defineIndex(String tableName, String indexName, String... expressions) throws MobileServiceLocalStoreException;
+
     /**
      * Retrieve results from the local store.
      *
@@ -56,6 +70,27 @@ public interface MobileServiceLocalStore {
      */
     JsonElement read(Query query) throws MobileServiceLocalStoreException;
 
+    /**
+     * Opens a cursor over the results of a query. Rows are decoded as the
+     * cursor moves instead of being read all at once; the inline count
+     * option of the query is ignored. The cursor must be closed.
+     *
+     * @param query a query to specify the local table and filter results
+     * @return A cursor positioned before the first result
+     * @throws MobileServiceLocalStoreException
+     */
+    MobileServiceLocalStoreCursor openCursor(Query query) throws MobileServiceLocalStoreException;
+
+    /**
+     * Counts the items matching the filter of a query, ignoring its top,
+     * skip and ordering.
+     *
+     * @param query a query to specify the local table and filter items
+     * @return the number of matching items
+     * @throws MobileServiceLocalStoreException
+     */
+    long count(Query query) throws MobileServiceLocalStoreException;
+
     /**
      * Looks up an item from the local store.
      *
@@ -86,6 +121,31 @@ public interface MobileServiceLocalStore {
      */
     void upsert(String tableName, JsonObject[] items, boolean fromServer) throws MobileServiceLocalStoreException;
 
+    /**
+     * Stores a page of items pulled from the server in a single transaction.
+     * Items flagged as deleted are removed and the others are inserted or
+     * updated as in upsert with fromServer set to true. Columns an item does
+     * not carry keep their stored values. Items whose columns all hold the
+     * values of their stored row are skipped without writing the row. Items
+     * without an id are ignored.
+     *
+     * @param tableName the local table name
+     * @param items     the pulled items
+     * @return the number of items skipped because their row was unchanged
+     * @throws MobileServiceLocalStoreException
+     */
+    int ingest(String tableName, JsonArray items) throws MobileServiceLocalStoreException;
+
+    /**
+     * Runs a unit of work in a single transaction: either all the changes it
+     * makes through the store are kept, or none is. Changes made by other
+     * threads wait until the transaction ends.
+     *
+     * @param transaction the unit of work
+     * @throws MobileServiceLocalStoreException
+     */
+    void runInTransaction(MobileServiceLocalStoreTransaction transaction) throws MobileServiceLocalStoreException;
+
     /**
      * Delete an item from the local store.
      *
@@ -111,4 +171,15 @@ public interface MobileServiceLocalStore {
      * @throws MobileServiceLocalStoreException
      */
     void delete(Query query) throws MobileServiceLocalStoreException;
+
+    /**
+     * Sets properties of the items matching a query with a single statement.
+     * Columns the changes do not carry keep their values. The paging and
+     * ordering of the query are ignored.
+     *
+     * @param query   a query to specify the local table and filter items
+     * @param changes the properties to set
+     * @throws MobileServiceLocalStoreException
+     */
+    void update(Query query, JsonObject changes) throws MobileServiceLocalStoreException;
 }
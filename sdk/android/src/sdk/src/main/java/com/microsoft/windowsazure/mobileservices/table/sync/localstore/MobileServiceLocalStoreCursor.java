@@ -0,0 +1,127 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * MobileServiceLocalStoreCursor.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+
+/**
+ * A forward-only handle over the rows of a local store query, returned by
+ * MobileServiceLocalStore.openCursor. Rows are decoded one at a time as the
+ * cursor moves, so a query can be read in constant memory. The columns of
+ * the current row can also be read one by one, by their index, without
+ * decoding the whole row. The cursor holds store resources until it is
+ * closed.
+ */
+public interface MobileServiceLocalStoreCursor extends Closeable {
+    /**
+     * Moves to the next row
+     *
+     * @return false if there are no more rows
+     * @throws MobileServiceLocalStoreException
+     */
+    boolean moveToNext() throws MobileServiceLocalStoreException;
+
+    /**
+     * Decodes the current row
+     *
+     * @return the current row
+     * @throws MobileServiceLocalStoreException
+     */
+    JsonObject getRow() throws MobileServiceLocalStoreException;
+
+    /**
+     * Returns the index of a column of the results, resolved once so that
+     * rows can be read without looking up the column by name each time
+     *
+     * @param columnName the column name, in any case
+     * @return the column index, or -1 if the results do not have the column
+     */
+    int getColumnIndex(String columnName);
+
+    /**
+     * Returns the data type the table defines for a column of the results
+     *
+     * @param columnIndex the column index
+     */
+    ColumnDataType getColumnDataType(int columnIndex);
+
+    /**
+     * Returns true if a column of the current row is null
+     *
+     * @param columnIndex the column index
+     * @throws MobileServiceLocalStoreException
+     */
+    boolean isNull(int columnIndex) throws MobileServiceLocalStoreException;
+
+    /**
+     * Returns a column of the current row as a String
+     *
+     * @param columnIndex the column index
+     * @throws MobileServiceLocalStoreException
+     */
+    String getString(int columnIndex) throws MobileServiceLocalStoreException;
+
+    /**
+     * Returns a column of the current row as a long
+     *
+     * @param columnIndex the column index
+     * @throws MobileServiceLocalStoreException
+     */
+    long getLong(int columnIndex) throws MobileServiceLocalStoreException;
+
+    /**
+     * Returns a column of the current row as a double
+     *
+     * @param columnIndex the column index
+     * @throws MobileServiceLocalStoreException
+     */
+    double getDouble(int columnIndex) throws MobileServiceLocalStoreException;
+
+    /**
+     * Returns a column of the current row as a boolean
+     *
+     * @param columnIndex the column index
+     * @throws MobileServiceLocalStoreException
+     */
+    boolean getBoolean(int columnIndex) throws MobileServiceLocalStoreException;
+
+    /**
+     * Returns a column of the current row as a JsonElement, as decoded for
+     * columns of type Other
+     *
+     * @param columnIndex the column index
+     * @throws MobileServiceLocalStoreException
+     */
+    JsonElement getJson(int columnIndex) throws MobileServiceLocalStoreException;
+
+    /**
+     * Releases the resources held by the cursor. Calling it more than once
+     * has no effect.
+     */
+    @Override
+    void close();
+}
@@ -30,6 +30,7 @@ import android.database.DatabaseErrorHandler;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 
 import com.google.gson.JsonArray;
@@ -37,6 +38,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QuerySQLWriter;
 
@@ -46,15 +48,77 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Implements MobileServiceLocalStore backed by an SQLite DB
  */
 public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceLocalStore {
     private Map<String, Map<String, ColumnDataInfo>> mTables;
+    private SQLiteDatabase mDatabase;
     private int mConcurrencyCount;
     private Object mConcurrencyLock;
 
+    /**
+     * Number of open cursors of each thread that opened cursors
+     */
+    private Map<Thread, Integer> mOpenCursors;
+    private boolean mBinaryEncodingEnabled;
+    private SQLiteStatementCache mStatements;
+
+    /**
+     * Normalized names of the column names seen so far
+     */
+    private Map<String, String> mColumnNames;
+
+    /**
+     * Indexes defined for each table, by index name
+     */
+    private Map<String, Map<String, List<String>>> mIndexes;
+
+    /**
+     * True if SQLite supports the ON CONFLICT DO UPDATE clause, which it does
+     * from 3.24.0
+     */
+    private boolean mUpsertSupported;
+
+    /**
+     * Maximum number of compiled write statements kept by the store
+     */
+    private static final int MAX_CACHED_STATEMENTS = 32;
+
+    /**
+     * Prefix of the names of the indexes managed by the store
+     */
+    private static final String INDEX_PREFIX = "__ix_";
+
+    /**
+     * Indexed expressions: a column name or lower(column), then an optional
+     * sort order
+     */
+    private static final Pattern INDEX_EXPRESSION = Pattern.compile(
+            "^\\s*(?:(lower)\\s*\\(\\s*([A-Za-z_][A-Za-z0-9_]*)\\s*\\)|([A-Za-z_][A-Za-z0-9_]*))\\s*(asc|desc)?\\s*$",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Number of ids deleted by each statement when ingesting pulled items
+     */
+    private static final int DELETE_BATCH_SIZE = 100;
+
+    /**
+     * Size of the statement cache of the database connection, used by reads.
+     * SQLiteDatabase.MAX_SQL_CACHE_SIZE is the largest allowed value
+     */
+    private static final int SQL_CACHE_SIZE = 100;
+
+    /**
+     * Longest time close waits for the operations in progress and the open
+     * cursors, in milliseconds
+     */
+    private static final long CLOSE_TIMEOUT = 30000;
+
     /**
      * Constructor for SQLiteLocalStore
      *
@@ -72,6 +136,12 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
         this.mConcurrencyCount = 0;
         this.mConcurrencyLock = new Object();
+        this.mOpenCursors = new HashMap<Thread, Integer>();
+        this.mStatements = new SQLiteStatementCache(MAX_CACHED_STATEMENTS);
+        this.mColumnNames = new ConcurrentHashMap<String, String>();
+        this.mIndexes = new HashMap<String, Map<String, List<String>>>();
+
+        enableWriteAheadLogging();
     }
 
     /**
@@ -92,6 +162,35 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     public SQLiteLocalStore(Context context, String name, CursorFactory factory, int version, DatabaseErrorHandler errorHandler) {
         super(context, name, factory, version, errorHandler);
         this.mTables = new HashMap<String, Map<String, ColumnDataInfo>>();
+        this.mConcurrencyCount = 0;
+        this.mConcurrencyLock = new Object();
+        this.mOpenCursors = new HashMap<Thread, Integer>();
+        this.mStatements = new SQLiteStatementCache(MAX_CACHED_STATEMENTS);
+        this.mColumnNames = new ConcurrentHashMap<String, String>();
+        this.mIndexes = new HashMap<String, Map<String, List<String>>>();
+
+        enableWriteAheadLogging();
+    }
+
+    /**
+     * Returns true if values of ColumnDataType.Other columns are written using
+     * the compact binary encoding
+     */
+    public boolean isBinaryEncodingEnabled() {
+        return this.mBinaryEncodingEnabled;
+    }
+
+    /**
+     * Enables or disables the compact binary encoding for values of
+     * ColumnDataType.Other columns. Values are stored as BLOBs instead of JSON
+     * text, and read back without re-parsing any text. Values previously stored
+     * as JSON text remain readable in both modes, and are re-encoded the next
+     * time they are written.
+     *
+     * @param enabled true to store Other columns in binary form
+     */
+    public void setBinaryEncodingEnabled(boolean enabled) {
+        this.mBinaryEncodingEnabled = enabled;
     }
 
     @Override
@@ -101,6 +200,10 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             for (Entry<String, Map<String, ColumnDataInfo>> entry : this.mTables.entrySet()) {
                 createTableFromObject(db, entry.getKey(), entry.getValue());
             }
+
+            updateIndexes(db);
+
+            this.mUpsertSupported = isSQLiteVersionAtLeast(db, 3, 24);
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         } finally {
@@ -133,51 +236,128 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
 
+    @Override
+    public void defineIndex(String tableName, String indexName, String... expressions) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = normalizeTableName(tableName);
+            String invIndexName = normalizeColumnName(indexName);
+
+            if (expressions.length == 0) {
+                throw new IllegalArgumentException("An index must have at least one expression.");
+            }
+
+            List<String> invExpressions = new ArrayList<String>(expressions.length);
+
+            for (String expression : expressions) {
+                invExpressions.add(normalizeIndexExpression(expression));
+            }
+
+            Map<String, List<String>> indexes = this.mIndexes.get(invTableName);
+
+            if (indexes == null) {
+                indexes = new HashMap<String, List<String>>();
+                this.mIndexes.put(invTableName, indexes);
+            }
+
+            indexes.put(invIndexName, invExpressions);
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
     @Override
     public JsonElement read(Query query) throws MobileServiceLocalStoreException {
+        JsonElement result;
+        JsonArray rows = new JsonArray();
+
+        MobileServiceLocalStoreCursor cursor = openCursor(query);
+
         try {
-            JsonElement result;
-            JsonArray rows = new JsonArray();
+            while (cursor.moveToNext()) {
+                rows.add(cursor.getRow());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (query.hasInlineCount()) {
+            JsonObject resObj = new JsonObject();
+            resObj.addProperty("count", count(query));
+            resObj.add("results", rows);
+            result = resObj;
+        } else {
+            result = rows;
+        }
+
+        return result;
+    }
 
+    /**
+     * Opens a cursor over the results of a query. The cursor holds the
+     * database connection until it is closed, and close waits for it: close
+     * fails at once if called by the thread that opened the cursor, and after
+     * CLOSE_TIMEOUT if the cursor is never closed.
+     *
+     * @param query a query to specify the local table and filter results
+     * @return A cursor positioned before the first result
+     * @throws MobileServiceLocalStoreException
+     */
+    @Override
+    public MobileServiceLocalStoreCursor openCursor(Query query) throws MobileServiceLocalStoreException {
+        try {
             String invTableName = normalizeTableName(query.getTableName());
 
             Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
 
             String[] columns = getColumns(query, table);
 
-            String whereClause = getWhereClause(query);
+            List<String> arguments = new ArrayList<String>();
+
+            String whereClause = getWhereClause(query, arguments);
+
+            String[] selectionArgs = arguments.toArray(new String[arguments.size()]);
 
             String orderByClause = QuerySQLWriter.getOrderByClause(query);
 
             String limitClause = QuerySQLWriter.getLimitClause(query);
 
-            Integer inlineCount = null;
-
-            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+            SQLiteDatabase db = this.getReadableDatabaseSynchronized();
 
             try {
-                Cursor cursor = null;
+                Cursor cursor = db.query(invTableName, columns, whereClause, selectionArgs, null, null, orderByClause, limitClause);
 
-                try {
-                    if (query.hasInlineCount()) {
-                        cursor = db.query(invTableName, columns, whereClause, null, null, null, orderByClause, null);
-                        inlineCount = cursor.getCount();
+                return new SQLiteCursor(db, cursor, new RowDecoder(cursor, table), Thread.currentThread());
+            } catch (Throwable t) {
+                this.closeDatabaseSynchronized(db);
+                throw t;
+            }
+        } catch (MobileServiceLocalStoreException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
 
-                        if (query.getSkip() > 0) {
-                            cursor.move(query.getSkip());
-                        }
-                    } else {
-                        cursor = db.query(invTableName, columns, whereClause, null, null, null, orderByClause, limitClause);
-                    }
+    @Override
+    public long count(Query query) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = normalizeTableName(query.getTableName());
 
-                    int limit = 0;
+            List<String> arguments = new ArrayList<String>();
 
-                    while (!(query.getTop() > 0 && limit == query.getTop()) && cursor.moveToNext()) {
-                        JsonObject row = parseRow(cursor, table);
-                        rows.add(row);
+            String whereClause = getWhereClause(query, arguments);
 
-                        limit++;
-                    }
+            String[] selectionArgs = arguments.toArray(new String[arguments.size()]);
+
+            SQLiteDatabase db = this.getReadableDatabaseSynchronized();
+
+            try {
+                Cursor cursor = null;
+
+                try {
+                    cursor = db.query(invTableName, new String[]{"COUNT(*)"}, whereClause, selectionArgs, null, null, null);
+
+                    return cursor.moveToNext() ? cursor.getLong(0) : 0;
                 } finally {
                     if (cursor != null && !cursor.isClosed()) {
                         cursor.close();
@@ -186,17 +366,8 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             } finally {
                 this.closeDatabaseSynchronized(db);
             }
-
-            if (query.hasInlineCount()) {
-                JsonObject resObj = new JsonObject();
-                resObj.addProperty("count", inlineCount);
-                resObj.add("results", rows);
-                result = resObj;
-            } else {
-                result = rows;
-            }
-
-            return result;
+        } catch (MobileServiceLocalStoreException e) {
+            throw e;
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         }
@@ -210,16 +381,16 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
             Map<String, ColumnDataInfo> table = this.mTables.get(invTableName);
 
-            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+            SQLiteDatabase db = this.getReadableDatabaseSynchronized();
             
             try {
                 Cursor cursor = null;
 
                 try {
-                    cursor = db.query(invTableName, table.keySet().toArray(new String[0]), "id = '" + itemId + "'", null, null, null, null);
+                    cursor = db.query(invTableName, table.keySet().toArray(new String[0]), "id = ?", new String[]{itemId}, null, null, null);
 
                     if (cursor.moveToNext()) {
-                        result = parseRow(cursor, table);
+                        result = new RowDecoder(cursor, table).decode(cursor);
                     }
                 } finally {
                     if (cursor != null && !cursor.isClosed()) {
@@ -255,47 +426,131 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         try {
             String invTableName = normalizeTableName(tableName);
 
-            int itemsCount = items.length;
+            if (items.length == 0) {
+                return;
+            }
 
             int tableColumnsSize = mTables.get(invTableName).entrySet().size();
             int maxSize = 999;
 
             int pageSize = maxSize / tableColumnsSize;
 
-            int pageCounts = (itemsCount / pageSize) + 1;
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+
+            try {
+                db.beginTransaction();
+
+                try {
+                    for (int start = 0; start < items.length; start += pageSize) {
+                        int localPageSize = Math.min(pageSize, items.length - start);
 
-            int pendingItems = itemsCount;
+                        JsonObject[] pageItems = new JsonObject[localPageSize];
 
-            for (int i=0; i < pageCounts; i++) {
+                        System.arraycopy(items, start, pageItems, 0, localPageSize);
 
-                int localPageSize = pageSize;
+                        Statement statement = generateUpsertStatement(invTableName, pageItems, fromServer);
 
-                if (pendingItems < pageSize) {
-                    localPageSize = pendingItems;
-                }
+                        if (fromServer && statement.sql.length() == 0) {
+                            break;
+                        }
 
-                JsonObject[] pageItems = new JsonObject[localPageSize];
+                        this.mStatements.execute(db, statement.sql, statement.parameters.toArray());
+                    }
 
-                for(int j=0; j < localPageSize; j++) {
-                    pageItems[j] = items[(i * pageSize) + j];
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
+            } finally {
+                this.closeDatabaseSynchronized(db);
+            }
+
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public int ingest(String tableName, JsonArray items) throws MobileServiceLocalStoreException {
+        try {
+            String invTableName = normalizeTableName(tableName);
 
-                Statement statement = generateUpsertStatement(invTableName, pageItems, fromServer);
+            Map<String, ColumnDataInfo> tableDefinition = mTables.get(invTableName);
 
-                if (fromServer && statement.sql == "")
-                    return;
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
-                SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+            try {
+                db.beginTransaction();
 
                 try {
-                    db.execSQL(statement.sql, statement.parameters.toArray());
+                    StringBuilder sql = new StringBuilder();
+                    Object[] deletedIds = new Object[DELETE_BATCH_SIZE];
+                    int deletedCount = 0;
+                    int skippedCount = 0;
+
+                    for (JsonElement element : items) {
+                        JsonObject item = element.getAsJsonObject();
+                        JsonElement itemId = item.get(MobileServiceSystemColumns.Id);
+
+                        if (itemId == null) {
+                            continue;
+                        }
+
+                        JsonElement deleted = item.get(MobileServiceSystemColumns.Deleted);
+
+                        if (deleted != null && deleted.getAsBoolean()) {
+                            deletedIds[deletedCount++] = itemId.getAsString();
+
+                            if (deletedCount == DELETE_BATCH_SIZE) {
+                                this.mStatements.execute(db, getDeleteByIdsSql(invTableName, deletedCount), deletedIds);
+                                deletedCount = 0;
+                            }
+                        } else if (!ingestItem(db, invTableName, tableDefinition, item, sql)) {
+                            skippedCount++;
+                        }
+                    }
+
+                    if (deletedCount > 0) {
+                        Object[] lastIds = new Object[deletedCount];
+                        System.arraycopy(deletedIds, 0, lastIds, 0, deletedCount);
+
+                        this.mStatements.execute(db, getDeleteByIdsSql(invTableName, deletedCount), lastIds);
+                    }
+
+                    db.setTransactionSuccessful();
+
+                    return skippedCount;
                 } finally {
-                    this.closeDatabaseSynchronized(db);
+                    db.endTransaction();
                 }
-
-                pendingItems -= pageSize;
+            } finally {
+                this.closeDatabaseSynchronized(db);
             }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void runInTransaction(MobileServiceLocalStoreTransaction transaction) throws MobileServiceLocalStoreException {
+        try {
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+
+            try {
+                db.beginTransaction();
+
+                try {
+                    transaction.run();
 
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } finally {
+                this.closeDatabaseSynchronized(db);
+            }
+        } catch (MobileServiceLocalStoreException e) {
+            throw e;
         } catch (Throwable t) {
             throw new MobileServiceLocalStoreException(t);
         }
@@ -309,7 +564,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
             try {
-                db.delete(invTableName, "id = '" + itemId + "'", null);
+                this.mStatements.execute(db, getDeleteByIdSql(invTableName), new Object[]{itemId});
             } finally {
                 this.closeDatabaseSynchronized(db);
             }
@@ -326,8 +581,21 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
             try {
-                for (String itemId : itemsIds) {
-                    db.delete(invTableName, "id = '" + itemId + "'", null);
+                db.beginTransaction();
+
+                try {
+                    for (int start = 0; start < itemsIds.length; start += DELETE_BATCH_SIZE) {
+                        int count = Math.min(DELETE_BATCH_SIZE, itemsIds.length - start);
+
+                        Object[] ids = new Object[count];
+                        System.arraycopy(itemsIds, start, ids, 0, count);
+
+                        this.mStatements.execute(db, getDeleteByIdsSql(invTableName, count), ids);
+                    }
+
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
             } finally {
                 this.closeDatabaseSynchronized(db);
@@ -342,12 +610,67 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         try {
             String invTableName = normalizeTableName(query.getTableName());
 
-            String whereClause = getWhereClause(query);
+            List<String> arguments = new ArrayList<String>();
+
+            String whereClause = getWhereClause(query, arguments);
+
+            SQLiteDatabase db = this.getWritableDatabaseSynchronized();
+
+            try {
+                db.delete(invTableName, whereClause, arguments.toArray(new String[arguments.size()]));
+            } finally {
+                this.closeDatabaseSynchronized(db);
+            }
+        } catch (Throwable t) {
+            throw new MobileServiceLocalStoreException(t);
+        }
+    }
+
+    @Override
+    public void update(Query query, JsonObject changes) throws MobileServiceLocalStoreException {
+        if (changes.entrySet().size() == 0) {
+            return;
+        }
+
+        try {
+            String invTableName = normalizeTableName(query.getTableName());
+
+            Map<String, ColumnDataInfo> tableDefinition = this.mTables.get(invTableName);
+
+            StringBuilder sql = new StringBuilder();
+            List<Object> parameters = new ArrayList<Object>();
+
+            sql.append("UPDATE \"");
+            sql.append(invTableName);
+            sql.append("\" SET ");
+
+            String delimiter = "";
+
+            for (Entry<String, JsonElement> property : changes.entrySet()) {
+                sql.append(delimiter);
+                sql.append("\"");
+                sql.append(normalizeColumnName(property.getKey()));
+                sql.append("\" = ?");
+                delimiter = ",";
+
+                parameters.add(getParameter(tableDefinition, property.getKey(), property.getValue()));
+            }
+
+            List<String> arguments = new ArrayList<String>();
+
+            String whereClause = getWhereClause(query, arguments);
+
+            if (whereClause != null) {
+                sql.append(" WHERE ");
+                sql.append(whereClause);
+
+                parameters.addAll(arguments);
+            }
 
             SQLiteDatabase db = this.getWritableDatabaseSynchronized();
 
             try {
-                db.delete(invTableName, whereClause, null);
+                this.mStatements.execute(db, sql.toString(), parameters.toArray());
             } finally {
                 this.closeDatabaseSynchronized(db);
             }
@@ -364,6 +687,63 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
     }
 
+    /**
+     * Closes the database connection, once the operations in progress are
+     * done and the cursors returned by openCursor are closed. The store keeps
+     * its connection open until closed; it is opened again if the store is
+     * used after being closed.
+     *
+     * @throws IllegalStateException if the calling thread has an open cursor,
+     *                               which would never be closed while close
+     *                               waits, or if operations or cursors are
+     *                               still open after CLOSE_TIMEOUT
+     */
+    @Override
+    public void close() {
+        synchronized (mConcurrencyLock) {
+            if (mOpenCursors.containsKey(Thread.currentThread())) {
+                throw new IllegalStateException("The store cannot be closed by a thread with an open cursor.");
+            }
+
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+
+            while (mConcurrencyCount > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    throw new IllegalStateException("The store cannot be closed while " + mConcurrencyCount
+                            + " operations or cursors are open. Every cursor returned by openCursor must be closed.");
+                }
+
+                try {
+                    mConcurrencyLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting to close the store.", e);
+                }
+            }
+
+            this.mStatements.clear();
+            this.mDatabase = null;
+            super.close();
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        // Before Jelly Bean write-ahead logging can only be enabled on the
+        // open connection
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            enableWriteAheadLogging(db);
+        }
+
+        // Reads go through the connection's own statement cache, which is
+        // effective now that filters use bound parameters
+        db.setMaxSqlCacheSize(SQL_CACHE_SIZE);
+    }
+
     private String normalizeTableName(String tableName) {
         String invTableName = tableName != null ? tableName.trim().toLowerCase(Locale.getDefault()) : null;
 
@@ -387,6 +767,18 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
     }
 
     private String normalizeColumnName(String columnName) {
+        String invColumnName = columnName != null ? this.mColumnNames.get(columnName) : null;
+
+        if (invColumnName == null) {
+            invColumnName = validateColumnName(columnName);
+
+            this.mColumnNames.put(columnName, invColumnName);
+        }
+
+        return invColumnName;
+    }
+
+    private String validateColumnName(String columnName) {
         String invColumnName = columnName != null ? columnName.trim().toLowerCase(Locale.getDefault()) : null;
 
         if (invColumnName == null || columnName.length() == 0) {
@@ -446,55 +838,33 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
 
-    private JsonObject parseRow(Cursor cursor, Map<String, ColumnDataInfo> table) {
-        JsonObject result = new JsonObject();
+    private static JsonElement parseOtherDataType(Cursor cursor, int columnIndex) {
+        if (cursor.isNull(columnIndex)) {
+            return null;
+        }
 
-        for (Entry<String, ColumnDataInfo> column : table.entrySet()) {
-            String columnName = column.getKey();
-            String originalColumnName = column.getValue().getOriginalName();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            if (getColumnType(cursor, columnIndex) == Cursor.FIELD_TYPE_BLOB) {
+                return BinaryJsonCodec.decode(cursor.getBlob(columnIndex));
+            }
+        } else {
+            // Cursor.getType is not available, so the value is sniffed for the binary header
+            byte[] blob = cursor.getBlob(columnIndex);
 
-            ColumnDataType columnDataType = column.getValue().getColumnDataType();
-            int columnIndex = cursor.getColumnIndex(columnName);
+            if (BinaryJsonCodec.isEncoded(blob)) {
+                return BinaryJsonCodec.decode(blob);
+            }
+        }
 
-            if (columnIndex != -1) {
+        return parseOtherDataType(cursor.getString(columnIndex));
+    }
 
-                switch (columnDataType) {
-                    case Boolean:
-                        boolean booleanValue = cursor.getInt(columnIndex) > 0 ? true : false;
-                        result.addProperty(originalColumnName, booleanValue);
-                        break;
-                    case Real:
-                        double doubleValue = cursor.getDouble(columnIndex);
-                        result.addProperty(originalColumnName, doubleValue);
-                        break;
-                    case Integer:
-                        int intValue = cursor.getInt(columnIndex);
-                        result.addProperty(originalColumnName, intValue);
-                        break;
-                    case String:
-                        String stringValue = cursor.getString(columnIndex);
-                        result.addProperty(originalColumnName, stringValue);
-                        break;
-                    case Date:
-                        String dateValue = cursor.getString(columnIndex);
-                        result.addProperty(originalColumnName, dateValue);
-                        break;
-                    case DateTimeOffset:
-                        String dateTimeOffsetValue = cursor.getString(columnIndex);
-                        result.addProperty(originalColumnName, dateTimeOffsetValue);
-                        break;
-                    case Other:
-                        JsonElement otherValue = parseOtherDataType(cursor.getString(columnIndex));
-                        result.add(originalColumnName, otherValue);
-                        break;
-                }
-            }
-        }
-
-        return result;
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int getColumnType(Cursor cursor, int columnIndex) {
+        return cursor.getType(columnIndex);
     }
 
-    private JsonElement parseOtherDataType(String value) {
+    private static JsonElement parseOtherDataType(String value) {
         if (value == null) {
             return null;
         }
@@ -582,22 +952,7 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
 
             String paramName = "@p" + parameters.size();
 
-            JsonElement value = property.getValue();
-
-            if (value.isJsonNull()) {
-                parameters.add(null);
-            } else if (value.isJsonPrimitive()) {
-                if (value.getAsJsonPrimitive().isBoolean()) {
-                    long longVal = value.getAsJsonPrimitive().getAsBoolean() ? 1L : 0L;
-                    parameters.add(longVal);
-                } else if (value.getAsJsonPrimitive().isNumber()) {
-                    parameters.add(value.getAsJsonPrimitive().getAsDouble());
-                } else {
-                    parameters.add(value.getAsJsonPrimitive().getAsString());
-                }
-            } else {
-                parameters.add(value.toString());
-            }
+            parameters.add(getParameter(tableDefinition, property.getKey(), property.getValue()));
 
             sql.append(paramName);
             colCount++;
@@ -607,6 +962,202 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         sql.append(")");
     }
 
+    /**
+     * Stores a pulled item, inserting its row or updating in place only the
+     * columns the item carries, so the other columns keep their local values
+     * and the indexes of unchanged columns are not rewritten. An item whose
+     * columns all hold the stored values is skipped. Every carried column is
+     * compared, not just __version, so a row pulled again with more columns
+     * fills them in. Statements are compiled once for each set of columns and
+     * bound straight from the item values.
+     *
+     * @return false if the item was skipped
+     */
+    private boolean ingestItem(SQLiteDatabase db, String invTableName, Map<String, ColumnDataInfo> tableDefinition,
+                               JsonObject item, StringBuilder sql) {
+        List<String> columnNames = new ArrayList<String>();
+        List<Object> parameters = new ArrayList<Object>();
+
+        for (Entry<String, JsonElement> property : item.entrySet()) {
+            String invColumnName = normalizeColumnName(property.getKey());
+
+            if (!tableDefinition.containsKey(invColumnName)) {
+                continue;
+            }
+
+            columnNames.add(invColumnName);
+            parameters.add(getParameter(tableDefinition, property.getKey(), property.getValue()));
+        }
+
+        if (columnNames.size() == 0) {
+            return false;
+        }
+
+        boolean hasUpdates = columnNames.size() > 1;
+
+        if (this.mUpsertSupported || !hasUpdates) {
+            appendInsertSql(sql, invTableName, columnNames, hasUpdates ? "INSERT INTO \"" : "INSERT OR IGNORE INTO \"");
+
+            if (hasUpdates) {
+                sql.append(" ON CONFLICT(\"id\") DO UPDATE SET ");
+
+                String delimiter = "";
+
+                for (String columnName : columnNames) {
+                    if (columnName.equals(MobileServiceSystemColumns.Id)) {
+                        continue;
+                    }
+
+                    sql.append(delimiter);
+                    sql.append("\"");
+                    sql.append(columnName);
+                    sql.append("\" = excluded.\"");
+                    sql.append(columnName);
+                    sql.append("\"");
+                    delimiter = ",";
+                }
+
+                delimiter = " WHERE ";
+
+                for (String columnName : columnNames) {
+                    if (columnName.equals(MobileServiceSystemColumns.Id)) {
+                        continue;
+                    }
+
+                    sql.append(delimiter);
+                    sql.append("\"");
+                    sql.append(columnName);
+                    sql.append("\" IS NOT excluded.\"");
+                    sql.append(columnName);
+                    sql.append("\"");
+                    delimiter = " OR ";
+                }
+            }
+
+            return executeIngestStatement(db, sql.toString(), parameters) > 0;
+        }
+
+        // SQLite before 3.24.0: update the existing row, then insert the item
+        // if there was none
+        List<Object> updateParameters = new ArrayList<Object>(parameters.size() + 2);
+
+        sql.setLength(0);
+        sql.append("UPDATE \"");
+        sql.append(invTableName);
+        sql.append("\" SET ");
+
+        String delimiter = "";
+
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (columnNames.get(i).equals(MobileServiceSystemColumns.Id)) {
+                continue;
+            }
+
+            sql.append(delimiter);
+            sql.append("\"");
+            sql.append(columnNames.get(i));
+            sql.append("\" = ?");
+            delimiter = ",";
+
+            updateParameters.add(parameters.get(i));
+        }
+
+        sql.append(" WHERE \"id\" = ? AND (");
+        updateParameters.add(item.get(MobileServiceSystemColumns.Id).getAsString());
+
+        delimiter = "";
+
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (columnNames.get(i).equals(MobileServiceSystemColumns.Id)) {
+                continue;
+            }
+
+            sql.append(delimiter);
+            sql.append("\"");
+            sql.append(columnNames.get(i));
+            sql.append("\" IS NOT ?");
+            delimiter = " OR ";
+
+            updateParameters.add(parameters.get(i));
+        }
+
+        sql.append(")");
+
+        if (executeIngestStatement(db, sql.toString(), updateParameters) > 0) {
+            return true;
+        }
+
+        appendInsertSql(sql, invTableName, columnNames, "INSERT OR IGNORE INTO \"");
+
+        return executeIngestStatement(db, sql.toString(), parameters) > 0;
+    }
+
+    private static void appendInsertSql(StringBuilder sql, String invTableName, List<String> columnNames, String verb) {
+        sql.setLength(0);
+        sql.append(verb);
+        sql.append(invTableName);
+        sql.append("\" (");
+
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (i > 0) {
+                sql.append(",");
+            }
+
+            sql.append("\"");
+            sql.append(columnNames.get(i));
+            sql.append("\"");
+        }
+
+        sql.append(") VALUES (?");
+
+        for (int i = 1; i < columnNames.size(); i++) {
+            sql.append(",?");
+        }
+
+        sql.append(")");
+    }
+
+    /**
+     * Executes an ingest statement and returns the number of rows it changed
+     */
+    private int executeIngestStatement(SQLiteDatabase db, String sql, List<Object> parameters) {
+        SQLiteStatement statement = this.mStatements.get(db, sql);
+
+        synchronized (statement) {
+            statement.clearBindings();
+
+            for (int i = 0; i < parameters.size(); i++) {
+                SQLiteStatementCache.bind(statement, i + 1, parameters.get(i));
+            }
+
+            return this.mStatements.executeForChangedRows(db, statement);
+        }
+    }
+
+    private Object getParameter(Map<String, ColumnDataInfo> tableDefinition, String columnName, JsonElement value) {
+        if (this.mBinaryEncodingEnabled && isOtherColumn(tableDefinition, columnName) && !value.isJsonNull()) {
+            return BinaryJsonCodec.encode(value);
+        } else if (value.isJsonNull()) {
+            return null;
+        } else if (value.isJsonPrimitive()) {
+            if (value.getAsJsonPrimitive().isBoolean()) {
+                return value.getAsJsonPrimitive().getAsBoolean() ? 1L : 0L;
+            } else if (value.getAsJsonPrimitive().isNumber()) {
+                return value.getAsJsonPrimitive().getAsDouble();
+            } else {
+                return value.getAsJsonPrimitive().getAsString();
+            }
+        } else {
+            return value.toString();
+        }
+    }
+
+    private boolean isOtherColumn(Map<String, ColumnDataInfo> tableDefinition, String columnName) {
+        ColumnDataInfo columnDataInfo = tableDefinition.get(normalizeColumnName(columnName));
+
+        return columnDataInfo != null && columnDataInfo.getColumnDataType() == ColumnDataType.Other;
+    }
+
     private String[] getColumns(Query query, Map<String, ColumnDataInfo> table) {
         String[] columns = table.keySet().toArray(new String[0]);
 
@@ -618,11 +1169,11 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         return columns;
     }
 
-    private String getWhereClause(Query query) throws MobileServiceLocalStoreException {
+    private String getWhereClause(Query query, List<String> arguments) throws MobileServiceLocalStoreException {
         String whereClause;
 
         try {
-            whereClause = QuerySQLWriter.getWhereClause(query);
+            whereClause = QuerySQLWriter.getWhereClause(query, arguments);
         } catch (MobileServiceException e) {
             throw new MobileServiceLocalStoreException("Unable to build filter expression.", e);
         }
@@ -634,6 +1185,178 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         return whereClause;
     }
 
+    private static String getDeleteByIdSql(String invTableName) {
+        return "DELETE FROM \"" + invTableName + "\" WHERE \"id\" = ?";
+    }
+
+    private static String getDeleteByIdsSql(String invTableName, int count) {
+        StringBuilder sql = new StringBuilder("DELETE FROM \"");
+        sql.append(invTableName);
+        sql.append("\" WHERE \"id\" IN (?");
+
+        for (int i = 1; i < count; i++) {
+            sql.append(",?");
+        }
+
+        sql.append(")");
+
+        return sql.toString();
+    }
+
+    /**
+     * Returns the SQL of an indexed expression, with its column quoted
+     */
+    private String normalizeIndexExpression(String expression) {
+        Matcher matcher = expression != null ? INDEX_EXPRESSION.matcher(expression) : null;
+
+        if (matcher == null || !matcher.matches()) {
+            throw new IllegalArgumentException("Index expressions must be a column name or lower(column name), optionally followed by ASC or DESC.");
+        }
+
+        StringBuilder sql = new StringBuilder();
+
+        if (matcher.group(1) != null) {
+            sql.append("lower(\"").append(normalizeColumnName(matcher.group(2))).append("\")");
+        } else {
+            sql.append("\"").append(normalizeColumnName(matcher.group(3))).append("\"");
+        }
+
+        if (matcher.group(4) != null) {
+            sql.append(" ").append(matcher.group(4).toUpperCase(Locale.US));
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Creates the defined indexes and the default __updatedAt indexes,
+     * recreates the ones whose definition changed and drops the ones no
+     * longer defined
+     */
+    private void updateIndexes(SQLiteDatabase db) {
+        Map<String, String> existingIndexes = new HashMap<String, String>();
+        Map<String, String> existingIndexTables = new HashMap<String, String>();
+
+        Cursor cursor = null;
+
+        try {
+            cursor = db.rawQuery("SELECT name, sql, tbl_name FROM sqlite_master WHERE type = 'index' AND substr(name, 1, ?) = ?",
+                    new String[]{String.valueOf(INDEX_PREFIX.length()), INDEX_PREFIX});
+
+            while (cursor.moveToNext()) {
+                existingIndexes.put(cursor.getString(0), cursor.getString(1));
+                existingIndexTables.put(cursor.getString(0), cursor.getString(2));
+            }
+        } finally {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+
+        boolean expressionIndexes = supportsExpressionIndexes(db);
+
+        for (Entry<String, Map<String, ColumnDataInfo>> table : this.mTables.entrySet()) {
+            String invTableName = table.getKey();
+
+            Map<String, List<String>> indexes = new HashMap<String, List<String>>();
+
+            if (table.getValue().containsKey("__updatedat")) {
+                List<String> updatedAt = new ArrayList<String>();
+                updatedAt.add("\"__updatedat\"");
+
+                indexes.put("__updatedat", updatedAt);
+            }
+
+            if (this.mIndexes.containsKey(invTableName)) {
+                indexes.putAll(this.mIndexes.get(invTableName));
+            }
+
+            for (Entry<String, List<String>> index : indexes.entrySet()) {
+                if (!expressionIndexes && hasExpression(index.getValue())) {
+                    continue;
+                }
+
+                String indexName = INDEX_PREFIX + invTableName + "_" + index.getKey();
+                String sql = getCreateIndexSql(indexName, invTableName, index.getValue());
+
+                String existingSql = existingIndexes.remove(indexName);
+
+                if (sql.equals(existingSql)) {
+                    continue;
+                }
+
+                if (existingSql != null) {
+                    db.execSQL(String.format("DROP INDEX \"%s\"", indexName));
+                }
+
+                db.execSQL(sql);
+            }
+        }
+
+        // Indexes of tables not defined by this session are left alone
+        for (String indexName : existingIndexes.keySet()) {
+            if (this.mTables.containsKey(existingIndexTables.get(indexName))) {
+                db.execSQL(String.format("DROP INDEX IF EXISTS \"%s\"", indexName));
+            }
+        }
+    }
+
+    private static String getCreateIndexSql(String indexName, String invTableName, List<String> expressions) {
+        StringBuilder sql = new StringBuilder();
+
+        sql.append("CREATE INDEX \"").append(indexName).append("\" ON \"").append(invTableName).append("\" (");
+
+        for (int i = 0; i < expressions.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+
+            sql.append(expressions.get(i));
+        }
+
+        sql.append(")");
+
+        return sql.toString();
+    }
+
+    private static boolean hasExpression(List<String> expressions) {
+        for (String expression : expressions) {
+            if (!expression.startsWith("\"")) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if SQLite indexes expressions, which it does from 3.9.0
+     */
+    private static boolean supportsExpressionIndexes(SQLiteDatabase db) {
+        return isSQLiteVersionAtLeast(db, 3, 9);
+    }
+
+    private static boolean isSQLiteVersionAtLeast(SQLiteDatabase db, int minMajor, int minMinor) {
+        SQLiteStatement statement = db.compileStatement("SELECT sqlite_version()");
+
+        String[] version;
+
+        try {
+            version = statement.simpleQueryForString().split("\\.");
+        } finally {
+            statement.close();
+        }
+
+        try {
+            int major = Integer.parseInt(version[0]);
+            int minor = version.length > 1 ? Integer.parseInt(version[1]) : 0;
+
+            return major > minMajor || (major == minMajor && minor >= minMinor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     private void createTableFromObject(SQLiteDatabase db, String invTableName, Map<String, ColumnDataInfo> table) {
         String tblSql = String.format("CREATE TABLE IF NOT EXISTS \"%s\" (\"id\" TEXT PRIMARY KEY);", invTableName);
         db.execSQL(tblSql);
@@ -702,18 +1425,73 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         }
     }
     
+    /**
+     * Enables write-ahead logging, so reads run concurrently with the writer
+     * on the pooled connections of the database
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void enableWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void enableWriteAheadLogging(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
+
+    /**
+     * Returns the long-lived database connection, opening it on first use.
+     * Each call must be paired with closeDatabaseSynchronized, which only
+     * releases the connection for close.
+     */
     private SQLiteDatabase getWritableDatabaseSynchronized() {
         synchronized (mConcurrencyLock) {
+            if (this.mDatabase == null || !this.mDatabase.isOpen()) {
+                this.mDatabase = getWritableDatabase();
+            }
+
             mConcurrencyCount++;
-            return getWritableDatabase();
+            return this.mDatabase;
         }
     }
-    
+
+    /**
+     * Returns the connection used for reads. With write-ahead logging the
+     * database runs reads outside of transactions on its pool of read
+     * connections, concurrently with the writer.
+     */
+    private SQLiteDatabase getReadableDatabaseSynchronized() {
+        return getWritableDatabaseSynchronized();
+    }
+
+    private void cursorOpened(Thread thread) {
+        synchronized (mConcurrencyLock) {
+            Integer count = mOpenCursors.get(thread);
+
+            mOpenCursors.put(thread, count != null ? count + 1 : 1);
+        }
+    }
+
+    private void cursorClosed(Thread thread) {
+        synchronized (mConcurrencyLock) {
+            Integer count = mOpenCursors.get(thread);
+
+            if (count == null || count <= 1) {
+                mOpenCursors.remove(thread);
+            } else {
+                mOpenCursors.put(thread, count - 1);
+            }
+        }
+    }
+
     private void closeDatabaseSynchronized(SQLiteDatabase db) {
         synchronized (mConcurrencyLock) {
             mConcurrencyCount--;
+
             if (mConcurrencyCount == 0) {
-                db.close();
+                mConcurrencyLock.notifyAll();
             }
         }
     }
@@ -722,4 +1500,220 @@ public class SQLiteLocalStore extends SQLiteOpenHelper implements MobileServiceL
         private String sql;
         private List<Object> parameters;
     }
+
+    /**
+     * Decodes the rows of a cursor. The column indexes and data types are
+     * resolved once, when the decoder is built, instead of for every row.
+     */
+    private static class RowDecoder {
+        private int[] mIndexes;
+        private String[] mColumnNames;
+        private String[] mNames;
+        private ColumnDataType[] mTypes;
+
+        RowDecoder(Cursor cursor, Map<String, ColumnDataInfo> table) {
+            List<Integer> indexes = new ArrayList<Integer>();
+            List<String> columnNames = new ArrayList<String>();
+            List<ColumnDataInfo> columns = new ArrayList<ColumnDataInfo>();
+
+            for (Entry<String, ColumnDataInfo> column : table.entrySet()) {
+                int columnIndex = cursor.getColumnIndex(column.getKey());
+
+                if (columnIndex != -1) {
+                    indexes.add(columnIndex);
+                    columnNames.add(column.getKey());
+                    columns.add(column.getValue());
+                }
+            }
+
+            this.mIndexes = new int[indexes.size()];
+            this.mColumnNames = new String[indexes.size()];
+            this.mNames = new String[indexes.size()];
+            this.mTypes = new ColumnDataType[indexes.size()];
+
+            for (int i = 0; i < this.mIndexes.length; i++) {
+                this.mIndexes[i] = indexes.get(i);
+                this.mColumnNames[i] = columnNames.get(i);
+                this.mNames[i] = columns.get(i).getOriginalName();
+                this.mTypes[i] = columns.get(i).getColumnDataType();
+            }
+        }
+
+        JsonObject decode(Cursor cursor) {
+            JsonObject result = new JsonObject();
+
+            for (int i = 0; i < this.mIndexes.length; i++) {
+                int columnIndex = this.mIndexes[i];
+                String originalColumnName = this.mNames[i];
+
+                switch (this.mTypes[i]) {
+                    case Boolean:
+                        boolean booleanValue = cursor.getInt(columnIndex) > 0 ? true : false;
+                        result.addProperty(originalColumnName, booleanValue);
+                        break;
+                    case Real:
+                        double doubleValue = cursor.getDouble(columnIndex);
+                        result.addProperty(originalColumnName, doubleValue);
+                        break;
+                    case Integer:
+                        int intValue = cursor.getInt(columnIndex);
+                        result.addProperty(originalColumnName, intValue);
+                        break;
+                    case String:
+                    case Date:
+                    case DateTimeOffset:
+                        String stringValue = cursor.getString(columnIndex);
+                        result.addProperty(originalColumnName, stringValue);
+                        break;
+                    case Other:
+                        JsonElement otherValue = parseOtherDataType(cursor, columnIndex);
+                        result.add(originalColumnName, otherValue);
+                        break;
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * A cursor over the results of openCursor. It holds the database
+     * connection, so the store is not closed while the cursor is open. The
+     * thread that opened it is kept so that it cannot wait in close for its
+     * own cursor.
+     */
+    private class SQLiteCursor implements MobileServiceLocalStoreCursor {
+        private SQLiteDatabase mDb;
+        private Cursor mCursor;
+        private RowDecoder mDecoder;
+        private Thread mThread;
+
+        SQLiteCursor(SQLiteDatabase db, Cursor cursor, RowDecoder decoder, Thread thread) {
+            this.mDb = db;
+            this.mCursor = cursor;
+            this.mDecoder = decoder;
+            this.mThread = thread;
+
+            cursorOpened(thread);
+        }
+
+        @Override
+        public boolean moveToNext() throws MobileServiceLocalStoreException {
+            if (this.mCursor == null) {
+                return false;
+            }
+
+            try {
+                return this.mCursor.moveToNext();
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            }
+        }
+
+        @Override
+        public JsonObject getRow() throws MobileServiceLocalStoreException {
+            Cursor cursor = getCursor();
+
+            try {
+                return this.mDecoder.decode(cursor);
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            }
+        }
+
+        @Override
+        public int getColumnIndex(String columnName) {
+            for (int i = 0; i < this.mDecoder.mColumnNames.length; i++) {
+                if (this.mDecoder.mColumnNames[i].equalsIgnoreCase(columnName)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        @Override
+        public ColumnDataType getColumnDataType(int columnIndex) {
+            return this.mDecoder.mTypes[columnIndex];
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) throws MobileServiceLocalStoreException {
+            try {
+                return getCursor().isNull(this.mDecoder.mIndexes[columnIndex]);
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            }
+        }
+
+        @Override
+        public String getString(int columnIndex) throws MobileServiceLocalStoreException {
+            try {
+                return getCursor().getString(this.mDecoder.mIndexes[columnIndex]);
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            }
+        }
+
+        @Override
+        public long getLong(int columnIndex) throws MobileServiceLocalStoreException {
+            try {
+                return getCursor().getLong(this.mDecoder.mIndexes[columnIndex]);
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            }
+        }
+
+        @Override
+        public double getDouble(int columnIndex) throws MobileServiceLocalStoreException {
+            try {
+                return getCursor().getDouble(this.mDecoder.mIndexes[columnIndex]);
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            }
+        }
+
+        @Override
+        public boolean getBoolean(int columnIndex) throws MobileServiceLocalStoreException {
+            try {
+                return getCursor().getInt(this.mDecoder.mIndexes[columnIndex]) > 0;
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            }
+        }
+
+        @Override
+        public JsonElement getJson(int columnIndex) throws MobileServiceLocalStoreException {
+            try {
+                return parseOtherDataType(getCursor(), this.mDecoder.mIndexes[columnIndex]);
+            } catch (Throwable t) {
+                throw new MobileServiceLocalStoreException(t);
+            }
+        }
+
+        private Cursor getCursor() {
+            if (this.mCursor == null) {
+                throw new IllegalStateException("The cursor is closed.");
+            }
+
+            return this.mCursor;
+        }
+
+        @Override
+        public void close() {
+            if (this.mCursor == null) {
+                return;
+            }
+
+            try {
+                if (!this.mCursor.isClosed()) {
+                    this.mCursor.close();
+                }
+            } finally {
+                this.mCursor = null;
+                cursorClosed(this.mThread);
+                closeDatabaseSynchronized(this.mDb);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,166 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+ 
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+ 
+     http://www.apache.org/licenses/LICENSE-2.0
+ 
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ 
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+
+/**
+ * SQLiteStatementCache.java
+ */
+package com.microsoft.windowsazure.mobileservices.table.sync.localstore;
+
+import android.annotation.TargetApi;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of compiled statements, keyed by SQL text.
+ * Statements are bound to the database instance they were compiled on, so the
+ * cache must be cleared before that database is closed.
+ */
+final class SQLiteStatementCache {
+    private final Map<String, SQLiteStatement> mStatements;
+
+    /**
+     * Constructor for SQLiteStatementCache
+     *
+     * @param maxSize the maximum number of statements kept compiled
+     */
+    SQLiteStatementCache(final int maxSize) {
+        this.mStatements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > maxSize) {
+                    close(eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Executes a statement that returns no data, compiling it only the first
+     * time its SQL text is seen
+     *
+     * @param db        the database to execute the statement on
+     * @param sql       the SQL text, with a ? for each parameter
+     * @param arguments the parameter values: null, Long, Double, String or
+     *                  byte[]
+     */
+    void execute(SQLiteDatabase db, String sql, Object[] arguments) {
+        SQLiteStatement statement = get(db, sql);
+
+        synchronized (statement) {
+            statement.clearBindings();
+
+            for (int i = 0; i < arguments.length; i++) {
+                bind(statement, i + 1, arguments[i]);
+            }
+
+            statement.execute();
+        }
+    }
+
+    /**
+     * Executes a bound INSERT, UPDATE or DELETE statement and returns the
+     * number of rows it changed. Callers must synchronize on the statement.
+     *
+     * @param db        the database the statement was compiled on
+     * @param statement the statement to execute
+     */
+    int executeForChangedRows(SQLiteDatabase db, SQLiteStatement statement) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return executeUpdateDelete(statement);
+        }
+
+        statement.execute();
+
+        SQLiteStatement changes = get(db, "SELECT changes()");
+
+        synchronized (changes) {
+            return (int) changes.simpleQueryForLong();
+        }
+    }
+
+    /**
+     * Returns the compiled statement of a SQL text, compiling it only the
+     * first time the text is seen. Callers binding and executing the
+     * statement must synchronize on it.
+     *
+     * @param db  the database to compile the statement on
+     * @param sql the SQL text
+     */
+    SQLiteStatement get(SQLiteDatabase db, String sql) {
+        synchronized (this.mStatements) {
+            SQLiteStatement statement = this.mStatements.get(sql);
+
+            if (statement == null) {
+                statement = db.compileStatement(sql);
+                this.mStatements.put(sql, statement);
+            }
+
+            return statement;
+        }
+    }
+
+    /**
+     * Closes and removes all the cached statements
+     */
+    void clear() {
+        synchronized (this.mStatements) {
+            for (SQLiteStatement statement : this.mStatements.values()) {
+                close(statement);
+            }
+
+            this.mStatements.clear();
+        }
+    }
+
+    /**
+     * Binds a parameter value: null, Long, Double, String or byte[]
+     */
+    static void bind(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Long || value instanceof Integer) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Number) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int executeUpdateDelete(SQLiteStatement statement) {
+        return statement.executeUpdateDelete();
+    }
+
+    private static void close(SQLiteStatement statement) {
+        synchronized (statement) {
+            statement.close();
+        }
+    }
+}
@@ -26,12 +26,12 @@ package com.microsoft.windowsazure.mobileservices.table.sync.operations;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
+import com.microsoft.windowsazure.mobileservices.table.serialization.JsonPropertyFilter;
 
 import java.util.EnumSet;
 import java.util.Locale;
@@ -42,6 +42,13 @@ import java.util.concurrent.ExecutionException;
  * Processes a table operation against a remote store.
  */
 public class RemoteTableOperationProcessor implements TableOperationVisitor<JsonObject> {
+    private static final JsonPropertyFilter SystemPropertiesFilter = new JsonPropertyFilter() {
+        @Override
+        public boolean excludes(String propertyName) {
+            return propertyName.startsWith("__");
+        }
+    };
+
     private MobileServiceClient mClient;
     private JsonObject mItem;
 
@@ -81,20 +88,7 @@ public class RemoteTableOperationProcessor implements TableOperationVisitor<Json
     }
 
     private static JsonObject removeSystemProperties(JsonObject instance) {
-        boolean haveCloned = false;
-
-        for (Entry<String, JsonElement> property : instance.entrySet()) {
-            if (property.getKey().startsWith("__")) {
-                if (!haveCloned) {
-                    instance = (JsonObject) new JsonParser().parse(instance.toString());
-                    haveCloned = true;
-                }
-
-                instance.remove(property.getKey());
-            }
-        }
-
-        return instance;
+        return SystemPropertiesFilter.apply(instance);
     }
 
     @Override
@@ -1,8 +1,8 @@
 package com.microsoft.windowsazure.mobileservices.table.sync.pull;
 
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.microsoft.windowsazure.mobileservices.table.DateTimeOffset;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
@@ -10,15 +10,12 @@ import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProper
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
-import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.TimeZone;
 
 /**
@@ -26,35 +23,42 @@ import java.util.TimeZone;
  */
 public class IncrementalPullStrategy extends PullStrategy {
 
-    private static final String INCREMENTAL_PULL_STRATEGY_TABLE = "__incrementalPullData";
-
-    private MobileServiceLocalStore mStore;
+    private PullCheckpoints mCheckpoints;
     private DateTimeOffset maxUpdatedAt;
-    private DateTimeOffset deltaToken;
+    private String lastUpdatedAt;
+    private JsonPrimitive lastId;
     private String queryId;
+    private String tableName;
     private Query originalQuery;
     private MobileServiceJsonTable table;
+    private PartitionedPull.Partition partition;
 
     public IncrementalPullStrategy(Query query, String queryId, MobileServiceLocalStore localStore, MobileServiceJsonTable table) {
+        this(query, queryId, new PullCheckpoints(localStore), table, null);
+    }
+
+    public IncrementalPullStrategy(Query query, String queryId, PullCheckpoints checkpoints, MobileServiceJsonTable table) {
+        this(query, queryId, checkpoints, table, null);
+    }
+
+    /**
+     * Constructor for a strategy pulling a partition of a query, which leaves
+     * saving the checkpoint to the partitioned pull
+     */
+    IncrementalPullStrategy(Query query, String queryId, PullCheckpoints checkpoints, MobileServiceJsonTable table, PartitionedPull.Partition partition) {
         super(query, table);
-        this.mStore = localStore;
+        this.mCheckpoints = checkpoints;
         this.queryId = queryId;
         this.table = table;
+        this.partition = partition;
     }
 
     public static void initializeStore(MobileServiceLocalStore store) throws MobileServiceLocalStoreException {
-
-        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
-        columns.put("id", ColumnDataType.String);
-        columns.put("maxupdateddate", ColumnDataType.String);
-
-        store.defineTable(INCREMENTAL_PULL_STRATEGY_TABLE, columns);
+        PullCheckpoints.initializeStore(store);
     }
 
     public void initialize() {
 
-        JsonElement results = null;
-
         try {
 
             table.setSystemProperties(EnumSet.noneOf(MobileServiceSystemProperty.class));
@@ -62,40 +66,32 @@ public class IncrementalPullStrategy extends PullStrategy {
 
             query.includeDeleted();
             query.removeInlineCount();
-            query.removeProjection();
+            applyProjection(MobileServiceSystemColumns.Version, MobileServiceSystemColumns.Deleted, MobileServiceSystemColumns.UpdatedAt);
 
             originalQuery = query;
+            tableName = query.getTableName();
 
-            results = mStore.read(
-                    QueryOperations.tableName(INCREMENTAL_PULL_STRATEGY_TABLE)
-                            .field("id")
-                            .eq(query.getTableName() + "_" + queryId));
-
-            if (results != null) {
+            PullCheckpoints.Checkpoint checkpoint = mCheckpoints.read(tableName, queryId);
 
-                JsonArray resultsArray = results.getAsJsonArray();
+            // Resume after the last stored item, so no item is pulled twice
+            maxUpdatedAt = getDateFromString(checkpoint.maxUpdatedDate);
 
-                if (resultsArray.size() > 0) {
-                    JsonElement result = resultsArray.get(0);
-
-                    String stringMaxUpdatedDate = result.getAsJsonObject()
-                            .get("maxupdateddate").getAsString();
-
-                    deltaToken = maxUpdatedAt = getDateFromString(stringMaxUpdatedDate);
-                }
+            if (maxUpdatedAt != null && checkpoint.lastId != null) {
+                lastUpdatedAt = checkpoint.maxUpdatedDate;
+                lastId = new JsonPrimitive(checkpoint.lastId);
             }
 
             this.query.skip(-1);
             this.query.top(defaultTop);
 
-            setupQuery(maxUpdatedAt);
+            setupQuery();
 
         } catch (MobileServiceLocalStoreException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void onResultsProcessed(JsonArray elements) {
+    public void onResultsFetched(JsonArray elements) {
 
         if (elements.size() <= 0) {
             return;
@@ -105,61 +101,80 @@ public class IncrementalPullStrategy extends PullStrategy {
 
         String lastElementUpdatedAt = lastElement.get(MobileServiceSystemColumns.UpdatedAt).getAsString();
 
-        maxUpdatedAt = getDateFromString(lastElementUpdatedAt);
+        JsonPrimitive lastElementId = getId(lastElement);
 
-        saveMaxUpdatedDate(lastElementUpdatedAt);
-    }
+        if (lastElementUpdatedAt.equals(lastUpdatedAt) && lastElementId != null && lastElementId.equals(lastId)) {
+            // The page did not move the cursor
+            lastId = null;
+            return;
+        }
 
-    public boolean moveToNextPage(int lastElementCount) {
+        maxUpdatedAt = getDateFromString(lastElementUpdatedAt);
+        lastUpdatedAt = lastElementUpdatedAt;
+        lastId = lastElementId;
+    }
 
-        if (deltaToken == null || maxUpdatedAt.after(deltaToken)) {
+    /**
+     * Saves the checkpoint of a stored page, in the transaction that stored
+     * it. The fetcher may already be ahead, so the checkpoint comes from the
+     * page itself rather than the cursor.
+     */
+    public void onResultsProcessed(JsonArray elements) {
 
-            if (lastElementCount == 0)
-                return false;
+        try {
+            if (partition != null) {
+                partition.onPageStored(elements);
+                return;
+            }
 
-            deltaToken = maxUpdatedAt;
+            if (elements.size() <= 0) {
+                return;
+            }
 
-            this.query.skip(-1);
+            JsonObject lastElement = elements.get(elements.size() - 1).getAsJsonObject();
 
-            setupQuery(maxUpdatedAt);
+            JsonPrimitive lastElementId = getId(lastElement);
 
-            return true;
+            mCheckpoints.save(tableName, queryId, lastElement.get(MobileServiceSystemColumns.UpdatedAt).getAsString(),
+                    lastElementId != null ? lastElementId.getAsString() : null);
+        } catch (MobileServiceLocalStoreException e) {
+            throw new RuntimeException(e);
         }
-
-        return super.moveToNextPage(lastElementCount);
     }
 
-    private void saveMaxUpdatedDate(String lastElementUpdatedAt) {
+    public boolean moveToNextPage(int lastElementCount) {
 
-        JsonObject updatedElement = new JsonObject();
+        if (lastElementCount == 0 || lastId == null) {
+            return false;
+        }
 
-        updatedElement.addProperty("id", query.getTableName() + "_" + queryId);
-        updatedElement.addProperty("maxupdateddate", lastElementUpdatedAt);
+        setupQuery();
 
-        try {
-            mStore.upsert(INCREMENTAL_PULL_STRATEGY_TABLE, updatedElement, false);
-        } catch (MobileServiceLocalStoreException e) {
-            throw new RuntimeException(e);
-        }
+        return true;
     }
 
-    private void setupQuery(DateTimeOffset maxUpdatedAt) {
+    /**
+     * Sets up the query for the page after the (maxUpdatedAt, lastId) cursor.
+     * Rows are ordered by __updatedAt then id, so rows sharing a timestamp are
+     * read once even when they span several pages.
+     */
+    private void setupQuery() {
 
-        totalRead = 0;
         this.query = originalQuery.deepClone();
 
-        if (query.getOrderBy().size() > 0) {
-            this.query.getOrderBy().clear();
-        }
-
         if (maxUpdatedAt != null) {
-            Query filterQuery = QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).ge(this.maxUpdatedAt);
+            Query filterQuery;
 
-            if (this.query.getQueryNode() != null) {
-                this.query = this.query.and(filterQuery);
+            if (lastId == null) {
+                // Resuming from a saved checkpoint, which has no id
+                filterQuery = QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).ge(maxUpdatedAt);
             } else {
-                this.query = filterQuery;
+                filterQuery = QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).gt(maxUpdatedAt)
+                        .or(QueryOperations.field(MobileServiceSystemColumns.UpdatedAt).eq(maxUpdatedAt)
+                                .and().field(MobileServiceSystemColumns.Id).gt(idValue(lastId)));
             }
+
+            this.query = and(this.query, filterQuery);
         }
 
         this.query.top(defaultTop);
@@ -167,9 +182,10 @@ public class IncrementalPullStrategy extends PullStrategy {
         this.query.getOrderBy().clear();
 
         this.query.orderBy(MobileServiceSystemColumns.UpdatedAt, QueryOrder.Ascending);
+        this.query.orderBy(MobileServiceSystemColumns.Id, QueryOrder.Ascending);
     }
 
-    private DateTimeOffset getDateFromString(String stringValue) {
+    static DateTimeOffset getDateFromString(String stringValue) {
 
         if (stringValue == null) {
             return null;
@@ -0,0 +1,61 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+/**
+ * Decides when a pull of a query can be answered from the local store
+ * instead of the network. All durations are in milliseconds; 0 disables
+ * the corresponding rule.
+ * <ul>
+ * <li>maxAge: a pull completed less than maxAge ago makes the next pulls
+ * return immediately</li>
+ * <li>staleWhileRevalidate: past maxAge, and for staleWhileRevalidate more,
+ * pulls return immediately and refresh the data in the background</li>
+ * <li>minInterval: pulls attempted less than minInterval after the previous
+ * attempt return immediately, even if that attempt failed</li>
+ * </ul>
+ */
+public class MobileServicePullFreshnessPolicy {
+
+    private long mMaxAge;
+    private long mMinInterval;
+    private long mStaleWhileRevalidate;
+
+    /**
+     * Constructor for MobileServicePullFreshnessPolicy
+     *
+     * @param maxAge               the time the pulled data is fresh
+     * @param minInterval          the minimum time between two pull attempts
+     * @param staleWhileRevalidate the time past maxAge the data is returned
+     *                             while it is refreshed in the background
+     */
+    public MobileServicePullFreshnessPolicy(long maxAge, long minInterval, long staleWhileRevalidate) {
+        if (maxAge < 0 || minInterval < 0 || staleWhileRevalidate < 0) {
+            throw new IllegalArgumentException("Freshness durations cannot be negative.");
+        }
+
+        this.mMaxAge = maxAge;
+        this.mMinInterval = minInterval;
+        this.mStaleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * Returns the time the pulled data is fresh
+     */
+    public long getMaxAge() {
+        return this.mMaxAge;
+    }
+
+    /**
+     * Returns the minimum time between two pull attempts
+     */
+    public long getMinInterval() {
+        return this.mMinInterval;
+    }
+
+    /**
+     * Returns the time past maxAge the data is returned while it is
+     * refreshed in the background
+     */
+    public long getStaleWhileRevalidate() {
+        return this.mStaleWhileRevalidate;
+    }
+}
@@ -0,0 +1,37 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncMetrics;
+
+/**
+ * Receives the progress of the tables pulled by
+ * MobileServiceSyncContext.pullAll. Calls are made from the pulling threads,
+ * possibly concurrently for different tables.
+ */
+public interface MobileServicePullProgressListener {
+
+    /**
+     * Called when the pull of a table starts
+     *
+     * @param tableName the table name
+     */
+    void onPullStarted(String tableName);
+
+    /**
+     * Called when a page of a table has been written to the local store
+     *
+     * @param tableName  the table name
+     * @param pageItems  the number of items in the page
+     * @param totalItems the number of items stored so far for the table
+     */
+    void onPageStored(String tableName, int pageItems, long totalItems);
+
+    /**
+     * Called when the pull of a table ends
+     *
+     * @param tableName the table name
+     * @param metrics   the counters of the pull of the table
+     * @param error     the error that stopped the pull, or null if it
+     *                  succeeded
+     */
+    void onPullCompleted(String tableName, MobileServiceSyncMetrics metrics, Throwable error);
+}
@@ -0,0 +1,100 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes the pull of a table by MobileServiceSyncContext.pullAll: the
+ * table, its query and query id, its priority and the tables that must be
+ * pulled before it.
+ */
+public class MobileServicePullSpec {
+
+    private String mTableName;
+    private Query mQuery;
+    private String mQueryId;
+    private int mPriority;
+    private List<String> mDependencies;
+
+    /**
+     * Constructor for MobileServicePullSpec
+     *
+     * @param tableName the table name
+     * @param query     an optional query to filter results
+     * @param queryId   the incremental pull query id, or null for a full pull
+     */
+    public MobileServicePullSpec(String tableName, Query query, String queryId) {
+        if (tableName == null || tableName.trim().length() == 0) {
+            throw new IllegalArgumentException("Table name cannot be null or empty.");
+        }
+
+        this.mTableName = tableName;
+        this.mQuery = query;
+        this.mQueryId = queryId;
+        this.mDependencies = new ArrayList<String>();
+    }
+
+    /**
+     * Sets the priority of the pull. Among the pulls whose dependencies are
+     * done, those with a higher priority start first. The default is 0.
+     *
+     * @param priority the priority
+     * @return this spec
+     */
+    public MobileServicePullSpec withPriority(int priority) {
+        this.mPriority = priority;
+
+        return this;
+    }
+
+    /**
+     * Makes the pull wait for the pull of another table of the same pullAll
+     * call to succeed
+     *
+     * @param tableName the table pulled first
+     * @return this spec
+     */
+    public MobileServicePullSpec dependsOn(String tableName) {
+        this.mDependencies.add(tableName);
+
+        return this;
+    }
+
+    /**
+     * Returns the table name
+     */
+    public String getTableName() {
+        return this.mTableName;
+    }
+
+    /**
+     * Returns the query, or null to pull the whole table
+     */
+    public Query getQuery() {
+        return this.mQuery;
+    }
+
+    /**
+     * Returns the incremental pull query id, or null for a full pull
+     */
+    public String getQueryId() {
+        return this.mQueryId;
+    }
+
+    /**
+     * Returns the priority
+     */
+    public int getPriority() {
+        return this.mPriority;
+    }
+
+    /**
+     * Returns the tables pulled before this one
+     */
+    public List<String> getDependencies() {
+        return Collections.unmodifiableList(this.mDependencies);
+    }
+}
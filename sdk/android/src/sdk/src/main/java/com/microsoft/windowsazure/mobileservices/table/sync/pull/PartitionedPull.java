@@ -0,0 +1,411 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
+import com.microsoft.windowsazure.mobileservices.MobileServiceFeatures;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncMetrics;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Pulls a query as id ranges fetched concurrently. The ranges are discovered
+ * with a count query and a few single row probes, then each range is pulled
+ * by its own PullStrategy. Pages are handed to a single writer, the thread
+ * that runs the pull, so local store writes are never concurrent. The probe
+ * requests share the request limit of the pull budget with the pages.
+ */
+public class PartitionedPull {
+
+    /**
+     * Minimum number of rows for each partition; smaller tables are not worth
+     * the probe requests
+     */
+    private static final int MIN_PARTITION_SIZE = 50;
+
+    private MobileServiceClient mClient;
+    private String mTableName;
+    private Query mQuery;
+    private String mQueryId;
+    private PullCheckpoints mCheckpoints;
+    private int mParallelism;
+    private int mPrefetchDepth;
+
+    private int mMinPageSize;
+    private int mMaxPageSize;
+    private MobileServiceSyncMetrics mMetrics;
+    private PullBudget mBudget;
+    private List<String> mColumns;
+
+    private List<PullStrategy> mStrategies;
+    private List<MobileServiceJsonTable> mTables;
+    private List<PullPageSizer> mPageSizers;
+    private List<Partition> mPartitions;
+    private String mUpperBound;
+    private String mSavedUpdatedAt;
+    private String mSavedLastId;
+
+    /**
+     * Constructor for PartitionedPull
+     *
+     * @param client        the client used to query the table
+     * @param tableName     the table name
+     * @param query         the pull query
+     * @param queryId       the incremental pull query id, or null for a full pull
+     * @param checkpoints   the incremental pull checkpoints, whose store the
+     *                      pages are written to
+     * @param parallelism   the maximum number of partitions fetched concurrently
+     * @param prefetchDepth the number of pages each partition may fetch ahead
+     *                      of the writer
+     */
+    public PartitionedPull(MobileServiceClient client, String tableName, Query query, String queryId, PullCheckpoints checkpoints, int parallelism, int prefetchDepth) {
+        this.mClient = client;
+        this.mTableName = tableName;
+        this.mQuery = query;
+        this.mQueryId = queryId;
+        this.mCheckpoints = checkpoints;
+        this.mParallelism = parallelism;
+        this.mPrefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Sizes the pages of each partition with a PullPageSizer. Must be called
+     * before initialize.
+     *
+     * @param minPageSize the smallest page size
+     * @param maxPageSize the largest page size
+     * @param metrics     the metrics the pages are recorded in, or null
+     */
+    public void setPageSizing(int minPageSize, int maxPageSize, MobileServiceSyncMetrics metrics) {
+        this.mMinPageSize = minPageSize;
+        this.mMaxPageSize = maxPageSize;
+        this.mMetrics = metrics;
+    }
+
+    /**
+     * Shares the request and write limits of a budget with other pulls
+     *
+     * @param budget the budget, or null for no limits
+     */
+    public void setBudget(PullBudget budget) {
+        this.mBudget = budget;
+    }
+
+    /**
+     * Restricts the pull of every partition to a subset of the table
+     * columns. Must be called before initialize.
+     *
+     * @param columns the columns to pull, or null to pull every column
+     */
+    public void setColumns(List<String> columns) {
+        this.mColumns = columns;
+    }
+
+    /**
+     * Returns true if the query can be pulled in partitions. Full pulls must
+     * not skip rows and must be ordered by id only; incremental pulls always
+     * order by __updatedAt and id.
+     *
+     * @param query   the pull query
+     * @param queryId the incremental pull query id, or null for a full pull
+     */
+    public static boolean canPartition(Query query, String queryId) {
+        if (queryId != null) {
+            return true;
+        }
+
+        if (query.getSkip() > 0) {
+            return false;
+        }
+
+        return query.getOrderBy().size() == 0
+                || (query.getOrderBy().size() == 1 && query.getOrderBy().get(0).first.equalsIgnoreCase(MobileServiceSystemColumns.Id));
+    }
+
+    /**
+     * Discovers the partitions and initializes their strategies
+     *
+     * @return false if the table is too small to be split, in which case the
+     * query should be pulled sequentially
+     */
+    public boolean initialize() throws Throwable {
+        MobileServiceJsonTable probeTable = createTable(null);
+
+        Query base = this.mQuery.deepClone();
+        base.includeDeleted();
+        base.removeInlineCount();
+        base.removeProjection();
+        base.getOrderBy().clear();
+
+        Query upperBoundFilter = null;
+
+        if (this.mQueryId != null) {
+            String maxUpdatedDate = this.mCheckpoints.read(this.mQuery.getTableName(), this.mQueryId).maxUpdatedDate;
+
+            if (maxUpdatedDate != null) {
+                base = PullStrategy.and(base, QueryOperations.field(MobileServiceSystemColumns.UpdatedAt)
+                        .ge(IncrementalPullStrategy.getDateFromString(maxUpdatedDate)));
+            }
+
+            // Rows updated while the partitions are pulled are left to the
+            // next pull, which resumes at this upper bound once every
+            // partition is completed
+            probeTable.setSystemProperties(EnumSet.of(MobileServiceSystemProperty.UpdatedAt));
+
+            Query upperBoundQuery = base.deepClone().orderBy(MobileServiceSystemColumns.UpdatedAt, QueryOrder.Descending).top(1);
+            JsonArray rows = probe(probeTable, upperBoundQuery);
+
+            if (rows.size() == 0) {
+                return false;
+            }
+
+            this.mUpperBound = rows.get(0).getAsJsonObject().get(MobileServiceSystemColumns.UpdatedAt).getAsString();
+
+            upperBoundFilter = QueryOperations.field(MobileServiceSystemColumns.UpdatedAt)
+                    .le(IncrementalPullStrategy.getDateFromString(this.mUpperBound));
+            base = PullStrategy.and(base, upperBoundFilter.deepClone());
+        }
+
+        probeTable.setSystemProperties(EnumSet.noneOf(MobileServiceSystemProperty.class));
+
+        long count = count(probeTable, base);
+
+        int partitions = (int) Math.min(this.mParallelism, count / MIN_PARTITION_SIZE);
+
+        if (partitions < 2) {
+            return false;
+        }
+
+        List<JsonPrimitive> boundaries = new ArrayList<JsonPrimitive>();
+
+        for (int i = 1; i < partitions; i++) {
+            Query probe = base.deepClone().orderBy(MobileServiceSystemColumns.Id, QueryOrder.Ascending)
+                    .skip((int) (count * i / partitions)).top(1).select(MobileServiceSystemColumns.Id);
+
+            JsonArray rows = probe(probeTable, probe);
+
+            if (rows.size() > 0) {
+                JsonPrimitive boundary = PullStrategy.getId(rows.get(0));
+
+                if (boundary != null && (boundaries.size() == 0 || !boundary.equals(boundaries.get(boundaries.size() - 1)))) {
+                    boundaries.add(boundary);
+                }
+            }
+        }
+
+        if (boundaries.size() == 0) {
+            return false;
+        }
+
+        this.mStrategies = new ArrayList<PullStrategy>();
+        this.mTables = new ArrayList<MobileServiceJsonTable>();
+        this.mPageSizers = new ArrayList<PullPageSizer>();
+        this.mPartitions = new ArrayList<Partition>();
+
+        for (int i = 0; i <= boundaries.size(); i++) {
+            Query range = null;
+
+            if (i > 0) {
+                range = QueryOperations.field(MobileServiceSystemColumns.Id).ge(PullStrategy.idValue(boundaries.get(i - 1)));
+            }
+
+            if (i < boundaries.size()) {
+                Query upper = QueryOperations.field(MobileServiceSystemColumns.Id).lt(PullStrategy.idValue(boundaries.get(i)));
+                range = range != null ? range.and(upper) : upper;
+            }
+
+            Query partitionQuery = PullStrategy.and(this.mQuery.deepClone(), range);
+
+            if (upperBoundFilter != null) {
+                partitionQuery = PullStrategy.and(partitionQuery, upperBoundFilter.deepClone());
+            }
+
+            PullPageSizer pageSizer = null;
+
+            if (this.mMinPageSize > 0) {
+                pageSizer = new PullPageSizer(this.mMinPageSize, this.mMaxPageSize, this.mMetrics);
+            }
+
+            MobileServiceJsonTable table = createTable(pageSizer);
+            PullStrategy strategy;
+
+            if (this.mQueryId != null) {
+                Partition partition = new Partition();
+
+                this.mPartitions.add(partition);
+
+                strategy = new IncrementalPullStrategy(partitionQuery, this.mQueryId, this.mCheckpoints, table, partition);
+            } else {
+                strategy = new PullStrategy(partitionQuery, table);
+            }
+
+            strategy.setColumns(this.mColumns);
+
+            // Initialized here, before any page is written, since incremental
+            // strategies read their checkpoint from the store
+            strategy.initialize();
+
+            this.mStrategies.add(strategy);
+            this.mTables.add(table);
+            this.mPageSizers.add(pageSizer);
+        }
+
+        return true;
+    }
+
+    /**
+     * Fetches the partitions concurrently and processes their pages on the
+     * calling thread. The incremental pull checkpoint is saved with each page.
+     *
+     * @param processor the processor of the pulled pages
+     */
+    public void run(PullPipeline.PageProcessor processor) throws Throwable {
+        PullPipeline pipeline = new PullPipeline(this.mPrefetchDepth, this.mCheckpoints.getStore());
+
+        pipeline.setBudget(this.mBudget);
+
+        for (int i = 0; i < this.mStrategies.size(); i++) {
+            pipeline.add(this.mStrategies.get(i), this.mTables.get(i), this.mPageSizers.get(i));
+        }
+
+        pipeline.run(processor);
+    }
+
+    /**
+     * Saves the incremental pull checkpoint in the transaction of a stored
+     * page. Every partition has stored its rows up to its own position, and
+     * the rows of a completed partition are all stored, so the pull resumes
+     * after the smallest position of the partitions still being pulled. The
+     * ids of the partitions are ordered like the partitions, so positions
+     * sharing __updatedAt are ordered by partition. Once every partition is
+     * completed, the pull resumes at the upper bound it was limited to.
+     */
+    private void saveCheckpoint() throws MobileServiceLocalStoreException {
+        Partition smallest = null;
+
+        for (Partition partition : this.mPartitions) {
+            if (partition.mCompleted) {
+                continue;
+            }
+
+            if (partition.mUpdatedAt == null) {
+                // The partition has not stored a page yet
+                return;
+            }
+
+            if (smallest == null || IncrementalPullStrategy.getDateFromString(partition.mUpdatedAt)
+                    .before(IncrementalPullStrategy.getDateFromString(smallest.mUpdatedAt))) {
+                smallest = partition;
+            }
+        }
+
+        String updatedAt = smallest != null ? smallest.mUpdatedAt : this.mUpperBound;
+        String lastId = smallest != null ? smallest.mLastId : null;
+
+        if (updatedAt.equals(this.mSavedUpdatedAt) && (lastId == null ? this.mSavedLastId == null : lastId.equals(this.mSavedLastId))) {
+            return;
+        }
+
+        this.mCheckpoints.save(this.mQuery.getTableName(), this.mQueryId, updatedAt, lastId);
+
+        this.mSavedUpdatedAt = updatedAt;
+        this.mSavedLastId = lastId;
+    }
+
+    private JsonArray probe(MobileServiceJsonTable table, Query query) throws Throwable {
+        if (this.mBudget != null) {
+            this.mBudget.acquireNetwork();
+        }
+
+        try {
+            return PullPipeline.execute(table, query);
+        } finally {
+            if (this.mBudget != null) {
+                this.mBudget.releaseNetwork();
+            }
+        }
+    }
+
+    private long count(MobileServiceJsonTable table, Query query) throws Throwable {
+        Query countQuery = query.deepClone().orderBy(MobileServiceSystemColumns.Id, QueryOrder.Ascending)
+                .top(1).select(MobileServiceSystemColumns.Id).includeInlineCount();
+
+        JsonElement result;
+
+        if (this.mBudget != null) {
+            this.mBudget.acquireNetwork();
+        }
+
+        try {
+            result = table.execute(countQuery).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } finally {
+            if (this.mBudget != null) {
+                this.mBudget.releaseNetwork();
+            }
+        }
+
+        if (result != null && result.isJsonObject() && result.getAsJsonObject().has("count")) {
+            return result.getAsJsonObject().get("count").getAsLong();
+        }
+
+        return 0;
+    }
+
+    private MobileServiceJsonTable createTable(PullPageSizer pageSizer) {
+        MobileServiceClient client = this.mClient;
+
+        if (pageSizer != null) {
+            client = client.withFilter(pageSizer.getResponseFilter());
+        }
+
+        MobileServiceJsonTable table = client.getTable(this.mTableName);
+
+        table.addFeature(MobileServiceFeatures.Offline);
+
+        return table;
+    }
+
+    /**
+     * The position up to which a partition of an incremental pull has stored
+     * its rows
+     */
+    class Partition {
+        private String mUpdatedAt;
+        private String mLastId;
+        private boolean mCompleted;
+
+        /**
+         * Called in the transaction of a stored page of the partition. The
+         * partition is completed by its last page, which is empty.
+         *
+         * @param elements the stored elements
+         */
+        void onPageStored(JsonArray elements) throws MobileServiceLocalStoreException {
+            if (elements.size() == 0) {
+                this.mCompleted = true;
+            } else {
+                JsonObject lastElement = elements.get(elements.size() - 1).getAsJsonObject();
+                JsonPrimitive lastId = PullStrategy.getId(lastElement);
+
+                this.mUpdatedAt = lastElement.get(MobileServiceSystemColumns.UpdatedAt).getAsString();
+                this.mLastId = lastId != null ? lastId.getAsString() : null;
+            }
+
+            saveCheckpoint();
+        }
+    }
+}
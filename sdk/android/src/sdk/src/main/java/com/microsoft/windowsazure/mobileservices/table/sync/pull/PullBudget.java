@@ -0,0 +1,46 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the requests and local store writes of pulls running at the same
+ * time. A request holds a network permit while it runs and a page holds a
+ * disk permit while it is written; no permit is held while waiting for
+ * another, so pulls sharing a budget cannot deadlock.
+ */
+public class PullBudget {
+
+    private Semaphore mNetwork;
+    private Semaphore mDisk;
+
+    /**
+     * Constructor for PullBudget
+     *
+     * @param maxRequests the maximum number of concurrent requests
+     * @param maxWriters  the maximum number of pages written concurrently
+     */
+    public PullBudget(int maxRequests, int maxWriters) {
+        if (maxRequests < 1 || maxWriters < 1) {
+            throw new IllegalArgumentException("Pull budget must allow at least one request and one writer.");
+        }
+
+        this.mNetwork = new Semaphore(maxRequests, true);
+        this.mDisk = new Semaphore(maxWriters, true);
+    }
+
+    void acquireNetwork() throws InterruptedException {
+        this.mNetwork.acquire();
+    }
+
+    void releaseNetwork() {
+        this.mNetwork.release();
+    }
+
+    void acquireDisk() throws InterruptedException {
+        this.mDisk.acquire();
+    }
+
+    void releaseDisk() {
+        this.mDisk.release();
+    }
+}
@@ -0,0 +1,150 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and saves the checkpoints of incremental pulls: the __updatedAt and
+ * id of the last stored item of each query. Checkpoints are kept in memory
+ * once read, so pulls of the same query only read them from the store once.
+ * <p>
+ * Checkpoints are saved in the transaction that stores their page; a pull
+ * that fails must invalidate its checkpoint, since that transaction may
+ * have been rolled back.
+ */
+public class PullCheckpoints {
+
+    private static final String INCREMENTAL_PULL_STRATEGY_TABLE = "__incrementalPullData";
+
+    private static final Checkpoint NONE = new Checkpoint(null, null);
+
+    private MobileServiceLocalStore mStore;
+    private Map<String, Checkpoint> mCheckpoints;
+
+    /**
+     * Constructor for PullCheckpoints
+     *
+     * @param store the local store the checkpoints are saved in
+     */
+    public PullCheckpoints(MobileServiceLocalStore store) {
+        this.mStore = store;
+        this.mCheckpoints = new HashMap<String, Checkpoint>();
+    }
+
+    /**
+     * Defines the table of the checkpoints
+     *
+     * @param store the local store
+     */
+    public static void initializeStore(MobileServiceLocalStore store) throws MobileServiceLocalStoreException {
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("maxupdateddate", ColumnDataType.String);
+        columns.put("lastid", ColumnDataType.String);
+
+        store.defineTable(INCREMENTAL_PULL_STRATEGY_TABLE, columns);
+    }
+
+    /**
+     * Returns the local store the checkpoints are saved in
+     */
+    public MobileServiceLocalStore getStore() {
+        return this.mStore;
+    }
+
+    /**
+     * Forgets the cached checkpoint of a query, so it is read again from the
+     * store
+     *
+     * @param tableName the table name
+     * @param queryId   the query id
+     */
+    public void invalidate(String tableName, String queryId) {
+        synchronized (this.mCheckpoints) {
+            this.mCheckpoints.remove(getKey(tableName, queryId));
+        }
+    }
+
+    /**
+     * Returns the checkpoint of a query; its values are null if the query has
+     * never been pulled
+     */
+    Checkpoint read(String tableName, String queryId) throws MobileServiceLocalStoreException {
+        String key = getKey(tableName, queryId);
+
+        synchronized (this.mCheckpoints) {
+            Checkpoint checkpoint = this.mCheckpoints.get(key);
+
+            if (checkpoint != null) {
+                return checkpoint;
+            }
+        }
+
+        Checkpoint checkpoint = NONE;
+
+        JsonObject result = this.mStore.lookup(INCREMENTAL_PULL_STRATEGY_TABLE, key);
+
+        if (result != null) {
+            checkpoint = new Checkpoint(getString(result, "maxupdateddate"), getString(result, "lastid"));
+        }
+
+        synchronized (this.mCheckpoints) {
+            this.mCheckpoints.put(key, checkpoint);
+        }
+
+        return checkpoint;
+    }
+
+    /**
+     * Saves the checkpoint of a query
+     *
+     * @param maxUpdatedDate the __updatedAt of the last stored item
+     * @param lastId         the id of the last stored item, or null if every
+     *                       item updated at maxUpdatedDate must be pulled again
+     */
+    void save(String tableName, String queryId, String maxUpdatedDate, String lastId) throws MobileServiceLocalStoreException {
+        String key = getKey(tableName, queryId);
+
+        JsonObject updatedElement = new JsonObject();
+
+        updatedElement.addProperty("id", key);
+        updatedElement.addProperty("maxupdateddate", maxUpdatedDate);
+        updatedElement.addProperty("lastid", lastId);
+
+        this.mStore.upsert(INCREMENTAL_PULL_STRATEGY_TABLE, updatedElement, false);
+
+        synchronized (this.mCheckpoints) {
+            this.mCheckpoints.put(key, new Checkpoint(maxUpdatedDate, lastId));
+        }
+    }
+
+    private static String getKey(String tableName, String queryId) {
+        return tableName + "_" + queryId;
+    }
+
+    private static String getString(JsonObject object, String property) {
+        JsonElement value = object.get(property);
+
+        return value != null && !value.isJsonNull() ? value.getAsString() : null;
+    }
+
+    /**
+     * The position an incremental pull resumes from
+     */
+    static class Checkpoint {
+        final String maxUpdatedDate;
+        final String lastId;
+
+        Checkpoint(String maxUpdatedDate, String lastId) {
+            this.maxUpdatedDate = maxUpdatedDate;
+            this.lastId = lastId;
+        }
+    }
+}
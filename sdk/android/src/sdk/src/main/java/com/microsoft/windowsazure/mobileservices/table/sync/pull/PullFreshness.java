@@ -0,0 +1,289 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the freshness policies of the pull queries and the time of their
+ * last pulls, in the local store that holds the incremental pull
+ * checkpoints, and decides whether a pull must hit the network.
+ */
+public class PullFreshness {
+
+    /**
+     * What a pull should do
+     */
+    public enum Decision {
+        /**
+         * Pull from the network
+         */
+        Pull,
+
+        /**
+         * Return immediately
+         */
+        Skip,
+
+        /**
+         * Return immediately and pull in the background
+         */
+        ServeStale
+    }
+
+    private static final String PULL_FRESHNESS_TABLE = "__pullFreshness";
+
+    /**
+     * Prefix of the ids of the rows that keep the time a table was purged.
+     * Query rows are keyed by table name, so a prefix that no table name can
+     * start with keeps the two kinds of rows apart.
+     */
+    private static final String RESET_KEY_PREFIX = "__reset|";
+
+    private MobileServiceLocalStore mStore;
+    private Map<String, State> mStates;
+    private Map<String, Long> mResets;
+    private Set<String> mRefreshing;
+
+    /**
+     * Constructor for PullFreshness
+     *
+     * @param store the local store the policies are saved in
+     */
+    public PullFreshness(MobileServiceLocalStore store) {
+        this.mStore = store;
+        this.mStates = new HashMap<String, State>();
+        this.mResets = new HashMap<String, Long>();
+        this.mRefreshing = new HashSet<String>();
+    }
+
+    /**
+     * Defines the table of the policies
+     *
+     * @param store the local store
+     */
+    public static void initializeStore(MobileServiceLocalStore store) throws MobileServiceLocalStoreException {
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("tablename", ColumnDataType.String);
+        columns.put("maxage", ColumnDataType.Integer);
+        columns.put("mininterval", ColumnDataType.Integer);
+        columns.put("stalewhilerevalidate", ColumnDataType.Integer);
+        columns.put("lastattempt", ColumnDataType.Integer);
+        columns.put("lastsuccess", ColumnDataType.Integer);
+        columns.put("resetat", ColumnDataType.Integer);
+
+        store.defineTable(PULL_FRESHNESS_TABLE, columns);
+    }
+
+    /**
+     * Sets the freshness policy of a query, keeping the time of its last
+     * pulls
+     *
+     * @param tableName the table name
+     * @param queryId   the query id
+     * @param policy    the policy, or null to always pull
+     */
+    public synchronized void setPolicy(String tableName, String queryId, MobileServicePullFreshnessPolicy policy) throws MobileServiceLocalStoreException {
+        State state = read(tableName, queryId);
+
+        state.mPolicy = policy;
+
+        save(tableName, queryId, state);
+    }
+
+    /**
+     * Returns the freshness policy of a query, or null if it is always pulled
+     */
+    public synchronized MobileServicePullFreshnessPolicy getPolicy(String tableName, String queryId) throws MobileServiceLocalStoreException {
+        return read(tableName, queryId).mPolicy;
+    }
+
+    /**
+     * Decides whether a pull of a query must hit the network
+     *
+     * @param tableName the table name
+     * @param queryId   the query id
+     * @param now       the current time, in milliseconds
+     */
+    public synchronized Decision check(String tableName, String queryId, long now) throws MobileServiceLocalStoreException {
+        State state = read(tableName, queryId);
+        MobileServicePullFreshnessPolicy policy = state.mPolicy;
+
+        if (policy == null) {
+            return Decision.Pull;
+        }
+
+        long resetAt = getResetTime(tableName);
+
+        if (state.mLastAttempt > resetAt && now - state.mLastAttempt < policy.getMinInterval()) {
+            return Decision.Skip;
+        }
+
+        if (state.mLastSuccess > resetAt) {
+            long age = now - state.mLastSuccess;
+
+            if (age < policy.getMaxAge()) {
+                return Decision.Skip;
+            }
+
+            if (age < policy.getMaxAge() + policy.getStaleWhileRevalidate()) {
+                return Decision.ServeStale;
+            }
+        }
+
+        return Decision.Pull;
+    }
+
+    /**
+     * Records the start of a pull of a query
+     */
+    public synchronized void recordAttempt(String tableName, String queryId, long now) throws MobileServiceLocalStoreException {
+        State state = read(tableName, queryId);
+
+        if (state.mPolicy == null) {
+            return;
+        }
+
+        state.mLastAttempt = now;
+
+        save(tableName, queryId, state);
+    }
+
+    /**
+     * Records the completion of a pull of a query
+     */
+    public synchronized void recordSuccess(String tableName, String queryId, long now) throws MobileServiceLocalStoreException {
+        State state = read(tableName, queryId);
+
+        if (state.mPolicy == null) {
+            return;
+        }
+
+        state.mLastSuccess = now;
+
+        save(tableName, queryId, state);
+    }
+
+    /**
+     * Marks every query of a table as never pulled, for instance once the
+     * table has been purged
+     *
+     * @param tableName the table name
+     * @param now       the current time, in milliseconds
+     */
+    public synchronized void reset(String tableName, long now) throws MobileServiceLocalStoreException {
+        JsonObject updatedElement = new JsonObject();
+
+        updatedElement.addProperty("id", getResetKey(tableName));
+        updatedElement.addProperty("tablename", tableName);
+        updatedElement.addProperty("resetat", now);
+
+        this.mStore.upsert(PULL_FRESHNESS_TABLE, updatedElement, false);
+
+        this.mResets.put(tableName, now);
+    }
+
+    /**
+     * Marks a query as refreshed in the background
+     *
+     * @return false if the query is already being refreshed
+     */
+    public synchronized boolean startRefresh(String tableName, String queryId) {
+        return this.mRefreshing.add(getKey(tableName, queryId));
+    }
+
+    /**
+     * Marks the background refresh of a query as done
+     */
+    public synchronized void finishRefresh(String tableName, String queryId) {
+        this.mRefreshing.remove(getKey(tableName, queryId));
+    }
+
+    private State read(String tableName, String queryId) throws MobileServiceLocalStoreException {
+        String key = getKey(tableName, queryId);
+
+        State state = this.mStates.get(key);
+
+        if (state == null) {
+            state = new State();
+
+            JsonObject result = this.mStore.lookup(PULL_FRESHNESS_TABLE, key);
+
+            if (result != null && getLong(result, "maxage") >= 0) {
+                state.mPolicy = new MobileServicePullFreshnessPolicy(getLong(result, "maxage"), getLong(result, "mininterval"),
+                        getLong(result, "stalewhilerevalidate"));
+                state.mLastAttempt = getLong(result, "lastattempt");
+                state.mLastSuccess = getLong(result, "lastsuccess");
+            }
+
+            this.mStates.put(key, state);
+        }
+
+        return state;
+    }
+
+    /**
+     * Returns the time the table was last purged, or 0
+     */
+    private long getResetTime(String tableName) throws MobileServiceLocalStoreException {
+        Long resetAt = this.mResets.get(tableName);
+
+        if (resetAt == null) {
+            JsonObject result = this.mStore.lookup(PULL_FRESHNESS_TABLE, getResetKey(tableName));
+
+            resetAt = result != null ? Math.max(0, getLong(result, "resetat")) : 0;
+
+            this.mResets.put(tableName, resetAt);
+        }
+
+        return resetAt;
+    }
+
+    private void save(String tableName, String queryId, State state) throws MobileServiceLocalStoreException {
+        MobileServicePullFreshnessPolicy policy = state.mPolicy;
+
+        JsonObject updatedElement = new JsonObject();
+
+        updatedElement.addProperty("id", getKey(tableName, queryId));
+        updatedElement.addProperty("tablename", tableName);
+        updatedElement.addProperty("maxage", policy != null ? policy.getMaxAge() : -1);
+        updatedElement.addProperty("mininterval", policy != null ? policy.getMinInterval() : -1);
+        updatedElement.addProperty("stalewhilerevalidate", policy != null ? policy.getStaleWhileRevalidate() : -1);
+        updatedElement.addProperty("lastattempt", state.mLastAttempt);
+        updatedElement.addProperty("lastsuccess", state.mLastSuccess);
+
+        this.mStore.upsert(PULL_FRESHNESS_TABLE, updatedElement, false);
+    }
+
+    private static String getKey(String tableName, String queryId) {
+        return tableName + "_" + queryId;
+    }
+
+    private static String getResetKey(String tableName) {
+        return RESET_KEY_PREFIX + tableName;
+    }
+
+    private static long getLong(JsonObject object, String property) {
+        JsonElement value = object.get(property);
+
+        return value != null && !value.isJsonNull() ? value.getAsLong() : -1;
+    }
+
+    /**
+     * The policy of a query and the time of its last pulls
+     */
+    private static class State {
+        private MobileServicePullFreshnessPolicy mPolicy;
+        private long mLastAttempt;
+        private long mLastSuccess;
+    }
+}
@@ -0,0 +1,138 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.microsoft.windowsazure.mobileservices.http.NextServiceFilterCallback;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilter;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterRequest;
+import com.microsoft.windowsazure.mobileservices.http.ServiceFilterResponse;
+import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncMetrics;
+
+/**
+ * Chooses the page size of a pull from the time spent fetching and storing
+ * the previous pages and from the size of their rows. Pages grow while they
+ * are cheap and shrink when they get slow or large, at most doubling or
+ * halving per page, within the configured bounds.
+ * <p>
+ * A sizer tracks a single strategy, whose pages are fetched one at a time.
+ */
+public class PullPageSizer {
+
+    /**
+     * Time a page should take to be fetched and stored
+     */
+    private static final long TARGET_PAGE_NANOS = 1000L * 1000000L;
+
+    /**
+     * Maximum size of a page response
+     */
+    private static final long MAX_PAGE_BYTES = 1024L * 1024L;
+
+    private int mMinPageSize;
+    private int mMaxPageSize;
+    private MobileServiceSyncMetrics mMetrics;
+
+    private volatile long mResponseBytes;
+    private volatile long mStoreNanosPerRow;
+
+    /**
+     * Constructor for PullPageSizer
+     *
+     * @param minPageSize the smallest page size
+     * @param maxPageSize the largest page size
+     * @param metrics     the metrics the pages are recorded in, or null
+     */
+    public PullPageSizer(int minPageSize, int maxPageSize, MobileServiceSyncMetrics metrics) {
+        if (minPageSize < 1 || maxPageSize < minPageSize) {
+            throw new IllegalArgumentException("Invalid page size bounds.");
+        }
+
+        this.mMinPageSize = minPageSize;
+        this.mMaxPageSize = maxPageSize;
+        this.mMetrics = metrics;
+    }
+
+    /**
+     * Returns a filter recording the size of the responses of the table the
+     * strategy queries
+     */
+    public ServiceFilter getResponseFilter() {
+        return new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                return Futures.transform(nextServiceFilterCallback.onNext(request), new Function<ServiceFilterResponse, ServiceFilterResponse>() {
+                    @Override
+                    public ServiceFilterResponse apply(ServiceFilterResponse response) {
+                        mResponseBytes = getLength(response);
+
+                        return response;
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Records a fetched page and returns the size of the next page
+     *
+     * @param pageSize   the requested page size
+     * @param rows       the number of rows received
+     * @param fetchNanos the time spent fetching the page
+     * @return the size of the next page
+     */
+    int onPageFetched(int pageSize, int rows, long fetchNanos) {
+        long bytes = this.mResponseBytes;
+
+        this.mResponseBytes = 0;
+
+        if (this.mMetrics != null) {
+            this.mMetrics.recordPulledPage(pageSize, rows, bytes, fetchNanos);
+        }
+
+        // A short page is the last one
+        if (rows == 0 || rows < pageSize) {
+            return pageSize;
+        }
+
+        long nanosPerRow = Math.max(1, fetchNanos / rows + this.mStoreNanosPerRow);
+
+        long next = TARGET_PAGE_NANOS / nanosPerRow;
+
+        if (bytes > 0) {
+            next = Math.min(next, MAX_PAGE_BYTES * rows / bytes);
+        }
+
+        next = Math.max(pageSize / 2, Math.min((long) pageSize * 2, next));
+
+        return (int) Math.max(this.mMinPageSize, Math.min(this.mMaxPageSize, next));
+    }
+
+    /**
+     * Records a page written to the local store
+     *
+     * @param rows       the number of rows in the page
+     * @param storeNanos the time spent writing the page
+     */
+    void onPageStored(int rows, long storeNanos) {
+        if (rows > 0) {
+            this.mStoreNanosPerRow = storeNanos / rows;
+        }
+
+        if (this.mMetrics != null) {
+            this.mMetrics.recordStoredPage(storeNanos);
+        }
+    }
+
+    private static long getLength(ServiceFilterResponse response) {
+        byte[] rawContent = response.getRawContent();
+
+        if (rawContent != null) {
+            return rawContent.length;
+        }
+
+        String content = response.getContent();
+
+        return content != null ? content.length() : 0;
+    }
+}
@@ -0,0 +1,306 @@
+package com.microsoft.windowsazure.mobileservices.table.sync.pull;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs one or more pull strategies, fetching the next pages while the
+ * current page is written to the local store. Each strategy is fetched on
+ * its own thread and may run up to prefetchDepth pages ahead of the writer;
+ * once its pages are queued the fetcher blocks until the writer catches up.
+ * Pages are written by the thread that runs the pipeline, so local store
+ * writes are never concurrent. Each page is processed in a local store
+ * transaction together with the strategy checkpoint, so a pull interrupted
+ * at any point resumes right after the last stored page.
+ */
+public class PullPipeline {
+
+    /**
+     * Processes the pulled pages
+     */
+    public interface PageProcessor {
+
+        /**
+         * Processes a page of pulled elements
+         *
+         * @param elements the pulled elements
+         */
+        void processPage(JsonArray elements) throws Throwable;
+    }
+
+    private int mPrefetchDepth;
+    private MobileServiceLocalStore mStore;
+    private PullBudget mBudget;
+
+    private List<PullStrategy> mStrategies;
+    private List<MobileServiceJsonTable> mTables;
+    private List<PullPageSizer> mPageSizers;
+
+    /**
+     * Constructor for PullPipeline
+     *
+     * @param prefetchDepth the number of pages each strategy may fetch ahead
+     *                      of the writer. With 0, a single strategy fetches
+     *                      its next page only once the current one is written
+     * @param store         the local store the pages are written to
+     */
+    public PullPipeline(int prefetchDepth, MobileServiceLocalStore store) {
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("Prefetch depth cannot be negative.");
+        }
+
+        this.mPrefetchDepth = prefetchDepth;
+        this.mStore = store;
+        this.mStrategies = new ArrayList<PullStrategy>();
+        this.mTables = new ArrayList<MobileServiceJsonTable>();
+        this.mPageSizers = new ArrayList<PullPageSizer>();
+    }
+
+    /**
+     * Shares the request and write limits of a budget with other pulls
+     *
+     * @param budget the budget, or null for no limits
+     */
+    public void setBudget(PullBudget budget) {
+        this.mBudget = budget;
+    }
+
+    /**
+     * Adds an initialized strategy to the pipeline
+     *
+     * @param strategy the strategy
+     * @param table    the table the strategy queries
+     */
+    public void add(PullStrategy strategy, MobileServiceJsonTable table) {
+        add(strategy, table, null);
+    }
+
+    /**
+     * Adds an initialized strategy to the pipeline, sizing its pages with a
+     * PullPageSizer
+     *
+     * @param strategy  the strategy
+     * @param table     the table the strategy queries, which should use the
+     *                  response filter of the sizer
+     * @param pageSizer the page sizer of the strategy, or null to keep the
+     *                  page size of the strategy
+     */
+    public void add(PullStrategy strategy, MobileServiceJsonTable table, PullPageSizer pageSizer) {
+        this.mStrategies.add(strategy);
+        this.mTables.add(table);
+        this.mPageSizers.add(pageSizer);
+    }
+
+    /**
+     * Fetches the pages of every strategy and processes them on the calling
+     * thread, in the order each strategy fetched them
+     *
+     * @param processor the processor of the pulled pages
+     */
+    public void run(PageProcessor processor) throws Throwable {
+        int strategies = this.mStrategies.size();
+
+        if (strategies == 0) {
+            return;
+        }
+
+        if (this.mPrefetchDepth == 0 && strategies == 1) {
+            runSequentially(this.mStrategies.get(0), this.mTables.get(0), this.mPageSizers.get(0), processor);
+            return;
+        }
+
+        final BlockingQueue<Page> pages = new ArrayBlockingQueue<Page>(Math.max(1, this.mPrefetchDepth) * strategies);
+
+        ExecutorService executor = Executors.newFixedThreadPool(strategies);
+
+        try {
+            for (int i = 0; i < strategies; i++) {
+                final PullStrategy strategy = this.mStrategies.get(i);
+                final MobileServiceJsonTable table = this.mTables.get(i);
+                final PullPageSizer pageSizer = this.mPageSizers.get(i);
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        fetch(strategy, table, pageSizer, pages);
+                    }
+                });
+            }
+
+            int pending = strategies;
+
+            while (pending > 0) {
+                Page page = pages.take();
+
+                if (page.mError != null) {
+                    throw page.mError;
+                }
+
+                if (page.mElements == null) {
+                    pending--;
+                } else {
+                    store(page.mStrategy, page.mPageSizer, page.mElements, processor);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runSequentially(PullStrategy strategy, MobileServiceJsonTable table, PullPageSizer pageSizer, PageProcessor processor) throws Throwable {
+        JsonArray elements;
+
+        do {
+            elements = fetchPage(strategy, table, pageSizer);
+
+            store(strategy, pageSizer, elements, processor);
+        }
+        while (strategy.moveToNextPage(elements.size()));
+    }
+
+    private void fetch(PullStrategy strategy, MobileServiceJsonTable table, PullPageSizer pageSizer, BlockingQueue<Page> pages) {
+        try {
+            try {
+                JsonArray elements;
+
+                do {
+                    elements = fetchPage(strategy, table, pageSizer);
+
+                    pages.put(new Page(strategy, pageSizer, elements, null));
+                }
+                while (strategy.moveToNextPage(elements.size()));
+
+                pages.put(new Page(strategy, pageSizer, null, null));
+            } catch (InterruptedException e) {
+                // The pull was stopped
+            } catch (Throwable throwable) {
+                pages.put(new Page(strategy, pageSizer, null, throwable));
+            }
+        } catch (InterruptedException e) {
+            // The pull was stopped
+        }
+    }
+
+    private JsonArray fetchPage(PullStrategy strategy, MobileServiceJsonTable table, PullPageSizer pageSizer) throws Throwable {
+        Query query = strategy.getLastQuery();
+
+        if (this.mBudget != null) {
+            this.mBudget.acquireNetwork();
+        }
+
+        long start = System.nanoTime();
+
+        JsonArray elements;
+
+        try {
+            elements = execute(table, query);
+        } finally {
+            if (this.mBudget != null) {
+                this.mBudget.releaseNetwork();
+            }
+        }
+
+        strategy.onResultsFetched(elements);
+
+        if (pageSizer != null) {
+            strategy.setPageSize(pageSizer.onPageFetched(query.getTop(), elements.size(), System.nanoTime() - start));
+        }
+
+        return elements;
+    }
+
+    private void store(final PullStrategy strategy, PullPageSizer pageSizer, final JsonArray elements, final PageProcessor processor) throws Throwable {
+        if (this.mBudget != null) {
+            this.mBudget.acquireDisk();
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            storeInTransaction(strategy, elements, processor);
+        } finally {
+            if (this.mBudget != null) {
+                this.mBudget.releaseDisk();
+            }
+        }
+
+        if (pageSizer != null) {
+            pageSizer.onPageStored(elements.size(), System.nanoTime() - start);
+        }
+    }
+
+    private void storeInTransaction(final PullStrategy strategy, final JsonArray elements, final PageProcessor processor) throws Throwable {
+        this.mStore.runInTransaction(new MobileServiceLocalStoreTransaction() {
+            @Override
+            public void run() throws MobileServiceLocalStoreException {
+                try {
+                    processor.processPage(elements);
+                } catch (MobileServiceLocalStoreException e) {
+                    throw e;
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Throwable throwable) {
+                    throw new MobileServiceLocalStoreException(throwable);
+                }
+
+                strategy.onResultsProcessed(elements);
+            }
+        });
+    }
+
+    /**
+     * Executes a query and returns its results, unwrapping inline count
+     * responses
+     */
+    static JsonArray execute(MobileServiceJsonTable table, Query query) throws Throwable {
+        JsonElement result;
+
+        try {
+            result = table.execute(query).get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+
+        if (result != null) {
+            if (result.isJsonObject()) {
+                JsonObject jsonObject = result.getAsJsonObject();
+
+                if (jsonObject.has("results") && jsonObject.get("results").isJsonArray()) {
+                    return jsonObject.get("results").getAsJsonArray();
+                }
+            } else if (result.isJsonArray()) {
+                return result.getAsJsonArray();
+            }
+        }
+
+        return new JsonArray();
+    }
+
+    private static class Page {
+        private PullStrategy mStrategy;
+        private PullPageSizer mPageSizer;
+        private JsonArray mElements;
+        private Throwable mError;
+
+        Page(PullStrategy strategy, PullPageSizer pageSizer, JsonArray elements, Throwable error) {
+            this.mStrategy = strategy;
+            this.mPageSizer = pageSizer;
+            this.mElements = elements;
+            this.mError = error;
+        }
+    }
+}
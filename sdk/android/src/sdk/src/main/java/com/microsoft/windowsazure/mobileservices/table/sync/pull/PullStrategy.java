@@ -1,13 +1,23 @@
 package com.microsoft.windowsazure.mobileservices.table.sync.pull;
 
+import android.util.Pair;
+
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.microsoft.windowsazure.mobileservices.table.DateTimeOffset;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceJsonTable;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemColumns;
 import com.microsoft.windowsazure.mobileservices.table.MobileServiceSystemProperty;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by marianosanchez on 11/3/14.
@@ -15,11 +25,19 @@ import java.util.EnumSet;
 public class PullStrategy {
 
     int defaultTop = 50;
+    int maxTop = Integer.MAX_VALUE; // page size requested by the query, if any
 
     Query query;
     MobileServiceJsonTable table;
+    List<String> columns; // columns pulled, or null for every column
     int totalRead; // used to track how many we have read so far since the last delta
 
+    private Query seekQuery;
+    private List<Pair<String, QueryOrder>> seekOrder;
+    private JsonObject lastElement;
+    private JsonPrimitive lastId;
+    private JsonPrimitive seekId;
+
     public PullStrategy(Query query, MobileServiceJsonTable table) {
 
         this.query = query;
@@ -34,11 +52,11 @@ public class PullStrategy {
 
         query.includeDeleted();
         query.removeInlineCount();
-        query.removeProjection();
 
         if (this.query.getTop() == 0) {
             this.query.top(defaultTop);
         } else {
+            maxTop = this.query.getTop();
             this.query.top(Math.min(this.query.getTop(), defaultTop));
         }
 
@@ -49,8 +67,57 @@ public class PullStrategy {
         if (this.query.getSkip() < 0) {
             this.query.skip(0);
         }
+
+        // Pages are read with a seek past the ordered values of the last row,
+        // so each page costs the same regardless of how much was read before.
+        // The id is unique, so it ends the seek keys and breaks the ties of
+        // the columns ordered before it.
+        this.seekOrder = new ArrayList<Pair<String, QueryOrder>>();
+
+        List<String> projectedColumns = new ArrayList<String>();
+        projectedColumns.add(MobileServiceSystemColumns.Version);
+        projectedColumns.add(MobileServiceSystemColumns.Deleted);
+
+        for (Pair<String, QueryOrder> order : query.getOrderBy()) {
+            this.seekOrder.add(order);
+
+            if (order.first.equalsIgnoreCase(MobileServiceSystemColumns.Id)) {
+                break;
+            }
+
+            projectedColumns.add(order.first);
+        }
+
+        if (!this.seekOrder.get(this.seekOrder.size() - 1).first.equalsIgnoreCase(MobileServiceSystemColumns.Id)) {
+            this.seekOrder.add(new Pair<String, QueryOrder>(MobileServiceSystemColumns.Id, QueryOrder.Ascending));
+            this.query.orderBy(MobileServiceSystemColumns.Id, QueryOrder.Ascending);
+        }
+
+        applyProjection(projectedColumns.toArray(new String[projectedColumns.size()]));
+
+        this.seekQuery = this.query.deepClone();
+    }
+
+    /**
+     * Called when a page has been fetched, before it is written to the local
+     * store. Moves the cursor used to set up the next page.
+     *
+     * @param elements the fetched elements
+     */
+    public void onResultsFetched(JsonArray elements) {
+
+        if (elements.size() > 0) {
+            lastElement = elements.get(elements.size() - 1).getAsJsonObject();
+            lastId = getId(lastElement);
+        }
     }
 
+    /**
+     * Called once a page has been written to the local store. Pages are
+     * processed in the order they were fetched.
+     *
+     * @param elements the stored elements
+     */
     public void onResultsProcessed(JsonArray elements) {
         return;
     }
@@ -62,13 +129,208 @@ public class PullStrategy {
         if (lastElementCount == 0)
             return false;
 
+        if (this.seekQuery != null) {
+            return seekNextPage();
+        }
 
         this.query.skip(totalRead);
 
         return true;
     }
 
+    /**
+     * Sets the size of the next pages, bounded by the page size requested by
+     * the query
+     *
+     * @param pageSize the page size
+     */
+    public void setPageSize(int pageSize) {
+
+        defaultTop = Math.min(pageSize, maxTop);
+
+        this.query.top(defaultTop);
+
+        if (this.seekQuery != null) {
+            this.seekQuery.top(defaultTop);
+        }
+    }
+
+    /**
+     * Restricts the pull to a subset of the table columns. The id and the
+     * system columns the strategy needs are always pulled. Must be called
+     * before initialize.
+     *
+     * @param columns the columns to pull, or null to pull every column
+     */
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
     public Query getLastQuery() {
         return this.query;
     }
+
+    /**
+     * Returns the id of a pulled element, or null if it has no id
+     */
+    static JsonPrimitive getId(JsonElement element) {
+        JsonElement id = element.getAsJsonObject().get(MobileServiceSystemColumns.Id);
+
+        return id != null && id.isJsonPrimitive() ? id.getAsJsonPrimitive() : null;
+    }
+
+    /**
+     * Returns a query for a value of an id
+     */
+    static Query idValue(JsonPrimitive id) {
+        return id.isNumber() ? QueryOperations.val(id.getAsNumber()) : QueryOperations.val(id.getAsString());
+    }
+
+    /**
+     * Adds a filter to a query, keeping the query modifiers. The query filter
+     * is parenthesized, so an or in it doesn't take the added filter.
+     */
+    static Query and(Query query, Query filter) {
+        if (query.getQueryNode() != null) {
+            query.setQueryNode(QueryOperations.query(query).getQueryNode());
+
+            return query.and(filter);
+        }
+
+        query.setQueryNode(filter.getQueryNode());
+
+        return query;
+    }
+
+    /**
+     * Selects the pulled columns and the given system columns, or every
+     * column if no subset was set
+     */
+    void applyProjection(String... systemColumns) {
+
+        if (columns == null) {
+            query.removeProjection();
+            return;
+        }
+
+        List<String> projection = new ArrayList<String>();
+        projection.add(MobileServiceSystemColumns.Id);
+
+        for (String systemColumn : systemColumns) {
+            addColumn(projection, systemColumn);
+        }
+
+        for (String column : columns) {
+            addColumn(projection, column);
+        }
+
+        query.select(projection.toArray(new String[projection.size()]));
+    }
+
+    private static void addColumn(List<String> projection, String column) {
+
+        for (String selectedColumn : projection) {
+            if (selectedColumn.equalsIgnoreCase(column)) {
+                return;
+            }
+        }
+
+        projection.add(column);
+    }
+
+    private boolean seekNextPage() {
+
+        // Stop if the page did not move the cursor
+        if (lastId == null || lastId.equals(seekId)) {
+            return false;
+        }
+
+        seekId = lastId;
+
+        this.query = and(this.seekQuery.deepClone(), seekFilter(0));
+
+        //Keep Skip=0 to work around a SQL ordering issue #571
+        this.query.skip(0);
+
+        return true;
+    }
+
+    /**
+     * Builds the filter for the rows after the last row read, from the seek
+     * key at the given index on: (k gt last) or (k eq last and ...), ending
+     * with id gt lastId. The comparisons are flipped for descending keys.
+     * Null values sort first in ascending order, as on the server database.
+     */
+    private Query seekFilter(int keyIndex) {
+
+        Pair<String, QueryOrder> key = this.seekOrder.get(keyIndex);
+        boolean ascending = key.second == QueryOrder.Ascending;
+
+        if (keyIndex == this.seekOrder.size() - 1) {
+            Query idFilter = QueryOperations.field(key.first);
+
+            return ascending ? idFilter.gt(idValue(lastId)) : idFilter.lt(idValue(lastId));
+        }
+
+        JsonPrimitive lastValue = getValue(lastElement, key.first);
+
+        Query tieFilter = QueryOperations.field(key.first).eq(seekValue(key.first, lastValue)).and(seekFilter(keyIndex + 1));
+
+        Query afterFilter;
+
+        if (lastValue == null) {
+            if (!ascending) {
+                // No value comes after null in descending order
+                return tieFilter;
+            }
+
+            afterFilter = QueryOperations.field(key.first).ne(seekValue(key.first, null));
+        } else if (ascending) {
+            afterFilter = QueryOperations.field(key.first).gt(seekValue(key.first, lastValue));
+        } else {
+            afterFilter = QueryOperations.field(key.first).lt(seekValue(key.first, lastValue))
+                    .or(QueryOperations.field(key.first).eq(seekValue(key.first, null)));
+        }
+
+        return afterFilter.or(tieFilter);
+    }
+
+    /**
+     * Returns the value of a member of a pulled element, matching the name
+     * without case, or null if it has no value
+     */
+    static JsonPrimitive getValue(JsonObject element, String name) {
+
+        for (Map.Entry<String, JsonElement> member : element.entrySet()) {
+            if (member.getKey().equalsIgnoreCase(name)) {
+                return member.getValue().isJsonPrimitive() ? member.getValue().getAsJsonPrimitive() : null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns a query for a pulled value of a field. Values of the
+     * __createdAt and __updatedAt system columns are compared as dates;
+     * other strings are compared as strings, even if they look like dates.
+     */
+    static Query seekValue(String field, JsonPrimitive value) {
+
+        if (value == null) {
+            return QueryOperations.val((String) null);
+        } else if (value.isNumber()) {
+            return QueryOperations.val(value.getAsNumber());
+        } else if (value.isBoolean()) {
+            return QueryOperations.val(value.getAsBoolean());
+        }
+
+        DateTimeOffset date = null;
+
+        if (field.equalsIgnoreCase(MobileServiceSystemColumns.CreatedAt) || field.equalsIgnoreCase(MobileServiceSystemColumns.UpdatedAt)) {
+            date = IncrementalPullStrategy.getDateFromString(value.getAsString());
+        }
+
+        return date != null ? QueryOperations.val(date) : QueryOperations.val(value.getAsString());
+    }
 }
@@ -100,6 +100,9 @@ public class OperationQueue {
         columns.put("state", ColumnDataType.Real);
 
         store.defineTable(OPERATION_QUEUE_TABLE, columns);
+
+        // The queue is loaded in this order
+        store.defineIndex(OPERATION_QUEUE_TABLE, "queueloadedat_sequence", "__queueloadedat", "sequence");
     }
 
     /**
@@ -5,10 +5,14 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.microsoft.windowsazure.mobileservices.table.query.CompiledQuery;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryEvaluator;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreCursor;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreTransaction;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -32,6 +36,7 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
     public List<Query> ReadQueries = new ArrayList<Query>();
     ;
     public List<Query> DeleteQueries = new ArrayList<Query>();
+    public List<Query> UpdateQueries = new ArrayList<Query>();
     public Queue<String> ReadResponses = new LinkedList<String>();
     public Function<Query, JsonElement> readAsyncFunc;
 
@@ -45,6 +50,10 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
 
     }
 
+    @Override
+    public void defineIndex(String tableName, String indexName, String... expressions) throws MobileServiceLocalStoreException {
+    }
+
     @Override
     public JsonElement read(Query query) throws MobileServiceLocalStoreException {
 
@@ -79,6 +88,121 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
         return result;
     }
 
+    @Override
+    public MobileServiceLocalStoreCursor openCursor(Query query) throws MobileServiceLocalStoreException {
+        final JsonArray rows = getRows(read(query));
+
+        return new MobileServiceLocalStoreCursor() {
+            private int mPosition = -1;
+            private List<String> mColumns = new ArrayList<String>();
+
+            @Override
+            public boolean moveToNext() throws MobileServiceLocalStoreException {
+                if (mPosition < rows.size()) {
+                    mPosition++;
+                }
+
+                return mPosition < rows.size();
+            }
+
+            @Override
+            public JsonObject getRow() throws MobileServiceLocalStoreException {
+                return rows.get(mPosition).getAsJsonObject();
+            }
+
+            @Override
+            public int getColumnIndex(String columnName) {
+                for (int i = 0; i < mColumns.size(); i++) {
+                    if (mColumns.get(i).equalsIgnoreCase(columnName)) {
+                        return i;
+                    }
+                }
+
+                mColumns.add(columnName);
+
+                return mColumns.size() - 1;
+            }
+
+            @Override
+            public ColumnDataType getColumnDataType(int columnIndex) {
+                JsonElement value = getValue(columnIndex);
+
+                if (value == null || !value.isJsonPrimitive()) {
+                    return ColumnDataType.Other;
+                } else if (value.getAsJsonPrimitive().isBoolean()) {
+                    return ColumnDataType.Boolean;
+                } else if (value.getAsJsonPrimitive().isNumber()) {
+                    return ColumnDataType.Real;
+                }
+
+                return ColumnDataType.String;
+            }
+
+            @Override
+            public boolean isNull(int columnIndex) throws MobileServiceLocalStoreException {
+                return getValue(columnIndex) == null;
+            }
+
+            @Override
+            public String getString(int columnIndex) throws MobileServiceLocalStoreException {
+                return getValue(columnIndex).getAsString();
+            }
+
+            @Override
+            public long getLong(int columnIndex) throws MobileServiceLocalStoreException {
+                return getValue(columnIndex).getAsLong();
+            }
+
+            @Override
+            public double getDouble(int columnIndex) throws MobileServiceLocalStoreException {
+                return getValue(columnIndex).getAsDouble();
+            }
+
+            @Override
+            public boolean getBoolean(int columnIndex) throws MobileServiceLocalStoreException {
+                return getValue(columnIndex).getAsBoolean();
+            }
+
+            @Override
+            public JsonElement getJson(int columnIndex) throws MobileServiceLocalStoreException {
+                return getValue(columnIndex);
+            }
+
+            private JsonElement getValue(int columnIndex) {
+                String columnName = mColumns.get(columnIndex);
+
+                for (Map.Entry<String, JsonElement> property : rows.get(mPosition).getAsJsonObject().entrySet()) {
+                    if (property.getKey().equalsIgnoreCase(columnName)) {
+                        return property.getValue().isJsonNull() ? null : property.getValue();
+                    }
+                }
+
+                return null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public long count(Query query) throws MobileServiceLocalStoreException {
+        return getRows(read(query)).size();
+    }
+
+    private static JsonArray getRows(JsonElement result) {
+        if (result == null) {
+            return new JsonArray();
+        }
+
+        if (result.isJsonObject() && result.getAsJsonObject().has("results")) {
+            return result.getAsJsonObject().get("results").getAsJsonArray();
+        }
+
+        return result.getAsJsonArray();
+    }
+
     @Override
     public JsonObject lookup(String tableName, String itemId) throws MobileServiceLocalStoreException {
 
@@ -116,6 +240,42 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
         return;
     }
 
+    @Override
+    public int ingest(String tableName, JsonArray items) throws MobileServiceLocalStoreException {
+
+        List<JsonObject> updatedItems = new ArrayList<JsonObject>();
+        List<String> deletedIds = new ArrayList<String>();
+
+        for (JsonElement element : items) {
+            JsonObject item = element.getAsJsonObject();
+
+            if (item.get("id") == null) {
+                continue;
+            }
+
+            if (item.has("__deleted") && item.get("__deleted").getAsBoolean()) {
+                deletedIds.add(item.get("id").getAsString());
+            } else {
+                updatedItems.add(item);
+            }
+        }
+
+        if (deletedIds.size() > 0) {
+            delete(tableName, deletedIds.toArray(new String[deletedIds.size()]));
+        }
+
+        if (updatedItems.size() > 0) {
+            upsert(tableName, updatedItems.toArray(new JsonObject[updatedItems.size()]), true);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public void runInTransaction(MobileServiceLocalStoreTransaction transaction) throws MobileServiceLocalStoreException {
+        transaction.run();
+    }
+
     @Override
     public void delete(String tableName, String itemId) throws MobileServiceLocalStoreException {
 
@@ -147,6 +307,21 @@ public class MobileServiceLocalStoreMock implements MobileServiceLocalStore {
         return;
     }
 
+    @Override
+    public void update(Query query, JsonObject changes) throws MobileServiceLocalStoreException {
+        this.UpdateQueries.add(query);
+
+        CompiledQuery<JsonObject> compiledQuery = QueryEvaluator.compile(query);
+
+        for (JsonObject item : GetTable(query.getTableName()).values()) {
+            if (compiledQuery.matches(item)) {
+                for (Map.Entry<String, JsonElement> property : changes.entrySet()) {
+                    item.add(property.getKey(), property.getValue());
+                }
+            }
+        }
+    }
+
     private Map<String, JsonObject> GetTable(String tableName) {
         if (!this.Tables.containsKey(tableName)) {
             this.Tables.put(tableName, new LinkedHashMap<String, JsonObject>());
@@ -50,6 +50,7 @@ import org.apache.http.client.methods.HttpPost;
 
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -847,4 +848,83 @@ public class CustomApiClientTests extends InstrumentationTestCase {
             }
         }
     }
-}
\ No newline at end of file
+
+    public void testInvokeJsonBodyEncodesNonAsciiCharactersAsUtf8() throws Throwable {
+        assertJsonBodyIsEncodedAsUtf8("h\u00e9llo w\u00f6rld \u2014 \u65e5\u672c\u8a9e \u0645\u0631\u062d\u0628\u0627");
+    }
+
+    public void testInvokeJsonBodyEncodesSurrogatePairsAsUtf8() throws Throwable {
+        assertJsonBodyIsEncodedAsUtf8("\ud83d\ude00 \ud834\udd1e \ud83d\udc4d\ud83c\udffd");
+    }
+
+    public void testInvokeJsonBodyReplacesUnpairedSurrogates() throws Throwable {
+        // A lone high surrogate, a lone low surrogate and a high surrogate
+        // followed by a pair are each encoded like String.getBytes does
+        assertJsonBodyIsEncodedAsUtf8("a\ud83db", "\ude00c", "x\ud83d\ud83d\ude00y", "\ud83d");
+    }
+
+    public void testInvokeJsonBodyLargerThanInitialBuffer() throws Throwable {
+        // Three byte characters, so some of them straddle the buffer growth
+        assertJsonBodyIsEncodedAsUtf8("a" + repeat("\u65e5\ud83d\ude00", 3000));
+    }
+
+    public void testInvokeJsonBodyLargerThanMaxPooledCapacity() throws Throwable {
+        assertJsonBodyIsEncodedAsUtf8(repeat("h\u00e9llo \u65e5\u672c \ud83d\ude00 ", 20000));
+    }
+
+    public void testSequentialInvokesReusingPooledBufferSendOnlyTheirOwnBody() throws Throwable {
+        // The second body is sent from the buffer released by the first one,
+        // which must not leak any of its bytes
+        assertJsonBodyIsEncodedAsUtf8(repeat("\u65e5\u672c\u8a9e", 20000), "short \u00e9", "");
+    }
+
+    /**
+     * Sends each value as the message of a JSON body and asserts that the
+     * request content seen by a filter matches String.getBytes byte for byte
+     */
+    private void assertJsonBodyIsEncodedAsUtf8(String... values) throws Throwable {
+
+        final List<byte[]> rawContents = new ArrayList<byte[]>();
+        final List<String> contents = new ArrayList<String>();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                rawContents.add(request.getRawContent());
+                contents.add(request.getContent());
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setContent(request.getRawContent());
+                response.setStatus(new StatusLineMock(200));
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        for (int i = 0; i < values.length; i++) {
+            JsonObject json = new JsonObject();
+            json.addProperty("message", values[i]);
+
+            byte[] expected = json.toString().getBytes(MobileServiceClient.UTF8_ENCODING);
+
+            JsonElement result = client.invokeApi("myApi", json, HttpPost.METHOD_NAME, null).get();
+
+            assertTrue(Arrays.equals(expected, rawContents.get(i)));
+            assertEquals(new String(expected, MobileServiceClient.UTF8_ENCODING), contents.get(i));
+            assertEquals(new String(expected, MobileServiceClient.UTF8_ENCODING), result.toString());
+        }
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder(value.length() * count);
+
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+
+        return builder.toString();
+    }
+}
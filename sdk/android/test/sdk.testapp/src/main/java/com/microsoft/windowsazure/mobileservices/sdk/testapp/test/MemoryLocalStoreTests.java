@@ -0,0 +1,300 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MemoryLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreTransaction;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class MemoryLocalStoreTests extends InstrumentationTestCase {
+
+    private String TestTable = "todo";
+
+    public void testReadFiltersOrdersAndPagesThroughAnIndex() throws MobileServiceLocalStoreException {
+        MemoryLocalStore store = createStore(null);
+
+        store.defineIndex(TestTable, "priority", "priority desc");
+        store.initialize();
+
+        for (int i = 0; i < 10; i++) {
+            store.upsert(TestTable, createItem("item" + i, "Task " + i, i, i % 2 == 0), false);
+        }
+
+        Query query = QueryOperations.tableName(TestTable).field("complete").eq(true)
+                .and(QueryOperations.startsWith("text", "task"))
+                .orderBy("priority", QueryOrder.Ascending).skip(1).top(2).includeInlineCount();
+
+        JsonObject result = store.read(query).getAsJsonObject();
+        JsonArray rows = result.get("results").getAsJsonArray();
+
+        assertEquals(5, result.get("count").getAsInt());
+        assertEquals(2, rows.size());
+        assertEquals("item2", rows.get(0).getAsJsonObject().get("id").getAsString());
+        assertEquals("item4", rows.get(1).getAsJsonObject().get("id").getAsString());
+
+        store.delete(QueryOperations.tableName(TestTable).field("priority").lt(5));
+
+        assertNull(store.lookup(TestTable, "item4"));
+        assertEquals(5L, store.count(QueryOperations.tableName(TestTable)));
+    }
+
+    public void testRedefinedIndexesAreRebuiltOnInitialize() throws MobileServiceLocalStoreException {
+        MemoryLocalStore store = createStore(null);
+        store.initialize();
+
+        for (int i = 0; i < 5; i++) {
+            store.upsert(TestTable, createItem("item" + i, "Task " + (4 - i), i, false), false);
+        }
+
+        // An index defined after the rows were written indexes them all
+        store.defineIndex(TestTable, "ordering", "priority desc");
+        store.initialize();
+
+        assertEquals("item4", readIds(store, "priority", QueryOrder.Descending).get(0));
+        assertEquals("item0", readIds(store, "priority", QueryOrder.Ascending).get(0));
+
+        // Changing an indexed value moves the row in the index
+        store.upsert(TestTable, createItem("item0", "Task 4", 9, false), false);
+
+        assertEquals("item0", readIds(store, "priority", QueryOrder.Descending).get(0));
+
+        // Redefining the index replaces it, and orderings it no longer
+        // provides are sorted
+        store.defineIndex(TestTable, "ordering", "text");
+        store.initialize();
+
+        List<String> byText = readIds(store, "text", QueryOrder.Ascending);
+        List<String> byPriority = readIds(store, "priority", QueryOrder.Descending);
+
+        assertEquals(5, byText.size());
+        assertEquals("item4", byText.get(0));
+        assertEquals("item0", byText.get(4));
+        assertEquals("item0", byPriority.get(0));
+        assertEquals("item1", byPriority.get(4));
+    }
+
+    public void testDeleteByQueryAndCountApplyTheFilter() throws MobileServiceLocalStoreException {
+        MemoryLocalStore store = createStore(null);
+
+        store.defineIndex(TestTable, "priority", "priority");
+        store.initialize();
+
+        for (int i = 0; i < 10; i++) {
+            store.upsert(TestTable, createItem("item" + i, "Task " + i, i, i % 2 == 0), false);
+        }
+
+        // Counts ignore paging
+        assertEquals(5L, store.count(QueryOperations.tableName(TestTable).field("complete").eq(true).top(2).skip(1)));
+
+        store.delete(QueryOperations.tableName(TestTable).field("complete").eq(true).and(QueryOperations.field("priority").gt(2)));
+
+        assertEquals(7L, store.count(QueryOperations.tableName(TestTable)));
+        assertEquals(2L, store.count(QueryOperations.tableName(TestTable).field("complete").eq(true)));
+        assertNull(store.lookup(TestTable, "item4"));
+        assertNotNull(store.lookup(TestTable, "item5"));
+
+        // Deleted rows are gone from the index too
+        List<String> ids = readIds(store, "priority", QueryOrder.Ascending);
+
+        assertEquals(7, ids.size());
+        assertFalse(ids.contains("item4"));
+
+        store.delete(QueryOperations.tableName(TestTable));
+
+        assertEquals(0L, store.count(QueryOperations.tableName(TestTable)));
+    }
+
+    public void testIngestSkipsItemsWithUnchangedVersion() throws MobileServiceLocalStoreException {
+        MemoryLocalStore store = new MemoryLocalStore();
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("text", ColumnDataType.String);
+        columns.put("__version", ColumnDataType.String);
+
+        store.defineTable(TestTable, columns);
+        store.initialize();
+
+        JsonArray page = new JsonParser().parse("[" +
+                "{\"id\":\"abc\",\"text\":\"old\",\"__version\":\"1\"}," +
+                "{\"id\":\"def\",\"text\":\"old\",\"__version\":\"1\"}," +
+                "{\"id\":\"ghi\",\"text\":\"old\"}]").getAsJsonArray();
+
+        assertEquals(0, store.ingest(TestTable, page));
+
+        page = new JsonParser().parse("[" +
+                "{\"id\":\"abc\",\"text\":\"ignored\",\"__version\":\"1\"}," +
+                "{\"id\":\"def\",\"text\":\"new\",\"__version\":\"2\"}," +
+                "{\"id\":\"ghi\",\"__deleted\":true}]").getAsJsonArray();
+
+        assertEquals(1, store.ingest(TestTable, page));
+
+        assertEquals("old", store.lookup(TestTable, "abc").get("text").getAsString());
+        assertEquals("new", store.lookup(TestTable, "def").get("text").getAsString());
+        assertEquals("2", store.lookup(TestTable, "def").get("__version").getAsString());
+        assertNull(store.lookup(TestTable, "ghi"));
+    }
+
+    public void testConcurrentReadersNeverSeePartialTransactions() throws Throwable {
+        final MemoryLocalStore store = createStore(null);
+        store.initialize();
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final Throwable[] readError = new Throwable[1];
+        List<Thread> readers = new ArrayList<Thread>();
+
+        for (int i = 0; i < 4; i++) {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (writing.get()) {
+                            // Rows are written in pairs, so a consistent read
+                            // always sees an even number of them
+                            long count = store.count(QueryOperations.tableName(TestTable));
+                            int rows = store.read(QueryOperations.tableName(TestTable)).getAsJsonArray().size();
+
+                            if (count % 2 != 0 || rows % 2 != 0) {
+                                throw new AssertionError("Read a partial transaction");
+                            }
+                        }
+                    } catch (Throwable throwable) {
+                        readError[0] = throwable;
+                    }
+                }
+            });
+
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            final int pair = i;
+
+            store.runInTransaction(new MobileServiceLocalStoreTransaction() {
+                @Override
+                public void run() throws MobileServiceLocalStoreException {
+                    store.upsert(TestTable, createItem("a" + pair, "Task", pair, false), false);
+                    store.upsert(TestTable, createItem("b" + pair, "Task", pair, true), false);
+                }
+            });
+        }
+
+        writing.set(false);
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        if (readError[0] != null) {
+            throw readError[0];
+        }
+
+        assertEquals(400L, store.count(QueryOperations.tableName(TestTable)));
+    }
+
+    public void testFailedTransactionRollsBackAndSnapshotRoundTrips() throws Throwable {
+        File snapshotFile = new File(this.getInstrumentation().getTargetContext().getCacheDir(), "memoryStoreTest.json");
+        snapshotFile.delete();
+
+        final MemoryLocalStore store = createStore(snapshotFile);
+        store.initialize();
+
+        store.upsert(TestTable, createItem("abc", "Kept", 1, false), false);
+
+        try {
+            store.runInTransaction(new MobileServiceLocalStoreTransaction() {
+                @Override
+                public void run() throws MobileServiceLocalStoreException {
+                    store.upsert(TestTable, createItem("abc", "Changed", 2, true), false);
+                    store.upsert(TestTable, createItem("def", "Added", 3, false), false);
+
+                    throw new MobileServiceLocalStoreException("Rolled back");
+                }
+            });
+
+            fail("The transaction should have failed");
+        } catch (MobileServiceLocalStoreException e) {
+            // expected
+        }
+
+        assertEquals("Kept", store.lookup(TestTable, "abc").get("text").getAsString());
+        assertNull(store.lookup(TestTable, "def"));
+
+        store.saveSnapshot();
+
+        MemoryLocalStore reloaded = createStore(snapshotFile);
+        reloaded.initialize();
+
+        assertEquals("Kept", reloaded.lookup(TestTable, "abc").get("text").getAsString());
+        assertEquals(1L, reloaded.count(QueryOperations.tableName(TestTable)));
+
+        snapshotFile.delete();
+    }
+
+    private List<String> readIds(MemoryLocalStore store, String field, QueryOrder order) throws MobileServiceLocalStoreException {
+        List<String> ids = new ArrayList<String>();
+
+        for (JsonElement row : store.read(QueryOperations.tableName(TestTable).orderBy(field, order)).getAsJsonArray()) {
+            ids.add(row.getAsJsonObject().get("id").getAsString());
+        }
+
+        return ids;
+    }
+
+    private MemoryLocalStore createStore(File snapshotFile) throws MobileServiceLocalStoreException {
+        MemoryLocalStore store = new MemoryLocalStore(snapshotFile);
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("text", ColumnDataType.String);
+        columns.put("priority", ColumnDataType.Integer);
+        columns.put("complete", ColumnDataType.Boolean);
+
+        store.defineTable(TestTable, columns);
+
+        return store;
+    }
+
+    private static JsonObject createItem(String id, String text, int priority, boolean complete) {
+        JsonObject item = new JsonObject();
+        item.addProperty("id", id);
+        item.addProperty("text", text);
+        item.addProperty("priority", priority);
+        item.addProperty("complete", complete);
+
+        return item;
+    }
+}
@@ -33,9 +33,12 @@ import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TimeZone;
 
 import static com.microsoft.windowsazure.mobileservices.table.query.QueryOperations.field;
+import static com.microsoft.windowsazure.mobileservices.table.query.QueryOperations.parameter;
 import static com.microsoft.windowsazure.mobileservices.table.query.QueryOperations.val;
 
 public class MobileServiceQueryTests extends InstrumentationTestCase {
@@ -859,4 +862,53 @@ public class MobileServiceQueryTests extends InstrumentationTestCase {
         // Asserts
         assertEquals(EncodingUtilities.percentEncodeSpaces("id eq '1' and (age eq 13 or complete eq true)"), QueryODataWriter.getRowFilter(query4));
     }
+
+    public void testQueryStringMatchesFilterAndModifiers() throws Throwable {
+
+        for (int i = 0; i < 3; i++) {
+            // Create queries with the same structure and different constants
+            Query query = table.where().field("firstName").eq().val("John" + i).and().field("age").gt().val(20 + i).select("Id", "Name")
+                    .orderBy("Name", QueryOrder.Ascending).skip(5 + i).top(3 + i);
+
+            // Asserts
+            String expected = "$filter=" + QueryODataWriter.getRowFilter(query) + QueryODataWriter.getRowSetModifiers(query, table);
+            assertEquals(expected, QueryODataWriter.getQueryString(query, table));
+        }
+
+        // Create query without filter
+        Query query = table.where().orderBy("Name", QueryOrder.Descending).top(10);
+
+        // Asserts
+        assertEquals(QueryODataWriter.getRowSetModifiers(query, table).substring(1), QueryODataWriter.getQueryString(query, table));
+        assertEquals("", QueryODataWriter.getQueryString(table.where(), table));
+    }
+
+    public void testQueryStringWithParameters() throws Throwable {
+
+        // Create query
+        Query query = table.where().field("firstName").eq(parameter("name")).and().field("age").gt(parameter("age"));
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("name", "John");
+        parameters.put("age", 20);
+
+        // Asserts
+        String expected = "$filter=" + EncodingUtilities.percentEncodeSpaces("firstName eq ('John') and age gt (20)");
+        assertEquals(expected, QueryODataWriter.getQueryString(query, table, parameters));
+
+        parameters.put("name", "Mary");
+        parameters.put("age", 30);
+
+        expected = "$filter=" + EncodingUtilities.percentEncodeSpaces("firstName eq ('Mary') and age gt (30)");
+        assertEquals(expected, QueryODataWriter.getQueryString(query, table, parameters));
+
+        parameters.remove("age");
+
+        try {
+            QueryODataWriter.getQueryString(query, table, parameters);
+            fail("Expected Exception IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // do nothing, it's OK
+        }
+    }
 }
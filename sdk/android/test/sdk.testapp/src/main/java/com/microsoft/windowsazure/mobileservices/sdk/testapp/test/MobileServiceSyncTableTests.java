@@ -19,6 +19,7 @@ See the Apache Version 2.0 License for specific language governing permissions a
  */
 package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
 
+import android.os.Bundle;
 import android.test.InstrumentationTestCase;
 
 import com.google.common.base.Function;
@@ -44,10 +45,19 @@ import com.microsoft.windowsazure.mobileservices.table.MobileServiceExceptionBas
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceDataChangeNotifications;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceJsonSyncTable;
+import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncMetrics;
 import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncTable;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MemoryLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreTransaction;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationError;
 import com.microsoft.windowsazure.mobileservices.table.sync.operations.TableOperationKind;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullFreshnessPolicy;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullProgressListener;
+import com.microsoft.windowsazure.mobileservices.table.sync.pull.MobileServicePullSpec;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushFailedException;
 import com.microsoft.windowsazure.mobileservices.table.sync.push.MobileServicePushStatus;
 import com.microsoft.windowsazure.mobileservices.table.sync.queue.OperationErrorList;
@@ -59,12 +69,18 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class MobileServiceSyncTableTests extends InstrumentationTestCase {
     String appUrl = "";
@@ -390,6 +406,61 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
                                 "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('world')&$top=3&$skip=5&$orderby=Id%20desc&__includeDeleted=true&__systemproperties=__version,__deleted"));
     }
 
+    public void testPullSelectsColumnSubsetAndSystemColumns() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "[{\"id\":\"abc\",\"String\":\"Hey\"}]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        table.setColumns("String");
+
+        Query query = QueryOperations.tableName(table.getName()).top(3).select("Other");
+
+        table.pull(query).get();
+
+        String url = serviceFilterContainer.Requests.get(0).Url;
+
+        assertTrue(url.endsWith("&$select=id,__version,__deleted,String"));
+        assertEquals(1, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+
+        table.setColumns();
+
+        // The first pull seeks past abc with a second request
+        int firstPullRequests = serviceFilterContainer.Requests.size();
+
+        table.pull(query).get();
+
+        assertFalse(serviceFilterContainer.Requests.get(firstPullRequests).Url.contains("$select"));
+    }
+
+    public void testPullSelectsColumnsFromTypeWithoutOuterInstance() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false, "[{\"id\":\"abc\",\"text\":\"Hey\"}]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        // An inner class refers to its outer instance through a synthetic field
+        MobileServiceSyncTable<InnerEntity> table = client.getSyncTable(InnerEntity.class);
+
+        table.setColumnsFromType();
+
+        table.pull(null).get();
+
+        assertTrue(serviceFilterContainer.Requests.get(0).Url.endsWith("&$select=id,__version,__deleted,text"));
+    }
+
     public void testPullNoSkipSucceds() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
 
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
@@ -489,14 +560,15 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
                 serviceFilterContainer.Requests.get(0).Url,
                 EncodingUtilities
                         .percentEncodeSpaces(
-                                "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('noMatch')&$top=50&$orderby=__updatedAt%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+                                "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('noMatch')&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
 
         assertEquals(
                 serviceFilterContainer.Requests.get(1).Url,
                 EncodingUtilities
                         .percentEncodeSpaces(
-                                "http://myapp.com/tables/stringidtype?$filter=String%20eq%20('noMatch')%20and%20" +
-                                        "(__updatedAt%20ge%20(datetimeoffset'"+updatedAt1 +"'))&$top=50&$orderby=__updatedAt%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+                                "http://myapp.com/tables/stringidtype?$filter=(String%20eq%20('noMatch'))%20and%20" +
+                                        "(__updatedAt%20gt%20(datetimeoffset'" + updatedAt1 + "')%20or%20(__updatedAt%20eq%20(datetimeoffset'" + updatedAt1 + "')%20and%20id%20gt%20('def')))" +
+                                        "&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
     }
 
     public void testIncrementalPullSaveLastUpdatedAtDate() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
@@ -523,69 +595,895 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
 
         client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
 
-        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).top(2);
+
+        table.pull(query, queryKey).get();
+
+        LinkedHashMap<String, JsonObject> tableContent = store.Tables.get(incrementalPullStrategyTable);
+
+        JsonElement result = tableContent.get(table.getName() + "_" + queryKey);
+
+        String stringMaxUpdatedDate = result.getAsJsonObject()
+                .get("maxupdateddate").getAsString();
+
+        assertEquals(updatedAt2, stringMaxUpdatedDate);
+    }
+
+    public void testIncrementalSyncSeeksPastItemsWithSameUpdatedAt() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+        String queryKey = "QueryKey";
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        Date d = new Date();
+        String updatedAt1 = sdf.format(d);
+        d.setTime(d.getTime() + 1000L);
+        String updatedAt2 = sdf.format(d);
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}," +
+                        "{\"id\":\"def\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}]",
+                "[{\"id\":\"ghi\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}," +
+                        "{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt2 + "\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.field("String").eq("Hey");
+
+        table.pull(query, queryKey).get();
+
+        assertEquals(3, serviceFilterContainer.Requests.size());
+
+        // Seek past the last item with the same __updatedAt, no skip
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=(String%20eq%20('Hey'))%20and%20" +
+                                "(__updatedAt%20gt%20(datetimeoffset'" + updatedAt1 + "')%20or%20(__updatedAt%20eq%20(datetimeoffset'" + updatedAt1 + "')%20and%20id%20gt%20('def')))" +
+                                "&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(2).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=(String%20eq%20('Hey'))%20and%20" +
+                                "(__updatedAt%20gt%20(datetimeoffset'" + updatedAt2 + "')%20or%20(__updatedAt%20eq%20(datetimeoffset'" + updatedAt2 + "')%20and%20id%20gt%20('abc')))" +
+                                "&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+    }
+
+    public void testIncrementalPullResumesAfterLastStoredItem() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException, MobileServiceLocalStoreException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+        String queryKey = "QueryKey";
+        String incrementalPullStrategyTable = "__incrementalPullData";
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        Date d = new Date();
+        String updatedAt1 = sdf.format(d);
+        d.setTime(d.getTime() + 1000L);
+        String updatedAt2 = sdf.format(d);
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"ghi\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt2 + "\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        // checkpoint left by a pull interrupted after storing item def
+        JsonObject checkpoint = new JsonObject();
+        checkpoint.addProperty("id", table.getName() + "_" + queryKey);
+        checkpoint.addProperty("maxupdateddate", updatedAt1);
+        checkpoint.addProperty("lastid", "def");
+        store.upsert(incrementalPullStrategyTable, checkpoint, false);
+
+        table.pull(QueryOperations.field("String").eq("Hey"), queryKey).get();
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(0).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=(String%20eq%20('Hey'))%20and%20" +
+                                "(__updatedAt%20gt%20(datetimeoffset'" + updatedAt1 + "')%20or%20(__updatedAt%20eq%20(datetimeoffset'" + updatedAt1 + "')%20and%20id%20gt%20('def')))" +
+                                "&$top=50&$orderby=__updatedAt%20asc,id%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+
+        JsonObject saved = store.Tables.get(incrementalPullStrategyTable).get(table.getName() + "_" + queryKey);
+
+        assertEquals(updatedAt2, saved.get("maxupdateddate").getAsString());
+        assertEquals("ghi", saved.get("lastid").getAsString());
+    }
+
+    public void testPullSeeksOnLastIdInsteadOfSkip() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]",
+                "[{\"id\":\"ghi\",\"String\":\"Hey\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).field("String").ne("none");
+
+        table.pull(query).get();
+
+        assertEquals(3, serviceFilterContainer.Requests.size());
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=(String%20ne%20('none'))%20and%20(id%20gt%20('def'))&$top=50&$skip=0&$orderby=id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted"));
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(2).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=(String%20ne%20('none'))%20and%20(id%20gt%20('ghi'))&$top=50&$skip=0&$orderby=id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted"));
+
+        assertEquals(3, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+    }
+
+    public void testPullSeekDoesNotBindToLastTermOfOrFilter() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).field("String").eq("Hey").or().field("String").eq("World");
+
+        table.pull(query).get();
+
+        assertEquals(2, serviceFilterContainer.Requests.size());
+
+        // Without the parentheses the seek would only apply to the second term
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=(String%20eq%20('Hey')%20or%20String%20eq%20('World'))%20and%20(id%20gt%20('def'))&$top=50&$skip=0&$orderby=id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted"));
+    }
+
+    public void testPullSeeksOnOrderedColumnAndIdInsteadOfSkip() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\"},{\"id\":\"def\",\"String\":\"World\"}]",
+                "[{\"id\":\"ghi\",\"String\":\"World\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).orderBy("String", QueryOrder.Ascending);
+
+        table.pull(query).get();
+
+        assertEquals(3, serviceFilterContainer.Requests.size());
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(0).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$top=50&$skip=0&$orderby=String%20asc,id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted"));
+
+        // Rows sharing the last ordered value are read once, after the last id
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=String%20gt%20('World')%20or%20(String%20eq%20('World')%20and%20(id%20gt%20('def')))&$top=50&$skip=0&$orderby=String%20asc,id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted"));
+
+        assertEquals(
+                serviceFilterContainer.Requests.get(2).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=String%20gt%20('World')%20or%20(String%20eq%20('World')%20and%20(id%20gt%20('ghi')))&$top=50&$skip=0&$orderby=String%20asc,id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted"));
+
+        assertEquals(3, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+    }
+
+    public void testPullSeeksOnDateLikeStringAsString() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"2015-01-02T03:04:05.678Z\"}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        Query query = QueryOperations.tableName(table.getName()).orderBy("String", QueryOrder.Ascending);
+
+        table.pull(query).get();
+
+        assertEquals(2, serviceFilterContainer.Requests.size());
+
+        // Only the system date columns are compared as dates
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=String%20gt%20('2015-01-02T03%3A04%3A05.678Z')%20or%20(String%20eq%20('2015-01-02T03%3A04%3A05.678Z')%20and%20(id%20gt%20('abc')))&$top=50&$skip=0&$orderby=String%20asc,id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted"));
+    }
+
+    public void testPullSeeksOnDescendingOrderedColumnWithNulls() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"World\"},{\"id\":\"def\",\"String\":\"Hey\"}]",
+                "[{\"id\":\"ghi\",\"String\":null}]"
+        ));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        table.setColumns("Id");
+
+        Query query = QueryOperations.tableName(table.getName()).orderBy("String", QueryOrder.Descending);
+
+        table.pull(query).get();
+
+        assertEquals(3, serviceFilterContainer.Requests.size());
+
+        // The ordered column is pulled to seek on its values
+        assertTrue(serviceFilterContainer.Requests.get(0).Url.endsWith("&$orderby=String%20desc,id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted&$select=id,__version,__deleted,String"));
+
+        // Nulls come last in descending order
+        assertEquals(
+                serviceFilterContainer.Requests.get(1).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=String%20lt%20('Hey')%20or%20(String%20eq%20(null))%20or%20(String%20eq%20('Hey')%20and%20(id%20gt%20('def')))&$top=50&$skip=0&$orderby=String%20desc,id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted&$select=id,__version,__deleted,String"));
+
+        // Only the remaining nulls come after a null
+        assertEquals(
+                serviceFilterContainer.Requests.get(2).Url,
+                EncodingUtilities
+                        .percentEncodeSpaces(
+                                "http://myapp.com/tables/stringidtype?$filter=String%20eq%20(null)%20and%20(id%20gt%20('ghi'))&$top=50&$skip=0&$orderby=String%20desc,id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted&$select=id,__version,__deleted,String"));
+    }
+
+    public void testPartitionedPullWritesAllPartitions() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        final List<String> urls = new ArrayList<String>();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+
+                String url = request.getUrl();
+                String content;
+
+                if (url.contains("gt%20(")) {
+                    content = "[]";
+                } else if (url.contains("$inlinecount=allpages")) {
+                    content = "{\"count\":\"100\",\"results\":[{\"id\":\"a\"}]}";
+                } else if (url.contains("$top=1&")) {
+                    content = "[{\"id\":\"c\"}]";
+                } else if (url.contains("lt%20('c')")) {
+                    content = "[{\"id\":\"a\",\"String\":\"Hey\"},{\"id\":\"b\",\"String\":\"Hey\"}]";
+                } else {
+                    content = "[{\"id\":\"c\",\"String\":\"Hey\"},{\"id\":\"d\",\"String\":\"Hey\"}]";
+                }
+
+                synchronized (urls) {
+                    urls.add(url);
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(200));
+                response.setContent(content);
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPullParallelism(2);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        table.pull(null).get();
+
+        assertEquals(4, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+
+        // count, boundary probe, then two pages for each of the two partitions
+        assertEquals(6, urls.size());
+        assertTrue(urls.contains(EncodingUtilities.percentEncodeSpaces(
+                "http://myapp.com/tables/stringidtype?$filter=id%20lt%20('c')&$top=50&$skip=0&$orderby=id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted")));
+        assertTrue(urls.contains(EncodingUtilities.percentEncodeSpaces(
+                "http://myapp.com/tables/stringidtype?$filter=id%20ge%20('c')&$top=50&$skip=0&$orderby=id%20asc&__includeDeleted=true&__systemproperties=__version,__deleted")));
+    }
+
+    public void testPartitionedIncrementalPullSavesCheckpointWithEachPage() throws Throwable {
+
+        // Counts the committed page transactions: both pages of the first
+        // partition and the first page of the second one
+        final CountDownLatch pagesStored = new CountDownLatch(3);
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock() {
+            @Override
+            public void runInTransaction(MobileServiceLocalStoreTransaction transaction) throws MobileServiceLocalStoreException {
+                super.runInTransaction(transaction);
+
+                pagesStored.countDown();
+            }
+        };
+
+        String queryKey = "QueryKey";
+        String incrementalPullStrategyTable = "__incrementalPullData";
+        final CountDownLatch firstPartitionRead = new CountDownLatch(1);
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        Date d = new Date();
+        final String updatedAt1 = sdf.format(d);
+        d.setTime(d.getTime() + 1000L);
+        final String updatedAt2 = sdf.format(d);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+
+                String url = request.getUrl();
+                String content;
+                int status = 200;
+
+                if (url.contains("__updatedAt%20desc")) {
+                    content = "[{\"id\":\"d\",\"__updatedAt\":\"" + updatedAt2 + "\"}]";
+                } else if (url.contains("$inlinecount=allpages")) {
+                    content = "{\"count\":\"100\",\"results\":[{\"id\":\"a\"}]}";
+                } else if (url.contains("$skip=50")) {
+                    content = "[{\"id\":\"c\"}]";
+                } else if (url.contains("lt%20('c')")) {
+                    if (url.contains("id%20gt%20('b')")) {
+                        firstPartitionRead.countDown();
+                        content = "[]";
+                    } else {
+                        content = "[{\"id\":\"a\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}," +
+                                "{\"id\":\"b\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}]";
+                    }
+                } else if (url.contains("id%20gt%20('d')")) {
+                    // The second partition fails after the other pages are stored
+                    try {
+                        pagesStored.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+
+                    status = 500;
+                    content = "{\"error\":\"Server failure\"}";
+                } else {
+                    try {
+                        firstPartitionRead.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+
+                    content = "[{\"id\":\"c\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}," +
+                            "{\"id\":\"d\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt2 + "\"}]";
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(status));
+                response.setContent(content);
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPullParallelism(2);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        try {
+            table.pull(QueryOperations.field("String").eq("Hey"), queryKey).get();
+            fail("Expected the pull to fail");
+        } catch (ExecutionException e) {
+            // expected
+        }
+
+        assertEquals(4, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+
+        // The first partition is completed and the second one stored item d,
+        // so the pull resumes after d
+        JsonObject saved = store.Tables.get(incrementalPullStrategyTable).get(table.getName() + "_" + queryKey);
+
+        assertEquals(updatedAt2, saved.get("maxupdateddate").getAsString());
+        assertEquals("d", saved.get("lastid").getAsString());
+    }
+
+    public void testPrefetchedPullOnlySavesCheckpointOfStoredPages() throws MalformedURLException, InterruptedException, MobileServiceException {
+
+        final String tableName = "stringidtype";
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock() {
+            private int mUpserts = 0;
+
+            @Override
+            public void upsert(String table, JsonObject[] items, boolean fromServer) throws MobileServiceLocalStoreException {
+                if (table.equalsIgnoreCase(tableName) && ++mUpserts > 1) {
+                    throw new MobileServiceLocalStoreException("Store failure");
+                }
+
+                super.upsert(table, items, fromServer);
+            }
+        };
+
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+        String queryKey = "QueryKey";
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        Date d = new Date();
+        String updatedAt1 = sdf.format(d);
+        d.setTime(d.getTime() + 1000L);
+        String updatedAt2 = sdf.format(d);
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}]",
+                "[{\"id\":\"def\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt2 + "\"}]"
+        ));
+
+        try {
+            client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        } catch (ExecutionException e) {
+            fail(e.getMessage());
+        }
+
+        client.getSyncContext().setPullPrefetchDepth(2);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        try {
+            table.pull(QueryOperations.field("String").eq("Hey"), queryKey).get();
+            fail("Expected the pull to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MobileServiceLocalStoreException);
+        }
+
+        assertEquals(1, store.Tables.get(tableName).size());
+
+        String stringMaxUpdatedDate = store.Tables.get("__incrementalPullData").get(table.getName() + "_" + queryKey)
+                .get("maxupdateddate").getAsString();
+
+        assertEquals(updatedAt1, stringMaxUpdatedDate);
+    }
+
+    public void testPullSkipsFreshQueriesUntilPurged() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String updatedAt = sdf.format(new Date());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt + "\"}]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        String queryKey = "QueryKey";
+
+        client.getSyncContext().setPullFreshnessPolicy(table.getName(), queryKey, new MobileServicePullFreshnessPolicy(60000, 0, 0));
+
+        table.pull(null, queryKey).get();
+
+        int requests = serviceFilterContainer.Requests.size();
+        assertTrue(requests > 0);
+
+        table.pull(null, queryKey).get();
+
+        assertEquals(requests, serviceFilterContainer.Requests.size());
+        assertEquals(1, client.getSyncContext().getMetrics().getSkippedPulls());
+
+        table.purge(null).get();
+        table.pull(null, queryKey).get();
+
+        assertTrue(serviceFilterContainer.Requests.size() > requests);
+        assertEquals(1, client.getSyncContext().getMetrics().getSkippedPulls());
+    }
+
+    public void testPurgeKeepsPolicyOfQueryWithMatchingKey() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        String queryKey = "items";
+
+        client.getSyncContext().setPullFreshnessPolicy(table.getName(), queryKey, new MobileServicePullFreshnessPolicy(60000, 0, 0));
+
+        // the purged table is named like the key of the query above
+        String purgedTableName = table.getName().toLowerCase(Locale.getDefault()) + "_" + queryKey;
+
+        store.Tables.put(purgedTableName, new LinkedHashMap<String, JsonObject>());
+        client.getSyncTable(purgedTableName).purge(null).get();
+
+        MobileServiceClient secondClient = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        secondClient.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServicePullFreshnessPolicy policy = secondClient.getSyncContext().getPullFreshnessPolicy(table.getName(), queryKey);
+
+        assertNotNull(policy);
+        assertEquals(60000, policy.getMaxAge());
+    }
+
+    public void testPullGrowsPageSizeWithinBounds() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        final List<Integer> tops = new ArrayList<Integer>();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+
+                String url = request.getUrl();
+                int start = url.indexOf("$top=") + 5;
+                int end = url.indexOf('&', start);
+                int top = Integer.parseInt(url.substring(start, end));
+
+                StringBuilder content = new StringBuilder("[");
+
+                synchronized (tops) {
+                    // three full pages, then an empty one
+                    if (tops.size() < 3) {
+                        for (int i = 0; i < top; i++) {
+                            if (i > 0) {
+                                content.append(",");
+                            }
+
+                            content.append(String.format(Locale.US, "{\"id\":\"%06d\",\"String\":\"Hey\"}", tops.size() * 1000 + i));
+                        }
+                    }
+
+                    tops.add(top);
+                }
+
+                content.append("]");
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(200));
+                response.setContent(content.toString());
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setPullPageSizeBounds(10, 80);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        table.pull(null).get();
+
+        assertEquals(4, tops.size());
+        assertEquals(50, tops.get(0).intValue());
+        assertEquals(80, tops.get(1).intValue());
+        assertEquals(80, tops.get(2).intValue());
+
+        assertEquals(210, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+
+        MobileServiceSyncMetrics metrics = client.getSyncContext().getMetrics();
+
+        assertEquals(4, metrics.getPulledPages());
+        assertEquals(210, metrics.getPulledRows());
+        assertEquals(50, metrics.getMinPageSize());
+        assertEquals(80, metrics.getMaxPageSize());
+        assertTrue(metrics.getPulledBytes() > 0);
+    }
+
+    public void testPullAllPullsDependenciesFirstAndReportsProgress() throws MalformedURLException, InterruptedException, ExecutionException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        final List<String> requestedTables = new ArrayList<String>();
+        final List<String> events = new ArrayList<String>();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+
+                String url = request.getUrl();
+                String tableName = url.contains("/tables/customers") ? "customers" : "orders";
+
+                synchronized (requestedTables) {
+                    requestedTables.add(tableName);
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(200));
+
+                // The second page, which seeks past the last id, is empty
+                if (url.contains("$filter")) {
+                    response.setContent("[]");
+                } else {
+                    response.setContent("[{\"id\":\"" + tableName + "1\"},{\"id\":\"" + tableName + "2\"}]");
+                }
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        List<MobileServicePullSpec> specs = new ArrayList<MobileServicePullSpec>();
+        specs.add(new MobileServicePullSpec("Orders", null, null).withPriority(10).dependsOn("Customers"));
+        specs.add(new MobileServicePullSpec("Customers", null, null));
+
+        client.getSyncContext().pullAll(specs, new MobileServicePullProgressListener() {
+
+            @Override
+            public void onPullStarted(String tableName) {
+                synchronized (events) {
+                    events.add("started " + tableName);
+                }
+            }
+
+            @Override
+            public void onPageStored(String tableName, int pageItems, long totalItems) {
+                synchronized (events) {
+                    events.add("stored " + tableName + " " + totalItems);
+                }
+            }
+
+            @Override
+            public void onPullCompleted(String tableName, MobileServiceSyncMetrics metrics, Throwable error) {
+                synchronized (events) {
+                    events.add("completed " + tableName + " " + metrics.getPulledRows() + " " + (error == null));
+                }
+            }
+        }).get();
+
+        assertEquals(4, requestedTables.size());
+        assertEquals("customers", requestedTables.get(0));
+        assertEquals("customers", requestedTables.get(1));
+        assertEquals("orders", requestedTables.get(2));
+        assertEquals("orders", requestedTables.get(3));
+
+        assertEquals(2, store.Tables.get("customers").size());
+        assertEquals(2, store.Tables.get("orders").size());
+
+        assertEquals(6, events.size());
+        assertEquals("started customers", events.get(0));
+        assertEquals("stored customers 2", events.get(1));
+        assertEquals("completed customers 2 true", events.get(2));
+        assertEquals("started orders", events.get(3));
+        assertEquals("stored orders 2", events.get(4));
+        assertEquals("completed orders 2 true", events.get(5));
+
+        assertEquals(4, client.getSyncContext().getMetrics().getPulledRows());
+    }
+
+    public void testPullAllSkipsFreshQueries() throws Throwable {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        String updatedAt = sdf.format(new Date());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt + "\"}]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        String queryKey = "QueryKey";
+
+        client.getSyncContext().setPullFreshnessPolicy("StringIdType", queryKey, new MobileServicePullFreshnessPolicy(60000, 0, 0));
+
+        List<MobileServicePullSpec> specs = new ArrayList<MobileServicePullSpec>();
+        specs.add(new MobileServicePullSpec("StringIdType", null, queryKey));
+
+        client.getSyncContext().pullAll(specs, null).get();
+
+        int requests = serviceFilterContainer.Requests.size();
+        assertTrue(requests > 0);
+
+        client.getSyncContext().pullAll(specs, null).get();
+
+        assertEquals(requests, serviceFilterContainer.Requests.size());
+        assertEquals(1, client.getSyncContext().getMetrics().getSkippedPulls());
+    }
+
+    public void testDataChangeNotificationsCoalesceIntoOneIdPull() throws MalformedURLException, InterruptedException, ExecutionException {
+
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
+                "[{\"id\":\"a\",\"String\":\"Hey\"},{\"id\":\"b\",\"String\":\"Hey\"},{\"id\":\"c\",\"__deleted\":true}]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceDataChangeNotifications notifications = new MobileServiceDataChangeNotifications(client);
+        notifications.setCoalescingDelay(60000);
 
-        Query query = QueryOperations.tableName(table.getName()).top(2);
+        Bundle first = new Bundle();
+        first.putString(MobileServiceDataChangeNotifications.TABLE_KEY, "StringIdType");
+        first.putString(MobileServiceDataChangeNotifications.IDS_KEY, "a,b");
 
-        table.pull(query, queryKey).get();
+        Bundle second = new Bundle();
+        second.putString(MobileServiceDataChangeNotifications.TABLE_KEY, "stringidtype");
+        second.putString(MobileServiceDataChangeNotifications.IDS_KEY, "b, c");
 
-        LinkedHashMap<String, JsonObject> tableContent = store.Tables.get(incrementalPullStrategyTable);
+        Bundle message = new Bundle();
+        message.putString("message", "Hello");
 
-        JsonElement result = tableContent.get(table.getName() + "_" + queryKey);
+        assertTrue(notifications.onReceive(first));
+        assertTrue(notifications.onReceive(second));
+        assertFalse(notifications.onReceive(message));
 
-        String stringMaxUpdatedDate = result.getAsJsonObject()
-                .get("maxupdateddate").getAsString();
+        notifications.flush().get();
+        notifications.shutdown();
 
-        assertEquals(updatedAt2, stringMaxUpdatedDate);
+        // One pull of the three ids, whose second page seeks past c
+        assertEquals(2, serviceFilterContainer.Requests.size());
+
+        String url = serviceFilterContainer.Requests.get(0).Url;
+
+        assertTrue(url.contains("('a')"));
+        assertTrue(url.contains("('b')"));
+        assertTrue(url.contains("('c')"));
+        assertTrue(serviceFilterContainer.Requests.get(1).Url.contains("id%20gt%20('c')"));
+
+        assertEquals(2, store.Tables.get("stringidtype").size());
     }
 
-    public void testincrementalSyncUsesSkipWhenMaxUpdateAtIsSame() throws MalformedURLException, InterruptedException, ExecutionException, MobileServiceException {
+    public void testDataChangeNotificationsRetryFailedPulls() throws MalformedURLException, InterruptedException, ExecutionException {
 
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
-        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
-        String queryKey = "QueryKey";
-        String incrementalPullStrategyTable = "__incrementalPullData";
+        final List<String> urls = new ArrayList<String>();
 
         MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
 
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        client = client.withFilter(new ServiceFilter() {
 
-        Date d = new Date();
-        String updatedAt1 = sdf.format(d);
-        d.setTime(d.getTime() + 1000L);
-        String updatedAt2 = sdf.format(d);
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
 
-        client = client.withFilter(getTestFilter(serviceFilterContainer, false,
-                        "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}," +
-                        "{\"id\":\"def\",\"String\":\"World\",\"__updatedAt\":\"" + updatedAt1 + "\"}]",
-                "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt1 + "\"}," +
-                        "{\"id\":\"def\",\"String\":\"World\",\"__updatedAt\":\"" + updatedAt1 + "\"}]",
-                "[{\"id\":\"abc\",\"String\":\"Hey\",\"__updatedAt\":\"" + updatedAt2 + "\"}," +
-                        "{\"id\":\"def\",\"String\":\"World\",\"__updatedAt\":\"" + updatedAt2 + "\"}]"
-        ));
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+
+                synchronized (urls) {
+                    urls.add(request.getUrl());
+
+                    // The first pull fails, the retry returns the item and
+                    // then an empty page
+                    if (urls.size() == 1) {
+                        response.setStatus(new StatusLineMock(500));
+                        response.setContent("{\"error\":\"Unavailable\"}");
+                    } else {
+                        response.setStatus(new StatusLineMock(200));
+                        response.setContent(urls.size() == 2 ? "[{\"id\":\"a\",\"String\":\"Hey\"}]" : "[]");
+                    }
+                }
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
 
         client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
 
-        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+        MobileServiceDataChangeNotifications notifications = new MobileServiceDataChangeNotifications(client);
+        notifications.setCoalescingDelay(60000);
 
-        Query query = QueryOperations.field("String").eq("Hey");
+        notifications.onDataChanged("StringIdType", Arrays.asList("a"), null);
 
-        table.pull(query, queryKey).get();
+        try {
+            notifications.flush().get();
+            fail("Expected the pull to fail");
+        } catch (ExecutionException e) {
+            // expected
+        }
 
-        // Skip added
-        assertEquals(
-                serviceFilterContainer.Requests.get(2).Url,
-                EncodingUtilities
-                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20(__updatedAt%20ge%20(datetimeoffset'"+updatedAt1+"'))" +
-                                "&$top=50&$skip=2&" +
-                                "$orderby=__updatedAt%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
-        // Skip removed
-        assertEquals(
-                serviceFilterContainer.Requests.get(3).Url,
-                EncodingUtilities
-                        .percentEncodeSpaces("http://myapp.com/tables/stringidtype?$filter=String%20eq%20('Hey')%20and%20(__updatedAt%20ge%20(datetimeoffset'"+updatedAt2+"'))" +
-                                "&$top=50&$orderby=__updatedAt%20asc&__includeDeleted=true&__systemproperties=__updatedAt,__version,__deleted"));
+        // The failed changes are pulled again without another notification
+        for (int i = 0; i < 100 && (store.Tables.get("stringidtype") == null || store.Tables.get("stringidtype").size() == 0); i++) {
+            Thread.sleep(50);
+        }
+
+        notifications.shutdown();
+
+        assertEquals(1, store.Tables.get("stringidtype").size());
+
+        synchronized (urls) {
+            assertTrue(urls.size() >= 2);
+            assertTrue(urls.get(1).contains("('a')"));
+        }
+    }
+
+    public void testPullAllRejectsDependencyCycles() throws MalformedURLException, InterruptedException {
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        List<MobileServicePullSpec> specs = new ArrayList<MobileServicePullSpec>();
+        specs.add(new MobileServicePullSpec("Orders", null, null).dependsOn("Customers"));
+        specs.add(new MobileServicePullSpec("Customers", null, null).dependsOn("Orders"));
+
+        try {
+            client.getSyncContext().pullAll(specs, null).get();
+            fail("Expected the pull to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
     }
 
     public void testPurgeDoesNotThrowExceptionWhenThereIsNoOperationInTable() throws MalformedURLException, InterruptedException, ExecutionException {
@@ -778,6 +1676,374 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         assertEquals(client.getSyncContext().getPendingOperations(), 0);
     }
 
+    public void testBatchedInsertsCommitInOneTransaction() throws Throwable {
+        MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "[]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setOperationBatching(5, 10000);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        List<ListenableFuture<StringIdType>> inserts = new ArrayList<ListenableFuture<StringIdType>>();
+
+        for (int i = 0; i < 5; i++) {
+            StringIdType item = new StringIdType();
+
+            item.Id = "item" + i;
+            item.String = "what?";
+
+            inserts.add(table.insert(item));
+        }
+
+        // The batch is full with the fifth insert, so it commits without
+        // waiting for the delay
+        for (ListenableFuture<StringIdType> insert : inserts) {
+            insert.get();
+        }
+
+        MobileServiceSyncMetrics metrics = client.getSyncContext().getMetrics();
+
+        assertEquals(1, metrics.getOperationBatches());
+        assertEquals(5, metrics.getBatchedOperations());
+        assertEquals(5, client.getSyncContext().getPendingOperations());
+        assertEquals(5, store.Tables.get(table.getName().toLowerCase(Locale.getDefault())).size());
+    }
+
+    public void testRolledBackBatchDoesNotRepushInFlightOperations() throws Throwable {
+        final FailingTransactionLocalStore store = new FailingTransactionLocalStore();
+        final CountDownLatch pushStarted = new CountDownLatch(1);
+        final CountDownLatch releasePush = new CountDownLatch(1);
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("string", ColumnDataType.String);
+
+        store.defineTable("stringidtype", columns);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, new Function<ServiceFilterRequest, Void>() {
+            @Override
+            public Void apply(ServiceFilterRequest request) {
+                pushStarted.countDown();
+
+                try {
+                    releasePush.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+
+                return null;
+            }
+        }, "{\"id\":\"item1\",\"String\":\"Hey\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+        client.getSyncContext().setOperationBatching(5, 10);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        StringIdType item1 = new StringIdType();
+        item1.Id = "item1";
+        item1.String = "Hey";
+
+        table.insert(item1).get();
+
+        ListenableFuture<Void> push = client.getSyncContext().push();
+
+        assertTrue(pushStarted.await(5, TimeUnit.SECONDS));
+
+        StringIdType item2 = new StringIdType();
+        item2.Id = "item2";
+        item2.String = "Hey";
+
+        store.FailTransactions = true;
+
+        ListenableFuture<StringIdType> insert = table.insert(item2);
+
+        // The queue is only read back once the running push is done
+        try {
+            insert.get(500, TimeUnit.MILLISECONDS);
+            fail("Expected the insert to wait for the push");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        releasePush.countDown();
+        push.get();
+
+        try {
+            insert.get();
+            fail("Expected the rolled back insert to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MobileServiceLocalStoreException);
+        }
+
+        store.FailTransactions = false;
+
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+        assertNull(store.lookup("stringidtype", "item2"));
+
+        client.getSyncContext().push().get();
+
+        assertEquals(1, serviceFilterContainer.Requests.size());
+    }
+
+    public void testBulkOperationsEnqueueOneOperationPerItem() throws Throwable {
+        MemoryLocalStore store = new MemoryLocalStore(null);
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("string", ColumnDataType.String);
+
+        store.defineTable("stringidtype", columns);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, "[]"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        List<StringIdType> items = new ArrayList<StringIdType>();
+
+        for (int i = 0; i < 10; i++) {
+            StringIdType item = new StringIdType();
+
+            item.Id = "item" + i;
+            item.String = i % 2 == 0 ? "active" : "archived";
+
+            items.add(item);
+        }
+
+        assertEquals(10, table.insertAll(items).get().size());
+        assertEquals(10, client.getSyncContext().getPendingOperations());
+
+        JsonObject changes = new JsonObject();
+        changes.addProperty("String", "done");
+
+        // Updates of pending inserts collapse into the inserts
+        assertEquals(5, table.updateWhere(QueryOperations.field("String").eq("active"), changes).get().intValue());
+        assertEquals(10, client.getSyncContext().getPendingOperations());
+
+        // Deletes of pending inserts cancel both operations
+        assertEquals(5, table.deleteWhere(QueryOperations.field("String").eq("archived")).get().intValue());
+        assertEquals(5, client.getSyncContext().getPendingOperations());
+
+        assertEquals(5L, store.count(QueryOperations.tableName("stringidtype").field("string").eq("done")));
+        assertEquals(5L, store.count(QueryOperations.tableName("stringidtype")));
+    }
+
+    public void testRolledBackBulkInsertLeavesQueueAndItemsUnchanged() throws Throwable {
+        final FailingTransactionLocalStore store = new FailingTransactionLocalStore();
+        final CountDownLatch pushStarted = new CountDownLatch(1);
+        final CountDownLatch releasePush = new CountDownLatch(1);
+        ServiceFilterContainer serviceFilterContainer = new ServiceFilterContainer();
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("string", ColumnDataType.String);
+
+        store.defineTable("stringidtype", columns);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(getTestFilter(serviceFilterContainer, new Function<ServiceFilterRequest, Void>() {
+            @Override
+            public Void apply(ServiceFilterRequest request) {
+                pushStarted.countDown();
+
+                try {
+                    releasePush.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+
+                return null;
+            }
+        }, "{\"id\":\"item0\",\"String\":\"Hey\"}"));
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        StringIdType item0 = new StringIdType();
+        item0.Id = "item0";
+        item0.String = "Hey";
+
+        table.insert(item0).get();
+
+        ListenableFuture<Void> push = client.getSyncContext().push();
+
+        assertTrue(pushStarted.await(5, TimeUnit.SECONDS));
+
+        List<StringIdType> items = new ArrayList<StringIdType>();
+
+        for (int i = 1; i <= 3; i++) {
+            StringIdType item = new StringIdType();
+
+            item.Id = "item" + i;
+            item.String = "Hey";
+
+            items.add(item);
+        }
+
+        store.FailTransactions = true;
+
+        ListenableFuture<List<StringIdType>> insertAll = table.insertAll(items);
+
+        // The queue is only read back once the running push is done
+        try {
+            insertAll.get(500, TimeUnit.MILLISECONDS);
+            fail("Expected the bulk insert to wait for the push");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        releasePush.countDown();
+        push.get();
+
+        try {
+            insertAll.get();
+            fail("Expected the rolled back bulk insert to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MobileServiceLocalStoreException);
+        }
+
+        store.FailTransactions = false;
+
+        assertEquals(0, client.getSyncContext().getPendingOperations());
+        assertEquals(1L, store.count(QueryOperations.tableName("stringidtype")));
+
+        client.getSyncContext().push().get();
+
+        assertEquals(1, serviceFilterContainer.Requests.size());
+
+        // The table is usable after the rollback
+        assertEquals(3, table.insertAll(items).get().size());
+        assertEquals(3, client.getSyncContext().getPendingOperations());
+    }
+
+    public void testPullSkipsRowsWithUnchangedVersion() throws Throwable {
+        MemoryLocalStore store = new MemoryLocalStore(null);
+        final String[] lastVersion = new String[]{"1"};
+        final int[] requests = new int[1];
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("string", ColumnDataType.String);
+        columns.put("__version", ColumnDataType.String);
+
+        store.defineTable("stringidtype", columns);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                String content = "[]";
+
+                // each pull reads one page, then an empty one
+                if (requests[0]++ % 2 == 0) {
+                    content = "[{\"id\":\"a\",\"String\":\"Hey\",\"__version\":\"1\"}," +
+                            "{\"id\":\"b\",\"String\":\"Hey\",\"__version\":\"1\"}," +
+                            "{\"id\":\"c\",\"String\":\"Hey\",\"__version\":\"" + lastVersion[0] + "\"}]";
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(200));
+                response.setContent(content);
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+
+        table.pull(null).get();
+
+        MobileServiceSyncMetrics metrics = client.getSyncContext().getMetrics();
+
+        assertEquals(3, metrics.getWrittenRows());
+        assertEquals(0, metrics.getSkippedRows());
+
+        lastVersion[0] = "2";
+
+        table.pull(null).get();
+
+        assertEquals(4, metrics.getWrittenRows());
+        assertEquals(2, metrics.getSkippedRows());
+        assertEquals("2", store.lookup("stringidtype", "c").get("__version").getAsString());
+    }
+
+    public void testPullWithWiderColumnsFillsRowsWithUnchangedVersion() throws Throwable {
+        MemoryLocalStore store = new MemoryLocalStore(null);
+        final int[] requests = new int[1];
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("string", ColumnDataType.String);
+        columns.put("other", ColumnDataType.String);
+        columns.put("__version", ColumnDataType.String);
+
+        store.defineTable("stringidtype", columns);
+
+        MobileServiceClient client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+
+        client = client.withFilter(new ServiceFilter() {
+
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                String content = "[]";
+
+                // each pull reads one page, then an empty one; the server
+                // only returns the selected columns
+                if (requests[0]++ % 2 == 0) {
+                    if (request.getUrl().contains("$select")) {
+                        content = "[{\"id\":\"a\",\"String\":\"Hey\",\"__version\":\"1\"}]";
+                    } else {
+                        content = "[{\"id\":\"a\",\"String\":\"Hey\",\"Other\":\"World\",\"__version\":\"1\"}]";
+                    }
+                }
+
+                ServiceFilterResponseMock response = new ServiceFilterResponseMock();
+                response.setStatus(new StatusLineMock(200));
+                response.setContent(content);
+
+                return nextServiceFilterCallback.onNext(new ServiceFilterRequestMock(response));
+            }
+        });
+
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        MobileServiceJsonSyncTable table = client.getSyncTable("stringidtype");
+
+        table.setColumns("String");
+        table.pull(null).get();
+
+        assertTrue(store.lookup("stringidtype", "a").get("other").isJsonNull());
+
+        // Widening the columns pulls the same version again, which must not
+        // be skipped while it carries a column the row lacks
+        table.setColumns();
+        table.pull(null).get();
+
+        MobileServiceSyncMetrics metrics = client.getSyncContext().getMetrics();
+
+        assertEquals(2, metrics.getWrittenRows());
+        assertEquals(0, metrics.getSkippedRows());
+        assertEquals("World", store.lookup("stringidtype", "a").get("other").getAsString());
+
+        table.pull(null).get();
+
+        assertEquals(1, metrics.getSkippedRows());
+    }
+
     public void testOperationErrorLoadCorrectly() throws Throwable {
 
         MobileServiceLocalStoreMock store = new MobileServiceLocalStoreMock();
@@ -3396,6 +4662,34 @@ public class MobileServiceSyncTableTests extends InstrumentationTestCase {
         public Exception Exception;
     }
 
+    public class FailingTransactionLocalStore extends MemoryLocalStore {
+        public volatile boolean FailTransactions;
+
+        public FailingTransactionLocalStore() {
+            super(null);
+        }
+
+        @Override
+        public void runInTransaction(final MobileServiceLocalStoreTransaction transaction) throws MobileServiceLocalStoreException {
+            super.runInTransaction(new MobileServiceLocalStoreTransaction() {
+                @Override
+                public void run() throws MobileServiceLocalStoreException {
+                    transaction.run();
+
+                    if (FailTransactions) {
+                        throw new MobileServiceLocalStoreException("Transaction failed");
+                    }
+                }
+            });
+        }
+    }
+
+    public class InnerEntity {
+        public String id;
+
+        public String text;
+    }
+
     public class ThrownExceptionFlag {
         public boolean Thrown;
     }
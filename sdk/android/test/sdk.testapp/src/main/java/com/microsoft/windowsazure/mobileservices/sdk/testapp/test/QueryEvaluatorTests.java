@@ -0,0 +1,120 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+Apache 2.0 License
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+     http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+
+See the Apache Version 2.0 License for specific language governing permissions and limitations under the License.
+ */
+package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
+
+import android.test.InstrumentationTestCase;
+
+import com.google.gson.JsonObject;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.DateTestObject;
+import com.microsoft.windowsazure.mobileservices.table.query.CompiledQuery;
+import com.microsoft.windowsazure.mobileservices.table.query.Query;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryEvaluator;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
+import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+public class QueryEvaluatorTests extends InstrumentationTestCase {
+
+    public void testFunctionsFollowTheSQLiteStoreSemantics() {
+        JsonObject row = new JsonObject();
+        row.addProperty("id", "abc");
+        row.addProperty("Text", "  Buy 100% Milk  ");
+        row.addProperty("price", 12.5);
+        row.addProperty("quantity", 3);
+        row.addProperty("code", "42");
+        row.addProperty("complete", true);
+        row.addProperty("due", "2014-05-06T07:08:09.010Z");
+
+        assertMatches(row, QueryOperations.trim("text").eq("Buy 100% Milk"));
+        assertMatches(row, QueryOperations.length("text").eq(17));
+        assertMatches(row, QueryOperations.startsWith(QueryOperations.trim("text"), QueryOperations.val("BUY")));
+        assertMatches(row, QueryOperations.endsWith(QueryOperations.trim("text"), QueryOperations.val("milk")));
+        assertMatches(row, QueryOperations.subStringOf("0%", "text"));
+        assertMatches(row, QueryOperations.toUpper("id").eq("ABC"));
+        assertMatches(row, QueryOperations.indexOf("id", "c").eq(2));
+        assertMatches(row, QueryOperations.subString("id", 1).eq("bc"));
+        assertMatches(row, QueryOperations.subString("id", 0, 2).eq("ab"));
+        assertMatches(row, QueryOperations.replace("id", "b", "x").eq("axc"));
+        assertMatches(row, QueryOperations.concat(QueryOperations.field("id"), "d").eq("abcd"));
+        assertMatches(row, QueryOperations.floor(QueryOperations.field("price")).eq(12));
+        assertMatches(row, QueryOperations.ceiling(QueryOperations.field("price")).eq(13));
+        assertMatches(row, QueryOperations.round(QueryOperations.field("price")).eq(13));
+        assertMatches(row, QueryOperations.field("quantity").mul(4).div(5).eq(2));
+        assertMatches(row, QueryOperations.field("complete").eq(true));
+
+        // Text columns compare numbers as text, as in SQLite
+        assertMatches(row, QueryOperations.field("code").eq("42"));
+        assertMatches(row, QueryOperations.field("code").eq(42));
+        assertFalse(QueryEvaluator.compile(QueryOperations.field("code").gt(5)).matches(row));
+
+        assertMatches(row, QueryOperations.year("due").eq(2014));
+        assertMatches(row, QueryOperations.month("due").eq(5));
+        assertMatches(row, QueryOperations.day("due").eq(6));
+        assertMatches(row, QueryOperations.hour("due").eq(7));
+        assertMatches(row, QueryOperations.minute("due").eq(8));
+
+        // Comparisons with null are unknown, so neither they nor their
+        // negation match
+        assertFalse(QueryEvaluator.compile(QueryOperations.field("missing").ne("x")).matches(row));
+        assertFalse(QueryEvaluator.compile(QueryOperations.not(QueryOperations.field("missing").eq("x"))).matches(row));
+    }
+
+    public void testCompiledQueryOrdersPagesAndProjectsEntities() {
+        List<DateTestObject> entities = new ArrayList<DateTestObject>();
+
+        for (int i = 0; i < 6; i++) {
+            Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+            calendar.clear();
+            calendar.set(2014, i % 3, 1);
+
+            DateTestObject entity = new DateTestObject(calendar.getTime());
+            entity.setId(i);
+            entities.add(entity);
+        }
+
+        Query query = QueryOperations.month("date").gt(1).orderBy("date", QueryOrder.Descending)
+                .orderBy("id", QueryOrder.Ascending).skip(1).top(2);
+
+        CompiledQuery<DateTestObject> compiledQuery = QueryEvaluator.compile(query, QueryEvaluator.entityReader(DateTestObject.class));
+        List<DateTestObject> page = compiledQuery.apply(entities);
+
+        assertEquals(2, page.size());
+        assertEquals(5, page.get(0).getId());
+        assertEquals(1, page.get(1).getId());
+
+        JsonObject row = new JsonObject();
+        row.addProperty("id", "abc");
+        row.addProperty("text", "Milk");
+
+        JsonObject projected = QueryEvaluator.compile(QueryOperations.field("text").eq("Milk").select("ID")).project(row);
+
+        assertEquals(1, projected.entrySet().size());
+        assertEquals("abc", projected.get("id").getAsString());
+    }
+
+    private static void assertMatches(JsonObject row, Query query) {
+        assertTrue(query.toString(), QueryEvaluator.compile(query).matches(row));
+    }
+}
@@ -120,6 +120,26 @@ public class SQLiteStoreQueryTests extends InstrumentationTestCase {
         assertEquals(results.get(0).getAsJsonObject().get("id").getAsString(), getTestData()[2].getAsJsonObject().get("id").getAsString());
     }
 
+    public void testQueryOnStringWithQuotes() throws MobileServiceException, MobileServiceLocalStoreException {
+        Query query1 = QueryOperations.tableName(TestTable).field("col1").eq("fox' OR '1'='1");
+
+        testQuery(query1, 0);
+
+        Query query2 = QueryOperations.tableName(TestTable).concat(QueryOperations.field("col1"), "'s").eq("fox's");
+
+        testQuery(query2, 1);
+    }
+
+    public void testQueryMathOnBoundNumbers() throws MobileServiceException, MobileServiceLocalStoreException {
+        Query query1 = QueryOperations.tableName(TestTable).field("col2").add(1).gt(6);
+
+        testQuery(query1, 3);
+
+        Query query2 = QueryOperations.tableName(TestTable).field("col2").mul(0.5).le(2.5);
+
+        testQuery(query2, 3);
+    }
+
     // public void testQueryOnStringIndexOf() throws MobileServiceException,
     // MobileServiceLocalStoreException {
     // Query query1 = QueryOperations.tableName(TestTable).indexOf("col1",
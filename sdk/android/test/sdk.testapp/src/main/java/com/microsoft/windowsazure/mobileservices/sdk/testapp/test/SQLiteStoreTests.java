@@ -20,26 +20,38 @@ See the Apache Version 2.0 License for specific language governing permissions a
 package com.microsoft.windowsazure.mobileservices.sdk.testapp.test;
 
 import android.content.Context;
+import android.util.Log;
 import android.test.InstrumentationTestCase;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.microsoft.windowsazure.mobileservices.MobileServiceClient;
 import com.microsoft.windowsazure.mobileservices.MobileServiceException;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.helpers.SQLiteStoreTestsUtilities;
 import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.CustomFunctionOneParameter;
+import com.microsoft.windowsazure.mobileservices.sdk.testapp.test.types.IdPropertyTestClasses.StringIdType;
 import com.microsoft.windowsazure.mobileservices.table.query.Query;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOperations;
 import com.microsoft.windowsazure.mobileservices.table.query.QueryOrder;
+import com.microsoft.windowsazure.mobileservices.table.sync.MobileServiceSyncTable;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.ColumnDataType;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreCursor;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreException;
+import com.microsoft.windowsazure.mobileservices.table.sync.localstore.MobileServiceLocalStoreTransaction;
 import com.microsoft.windowsazure.mobileservices.table.sync.localstore.SQLiteLocalStore;
+import com.microsoft.windowsazure.mobileservices.table.sync.synchandler.SimpleSyncHandler;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class SQLiteStoreTests extends InstrumentationTestCase {
 
@@ -467,6 +479,496 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         assertEquals(count, 1L);
     }
     
+    public void testUpsertAndDeleteManyItemsInBatches() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        // Two full pages of 499 rows for the two columns of the table
+        JsonObject[] items = new JsonObject[998];
+        String[] deletedIds = new String[250];
+
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new JsonObject();
+            items[i].addProperty("id", "item" + i);
+            items[i].addProperty("__createdAt", new Date().toString());
+
+            if (i < deletedIds.length) {
+                deletedIds[i] = "item" + i;
+            }
+        }
+
+        store.upsert(TestTable, items, false);
+
+        assertEquals(998L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+
+        store.delete(TestTable, deletedIds);
+
+        assertEquals(748L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable));
+        assertNull(store.lookup(TestTable, "item0"));
+        assertNotNull(store.lookup(TestTable, "item250"));
+    }
+
+    public void testOpenCursorStreamsRowsAndCountIgnoresPaging() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        JsonObject[] items = new JsonObject[10];
+
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new JsonObject();
+            items[i].addProperty("id", "item" + i);
+        }
+
+        store.upsert(TestTable, items, false);
+
+        Query query = QueryOperations.tableName(TestTable).orderBy("id", QueryOrder.Ascending).skip(7).includeInlineCount();
+
+        MobileServiceLocalStoreCursor cursor = store.openCursor(query);
+
+        List<String> ids = new ArrayList<String>();
+
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getRow().get("id").getAsString());
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(Arrays.asList("item7", "item8", "item9"), ids);
+        assertEquals(10L, store.count(query));
+
+        JsonObject result = store.read(query.top(2)).getAsJsonObject();
+
+        assertEquals(10, result.get("count").getAsInt());
+        assertEquals(2, result.get("results").getAsJsonArray().size());
+    }
+
+    public void testCloseFailsOnThreadWithOpenCursor() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        MobileServiceLocalStoreCursor cursor = store.openCursor(QueryOperations.tableName(TestTable));
+
+        try {
+            store.close();
+            fail("Expected close to fail");
+        } catch (IllegalStateException e) {
+            // the cursor would never be closed while close waits for it
+        } finally {
+            cursor.close();
+        }
+
+        store.close();
+    }
+
+    public void testDirectDecodingReads50000Entities() throws Throwable {
+        String tableName = "stringidtype";
+        int itemCount = 50000;
+
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, tableName);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> columns = new HashMap<String, ColumnDataType>();
+        columns.put("id", ColumnDataType.String);
+        columns.put("String", ColumnDataType.String);
+
+        store.defineTable(tableName, columns);
+
+        MobileServiceClient client = new MobileServiceClient("http://myapp.com/", "qwerty", this.getInstrumentation().getTargetContext());
+        client.getSyncContext().initialize(store, new SimpleSyncHandler()).get();
+
+        JsonObject[] items = new JsonObject[itemCount];
+
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new JsonObject();
+            items[i].addProperty("id", String.format("item%05d", i));
+            items[i].addProperty("String", "value" + i);
+        }
+
+        store.upsert(tableName, items, false);
+
+        MobileServiceSyncTable<StringIdType> table = client.getSyncTable(StringIdType.class);
+        Query query = QueryOperations.tableName(tableName).orderBy("id", QueryOrder.Ascending);
+
+        long start = System.nanoTime();
+        List<StringIdType> throughJson = table.read(query).get();
+        long jsonMillis = (System.nanoTime() - start) / 1000000;
+
+        table.setDirectDecoding(true);
+
+        start = System.nanoTime();
+        List<StringIdType> direct = table.read(query).get();
+        long directMillis = (System.nanoTime() - start) / 1000000;
+
+        Log.i("SQLiteStoreTests", "Read " + itemCount + " entities in " + jsonMillis + " ms through JSON and in " + directMillis + " ms directly");
+
+        assertEquals(itemCount, throughJson.size());
+        assertEquals(itemCount, direct.size());
+
+        for (int i = 0; i < itemCount; i += 997) {
+            assertEquals(throughJson.get(i).Id, direct.get(i).Id);
+            assertEquals(throughJson.get(i).String, direct.get(i).String);
+        }
+
+        assertEquals("item49999", direct.get(itemCount - 1).Id);
+        assertEquals("value49999", direct.get(itemCount - 1).String);
+    }
+
+    public void testIngestUpsertsItemsAndDeletesTombstones() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        JsonObject existing = new JsonObject();
+        existing.addProperty("id", "abc");
+        store.upsert(TestTable, existing, false);
+
+        existing = new JsonObject();
+        existing.addProperty("id", "def");
+        store.upsert(TestTable, existing, false);
+
+        JsonArray page = new JsonArray();
+
+        JsonObject tombstone = new JsonObject();
+        tombstone.addProperty("id", "abc");
+        tombstone.addProperty("__deleted", true);
+        page.add(tombstone);
+
+        JsonObject withUnknownColumn = new JsonObject();
+        withUnknownColumn.addProperty("id", "ghi");
+        withUnknownColumn.addProperty("__createdAt", new Date().toString());
+        withUnknownColumn.addProperty("unknown", 1);
+        page.add(withUnknownColumn);
+
+        JsonObject idOnly = new JsonObject();
+        idOnly.addProperty("id", "jkl");
+        page.add(idOnly);
+
+        JsonObject withoutId = new JsonObject();
+        withoutId.addProperty("__createdAt", new Date().toString());
+        page.add(withoutId);
+
+        store.ingest(TestTable, page);
+
+        long count = SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable);
+        assertEquals(3L, count);
+
+        assertNull(store.lookup(TestTable, "abc"));
+        assertNotNull(store.lookup(TestTable, "def"));
+        assertNotNull(store.lookup(TestTable, "ghi"));
+        assertNotNull(store.lookup(TestTable, "jkl"));
+    }
+
+    public void testIngestKeepsColumnsMissingFromPulledItems() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+        tableDefinition.put("note", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        JsonObject existing = new JsonObject();
+        existing.addProperty("id", "abc");
+        existing.addProperty("text", "old");
+        existing.addProperty("note", "local");
+        store.upsert(TestTable, existing, false);
+
+        JsonArray page = new JsonArray();
+
+        JsonObject updated = new JsonObject();
+        updated.addProperty("id", "abc");
+        updated.addProperty("text", "new");
+        page.add(updated);
+
+        JsonObject inserted = new JsonObject();
+        inserted.addProperty("id", "def");
+        inserted.addProperty("text", "other");
+        page.add(inserted);
+
+        store.ingest(TestTable, page);
+
+        JsonObject result = store.lookup(TestTable, "abc");
+        assertEquals("new", result.get("text").getAsString());
+        assertEquals("local", result.get("note").getAsString());
+
+        result = store.lookup(TestTable, "def");
+        assertEquals("other", result.get("text").getAsString());
+        assertTrue(result.get("note") == null || result.get("note").isJsonNull());
+    }
+
+    public void testIngestSkipsUnchangedItems() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+        tableDefinition.put("__version", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        JsonArray page = new JsonArray();
+
+        for (String id : new String[]{"abc", "def"}) {
+            JsonObject item = new JsonObject();
+            item.addProperty("id", id);
+            item.addProperty("text", "old");
+            item.addProperty("__version", "1");
+            page.add(item);
+        }
+
+        assertEquals(0, store.ingest(TestTable, page));
+
+        page.get(1).getAsJsonObject().addProperty("text", "new");
+        page.get(1).getAsJsonObject().addProperty("__version", "2");
+
+        assertEquals(1, store.ingest(TestTable, page));
+
+        assertEquals("old", store.lookup(TestTable, "abc").get("text").getAsString());
+
+        JsonObject result = store.lookup(TestTable, "def");
+        assertEquals("new", result.get("text").getAsString());
+        assertEquals("2", result.get("__version").getAsString());
+    }
+
+    public void testIngestFillsColumnsOfItemWithUnchangedVersion() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+        tableDefinition.put("__version", ColumnDataType.String);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.initialize();
+
+        // pulled first without the text column, as with a column subset
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.addProperty("__version", "1");
+
+        JsonArray page = new JsonArray();
+        page.add(item);
+
+        assertEquals(0, store.ingest(TestTable, page));
+
+        item.addProperty("text", "filled");
+
+        assertEquals(0, store.ingest(TestTable, page));
+        assertEquals("filled", store.lookup(TestTable, "abc").get("text").getAsString());
+
+        assertEquals(1, store.ingest(TestTable, page));
+    }
+
+    public void testLookups2000WhileWriterHoldsTransaction() throws Throwable {
+        prepareTodoTable();
+
+        final SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        final int itemCount = 1000;
+        int lookupCount = 2000;
+
+        JsonObject[] items = new JsonObject[itemCount];
+
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new JsonObject();
+            items[i].addProperty("id", "item" + i);
+        }
+
+        store.upsert(TestTable, items, false);
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < lookupCount; i++) {
+            assertNotNull(store.lookup(TestTable, "item" + (i % itemCount)));
+        }
+
+        long idleMillis = (System.nanoTime() - start) / 1000000;
+
+        final Throwable[] writeError = new Throwable[1];
+        final boolean[] readsDuringTransaction = new boolean[1];
+        final CountDownLatch inTransaction = new CountDownLatch(1);
+        final CountDownLatch readsDone = new CountDownLatch(1);
+
+        // The writer keeps its transaction open until the reads are done
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.runInTransaction(new MobileServiceLocalStoreTransaction() {
+                        @Override
+                        public void run() throws MobileServiceLocalStoreException {
+                            for (int i = 0; i < itemCount; i++) {
+                                JsonObject item = new JsonObject();
+                                item.addProperty("id", "new" + i);
+                                store.upsert(TestTable, item, false);
+                            }
+
+                            inTransaction.countDown();
+
+                            try {
+                                readsDuringTransaction[0] = readsDone.await(30, TimeUnit.SECONDS);
+                            } catch (InterruptedException e) {
+                                throw new MobileServiceLocalStoreException(e);
+                            }
+                        }
+                    });
+                } catch (Throwable throwable) {
+                    writeError[0] = throwable;
+                } finally {
+                    inTransaction.countDown();
+                }
+            }
+        });
+
+        writer.start();
+
+        assertTrue(inTransaction.await(30, TimeUnit.SECONDS));
+
+        JsonObject uncommitted;
+
+        start = System.nanoTime();
+
+        try {
+            for (int i = 0; i < lookupCount; i++) {
+                assertNotNull(store.lookup(TestTable, "item" + (i % itemCount)));
+            }
+
+            uncommitted = store.lookup(TestTable, "new0");
+        } finally {
+            readsDone.countDown();
+            writer.join();
+        }
+
+        long duringWriteMillis = (System.nanoTime() - start) / 1000000;
+
+        Log.i("SQLiteStoreTests", "Ran " + lookupCount + " lookups in " + idleMillis + " ms idle and in " + duringWriteMillis
+                + " ms while a writer held a transaction");
+
+        assertNull(writeError[0]);
+        assertTrue("The lookups waited for the transaction to end", readsDuringTransaction[0]);
+        assertNull(uncommitted);
+        assertEquals(itemCount * 2, store.read(QueryOperations.tableName(TestTable)).getAsJsonArray().size());
+
+        store.close();
+
+        // The store opens its connection again after an explicit close
+        assertNotNull(store.lookup(TestTable, "item0"));
+
+        store.close();
+    }
+
+    public void testInitializeCreatesAndDiffsDefinedIndexes() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("text", ColumnDataType.String);
+        tableDefinition.put("complete", ColumnDataType.Boolean);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.defineIndex(TestTable, "complete_text", "complete", "Text DESC");
+        store.defineIndex(TestTable, "text_lower", "lower(text)");
+        store.initialize();
+        store.close();
+
+        String completeText = "sqlite_master WHERE type = 'index' AND name = '__ix_" + TestTable + "_complete_text'";
+        String textLower = "sqlite_master WHERE type = 'index' AND name = '__ix_" + TestTable + "_text_lower'";
+        String completeTextSql = completeText + " AND sql = 'CREATE INDEX \"__ix_" + TestTable + "_complete_text\" ON \"" + TestTable + "\" (\"complete\", \"text\" DESC)'";
+
+        assertEquals(1L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, completeTextSql));
+
+        store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        store.defineTable(TestTable, tableDefinition);
+        store.defineIndex(TestTable, "complete_text", "complete");
+        store.initialize();
+        store.close();
+
+        assertEquals(1L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, completeText));
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, completeTextSql));
+        assertEquals(0L, SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, textLower));
+
+        try {
+            store.defineIndex(TestTable, "invalid", "text); DROP TABLE x; --");
+            fail("Expected the index to be rejected");
+        } catch (MobileServiceLocalStoreException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    public void testRunInTransactionRollsBackWhenTheTransactionFails() throws MobileServiceLocalStoreException {
+        prepareTodoTable();
+
+        final SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineTestTable(store);
+        store.initialize();
+
+        try {
+            store.runInTransaction(new MobileServiceLocalStoreTransaction() {
+                @Override
+                public void run() throws MobileServiceLocalStoreException {
+                    JsonObject inserted = new JsonObject();
+                    inserted.addProperty("id", "abc");
+                    store.upsert(TestTable, inserted, false);
+
+                    throw new MobileServiceLocalStoreException("Transaction failure");
+                }
+            });
+
+            fail("Expected the transaction to fail");
+        } catch (MobileServiceLocalStoreException e) {
+            assertEquals("Transaction failure", e.getMessage());
+        }
+
+        long count = SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable);
+        assertEquals(0L, count);
+
+        store.runInTransaction(new MobileServiceLocalStoreTransaction() {
+            @Override
+            public void run() throws MobileServiceLocalStoreException {
+                JsonObject inserted = new JsonObject();
+                inserted.addProperty("id", "abc");
+                store.upsert(TestTable, inserted, false);
+            }
+        });
+
+        count = SQLiteStoreTestsUtilities.countRows(this.getContext(), TestDbName, TestTable);
+        assertEquals(1L, count);
+    }
+
     private class OffThreadInsert implements Runnable {
         private SQLiteLocalStore mStore;
         private String mObjectId;
@@ -594,6 +1096,96 @@ public class SQLiteStoreTests extends InstrumentationTestCase {
         assertNull(lastItem);
     }
 
+    public void testUpsertThenLookupWithBinaryEncodedOtherColumn() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        SQLiteLocalStore store = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        store.setBinaryEncodingEnabled(true);
+
+        defineOtherTestTable(store);
+        store.initialize();
+
+        JsonObject originalItem = createItemWithNestedValues();
+
+        store.upsert(TestTable, originalItem, false);
+
+        JsonObject itemRead = store.lookup(TestTable, "abc");
+
+        assertNotNull(itemRead);
+        assertEquals(originalItem.get("address"), itemRead.get("address"));
+        assertEquals(originalItem.get("tags"), itemRead.get("tags"));
+    }
+
+    public void testLookupReadsOtherColumnStoredAsTextWhenBinaryEncodingIsEnabled() throws MobileServiceLocalStoreException {
+        SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
+
+        // store the item as JSON text first
+        SQLiteLocalStore textStore = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+
+        defineOtherTestTable(textStore);
+        textStore.initialize();
+
+        JsonObject originalItem = createItemWithNestedValues();
+
+        textStore.upsert(TestTable, originalItem, false);
+
+        // then read it back and rewrite it with binary encoding enabled
+        SQLiteLocalStore binaryStore = new SQLiteLocalStore(this.getContext(), TestDbName, null, 1);
+        binaryStore.setBinaryEncodingEnabled(true);
+
+        defineOtherTestTable(binaryStore);
+        binaryStore.initialize();
+
+        JsonObject itemRead = binaryStore.lookup(TestTable, "abc");
+
+        assertNotNull(itemRead);
+        assertEquals(originalItem.get("address"), itemRead.get("address"));
+        assertEquals(originalItem.get("tags"), itemRead.get("tags"));
+
+        binaryStore.upsert(TestTable, itemRead, false);
+
+        // binary values remain readable when binary encoding is disabled
+        JsonObject itemReadAgain = textStore.lookup(TestTable, "abc");
+
+        assertNotNull(itemReadAgain);
+        assertEquals(originalItem.get("address"), itemReadAgain.get("address"));
+        assertEquals(originalItem.get("tags"), itemReadAgain.get("tags"));
+    }
+
+    private void defineOtherTestTable(SQLiteLocalStore store) throws MobileServiceLocalStoreException {
+        Map<String, ColumnDataType> tableDefinition = new HashMap<String, ColumnDataType>();
+        tableDefinition.put("id", ColumnDataType.String);
+        tableDefinition.put("address", ColumnDataType.Other);
+        tableDefinition.put("tags", ColumnDataType.Other);
+
+        store.defineTable(TestTable, tableDefinition);
+    }
+
+    private JsonObject createItemWithNestedValues() {
+        JsonObject location = new JsonObject();
+        location.addProperty("latitude", 47.6097d);
+        location.addProperty("longitude", -122.3331d);
+
+        JsonObject address = new JsonObject();
+        address.addProperty("street", "1 Microsoft Way \u00e9\u4e2d");
+        address.addProperty("number", 1234567890123L);
+        address.addProperty("verified", true);
+        address.add("location", location);
+        address.add("apartment", null);
+
+        JsonArray tags = new JsonArray();
+        tags.add(new JsonPrimitive("home"));
+        tags.add(new JsonPrimitive(-42));
+        tags.add(new JsonObject());
+
+        JsonObject item = new JsonObject();
+        item.addProperty("id", "abc");
+        item.add("address", address);
+        item.add("tags", tags);
+
+        return item;
+    }
+
     private void prepareTodoTable() throws MobileServiceLocalStoreException {
         SQLiteStoreTestsUtilities.dropTestTable(this.getContext(), TestDbName, TestTable);
 
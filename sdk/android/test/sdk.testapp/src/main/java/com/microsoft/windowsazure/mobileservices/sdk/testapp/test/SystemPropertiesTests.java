@@ -536,6 +536,46 @@ public class SystemPropertiesTests extends InstrumentationTestCase {
         }
     }
 
+    public void testUpdateDoesNotAlterOriginalItemWhenRemovingSystemProperties() throws Throwable {
+
+        final String tableName = "MyTableName";
+
+        final String responseContent = "{\"id\":\"an id\",\"String\":\"Hey\"}";
+
+        MobileServiceClient client = null;
+
+        try {
+            client = new MobileServiceClient(appUrl, appKey, getInstrumentation().getTargetContext());
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+
+        client = client.withFilter(getTestFilter(responseContent));
+
+        client = client.withFilter(new ServiceFilter() {
+            @Override
+            public ListenableFuture<ServiceFilterResponse> handleRequest(ServiceFilterRequest request, NextServiceFilterCallback nextServiceFilterCallback) {
+                assertEquals("{\"id\":\"an id\",\"String\":\"what\",\"nested\":{\"__version\":\"kept\"}}", request.getContent());
+
+                return nextServiceFilterCallback.onNext(request);
+            }
+        });
+
+        MobileServiceJsonTable msTable = client.getTable(tableName);
+
+        JsonObject obj = new JsonParser().parse("{\"id\":\"an id\",\"__createdAt\":\"a value\",\"String\":\"what\",\"nested\":{\"__version\":\"kept\"}}").getAsJsonObject();
+
+        try {
+            msTable.update(obj).get();
+
+            // the system property is removed from the request body only
+            assertTrue(obj.has("__createdAt"));
+            assertEquals(4, obj.entrySet().size());
+        } catch (Exception exception) {
+            fail(exception.getMessage());
+        }
+    }
+
     public void testUpdateDoesNotRemoveNonSystemPropertiesWhenIdIsString() throws Throwable {
         String[] nonSystemProperties = SystemPropertiesTestData.NonSystemProperties;
 